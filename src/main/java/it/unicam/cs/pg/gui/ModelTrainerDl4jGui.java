@@ -1,10 +1,13 @@
 package it.unicam.cs.pg.gui;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TextArea;
@@ -12,25 +15,29 @@ import javafx.scene.control.TextField;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.stage.Stage;
-import org.datavec.image.loader.NativeImageLoader;
-import org.deeplearning4j.datasets.iterator.impl.ListDataSetIterator;
-import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
-import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.dataset.DataSet;
-import org.nd4j.linalg.dataset.api.preprocessor.ImagePreProcessingScaler;
-import org.opencv.core.Core;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.util.ModelSerializer;
 import org.opencv.core.Mat;
 import org.opencv.imgcodecs.Imgcodecs;
+import it.unicam.cs.pg.modelDl4jTraining.AugmentingBatchSource;
+import it.unicam.cs.pg.modelDl4jTraining.BatchSource;
+import it.unicam.cs.pg.modelDl4jTraining.DatasetPair;
+import it.unicam.cs.pg.modelDl4jTraining.DenoiserDataSetIterator;
+import it.unicam.cs.pg.modelDl4jTraining.DenoiserTrainer;
+import it.unicam.cs.pg.modelDl4jTraining.DenoiserVariant;
 import it.unicam.cs.pg.modelDl4jTraining.ImagePreprocessor;
 import it.unicam.cs.pg.modelDl4jTraining.ModelArchitecture;
+import it.unicam.cs.pg.modelDl4jTraining.PrefetchDataSetIterator;
+import it.unicam.cs.pg.modelDl4jTraining.RandomPatchDataSetIterator;
+import it.unicam.cs.pg.modelDl4jTraining.TensorCache;
+import it.unicam.cs.pg.modelDl4jTraining.TrainingImageLoader;
+import it.unicam.cs.pg.modelDl4jTraining.TrainingPairLoader;
 
-import javax.imageio.ImageIO;
-import java.awt.*;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Applicazione GUI per il training di un modello DL4J per la rimozione di sfondo e rumore.
@@ -42,11 +49,30 @@ public class ModelTrainerDl4jGui extends Application {
     private static final String DATASET_DIR = PROJECT_ROOT + File.separator + "dl4j dataset";
     private static final String PATH_ORIGINALI = DATASET_DIR + File.separator + "originali";
     private static final String PATH_MASCHE = DATASET_DIR + File.separator + "maschere";
+    private static final String PATH_CACHE = DATASET_DIR + File.separator + "cache";
+    private static final int BATCH_SIZE = 1;
+    private static final long SEED = 123;
+    private static final double TEXT_BIAS = 0.7;
 
     private TextArea areaLog;
     private ProgressBar barraProgresso;
-    private MultiLayerNetwork modello;
+    private Model modello;
     private TextField txtEpochs;
+    private ComboBox<DenoiserVariant> cmbArchitettura;
+    private CheckBox chkPatch;
+    private TextField txtPatchSize;
+    private TextField txtPatchBatch;
+    private TextField txtPatchPerPagina;
+    private TextField txtPrefetchThread;
+    private TextField txtPrefetchCoda;
+    private CheckBox chkCache;
+    private CheckBox chkAugmentation;
+    private TextField txtRepliche;
+    private TextField txtFrequenzaMedia;
+    private TextField txtValidazione;
+    private TextField txtPazienza;
+    private TextField txtCheckpointOgni;
+    private CheckBox chkRiprendi;
 
     /**
      * Punto d'ingresso principale dell'applicazione.
@@ -95,33 +121,88 @@ public class ModelTrainerDl4jGui extends Application {
         HBox addestraHBox = new HBox(10, btnAddestraModello, lblAddestraModello);
         grid.add(addestraHBox, 0, 1, 2, 1);
 
-        // Riga 2: Campo per il numero di epoche
+        // Riga 2: Campo per il numero di epoche e scelta dell'architettura
         Label lblEpochs = new Label("Numero di Epoche:");
         txtEpochs = new TextField("50");
         txtEpochs.setPrefWidth(50);
-        HBox epochsHBox = new HBox(10, lblEpochs, txtEpochs);
+        cmbArchitettura = new ComboBox<>();
+        cmbArchitettura.getItems().addAll(DenoiserVariant.values());
+        cmbArchitettura.getSelectionModel().selectFirst();
+        cmbArchitettura.setPrefWidth(180);
+        HBox epochsHBox = new HBox(10, lblEpochs, txtEpochs, new Label("Architettura:"), cmbArchitettura);
         grid.add(epochsHBox, 0, 2, 2, 1);
 
-        // Riga 3: Pulsante "Salva Modello DL4J"
+        // Riga 3: Addestramento su patch casuali (dimensione, batch e patch per pagina)
+        chkPatch = new CheckBox("Addestra su patch");
+        txtPatchSize = new TextField("256");
+        txtPatchSize.setPrefWidth(50);
+        txtPatchBatch = new TextField("8");
+        txtPatchBatch.setPrefWidth(40);
+        txtPatchPerPagina = new TextField("32");
+        txtPatchPerPagina.setPrefWidth(40);
+        txtPatchSize.disableProperty().bind(chkPatch.selectedProperty().not());
+        txtPatchBatch.disableProperty().bind(chkPatch.selectedProperty().not());
+        txtPatchPerPagina.disableProperty().bind(chkPatch.selectedProperty().not());
+        HBox patchHBox = new HBox(10, chkPatch, new Label("Lato:"), txtPatchSize,
+                new Label("Batch:"), txtPatchBatch, new Label("Patch/pagina:"), txtPatchPerPagina);
+        grid.add(patchHBox, 0, 3, 2, 1);
+
+        // Riga 4: Prefetch dei batch (thread di caricamento, 0 = disattivato, e profondità della coda), cache tensori
+        // e data augmentation al volo
+        Label lblPrefetch = new Label("Thread prefetch:");
+        txtPrefetchThread = new TextField(String.valueOf(Math.max(1, Runtime.getRuntime().availableProcessors() / 2)));
+        txtPrefetchThread.setPrefWidth(40);
+        txtPrefetchCoda = new TextField("4");
+        txtPrefetchCoda.setPrefWidth(40);
+        chkCache = new CheckBox("Usa cache tensori");
+        chkCache.setSelected(true);
+        chkAugmentation = new CheckBox("Augmentation");
+        HBox prefetchHBox = new HBox(10, lblPrefetch, txtPrefetchThread, new Label("Batch in coda:"), txtPrefetchCoda,
+                chkCache, chkAugmentation);
+        grid.add(prefetchHBox, 0, 4, 2, 1);
+
+        // Riga 5: Addestramento data-parallel (repliche del modello, 1 = replica singola, e frequenza della media)
+        Label lblRepliche = new Label("Repliche parallele:");
+        txtRepliche = new TextField("1");
+        txtRepliche.setPrefWidth(40);
+        txtFrequenzaMedia = new TextField("5");
+        txtFrequenzaMedia.setPrefWidth(40);
+        HBox parallelHBox = new HBox(10, lblRepliche, txtRepliche, new Label("Media ogni (iterazioni):"), txtFrequenzaMedia);
+        grid.add(parallelHBox, 0, 5, 2, 1);
+
+        // Riga 6: Validazione, early stopping, checkpoint e ripresa
+        txtValidazione = new TextField("20");
+        txtValidazione.setPrefWidth(40);
+        txtPazienza = new TextField("5");
+        txtPazienza.setPrefWidth(40);
+        txtCheckpointOgni = new TextField("50");
+        txtCheckpointOgni.setPrefWidth(50);
+        chkRiprendi = new CheckBox("Riprendi dall'ultimo checkpoint");
+        HBox checkpointHBox = new HBox(10, new Label("Validazione (%):"), txtValidazione,
+                new Label("Pazienza (epoche):"), txtPazienza, new Label("Checkpoint ogni (batch):"), txtCheckpointOgni);
+        grid.add(checkpointHBox, 0, 6, 2, 1);
+        grid.add(chkRiprendi, 0, 7, 2, 1);
+
+        // Riga 8: Pulsante "Salva Modello DL4J"
         Button btnSalvaModello = new Button("Salva Modello DL4J");
         btnSalvaModello.setPrefWidth(150);
         btnSalvaModello.setOnAction(e -> salvaModello());
-        grid.add(btnSalvaModello, 0, 3, 2, 1);
+        grid.add(btnSalvaModello, 0, 8, 2, 1);
 
-        // Riga 4: Area di log
+        // Riga 9: Area di log
         areaLog = new TextArea();
         areaLog.setEditable(false);
         areaLog.setWrapText(true);
         areaLog.setPrefHeight(150);
-        grid.add(areaLog, 0, 4, 2, 1);
+        grid.add(areaLog, 0, 9, 2, 1);
 
-        // Riga 5: Barra di progresso
+        // Riga 10: Barra di progresso
         barraProgresso = new ProgressBar(0);
         barraProgresso.setVisible(false);
-        grid.add(barraProgresso, 0, 5, 2, 1);
+        grid.add(barraProgresso, 0, 10, 2, 1);
 
         // Imposta la scena e mostra la finestra
-        Scene scene = new Scene(grid, 600, 600);
+        Scene scene = new Scene(grid, 720, 700);
         stagePrincipale.setScene(scene);
         stagePrincipale.setResizable(false);
         stagePrincipale.show();
@@ -232,25 +313,17 @@ public class ModelTrainerDl4jGui extends Application {
      */
     public void addestraModello() {
         barraProgresso.setVisible(true);
-        barraProgresso.setProgress(0.1);
+        barraProgresso.setProgress(0);
         Task<Void> task = new Task<>() {
             @Override
-            protected Void call() {
+            protected Void call() throws IOException {
                 areaLog.appendText("[INFO] Inizio addestramento modello...\n");
-                modello = ModelArchitecture.createModel();
-                List<DataSet> trainingData = loadTrainingDataFromFolders();
-                if (trainingData.isEmpty()) {
+                DenoiserTrainer trainer = createTrainer();
+                if (trainer == null) {
                     areaLog.appendText("[ERRORE] Nessuna coppia valida per l'addestramento.\n");
                     return null;
                 }
-                int numEpochs;
-                try {
-                    numEpochs = Integer.parseInt(txtEpochs.getText());
-                } catch (NumberFormatException ex) {
-                    areaLog.appendText("[ERRORE] Numero di epoche non valido, uso valore di default 50.\n");
-                    numEpochs = 50;
-                }
-                trainModel(modello, trainingData, numEpochs);
+                modello = trainer.train(chkRiprendi.isSelected());
                 areaLog.appendText("[INFO] Addestramento completato.\n");
                 barraProgresso.setProgress(1.0);
                 return null;
@@ -259,98 +332,142 @@ public class ModelTrainerDl4jGui extends Application {
         task.setOnSucceeded(e -> barraProgresso.setVisible(false));
         task.setOnFailed(e -> {
             barraProgresso.setVisible(false);
-            areaLog.appendText("[ERRORE] Addestramento fallito.\n");
+            areaLog.appendText("[ERRORE] Addestramento fallito: " + task.getException().getMessage() + "\n");
         });
         new Thread(task).start();
     }
 
     /**
-     * Carica i dati di training dalle cartelle specificate.
+     * Prepara l'addestramento: suddivide le coppie in training e validazione, crea gli iteratori e configura
+     * checkpoint, early stopping e addestramento data-parallel con i parametri impostati nella GUI.
+     * Se la modalità patch è attiva, le pagine vengono ritagliate in patch casuali raggruppate in mini-batch.
+     * Se la cache tensori è attiva, le coppie vengono lette dagli shard binari invece che dai PNG.
+     * Se il prefetch è attivo, i batch successivi vengono caricati in anticipo su un pool di thread.
      *
-     * @return una lista di oggetti DataSet contenenti input e label per il training
+     * @return il ciclo di addestramento, oppure null se non esistono coppie valide
      */
-    private List<DataSet> loadTrainingDataFromFolders() {
-        List<DataSet> datasets = new ArrayList<>();
-        ImagePreProcessingScaler scaler = new ImagePreProcessingScaler(0, 1);
-        File cartellaOriginali = new File(PATH_ORIGINALI);
-        File cartellaMaschere = new File(PATH_MASCHE);
-        File[] filesOriginali = cartellaOriginali.listFiles((dir, name) -> name.toLowerCase().endsWith(".png"));
-        File[] filesMaschere = cartellaMaschere.listFiles((dir, name) -> name.toLowerCase().endsWith(".png"));
-
-        if (filesOriginali == null || filesMaschere == null) {
-            areaLog.appendText("[ERRORE] Una delle cartelle non contiene immagini PNG.\n");
-            return datasets;
+    private DenoiserTrainer createTrainer() {
+        List<DatasetPair> coppie = DatasetPair.discover(new File(PATH_ORIGINALI), new File(PATH_MASCHE), this::log);
+        if (coppie.isEmpty()) {
+            return null;
         }
-
-        for (File originalFile : filesOriginali) {
-            String nomeFile = originalFile.getName();
-            File maskFile = new File(PATH_MASCHE, nomeFile);
-            if (!maskFile.exists()) {
-                areaLog.appendText("[ERRORE] Maschera non trovata per: " + nomeFile + "\n");
-                continue;
-            }
+        areaLog.appendText("[INFO] Trovate " + coppie.size() + " coppie per l'addestramento.\n");
+        TrainingPairLoader loader = TrainingImageLoader::loadPair;
+        if (chkCache.isSelected()) {
             try {
-                INDArray input = loadImageWithImageIO(originalFile, 3);
-                scaler.transform(input);
-                INDArray label = loadImageWithImageIO(maskFile, 1);
-                scaler.transform(label);
-                datasets.add(new DataSet(input, label));
-                areaLog.appendText("[INFO] Coppia caricata: " + nomeFile + "\n");
-            } catch (Exception ex) {
-                areaLog.appendText("[ERRORE] Problema caricamento coppia " + nomeFile + ": "
-                        + ex.getMessage() + "\n");
+                loader = TensorCache.build(coppie, new File(PATH_CACHE), this::log);
+            } catch (IOException ex) {
+                areaLog.appendText("[ERRORE] Cache tensori non disponibile, uso i PNG: " + ex.getMessage() + "\n");
             }
         }
-        return datasets;
+        DatasetPair.Split split = DatasetPair.split(coppie,
+                leggiIntero(txtValidazione, 20, "percentuale di validazione", 0) / 100.0, SEED);
+        areaLog.appendText("[INFO] Coppie di training: " + split.training().size()
+                + ", coppie di validazione: " + split.validation().size() + ".\n");
+
+        BatchSource sorgente = chkPatch.isSelected() ? createPatchIterator(split.training(), loader, SEED, this::log)
+                : new DenoiserDataSetIterator(split.training(), BATCH_SIZE, true, SEED, loader, this::log);
+        if (chkAugmentation.isSelected()) {
+            // Solo i batch di training vengono aumentati: la validazione resta sui dati originali
+            sorgente = new AugmentingBatchSource(sorgente, AugmentingBatchSource.Config.standard(), SEED, this::log);
+            areaLog.appendText("[INFO] Data augmentation attiva sui batch di training.\n");
+        }
+        BatchSource validazione = null;
+        if (!split.validation().isEmpty()) {
+            validazione = chkPatch.isSelected() ? createPatchIterator(split.validation(), loader, SEED + 1, null)
+                    : new DenoiserDataSetIterator(split.validation(), BATCH_SIZE, false, SEED, loader, null);
+        }
+
+        int thread = leggiIntero(txtPrefetchThread, 0, "thread prefetch", 0);
+        int coda = leggiIntero(txtPrefetchCoda, 4, "batch in coda");
+        areaLog.appendText(thread == 0 ? "[INFO] Prefetch disattivato.\n"
+                : "[INFO] Prefetch attivo: " + thread + " thread, " + coda + " batch in coda.\n");
+        PrefetchDataSetIterator training = new PrefetchDataSetIterator(sorgente, thread, coda);
+
+        DenoiserTrainer.Config config = new DenoiserTrainer.Config(
+                leggiIntero(txtEpochs, 50, "numero di epoche"),
+                leggiIntero(txtCheckpointOgni, 50, "batch tra i checkpoint"),
+                leggiIntero(txtPazienza, 5, "pazienza"),
+                leggiIntero(txtRepliche, 1, "repliche parallele"),
+                leggiIntero(txtFrequenzaMedia, 5, "frequenza della media"),
+                coda, SEED, cmbArchitettura.getValue(), ModelArchitecture.DEFAULT_LEARNING_RATE);
+        return new DenoiserTrainer(training, split.training(), validazione,
+                new File(PROJECT_ROOT + File.separator + "dl4j model"), config, this::log,
+                progresso -> Platform.runLater(() -> barraProgresso.setProgress(progresso)));
     }
 
     /**
-     * Addestra il modello utilizzando i dati di training forniti.
+     * Crea l'iteratore a patch casuali con i parametri impostati nella GUI.
      *
-     * @param model         il modello da addestrare
-     * @param trainingData  i dati di training
-     * @param epochs        il numero di epoche per l'addestramento
+     * @param coppie coppie originale/maschera da cui estrarre le patch
+     * @param loader strategia di caricamento delle coppie
+     * @param seed   seed del campionamento
+     * @param logger destinazione dei messaggi dell'iteratore (null per l'insieme di validazione)
+     * @return l'iteratore a patch
      */
-    private void trainModel(MultiLayerNetwork model, List<DataSet> trainingData, int epochs) {
-        int batchSize = 1;
-        ListDataSetIterator trainIter =
-                new org.deeplearning4j.datasets.iterator.impl.ListDataSetIterator<>(trainingData, batchSize);
-        model.fit(trainIter, epochs);
+    private RandomPatchDataSetIterator createPatchIterator(List<DatasetPair> coppie, TrainingPairLoader loader,
+                                                           long seed, Consumer<String> logger) {
+        int patchSize = leggiIntero(txtPatchSize, 256, "dimensione patch");
+        // L'output ha la stessa dimensione dell'input solo se la patch è multipla del sottocampionamento della rete
+        int multiplo = cmbArchitettura.getValue().getDownsampling();
+        if (patchSize % multiplo != 0) {
+            patchSize = Math.max(multiplo, patchSize - patchSize % multiplo);
+            if (logger != null) {
+                areaLog.appendText("[INFO] Dimensione patch arrotondata a " + patchSize + " (multipla di " + multiplo
+                        + " per l'architettura selezionata).\n");
+            }
+        }
+        int patchBatch = leggiIntero(txtPatchBatch, 8, "batch di patch");
+        int patchPerPagina = leggiIntero(txtPatchPerPagina, 32, "patch per pagina");
+        if (logger != null) {
+            areaLog.appendText("[INFO] Addestramento su patch " + patchSize + "x" + patchSize + ", batch " + patchBatch
+                    + ", " + patchPerPagina + " patch per pagina.\n");
+        }
+        return new RandomPatchDataSetIterator(coppie, patchSize, patchBatch, patchPerPagina, TEXT_BIAS, seed, loader, logger);
     }
 
     /**
-     * Carica un'immagine utilizzando ImageIO e applica un padding bianco per uniformare le dimensioni.
+     * Legge un intero positivo da un campo di testo, usando il valore di default se non valido.
      *
-     * @param file      il file immagine da caricare
-     * @param channels  il numero di canali dell'immagine (es. 3 per RGB)
-     * @return un array INDArray contenente i dati dell'immagine
-     * @throws IOException se si verifica un errore durante il caricamento dell'immagine
+     * @param campo    campo da leggere
+     * @param standard valore di default
+     * @param nome     nome del parametro, per il messaggio di log
+     * @return il valore letto o quello di default
      */
-    private INDArray loadImageWithImageIO(File file, int channels) throws IOException {
-        BufferedImage bf = ImageIO.read(file);
-        if (bf == null) {
-            throw new IOException("ImageIO non riconosce il file: " + file.getName());
+    private int leggiIntero(TextField campo, int standard, String nome) {
+        return leggiIntero(campo, standard, nome, 1);
+    }
+
+    /**
+     * Legge un intero non inferiore al minimo indicato, usando il valore di default se non valido.
+     *
+     * @param campo    campo da leggere
+     * @param standard valore di default
+     * @param nome     nome del parametro, per il messaggio di log
+     * @param minimo   valore minimo accettato
+     * @return il valore letto o quello di default
+     */
+    private int leggiIntero(TextField campo, int standard, String nome, int minimo) {
+        try {
+            int valore = Integer.parseInt(campo.getText().trim());
+            if (valore >= minimo) {
+                return valore;
+            }
+        } catch (NumberFormatException ignored) {
+            // gestito sotto con il valore di default
         }
-        bf.getWidth();
-        bf.getHeight();
-
-        BufferedImage paddedImage = new BufferedImage(1200, 1700, BufferedImage.TYPE_3BYTE_BGR);
-        Graphics2D g2d = paddedImage.createGraphics();
-        g2d.setColor(Color.WHITE);
-        g2d.fillRect(0, 0, 1200, 1700);
-
-        int x = 0;
-        int y = 0;
-        g2d.drawImage(bf, x, y, null);
-        g2d.dispose();
-
-        java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-        String formatName = "png";
-        ImageIO.write(paddedImage, formatName, baos);
-        baos.flush();
-        java.io.ByteArrayInputStream bais = new java.io.ByteArrayInputStream(baos.toByteArray());
-        NativeImageLoader loader = new NativeImageLoader(1700, 1200, channels);
-        return loader.asMatrix(bais);
+        areaLog.appendText("[ERRORE] Valore non valido per " + nome + ", uso valore di default " + standard + ".\n");
+        return standard;
+    }
+
+    /**
+     * Aggiunge un messaggio all'area di log. Può essere invocato da qualsiasi thread
+     * (anche dai worker del prefetch): l'aggiornamento avviene sul thread JavaFX.
+     *
+     * @param messaggio messaggio da registrare
+     */
+    private void log(String messaggio) {
+        Platform.runLater(() -> areaLog.appendText(messaggio + "\n"));
     }
 
     /**
@@ -368,7 +485,7 @@ public class ModelTrainerDl4jGui extends Application {
         }
         File fileDestinazione = new File(dir, "modelloAddestrato.zip");
         try {
-            modello.save(fileDestinazione);
+            ModelSerializer.writeModel(modello, fileDestinazione, true);
             areaLog.appendText("[SUCCESSO] Modello salvato in: " + fileDestinazione.getAbsolutePath() + "\n");
         } catch (Exception ex) {
             areaLog.appendText("[ERRORE] Salvataggio modello fallito: " + ex.getMessage() + "\n");
@@ -1,6 +1,12 @@
 package it.unicam.cs.pg.gui;
 
+import it.unicam.cs.pg.modelDl4jTraining.ModelArchitecture;
+import it.unicam.cs.pg.modelDl4jTraining.PrecisionMode;
+import it.unicam.cs.pg.modelDl4jTraining.ReducedPrecisionConverter;
+import it.unicam.cs.pg.preprocessing.DenoiserBackend;
 import it.unicam.cs.pg.preprocessing.ImageProcessingTask;
+import it.unicam.cs.pg.preprocessing.Nd4jDenoiserBackend;
+import it.unicam.cs.pg.preprocessing.OnnxDenoiserBackend;
 import it.unicam.cs.pg.processing.ImageUtils;
 import javafx.application.Application;
 import javafx.geometry.Insets;
@@ -11,13 +17,14 @@ import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.TextArea;
+import javafx.scene.control.TextField;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
-import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.api.Model;
 import org.opencv.core.Mat;
 
 import java.io.File;
@@ -33,9 +40,19 @@ public class PreprocessingDl4jGui extends Application {
 
     private TextArea areaLog;
     private ComboBox<String> processingTypeComboBox;
+    private ComboBox<PrecisionMode> precisionComboBox;
+    private TextField txtOnnxThreads;
     private FileChooser fileChooser;
+    private Button btnCaricaModello;
+    private Button btnElaboraImmagine;
+    private ImageProcessingTask taskInCorso;
 
-    private MultiLayerNetwork modello;
+    private Model modello;
+    private Model modelloConvertito;
+    private PrecisionMode precisioneModelloConvertito;
+    private OnnxDenoiserBackend onnxBackend;
+    private Nd4jDenoiserBackend nd4jBackend;
+    private Model modelloBackend;
     private Mat originalImage;
 
 
@@ -60,9 +77,9 @@ public class PreprocessingDl4jGui extends Application {
         btnCaricaImmagine.setAlignment(Pos.CENTER_LEFT);
 
         // Pulsante per caricare il modello DL4J e label descrittiva
-        Button btnCaricaModello = new Button("Carica Modello DL4J");
+        btnCaricaModello = new Button("Carica Modello DL4J");
         btnCaricaModello.setPrefWidth(150);
-        Label lblModelInfo = new Label("CNN pre-addestrata per correggere le immagini.");
+        Label lblModelInfo = new Label("CNN pre-addestrata per correggere le immagini (.zip DL4J o .onnx).");
         lblModelInfo.setWrapText(true);
         lblModelInfo.setMaxWidth(400);
         HBox modelHBox = new HBox(10, btnCaricaModello, lblModelInfo);
@@ -77,8 +94,24 @@ public class PreprocessingDl4jGui extends Application {
         lblPreprocessingInfo.setMaxWidth(400);
         HBox preprocessingHBox = new HBox(10, processingTypeComboBox, lblPreprocessingInfo);
 
+        // ComboBox per selezionare la precisione numerica dell'inferenza e label descrittiva
+        precisionComboBox = new ComboBox<>();
+        precisionComboBox.getItems().addAll(PrecisionMode.values());
+        precisionComboBox.getSelectionModel().selectFirst();
+        precisionComboBox.setPrefWidth(150);
+        Label lblPrecisionInfo = new Label("Precisione dell'inferenza CNN: FP16 dimezza la memoria, INT8 limita i pesi a 8 bit.");
+        lblPrecisionInfo.setWrapText(true);
+        lblPrecisionInfo.setMaxWidth(400);
+        HBox precisionHBox = new HBox(10, precisionComboBox, lblPrecisionInfo);
+
+        // Campo per il numero di thread intra-op del backend ONNX Runtime
+        Label lblOnnxThreads = new Label("Thread ONNX Runtime (0 = automatico):");
+        txtOnnxThreads = new TextField(String.valueOf(Runtime.getRuntime().availableProcessors()));
+        txtOnnxThreads.setPrefWidth(50);
+        HBox onnxHBox = new HBox(10, lblOnnxThreads, txtOnnxThreads);
+
         // Pulsante per elaborare l'immagine
-        Button btnElaboraImmagine = new Button("Elabora Immagine");
+        btnElaboraImmagine = new Button("Elabora Immagine");
         btnElaboraImmagine.setPrefWidth(150);
 
         // Area per il log
@@ -101,9 +134,11 @@ public class PreprocessingDl4jGui extends Application {
         grid.add(btnCaricaImmagine, 0, 0, 2, 1);
         grid.add(modelHBox, 0, 1, 2, 1);
         grid.add(preprocessingHBox, 0, 2, 2, 1);
-        grid.add(btnElaboraImmagine, 0, 3, 2, 1);
-        grid.add(areaLog, 0, 4, 2, 1);
-        grid.add(btnClearOutput, 0, 5, 2, 1);
+        grid.add(precisionHBox, 0, 3, 2, 1);
+        grid.add(onnxHBox, 0, 4, 2, 1);
+        grid.add(btnElaboraImmagine, 0, 5, 2, 1);
+        grid.add(areaLog, 0, 6, 2, 1);
+        grid.add(btnClearOutput, 0, 7, 2, 1);
 
         // Imposta gli handler per i pulsanti
         btnCaricaModello.setOnAction(e -> caricaModello(primaryStage));
@@ -122,8 +157,12 @@ public class PreprocessingDl4jGui extends Application {
      * Se l'elaborazione va a buon fine, apre una nuova finestra con l'immagine elaborata.
      */
     private void elaboraImmagine() {
+        if (taskInCorso != null) {
+            areaLog.appendText("Elaborazione già in corso.\n");
+            return;
+        }
         String selectedFilter = processingTypeComboBox.getSelectionModel().getSelectedItem();
-        if (modello == null && "Nessuno".equals(selectedFilter)) {
+        if (modello == null && onnxBackend == null && "Nessuno".equals(selectedFilter)) {
             areaLog.appendText("Caricare un modello oppure selezionare un filtro.\n");
             return;
         }
@@ -132,9 +171,17 @@ public class PreprocessingDl4jGui extends Application {
             return;
         }
 
-        ImageProcessingTask task = new ImageProcessingTask(modello, originalImage, selectedFilter);
+        DenoiserBackend backend = backendSelezionato();
+        ImageProcessingTask task = new ImageProcessingTask(backend, originalImage, selectedFilter);
+        // Finché il task usa il backend, il modello non può essere sostituito: chiudere il backend durante
+        // l'inferenza libererebbe la sessione ONNX o il workspace ND4J mentre sono in uso
+        impostaElaborazioneInCorso(task);
         task.setOnSucceeded(e -> {
+            impostaElaborazioneInCorso(null);
             String outputPathFinal = task.getValue();
+            if (backend instanceof Nd4jDenoiserBackend nd4j) {
+                areaLog.appendText("Memoria ND4J: " + nd4j.getWorkspaceStats() + "\n");
+            }
             areaLog.appendText("Elaborazione completata. Apro l'immagine elaborata...\n");
             Stage stage = new Stage();
             stage.setTitle("Immagine Elaborata");
@@ -144,24 +191,109 @@ public class PreprocessingDl4jGui extends Application {
             stage.setScene(scene);
             stage.show();
         });
-        task.setOnFailed(e -> areaLog.appendText("Errore durante l'elaborazione: " + task.getException().getMessage() + "\n"));
+        task.setOnFailed(e -> {
+            impostaElaborazioneInCorso(null);
+            areaLog.appendText("Errore durante l'elaborazione: " + task.getException().getMessage() + "\n");
+        });
         new Thread(task).start();
     }
 
+    /**
+     * Registra il task di elaborazione in corso e disabilita caricamento del modello ed elaborazione finché
+     * non termina.
+     *
+     * @param task il task avviato, oppure null quando l'elaborazione è terminata
+     */
+    private void impostaElaborazioneInCorso(ImageProcessingTask task) {
+        taskInCorso = task;
+        btnCaricaModello.setDisable(task != null);
+        btnElaboraImmagine.setDisable(task != null);
+    }
+
+    /**
+     * Restituisce il backend di inferenza da usare: ONNX Runtime se è stato caricato un modello .onnx,
+     * altrimenti ND4J con il modello DL4J nella precisione selezionata.
+     *
+     * @return il backend di inferenza, oppure null se nessun modello è caricato
+     */
+    private DenoiserBackend backendSelezionato() {
+        if (onnxBackend != null) {
+            return onnxBackend;
+        }
+        Model modelloInferenza = modelloPerPrecisione();
+        if (modelloInferenza == null) {
+            return null;
+        }
+        // Il backend viene riutilizzato finché il modello non cambia, così da riusare i workspace ND4J
+        if (nd4jBackend == null || modelloBackend != modelloInferenza) {
+            chiudiBackendNd4j();
+            nd4jBackend = new Nd4jDenoiserBackend(modelloInferenza);
+            modelloBackend = modelloInferenza;
+        }
+        return nd4jBackend;
+    }
+
+    /**
+     * Chiude il backend ND4J corrente, liberandone il workspace di inferenza.
+     */
+    private void chiudiBackendNd4j() {
+        if (nd4jBackend != null) {
+            nd4jBackend.close();
+            nd4jBackend = null;
+            modelloBackend = null;
+        }
+    }
+
+    /**
+     * Restituisce il modello convertito nella precisione selezionata, riutilizzando la conversione precedente
+     * se la precisione non è cambiata.
+     *
+     * @return il modello da usare per l'inferenza, oppure null se nessun modello è caricato
+     */
+    private Model modelloPerPrecisione() {
+        PrecisionMode mode = precisionComboBox.getSelectionModel().getSelectedItem();
+        if (modello == null || mode == null || mode == PrecisionMode.FP32) {
+            return modello;
+        }
+        if (modelloConvertito == null || precisioneModelloConvertito != mode) {
+            modelloConvertito = ReducedPrecisionConverter.convert(modello, mode);
+            precisioneModelloConvertito = mode;
+            areaLog.appendText("Modello convertito in precisione " + mode + ".\n");
+        }
+        return modelloConvertito;
+    }
+
     /**
      * Apre un dialogo per caricare un modello DL4J.
      *
      * @param stage il riferimento al palco principale per il dialogo
      */
     private void caricaModello(Stage stage) {
+        if (taskInCorso != null) {
+            areaLog.appendText("Attendere la fine dell'elaborazione prima di caricare un altro modello.\n");
+            return;
+        }
         fileChooser.setInitialDirectory(new File(PROJECT_ROOT));
         fileChooser.setTitle("Seleziona Modello DL4J");
         fileChooser.getExtensionFilters().clear();
-        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Modelli DL4J", "*.zip"));
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Modelli DL4J o ONNX", "*.zip", "*.onnx"));
         File modelFile = fileChooser.showOpenDialog(stage);
         if (modelFile != null) {
             try {
-                modello = MultiLayerNetwork.load(modelFile, true);
+                if (onnxBackend != null) {
+                    onnxBackend.close();
+                    onnxBackend = null;
+                }
+                chiudiBackendNd4j();
+                modello = null;
+                modelloConvertito = null;
+                if (modelFile.getName().toLowerCase().endsWith(".onnx")) {
+                    onnxBackend = new OnnxDenoiserBackend(modelFile, leggiThreadOnnx());
+                    areaLog.appendText("Modello ONNX caricato: " + modelFile.getName()
+                            + " [" + onnxBackend.getName() + "]\n");
+                    return;
+                }
+                modello = ModelArchitecture.load(modelFile, true);
                 areaLog.appendText("Modello caricato: " + modelFile.getName() + "\n");
             } catch (Exception ex) {
                 areaLog.appendText("Errore nel caricamento del modello: " + ex.getMessage() + "\n");
@@ -169,6 +301,20 @@ public class PreprocessingDl4jGui extends Application {
         }
     }
 
+    /**
+     * Legge il numero di thread intra-op per ONNX Runtime dal campo di testo.
+     *
+     * @return il numero di thread richiesto, 0 (scelta automatica) se il valore non è valido
+     */
+    private int leggiThreadOnnx() {
+        try {
+            return Math.max(0, Integer.parseInt(txtOnnxThreads.getText().trim()));
+        } catch (NumberFormatException ex) {
+            areaLog.appendText("Numero di thread non valido, uso la scelta automatica di ONNX Runtime.\n");
+            return 0;
+        }
+    }
+
     /**
      * Apre un dialogo per caricare un'immagine.
      *
@@ -1,5 +1,13 @@
 package it.unicam.cs.pg.gui;
 
+import it.unicam.cs.pg.postprocessing.CandidateIndex;
+import it.unicam.cs.pg.postprocessing.CandidateSearch;
+import it.unicam.cs.pg.postprocessing.ConfusionWeightedIndex;
+import it.unicam.cs.pg.postprocessing.CorrectionCache;
+import it.unicam.cs.pg.postprocessing.EmbeddingMatrix;
+import it.unicam.cs.pg.postprocessing.HnswIndex;
+import it.unicam.cs.pg.postprocessing.NgramLanguageModel;
+import it.unicam.cs.pg.postprocessing.OcrConfusionModel;
 import it.unicam.cs.pg.postprocessing.TextCorrector;
 import javafx.application.Application;
 import javafx.concurrent.Task;
@@ -15,6 +23,7 @@ import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
 
 import java.io.*;
 import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Classe principale per l'applicazione di correzione lessicale avanzata.
@@ -24,6 +33,8 @@ public class TextCorrectionGui extends Application {
     private String selectedFilePath;
     private WordVectors wordVectors;
     private final int MAX_EDIT_DISTANCE = 2;
+    private final int CORRECTION_CACHE_SIZE = 100000;
+    private final float CONFUSION_MAX_COST = 1f;
     private static final String PROJECT_ROOT = System.getProperty("user.dir"); // Ottieni la root del progetto
     private TextCorrector textCorrector;
 
@@ -55,8 +66,19 @@ public class TextCorrectionGui extends Application {
         caricaModelloButton.setMaxWidth(150);
         Label modelloLabel = new Label("Scegli un modello Word2Vec (.vec), un file che contiene rappresentazioni vettoriali delle parole, utili per analizzare relazioni semantiche.");
         modelloLabel.setWrapText(true);
-        modelloLabel.setMaxWidth(400);
-        HBox row0 = new HBox(10, caricaModelloButton, modelloLabel);
+        modelloLabel.setMaxWidth(250);
+        // Struttura di ricerca dei candidati, costruita al caricamento del modello
+        ComboBox<CandidateSearch> ricercaCombo = new ComboBox<>();
+        ricercaCombo.getItems().addAll(CandidateSearch.values());
+        ricercaCombo.setValue(CandidateSearch.SYMSPELL);
+        ricercaCombo.setPrefWidth(150);
+        // I vicini semantici vengono cercati solo per parole fuori vocabolario, che di norma non hanno un vettore:
+        // l'indice HNSW aiuta di rado e la sua prima costruzione richiede minuti sui modelli grandi, per cui
+        // viene usato solo se richiesto
+        CheckBox hnswCheck = new CheckBox("Indice HNSW");
+        hnswCheck.setTooltip(new Tooltip("Cerca i vicini semantici con un indice HNSW, costruito e salvato "
+                + "accanto al modello al primo caricamento."));
+        HBox row0 = new HBox(10, caricaModelloButton, ricercaCombo, hnswCheck, modelloLabel);
         grid.add(row0, 0, 0, 2, 1);
         // RIGA 1: HBox per "Carica File"
         Button caricaFileButton = new Button("Carica File");
@@ -107,6 +129,8 @@ public class TextCorrectionGui extends Application {
             if (selectedFile != null) {
                 selectedModelPath = selectedFile.getAbsolutePath();
                 modelloLabel.setText(selectedModelPath);
+                CandidateSearch ricerca = ricercaCombo.getValue();
+                boolean usaHnsw = hnswCheck.isSelected();
                 Task<Void> loadModelTask = new Task<>() {
                     @Override
                     protected Void call() throws Exception {
@@ -121,7 +145,31 @@ public class TextCorrectionGui extends Application {
                         if (wordVectors == null) {
                             throw new Exception("Modello non caricato correttamente.");
                         }
-                        textCorrector = new TextCorrector(wordVectors, MAX_EDIT_DISTANCE);
+                        EmbeddingMatrix vettori = new EmbeddingMatrix(wordVectors);
+                        HnswIndex vicini = usaHnsw ? HnswIndex.loadOrBuild(vettori,
+                                new File(selectedModelPath + ".hnsw"), System.out::println) : null;
+                        CandidateIndex indice = ricerca.create(wordVectors, MAX_EDIT_DISTANCE);
+                        long impronta = vettori.fingerprint();
+                        // Confusioni OCR apprese con OcrConfusionTrainer, se presenti nella root del progetto
+                        File fileConfusioni = new File(PROJECT_ROOT, "confusioni_ocr.tsv");
+                        if (fileConfusioni.exists()) {
+                            OcrConfusionModel confusioni = OcrConfusionModel.load(fileConfusioni);
+                            indice = new ConfusionWeightedIndex(indice, confusioni, CONFUSION_MAX_COST);
+                            impronta ^= confusioni.fingerprint();
+                            System.out.println("[INFO] " + confusioni.confusions().size() + " confusioni OCR caricate.");
+                        }
+                        textCorrector = new TextCorrector(wordVectors, MAX_EDIT_DISTANCE, indice, vettori, vicini);
+                        // Modello linguistico costruito con NgramModelTrainer, se presente nella root del progetto
+                        File fileModelloLinguistico = new File(PROJECT_ROOT, "modello_ngram.lm");
+                        if (fileModelloLinguistico.exists()) {
+                            NgramLanguageModel modelloLinguistico = NgramLanguageModel.load(fileModelloLinguistico);
+                            textCorrector.setLanguageModel(modelloLinguistico);
+                            impronta ^= modelloLinguistico.fingerprint();
+                            System.out.println("[INFO] Modello linguistico di " + modelloLinguistico.words()
+                                    + " parole caricato.");
+                        }
+                        textCorrector.setCorrectionCache(CorrectionCache.loadOrCreate(correctionCacheFile(),
+                                CORRECTION_CACHE_SIZE, impronta, MAX_EDIT_DISTANCE, System.out::println));
                         return null;
                     }
                 };
@@ -166,9 +214,10 @@ public class TextCorrectionGui extends Application {
                 return;
             }
             try {
-                String correctedText = textCorrector.advancedCorrectText(text);
+                String correctedText = textCorrector.advancedCorrectText(text, ForkJoinPool.commonPool());
                 textArea.setText(correctedText);
                 salvaFileButton.setDisable(false);
+                saveCorrectionCache();
             } catch (Exception ex) {
                 handleError(ex, "Errore durante la correzione del testo");
             }
@@ -195,6 +244,31 @@ public class TextCorrectionGui extends Application {
         primaryStage.show();
     }
 
+    /**
+     * Restituisce il file in cui la cache delle correzioni viene salvata accanto al modello.
+     *
+     * @return il file della cache
+     */
+    private File correctionCacheFile() {
+        return new File(selectedModelPath + ".correzioni");
+    }
+
+    /**
+     * Stampa le statistiche della cache delle correzioni e la salva per le sessioni successive.
+     */
+    private void saveCorrectionCache() {
+        CorrectionCache cache = textCorrector.getCorrectionCache();
+        if (cache == null) {
+            return;
+        }
+        System.out.println("[INFO] Cache delle correzioni: " + cache.stats());
+        try {
+            cache.save(correctionCacheFile());
+        } catch (IOException ex) {
+            System.out.println("[ERRORE] Salvataggio della cache delle correzioni fallito: " + ex.getMessage());
+        }
+    }
+
     /**
      * Gestisce gli errori mostrando un alert di errore.
      *
@@ -0,0 +1,147 @@
+package it.unicam.cs.pg.modelDl4jTraining;
+
+import org.bytedeco.javacpp.Pointer;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.conf.CacheMode;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.memory.MemoryUseMode;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Strumento a riga di comando che confronta le varianti di architettura della rete di denoising.
+ * <p>
+ * Ogni variante viene addestrata con lo stesso budget (epoche di patch casuali sulle coppie di training) e
+ * valutata sulle pagine intere dell'insieme di validazione: tempo di inferenza per pagina, numero di parametri,
+ * memoria delle attivazioni stimata da DL4J, picco di memoria fisica del processo e IoU dei pixel di testo
+ * rispetto alla maschera di riferimento. Così è possibile scegliere esplicitamente tra qualità e velocità.
+ * </p>
+ * Uso: {@code ArchitectureBenchmark [varianti,...|tutte] [epoche] [lato patch] [ripetizioni]}
+ */
+public class ArchitectureBenchmark {
+
+    private static final String PROJECT_ROOT = System.getProperty("user.dir");
+    private static final long SEED = 123;
+    private static final double FRAZIONE_VALIDAZIONE = 0.2;
+    private static final int BATCH_PATCH = 4;
+    private static final int PATCH_PER_PAGINA = 16;
+    private static final double TEXT_BIAS = 0.7;
+    private static final double SOGLIA_MASCHERA = 0.5;
+    private static final double MB = 1024.0 * 1024.0;
+
+    /**
+     * Risultati di una variante.
+     */
+    private record Risultato(DenoiserVariant variante, long parametri, double secondiTraining, double msPerPagina,
+                             double attivazioniMb, double piccoRssMb, double iou) {
+    }
+
+    /**
+     * Punto d'ingresso del benchmark.
+     *
+     * @param args elenco di varianti, epoche di addestramento, lato patch e ripetizioni (tutti opzionali)
+     * @throws IOException se le pagine di validazione non possono essere lette
+     */
+    public static void main(String[] args) throws IOException {
+        List<DenoiserVariant> varianti = args.length > 0 && !args[0].equalsIgnoreCase("tutte")
+                ? Arrays.stream(args[0].split(",")).map(v -> DenoiserVariant.valueOf(v.trim().toUpperCase())).toList()
+                : List.of(DenoiserVariant.values());
+        int epoche = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int latoPatch = args.length > 2 ? Integer.parseInt(args[2]) : 128;
+        int ripetizioni = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+        File datasetDir = new File(PROJECT_ROOT + File.separator + "dl4j dataset");
+        List<DatasetPair> coppie = DatasetPair.discover(new File(datasetDir, "originali"),
+                new File(datasetDir, "maschere"), System.out::println);
+        if (coppie.isEmpty()) {
+            System.out.println("[ERRORE] Nessuna coppia trovata in " + datasetDir.getAbsolutePath());
+            return;
+        }
+        DatasetPair.Split split = DatasetPair.split(coppie, FRAZIONE_VALIDAZIONE, SEED);
+        List<DatasetPair> valutazione = split.validation();
+        if (valutazione.isEmpty()) {
+            System.out.println("[INFO] Insieme di validazione vuoto: la qualità viene misurata sulle coppie di training.");
+            valutazione = split.training();
+        }
+        System.out.println("[INFO] " + split.training().size() + " coppie di training, " + valutazione.size()
+                + " pagine di valutazione, " + epoche + " epoche su patch " + latoPatch + "x" + latoPatch
+                + ", " + ripetizioni + " ripetizioni");
+
+        List<DataSet> pagine = new ArrayList<>();
+        for (DatasetPair coppia : valutazione) {
+            pagine.add(TrainingImageLoader.loadPair(coppia));
+        }
+
+        List<Risultato> risultati = new ArrayList<>();
+        for (DenoiserVariant variante : varianti) {
+            risultati.add(misura(variante, split.training(), pagine, epoche, latoPatch, ripetizioni));
+        }
+
+        double riferimento = risultati.get(0).msPerPagina();
+        System.out.println();
+        System.out.printf("%-24s %11s %10s %11s %9s %14s %10s %10s%n", "Architettura", "parametri", "training",
+                "ms/pagina", "speedup", "attivazioni", "RSS picco", "IoU testo");
+        for (Risultato r : risultati) {
+            System.out.printf("%-24s %11d %9.1fs %11.1f %8.2fx %11.1f MB %7.0f MB %10.4f%n", r.variante(),
+                    r.parametri(), r.secondiTraining(), r.msPerPagina(), riferimento / r.msPerPagina(),
+                    r.attivazioniMb(), r.piccoRssMb(), r.iou());
+        }
+        System.out.println("[INFO] Speedup rispetto a " + risultati.get(0).variante()
+                + "; RSS picco è la memoria fisica dell'intero processo al termine di ogni variante.");
+    }
+
+    /**
+     * Addestra e valuta una variante.
+     */
+    private static Risultato misura(DenoiserVariant variante, List<DatasetPair> training, List<DataSet> pagine,
+                                    int epoche, int latoPatch, int ripetizioni) {
+        Model modello = ModelArchitecture.createModel(variante);
+        int multiplo = variante.getDownsampling();
+        int lato = Math.max(multiplo, latoPatch - latoPatch % multiplo);
+        System.out.println("[INFO] " + variante + ": " + modello.numParams() + " parametri");
+
+        long inizio = System.nanoTime();
+        if (epoche > 0) {
+            RandomPatchDataSetIterator patch = new RandomPatchDataSetIterator(training, lato, BATCH_PATCH,
+                    PATCH_PER_PAGINA, TEXT_BIAS, SEED, null);
+            for (int e = 0; e < epoche; e++) {
+                ModelArchitecture.fit(modello, patch);
+            }
+        }
+        double secondiTraining = (System.nanoTime() - inizio) / 1e9;
+
+        double tempoTotale = 0;
+        double iouTotale = 0;
+        double piccoRss = 0;
+        for (DataSet pagina : pagine) {
+            INDArray input = pagina.getFeatures();
+            ModelArchitecture.output(modello, input); // riscaldamento
+            INDArray output = null;
+            long t0 = System.nanoTime();
+            for (int i = 0; i < ripetizioni; i++) {
+                output = ModelArchitecture.output(modello, input);
+            }
+            tempoTotale += (System.nanoTime() - t0) / 1e6 / ripetizioni;
+            piccoRss = Math.max(piccoRss, Pointer.physicalBytes() / MB);
+            INDArray maschera = output.gt(SOGLIA_MASCHERA).castTo(DataType.FLOAT);
+            INDArray riferimento = pagina.getLabels().gt(SOGLIA_MASCHERA).castTo(DataType.FLOAT);
+            iouTotale += PrecisionBenchmark.textIoU(maschera, riferimento);
+        }
+
+        InputType tipoInput = InputType.convolutional(ImagePreprocessor.TARGET_HEIGHT, ImagePreprocessor.TARGET_WIDTH, 3);
+        long attivazioni = ModelArchitecture.memoryReport(modello, tipoInput)
+                .getTotalMemoryBytes(1, MemoryUseMode.INFERENCE, CacheMode.NONE, DataType.FLOAT);
+        Risultato risultato = new Risultato(variante, modello.numParams(), secondiTraining,
+                tempoTotale / pagine.size(), attivazioni / MB, piccoRss, iouTotale / pagine.size());
+        System.out.printf("[INFO] %s: training %.1f s, %.1f ms/pagina, IoU testo %.4f%n", variante,
+                secondiTraining, risultato.msPerPagina(), risultato.iou());
+        return risultato;
+    }
+}
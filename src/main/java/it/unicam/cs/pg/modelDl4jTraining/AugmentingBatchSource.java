@@ -0,0 +1,386 @@
+package it.unicam.cs.pg.modelDl4jTraining;
+
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.factory.Nd4j;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Sorgente di batch che applica al volo una data augmentation con OpenCV ai batch di un'altra {@link BatchSource}.
+ * <p>
+ * Le trasformazioni geometriche (rotazione, scala, distorsione elastica) vengono applicate in modo identico
+ * all'immagine e alla maschera; quelle fotometriche (luminosità e contrasto, macchie, trasparenza del verso,
+ * artefatti JPEG) solo all'immagine, perché la maschera del testo non cambia. Le immagini aumentate non vengono
+ * mai scritte su disco.
+ * </p>
+ * <p>
+ * Ogni esempio usa un generatore inizializzato dal seed dell'epoca, dall'indice del batch e dalla posizione
+ * nel batch: {@link #loadBatch(int)} resta quindi deterministico e può essere eseguito sui worker di
+ * {@link PrefetchDataSetIterator}, ottenendo gli stessi dati della lettura sequenziale. Il tempo speso
+ * nell'augmentation viene misurato e riportato a ogni epoca, così da verificare che non rallenti il training.
+ * </p>
+ */
+public class AugmentingBatchSource implements BatchSource {
+
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+    }
+
+    /**
+     * Parametri dell'augmentation.
+     *
+     * @param rotationDegrees         rotazione massima, in gradi, in entrambe le direzioni
+     * @param scaleRange              variazione massima della scala (0.1 = ±10%)
+     * @param elasticProbability      probabilità della distorsione elastica
+     * @param elasticAlpha            spostamento massimo dei pixel nella distorsione elastica
+     * @param elasticGrid             lato in pixel delle celle del campo di spostamento (più grande = più liscio)
+     * @param stainProbability        probabilità di aggiungere macchie
+     * @param bleedThroughProbability probabilità di simulare il testo del verso in trasparenza
+     * @param jpegProbability         probabilità di ricomprimere l'immagine in JPEG
+     * @param jpegMinQuality          qualità JPEG minima
+     * @param brightnessRange         variazione massima della luminosità (frazione di 255)
+     * @param contrastRange           variazione massima del contrasto (0.2 = ±20%)
+     */
+    public record Config(double rotationDegrees, double scaleRange, double elasticProbability, double elasticAlpha,
+                         int elasticGrid, double stainProbability, double bleedThroughProbability,
+                         double jpegProbability, int jpegMinQuality, double brightnessRange, double contrastRange) {
+
+        /**
+         * Parametri moderati adatti alle scansioni di pagine stampate.
+         *
+         * @return la configurazione predefinita
+         */
+        public static Config standard() {
+            return new Config(3, 0.1, 0.5, 4, 64, 0.3, 0.3, 0.3, 40, 0.15, 0.2);
+        }
+    }
+
+    private final BatchSource sorgente;
+    private final Config config;
+    private final Random random;
+    private final Consumer<String> logger;
+    private final AtomicLong nanoAugmentation = new AtomicLong();
+    private final AtomicLong esempiAumentati = new AtomicLong();
+    private DataSetPreProcessor preProcessor;
+    private volatile long seedEpoca;
+    private int cursore;
+    private final BatchRemainder resto = new BatchRemainder();
+
+    /**
+     * Costruttore della sorgente con augmentation.
+     *
+     * @param sorgente sorgente dei batch originali
+     * @param config   parametri dell'augmentation
+     * @param seed     seed da cui derivano le trasformazioni di ogni epoca
+     * @param logger   destinazione delle statistiche di fine epoca (può essere null)
+     */
+    public AugmentingBatchSource(BatchSource sorgente, Config config, long seed, Consumer<String> logger) {
+        this.sorgente = sorgente;
+        this.config = config;
+        this.random = new Random(seed);
+        this.logger = logger;
+        this.seedEpoca = random.nextLong();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !resto.isEmpty() || cursore < batchesPerEpoch();
+    }
+
+    @Override
+    public DataSet next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("Nessun altro batch disponibile nell'epoca corrente");
+        }
+        if (!resto.isEmpty()) {
+            return resto.poll();
+        }
+        DataSet batch = loadBatch(cursore++);
+        if (preProcessor != null) {
+            preProcessor.preProcess(batch);
+        }
+        return batch;
+    }
+
+    @Override
+    public DataSet next(int num) {
+        return resto.take(num, this::hasNext, this::next);
+    }
+
+    @Override
+    public int batchesPerEpoch() {
+        return sorgente.batchesPerEpoch();
+    }
+
+    @Override
+    public DataSet loadBatch(int index) {
+        DataSet batch = sorgente.loadBatch(index);
+        long inizio = System.nanoTime();
+        long[] formaInput = batch.getFeatures().shape();
+        long[] formaLabel = batch.getLabels().shape();
+        int esempi = (int) formaInput[0];
+        int altezza = (int) formaInput[2];
+        int larghezza = (int) formaInput[3];
+        float[] input = batch.getFeatures().dup('c').data().asFloat();
+        float[] label = batch.getLabels().dup('c').data().asFloat();
+        int pianoInput = input.length / esempi;
+        int pianoLabel = label.length / esempi;
+        for (int k = 0; k < esempi; k++) {
+            // Mescola seed dell'epoca, indice del batch e posizione nel batch (costanti di splitmix64)
+            long seed = seedEpoca ^ (index * 0x9E3779B97F4A7C15L) ^ ((k + 1) * 0xBF58476D1CE4E5B9L);
+            aumenta(input, k * pianoInput, label, k * pianoLabel, altezza, larghezza, new SplittableRandom(seed));
+        }
+        nanoAugmentation.addAndGet(System.nanoTime() - inizio);
+        esempiAumentati.addAndGet(esempi);
+        return new DataSet(Nd4j.create(input, formaInput, 'c'), Nd4j.create(label, formaLabel, 'c'));
+    }
+
+    /**
+     * Applica l'augmentation a un esempio, sovrascrivendone i valori negli array del batch.
+     */
+    private void aumenta(float[] input, int offsetInput, float[] label, int offsetLabel, int altezza, int larghezza,
+                         SplittableRandom rnd) {
+        Mat immagine = toMat(input, offsetInput, 3, altezza, larghezza);
+        Mat maschera = toMat(label, offsetLabel, 1, altezza, larghezza);
+        Size dimensione = new Size(larghezza, altezza);
+
+        // Rotazione e scala, identiche per immagine e maschera
+        double angolo = uniforme(rnd, config.rotationDegrees());
+        double scala = 1 + uniforme(rnd, config.scaleRange());
+        Mat trasformazione = Imgproc.getRotationMatrix2D(new Point(larghezza / 2.0, altezza / 2.0), angolo, scala);
+        Imgproc.warpAffine(immagine, immagine, trasformazione, dimensione, Imgproc.INTER_LINEAR, Core.BORDER_REFLECT_101);
+        Imgproc.warpAffine(maschera, maschera, trasformazione, dimensione, Imgproc.INTER_NEAREST, Core.BORDER_REFLECT_101);
+        trasformazione.release();
+
+        if (rnd.nextDouble() < config.elasticProbability()) {
+            distorsioneElastica(immagine, maschera, rnd);
+        }
+        if (rnd.nextDouble() < config.bleedThroughProbability()) {
+            trasparenzaVerso(immagine, rnd);
+        }
+        if (rnd.nextDouble() < config.stainProbability()) {
+            macchie(immagine, rnd);
+        }
+
+        // Luminosità e contrasto (con saturazione a 0-255)
+        double contrasto = 1 + uniforme(rnd, config.contrastRange());
+        double luminosita = 255 * uniforme(rnd, config.brightnessRange());
+        immagine.convertTo(immagine, -1, contrasto, luminosita);
+
+        if (rnd.nextDouble() < config.jpegProbability()) {
+            int qualita = config.jpegMinQuality() + rnd.nextInt(Math.max(1, 96 - config.jpegMinQuality()));
+            MatOfByte jpeg = new MatOfByte();
+            Imgcodecs.imencode(".jpg", immagine, jpeg, new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, qualita));
+            Mat decodificata = Imgcodecs.imdecode(jpeg, Imgcodecs.IMREAD_COLOR);
+            immagine.release();
+            immagine = decodificata;
+            jpeg.release();
+        }
+
+        fromMat(immagine, input, offsetInput);
+        fromMat(maschera, label, offsetLabel);
+        immagine.release();
+        maschera.release();
+    }
+
+    /**
+     * Distorsione elastica: un campo di spostamenti casuali su una griglia grossolana viene interpolato in modo
+     * bicubico alla risoluzione dell'immagine, ottenendo deformazioni locali lisce come quelle della carta.
+     */
+    private void distorsioneElastica(Mat immagine, Mat maschera, SplittableRandom rnd) {
+        int altezza = immagine.rows();
+        int larghezza = immagine.cols();
+        int righe = altezza / config.elasticGrid() + 2;
+        int colonne = larghezza / config.elasticGrid() + 2;
+        float[] spostamentoX = campoSpostamenti(righe, colonne, altezza, larghezza, rnd);
+        float[] spostamentoY = campoSpostamenti(righe, colonne, altezza, larghezza, rnd);
+        for (int y = 0; y < altezza; y++) {
+            for (int x = 0; x < larghezza; x++) {
+                int i = y * larghezza + x;
+                spostamentoX[i] += x;
+                spostamentoY[i] += y;
+            }
+        }
+        Mat mappaX = new Mat(altezza, larghezza, CvType.CV_32FC1);
+        Mat mappaY = new Mat(altezza, larghezza, CvType.CV_32FC1);
+        mappaX.put(0, 0, spostamentoX);
+        mappaY.put(0, 0, spostamentoY);
+        Imgproc.remap(immagine, immagine, mappaX, mappaY, Imgproc.INTER_LINEAR, Core.BORDER_REFLECT_101);
+        Imgproc.remap(maschera, maschera, mappaX, mappaY, Imgproc.INTER_NEAREST, Core.BORDER_REFLECT_101);
+        mappaX.release();
+        mappaY.release();
+    }
+
+    /**
+     * Genera un campo di spostamenti casuali in [-alpha, alpha] e lo interpola alla dimensione indicata.
+     */
+    private float[] campoSpostamenti(int righe, int colonne, int altezza, int larghezza, SplittableRandom rnd) {
+        float[] griglia = new float[righe * colonne];
+        for (int i = 0; i < griglia.length; i++) {
+            griglia[i] = (float) uniforme(rnd, config.elasticAlpha());
+        }
+        Mat grossolana = new Mat(righe, colonne, CvType.CV_32FC1);
+        grossolana.put(0, 0, griglia);
+        Mat campo = new Mat();
+        Imgproc.resize(grossolana, campo, new Size(larghezza, altezza), 0, 0, Imgproc.INTER_CUBIC);
+        float[] valori = new float[altezza * larghezza];
+        campo.get(0, 0, valori);
+        grossolana.release();
+        campo.release();
+        return valori;
+    }
+
+    /**
+     * Simula il testo del verso visibile in trasparenza: la pagina specchiata e sfocata viene schiarita
+     * e sovrapposta mantenendo per ogni pixel il valore più scuro.
+     */
+    private static void trasparenzaVerso(Mat immagine, SplittableRandom rnd) {
+        double intensita = 0.1 + 0.25 * rnd.nextDouble();
+        Mat verso = new Mat();
+        Core.flip(immagine, verso, 1);
+        Imgproc.GaussianBlur(verso, verso, new Size(0, 0), 1.5);
+        // verso = 255 - intensita * (255 - verso)
+        verso.convertTo(verso, -1, intensita, 255 * (1 - intensita));
+        Core.min(immagine, verso, immagine);
+        verso.release();
+    }
+
+    /**
+     * Aggiunge da una a tre macchie ellittiche sfumate, fuse con l'immagine per moltiplicazione.
+     */
+    private static void macchie(Mat immagine, SplittableRandom rnd) {
+        int altezza = immagine.rows();
+        int larghezza = immagine.cols();
+        Mat strato = new Mat(altezza, larghezza, CvType.CV_8UC3, new Scalar(255, 255, 255));
+        int lato = Math.min(altezza, larghezza);
+        int numero = 1 + rnd.nextInt(3);
+        for (int i = 0; i < numero; i++) {
+            Point centro = new Point(rnd.nextInt(larghezza), rnd.nextInt(altezza));
+            Size assi = new Size(lato * (0.05 + 0.2 * rnd.nextDouble()), lato * (0.05 + 0.2 * rnd.nextDouble()));
+            // Tonalità tra il marrone chiaro e il giallo (BGR)
+            Scalar colore = new Scalar(120 + rnd.nextInt(80), 160 + rnd.nextInt(60), 190 + rnd.nextInt(50));
+            Imgproc.ellipse(strato, centro, assi, 360 * rnd.nextDouble(), 0, 360, colore, -1);
+        }
+        Imgproc.GaussianBlur(strato, strato, new Size(0, 0), Math.max(1, lato * 0.02));
+        Core.multiply(immagine, strato, immagine, 1.0 / 255);
+        strato.release();
+    }
+
+    /**
+     * Converte un esempio CHW normalizzato in [0, 1] in una matrice OpenCV a 8 bit con canali interlacciati.
+     */
+    private static Mat toMat(float[] chw, int offset, int canali, int altezza, int larghezza) {
+        int piano = altezza * larghezza;
+        byte[] pixel = new byte[piano * canali];
+        for (int c = 0; c < canali; c++) {
+            int base = offset + c * piano;
+            for (int i = 0; i < piano; i++) {
+                pixel[i * canali + c] = (byte) Math.round(chw[base + i] * 255);
+            }
+        }
+        Mat mat = new Mat(altezza, larghezza, canali == 1 ? CvType.CV_8UC1 : CvType.CV_8UC3);
+        mat.put(0, 0, pixel);
+        return mat;
+    }
+
+    /**
+     * Riscrive una matrice OpenCV a 8 bit nell'array CHW normalizzato del batch.
+     */
+    private static void fromMat(Mat mat, float[] chw, int offset) {
+        int canali = mat.channels();
+        int piano = mat.rows() * mat.cols();
+        byte[] pixel = new byte[piano * canali];
+        mat.get(0, 0, pixel);
+        for (int c = 0; c < canali; c++) {
+            int base = offset + c * piano;
+            for (int i = 0; i < piano; i++) {
+                chw[base + i] = (pixel[i * canali + c] & 0xFF) / 255f;
+            }
+        }
+    }
+
+    private static double uniforme(SplittableRandom rnd, double ampiezza) {
+        return ampiezza * (2 * rnd.nextDouble() - 1);
+    }
+
+    /**
+     * Restituisce il tempo speso nell'augmentation dall'ultimo reset.
+     *
+     * @return descrizione testuale delle metriche
+     */
+    public String getStats() {
+        long esempi = esempiAumentati.get();
+        double ms = nanoAugmentation.get() / 1e6;
+        return String.format("augmentation di %d esempi in %.0f ms (%.1f ms/esempio, %.1f esempi/s per thread)",
+                esempi, ms, esempi > 0 ? ms / esempi : 0, ms > 0 ? 1000 * esempi / ms : 0);
+    }
+
+    @Override
+    public int inputColumns() {
+        return sorgente.inputColumns();
+    }
+
+    @Override
+    public int totalOutcomes() {
+        return sorgente.totalOutcomes();
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        if (logger != null && esempiAumentati.get() > 0) {
+            logger.accept("[INFO] " + getStats());
+        }
+        sorgente.reset();
+        seedEpoca = random.nextLong();
+        cursore = 0;
+        resto.clear();
+        nanoAugmentation.set(0);
+        esempiAumentati.set(0);
+    }
+
+    @Override
+    public int batch() {
+        return sorgente.batch();
+    }
+
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public DataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return sorgente.getLabels();
+    }
+}
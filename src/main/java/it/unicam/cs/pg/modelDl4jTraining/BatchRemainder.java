@@ -0,0 +1,76 @@
+package it.unicam.cs.pg.modelDl4jTraining;
+
+import org.nd4j.linalg.dataset.DataSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Resto di un batch diviso da {@code next(int)} negli iteratori che producono batch interi per indice.
+ * <p>
+ * I batch successivi vengono uniti finché raggiungono il numero di esempi richiesto; gli esempi in eccesso
+ * restano qui e vengono restituiti per primi dalla chiamata successiva, così che nessun esempio vada perso e
+ * l'ordine resti quello della lettura per batch.
+ * </p>
+ */
+final class BatchRemainder {
+    private DataSet resto;
+
+    /**
+     * @return true se non ci sono esempi in attesa
+     */
+    boolean isEmpty() {
+        return resto == null;
+    }
+
+    /**
+     * Restituisce e rimuove gli esempi in attesa.
+     *
+     * @return gli esempi in attesa, oppure null se non ce ne sono
+     */
+    DataSet poll() {
+        DataSet batch = resto;
+        resto = null;
+        return batch;
+    }
+
+    /**
+     * Scarta gli esempi in attesa, ad esempio al reset dell'iteratore.
+     */
+    void clear() {
+        resto = null;
+    }
+
+    /**
+     * Compone un batch di {@code num} esempi (meno alla fine dell'epoca) dai batch dell'iteratore.
+     *
+     * @param num     numero di esempi richiesto
+     * @param hasNext indica se l'iteratore ha altri batch
+     * @param next    restituisce il batch successivo, a partire dagli esempi in attesa
+     * @return il batch composto
+     */
+    DataSet take(int num, BooleanSupplier hasNext, Supplier<DataSet> next) {
+        if (num < 1) {
+            throw new IllegalArgumentException("Numero di esempi non valido: " + num);
+        }
+        List<DataSet> parti = new ArrayList<>();
+        int esempi = 0;
+        while (esempi < num && hasNext.getAsBoolean()) {
+            DataSet batch = next.get();
+            parti.add(batch);
+            esempi += batch.numExamples();
+        }
+        if (parti.isEmpty()) {
+            throw new NoSuchElementException("Nessun altro batch disponibile nell'epoca corrente");
+        }
+        DataSet unito = parti.size() == 1 ? parti.get(0) : DataSet.merge(parti);
+        if (esempi > num) {
+            resto = (DataSet) unito.getRange(num, esempi);
+            unito = (DataSet) unito.getRange(0, num);
+        }
+        return unito;
+    }
+}
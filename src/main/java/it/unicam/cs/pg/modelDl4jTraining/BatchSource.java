@@ -0,0 +1,31 @@
+package it.unicam.cs.pg.modelDl4jTraining;
+
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+/**
+ * Iteratore di training i cui batch possono essere costruiti per indice, anche fuori ordine e da più thread.
+ * <p>
+ * Il contenuto di ogni batch dipende soltanto dal suo indice e dallo stato fissato dall'ultimo
+ * {@link #reset()} (ordine delle pagine e seed dell'epoca): così {@link PrefetchDataSetIterator} può
+ * preparare in parallelo i batch successivi ottenendo esattamente gli stessi dati della lettura sequenziale.
+ * </p>
+ */
+public interface BatchSource extends DataSetIterator {
+
+    /**
+     * Restituisce il numero di batch che compongono un'epoca.
+     *
+     * @return il numero di batch per epoca
+     */
+    int batchesPerEpoch();
+
+    /**
+     * Carica il batch con l'indice indicato nell'epoca corrente, senza spostare il cursore dell'iteratore
+     * e senza applicare il pre-processore. Deve poter essere invocato contemporaneamente da più thread.
+     *
+     * @param index indice del batch, tra 0 e {@link #batchesPerEpoch()} escluso
+     * @return il batch richiesto
+     */
+    DataSet loadBatch(int index);
+}
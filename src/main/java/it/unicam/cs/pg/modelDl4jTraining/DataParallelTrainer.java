@@ -0,0 +1,42 @@
+package it.unicam.cs.pg.modelDl4jTraining;
+
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.parallelism.ParallelWrapper;
+
+/**
+ * Configurazione dell'addestramento data-parallel della rete di denoising con {@link ParallelWrapper}.
+ * <p>
+ * Ogni worker addestra una replica del modello su batch diversi; ogni {@code averagingFrequency} iterazioni
+ * i parametri (e lo stato dell'updater Adam) delle repliche vengono mediati e ricopiati nel modello originale.
+ * Frequenze basse mantengono le repliche allineate ma aumentano il costo di sincronizzazione.
+ * </p>
+ */
+public class DataParallelTrainer {
+
+    private DataParallelTrainer() {
+    }
+
+    /**
+     * Crea il wrapper data-parallel per il modello indicato. Il wrapper va chiuso al termine dell'addestramento.
+     *
+     * @param modello            modello da addestrare (riceve i parametri mediati)
+     * @param workers            numero di repliche addestrate in parallelo (almeno 2)
+     * @param averagingFrequency numero di iterazioni tra due medie dei parametri
+     * @param prefetch           numero di batch caricati in anticipo per i worker (0 = nessuno)
+     * @return il wrapper configurato
+     */
+    public static ParallelWrapper create(Model modello, int workers, int averagingFrequency, int prefetch) {
+        if (workers < 2 || averagingFrequency < 1 || prefetch < 0) {
+            throw new IllegalArgumentException("Parametri di addestramento parallelo non validi: workers=" + workers
+                    + ", averagingFrequency=" + averagingFrequency + ", prefetch=" + prefetch);
+        }
+        return new ParallelWrapper.Builder<>(modello)
+                .workers(workers)
+                .averagingFrequency(averagingFrequency)
+                .prefetchBuffer(prefetch)
+                .trainingMode(ParallelWrapper.TrainingMode.AVERAGING)
+                .averageUpdaters(true)
+                .reportScoreAfterAveraging(true)
+                .build();
+    }
+}
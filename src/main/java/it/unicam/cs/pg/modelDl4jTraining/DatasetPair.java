@@ -0,0 +1,86 @@
+package it.unicam.cs.pg.modelDl4jTraining;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Coppia immagine originale / maschera del dataset DL4J.
+ *
+ * @param original immagine originale (input della rete)
+ * @param mask     maschera corrispondente (etichetta della rete)
+ */
+public record DatasetPair(File original, File mask) {
+
+    /**
+     * Cerca le coppie valide nelle cartelle del dataset: a ogni immagine .png originale viene associata
+     * la maschera con lo stesso nome. Le immagini senza maschera vengono segnalate e scartate.
+     *
+     * @param cartellaOriginali cartella delle immagini originali
+     * @param cartellaMaschere  cartella delle maschere
+     * @param logger            destinazione dei messaggi di log (può essere null)
+     * @return le coppie trovate, ordinate per nome file
+     */
+    public static List<DatasetPair> discover(File cartellaOriginali, File cartellaMaschere, Consumer<String> logger) {
+        List<DatasetPair> coppie = new ArrayList<>();
+        File[] filesOriginali = cartellaOriginali.listFiles((dir, name) -> name.toLowerCase().endsWith(".png"));
+        if (filesOriginali == null) {
+            log(logger, "[ERRORE] La cartella non contiene immagini PNG: " + cartellaOriginali.getAbsolutePath());
+            return coppie;
+        }
+        Arrays.sort(filesOriginali, Comparator.comparing(File::getName));
+        for (File originalFile : filesOriginali) {
+            File maskFile = new File(cartellaMaschere, originalFile.getName());
+            if (!maskFile.exists()) {
+                log(logger, "[ERRORE] Maschera non trovata per: " + originalFile.getName());
+                continue;
+            }
+            coppie.add(new DatasetPair(originalFile, maskFile));
+        }
+        return coppie;
+    }
+
+    /**
+     * Suddivisione delle coppie in insieme di training e insieme di validazione.
+     *
+     * @param training   coppie usate per l'addestramento
+     * @param validation coppie tenute da parte per la validazione
+     */
+    public record Split(List<DatasetPair> training, List<DatasetPair> validation) {
+    }
+
+    /**
+     * Separa una frazione delle coppie per la validazione. La scelta dipende solo dal seed e dall'elenco
+     * delle coppie, per cui una ripresa dell'addestramento ritrova la stessa suddivisione. Almeno una coppia
+     * resta sempre nel training: con una sola coppia l'insieme di validazione è vuoto.
+     *
+     * @param coppie             coppie del dataset
+     * @param validationFraction frazione (0-1) delle coppie da usare per la validazione
+     * @param seed               seed del mescolamento
+     * @return la suddivisione, con entrambe le liste ordinate per nome file
+     */
+    public static Split split(List<DatasetPair> coppie, double validationFraction, long seed) {
+        List<DatasetPair> mescolate = new ArrayList<>(coppie);
+        Collections.shuffle(mescolate, new Random(seed));
+        int numeroValidazione = validationFraction <= 0 ? 0
+                : Math.min(coppie.size() - 1, Math.max(1, (int) Math.round(coppie.size() * validationFraction)));
+        numeroValidazione = Math.max(0, numeroValidazione);
+        Comparator<DatasetPair> perNome = Comparator.comparing(coppia -> coppia.original().getName());
+        List<DatasetPair> validazione = new ArrayList<>(mescolate.subList(0, numeroValidazione));
+        List<DatasetPair> training = new ArrayList<>(mescolate.subList(numeroValidazione, mescolate.size()));
+        validazione.sort(perNome);
+        training.sort(perNome);
+        return new Split(List.copyOf(training), List.copyOf(validazione));
+    }
+
+    private static void log(Consumer<String> logger, String messaggio) {
+        if (logger != null) {
+            logger.accept(messaggio);
+        }
+    }
+}
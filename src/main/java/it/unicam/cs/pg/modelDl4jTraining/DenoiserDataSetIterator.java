@@ -0,0 +1,201 @@
+package it.unicam.cs.pg.modelDl4jTraining;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Iteratore DL4J che legge le coppie originale/maschera del dataset su richiesta.
+ * <p>
+ * Le immagini vengono decodificate solo quando il batch che le contiene viene richiesto, per cui la memoria
+ * occupata dipende dalla dimensione del batch e non da quella del dataset. Se il mescolamento è attivo,
+ * l'ordine delle coppie viene rimescolato a ogni {@link #reset()} (cioè a ogni epoca) con un generatore
+ * inizializzato dal seed, così che la sequenza di epoche sia riproducibile.
+ * </p>
+ * <p>
+ * I batch possono essere caricati anche per indice da più thread tramite {@link #loadBatch(int)},
+ * che è quanto usa {@link PrefetchDataSetIterator} per decodificarli in anticipo.
+ * </p>
+ */
+public class DenoiserDataSetIterator implements BatchSource {
+    private final List<DatasetPair> coppie;
+    private final int batchSize;
+    private final boolean shuffle;
+    private final Random random;
+    private final Consumer<String> logger;
+    private final TrainingPairLoader loader;
+    private final List<Integer> ordine = new ArrayList<>();
+    private DataSetPreProcessor preProcessor;
+    private int cursore;
+
+    /**
+     * Costruttore dell'iteratore.
+     *
+     * @param coppie    coppie originale/maschera da iterare
+     * @param batchSize numero di coppie per batch
+     * @param shuffle   se true, l'ordine delle coppie viene rimescolato a ogni epoca
+     * @param seed      seed del generatore usato per il mescolamento
+     * @param logger    destinazione dei messaggi di log (può essere null)
+     */
+    public DenoiserDataSetIterator(List<DatasetPair> coppie, int batchSize, boolean shuffle, long seed,
+                                   Consumer<String> logger) {
+        this(coppie, batchSize, shuffle, seed, TrainingImageLoader::loadPair, logger);
+    }
+
+    /**
+     * Costruttore dell'iteratore con una strategia di caricamento delle coppie esplicita
+     * (ad esempio {@link TensorCache}).
+     *
+     * @param coppie    coppie originale/maschera da iterare
+     * @param batchSize numero di coppie per batch
+     * @param shuffle   se true, l'ordine delle coppie viene rimescolato a ogni epoca
+     * @param seed      seed del generatore usato per il mescolamento
+     * @param loader    strategia di caricamento delle coppie
+     * @param logger    destinazione dei messaggi di log (può essere null)
+     */
+    public DenoiserDataSetIterator(List<DatasetPair> coppie, int batchSize, boolean shuffle, long seed,
+                                   TrainingPairLoader loader, Consumer<String> logger) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("La dimensione del batch deve essere positiva: " + batchSize);
+        }
+        this.coppie = List.copyOf(coppie);
+        this.batchSize = batchSize;
+        this.shuffle = shuffle;
+        this.random = new Random(seed);
+        this.loader = loader;
+        this.logger = logger;
+        for (int i = 0; i < this.coppie.size(); i++) {
+            ordine.add(i);
+        }
+        reset();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return cursore < ordine.size();
+    }
+
+    @Override
+    public DataSet next() {
+        return next(batchSize);
+    }
+
+    @Override
+    public DataSet next(int num) {
+        if (!hasNext()) {
+            throw new NoSuchElementException("Nessun altro batch disponibile nell'epoca corrente");
+        }
+        int fine = Math.min(cursore + num, ordine.size());
+        DataSet batch = caricaCoppie(cursore, fine);
+        cursore = fine;
+        if (preProcessor != null) {
+            preProcessor.preProcess(batch);
+        }
+        return batch;
+    }
+
+    @Override
+    public int batchesPerEpoch() {
+        return (ordine.size() + batchSize - 1) / batchSize;
+    }
+
+    @Override
+    public DataSet loadBatch(int index) {
+        int inizio = index * batchSize;
+        return caricaCoppie(inizio, Math.min(inizio + batchSize, ordine.size()));
+    }
+
+    /**
+     * Decodifica e scala le coppie comprese tra due posizioni dell'ordine dell'epoca corrente.
+     *
+     * @param inizio prima posizione (inclusa)
+     * @param fine   ultima posizione (esclusa)
+     * @return il batch con input e maschere concatenati
+     */
+    private DataSet caricaCoppie(int inizio, int fine) {
+        List<INDArray> inputs = new ArrayList<>();
+        List<INDArray> labels = new ArrayList<>();
+        for (int i = inizio; i < fine; i++) {
+            DatasetPair coppia = coppie.get(ordine.get(i));
+            try {
+                DataSet esempio = loader.load(coppia);
+                inputs.add(esempio.getFeatures());
+                labels.add(esempio.getLabels());
+            } catch (IOException ex) {
+                throw new IllegalStateException("Problema caricamento coppia " + coppia.original().getName()
+                        + ": " + ex.getMessage(), ex);
+            }
+            if (logger != null) {
+                logger.accept("[INFO] Coppia caricata: " + coppia.original().getName());
+            }
+        }
+        return new DataSet(Nd4j.concat(0, inputs.toArray(new INDArray[0])),
+                Nd4j.concat(0, labels.toArray(new INDArray[0])));
+    }
+
+    /**
+     * Restituisce il numero di coppie iterate in un'epoca.
+     *
+     * @return il numero di coppie
+     */
+    public int numExamples() {
+        return coppie.size();
+    }
+
+    @Override
+    public int inputColumns() {
+        return ImagePreprocessor.TARGET_WIDTH * ImagePreprocessor.TARGET_HEIGHT * 3;
+    }
+
+    @Override
+    public int totalOutcomes() {
+        return ImagePreprocessor.TARGET_WIDTH * ImagePreprocessor.TARGET_HEIGHT;
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        cursore = 0;
+        if (shuffle) {
+            Collections.shuffle(ordine, random);
+        }
+    }
+
+    @Override
+    public int batch() {
+        return batchSize;
+    }
+
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public DataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return null;
+    }
+}
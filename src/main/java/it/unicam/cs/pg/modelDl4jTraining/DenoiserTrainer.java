@@ -0,0 +1,362 @@
+package it.unicam.cs.pg.modelDl4jTraining;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.parallelism.ParallelWrapper;
+import org.deeplearning4j.util.ModelSerializer;
+import org.nd4j.linalg.dataset.DataSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Ciclo di addestramento della rete di denoising con checkpoint periodici, ripresa ed early stopping.
+ * <p>
+ * Ogni epoca viene addestrata per segmenti di {@code checkpointEveryBatches} batch; dopo ogni segmento
+ * vengono salvati in {@code dl4j model/checkpoints} il modello con lo stato dell'updater e un file JSON con la
+ * posizione raggiunta (epoca, batch, seed). Alla ripresa l'ordine dell'epoca viene ricostruito ripetendo i
+ * rimescolamenti dell'iteratore, che dipendono solo dal seed, e l'addestramento riparte dal batch successivo
+ * all'ultimo checkpoint.
+ * </p>
+ * <p>
+ * Al termine di ogni epoca viene calcolata la loss sull'insieme di validazione: il modello migliore viene
+ * salvato a parte e, se la loss non migliora per {@code patience} epoche consecutive, l'addestramento si ferma
+ * e vengono ripristinati i parametri migliori.
+ * </p>
+ * <p>
+ * Le metriche di ogni iterazione (loss, throughput, tempo di attesa dei dati, memoria) vengono registrate da
+ * {@link TrainingMetricsListener} in {@code dl4j model/metriche}.
+ * </p>
+ */
+public class DenoiserTrainer {
+
+    public static final String CHECKPOINT_DIR = "checkpoints";
+    public static final String METRICS_DIR = "metriche";
+    private static final int LOG_OGNI_ITERAZIONI = 10;
+    private static final String BEST_MODEL = "migliore.zip";
+    private static final String PREFISSO_CHECKPOINT = "checkpoint-";
+    private static final int CHECKPOINT_CONSERVATI = 2;
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    /**
+     * Parametri dell'addestramento.
+     *
+     * @param maxEpochs              numero massimo di epoche
+     * @param checkpointEveryBatches numero di batch tra due checkpoint all'interno di un'epoca
+     * @param patience               epoche senza miglioramento della validazione prima dell'arresto
+     * @param workers                repliche data-parallel (1 = replica singola)
+     * @param averagingFrequency     iterazioni tra due medie dei parametri in modalità data-parallel
+     * @param prefetch               buffer di prefetch dei worker data-parallel
+     * @param seed                   seed dell'iteratore di training, verificato alla ripresa
+     * @param variant                architettura del modello, verificata alla ripresa
+     * @param learningRate           learning rate di Adam per un modello nuovo (alla ripresa vale quello salvato)
+     */
+    public record Config(int maxEpochs, int checkpointEveryBatches, int patience, int workers,
+                         int averagingFrequency, int prefetch, long seed, DenoiserVariant variant,
+                         double learningRate) {
+    }
+
+    /**
+     * Riceve il riepilogo di ogni epoca completata e decide se proseguire l'addestramento.
+     */
+    @FunctionalInterface
+    public interface EpochObserver {
+
+        /**
+         * Invocato al termine di ogni epoca, dopo il calcolo della loss di validazione e il checkpoint.
+         *
+         * @param riepilogo riepilogo dell'epoca appena conclusa
+         * @return true per proseguire, false per interrompere l'addestramento
+         */
+        boolean epochDone(TrainingMetricsListener.EpochSummary riepilogo);
+    }
+
+    /**
+     * Stato salvato accanto a ogni checkpoint: indica il prossimo batch da addestrare.
+     *
+     * @param modelFile                 file del modello (con updater) relativo alla cartella dei checkpoint
+     * @param epoch                     epoca da cui riprendere (0-based)
+     * @param batch                     primo batch dell'epoca ancora da addestrare
+     * @param seed                      seed dell'iteratore di training
+     * @param variant                   architettura del modello
+     * @param batchesPerEpoch           batch per epoca, per verificare che il dataset non sia cambiato
+     * @param trainingPairs             nomi delle coppie di training
+     * @param bestValidationLoss        migliore loss di validazione finora
+     * @param epochsWithoutImprovement  epoche consecutive senza miglioramento
+     * @param timestamp                 data e ora del salvataggio
+     */
+    public record Checkpoint(String modelFile, int epoch, int batch, long seed, DenoiserVariant variant,
+                             int batchesPerEpoch,
+                             List<String> trainingPairs, double bestValidationLoss,
+                             int epochsWithoutImprovement, String timestamp) {
+    }
+
+    private final PrefetchDataSetIterator training;
+    private final List<String> nomiTraining;
+    private final BatchSource validazione;
+    private final File cartellaCheckpoint;
+    private final File cartellaMetriche;
+    private final Config config;
+    private final Consumer<String> logger;
+    private final DoubleConsumer progresso;
+    private EpochObserver osservatore;
+
+    /**
+     * Costruttore del ciclo di addestramento.
+     *
+     * @param training        iteratore dei batch di training
+     * @param coppieTraining  coppie usate per il training (registrate nei checkpoint)
+     * @param validazione     batch di validazione, mai rimescolati (null = nessuna validazione né early stopping)
+     * @param cartellaModello cartella {@code dl4j model}, che conterrà le sottocartelle dei checkpoint e delle metriche
+     * @param config          parametri dell'addestramento
+     * @param logger          destinazione dei messaggi di log
+     * @param progresso       riceve l'avanzamento complessivo tra 0 e 1 (può essere null)
+     */
+    public DenoiserTrainer(PrefetchDataSetIterator training, List<DatasetPair> coppieTraining, BatchSource validazione,
+                           File cartellaModello, Config config, Consumer<String> logger, DoubleConsumer progresso) {
+        this.training = training;
+        this.nomiTraining = coppieTraining.stream().map(coppia -> coppia.original().getName()).toList();
+        this.validazione = validazione;
+        this.cartellaCheckpoint = new File(cartellaModello, CHECKPOINT_DIR);
+        this.cartellaMetriche = new File(cartellaModello, METRICS_DIR);
+        this.config = config;
+        this.logger = logger;
+        this.progresso = progresso;
+    }
+
+    /**
+     * Imposta l'osservatore delle epoche, che può interrompere l'addestramento prima dell'early stopping
+     * (ad esempio per scartare una configurazione poco promettente in una ricerca di iperparametri).
+     *
+     * @param osservatore l'osservatore, oppure null per rimuoverlo
+     */
+    public void setEpochObserver(EpochObserver osservatore) {
+        this.osservatore = osservatore;
+    }
+
+    /**
+     * Esegue l'addestramento, eventualmente riprendendo dall'ultimo checkpoint compatibile.
+     *
+     * @param riprendi se true, riparte dall'ultimo checkpoint; altrimenti i checkpoint precedenti vengono rimossi
+     * @return il modello addestrato, con i parametri migliori sulla validazione se disponibile
+     * @throws IOException se i checkpoint non possono essere letti o scritti
+     */
+    public Model train(boolean riprendi) throws IOException {
+        DenoiserVariant variante = config.variant();
+        if (!cartellaCheckpoint.exists() && !cartellaCheckpoint.mkdirs()) {
+            throw new IOException("Impossibile creare la cartella dei checkpoint: " + cartellaCheckpoint.getAbsolutePath());
+        }
+        Checkpoint stato = riprendi ? ultimoCheckpointCompatibile() : null;
+        Model modello;
+        if (stato != null) {
+            modello = ModelArchitecture.restore(new File(cartellaCheckpoint, stato.modelFile()), variante, true);
+            logger.accept("[INFO] Ripresa dal checkpoint " + stato.modelFile() + ": epoca " + (stato.epoch() + 1)
+                    + ", batch " + stato.batch() + ".");
+            for (int e = 0; e < stato.epoch(); e++) {
+                training.reset(); // ricostruisce l'ordine dell'epoca da riprendere
+            }
+        } else {
+            rimuoviCheckpoint();
+            modello = ModelArchitecture.createModel(variante, config.learningRate());
+            logger.accept("[INFO] Architettura: " + variante + ", " + modello.numParams() + " parametri, learning rate "
+                    + config.learningRate() + ".");
+            stato = new Checkpoint(null, 0, 0, config.seed(), variante, training.batchesPerEpoch(), nomiTraining,
+                    Double.POSITIVE_INFINITY, 0, null);
+        }
+
+        TrainingMetricsListener metriche = new TrainingMetricsListener(cartellaMetriche, training::getDataWaitNanos,
+                training.batchesPerEpoch(), config.maxEpochs(), LOG_OGNI_ITERAZIONI, logger, progresso);
+        ParallelWrapper wrapper = config.workers() >= 2
+                ? DataParallelTrainer.create(modello, config.workers(), config.averagingFrequency(), config.prefetch())
+                : null;
+        if (wrapper != null) {
+            // Le repliche ricevono i listener del wrapper, non quelli del modello
+            wrapper.setListeners(metriche);
+            logger.accept("[INFO] Addestramento data-parallel: " + config.workers() + " repliche, media ogni "
+                    + config.averagingFrequency() + " iterazioni.");
+        } else {
+            modello.setListeners(metriche);
+        }
+        try {
+            stato = cicloEpoche(modello, wrapper, metriche, stato);
+        } finally {
+            metriche.close();
+            modello.setListeners();
+            if (wrapper != null) {
+                try {
+                    wrapper.close();
+                } catch (Exception ex) {
+                    logger.accept("[ERRORE] Chiusura dei worker paralleli fallita: " + ex.getMessage());
+                }
+            }
+            training.shutdown();
+        }
+
+        File migliore = new File(cartellaCheckpoint, BEST_MODEL);
+        if (validazione != null && migliore.exists()) {
+            modello.setParams(ModelArchitecture.restore(migliore, variante, false).params());
+            logger.accept(String.format("[INFO] Ripristinati i parametri con la migliore loss di validazione (%.5f).",
+                    stato.bestValidationLoss()));
+        }
+        return modello;
+    }
+
+    /**
+     * Addestra le epoche rimanenti per segmenti, salvando un checkpoint dopo ogni segmento.
+     *
+     * @return lo stato finale
+     */
+    private Checkpoint cicloEpoche(Model modello, ParallelWrapper wrapper, TrainingMetricsListener metriche,
+                                   Checkpoint stato) throws IOException {
+        int totale = training.batchesPerEpoch();
+        int segmento = Math.max(1, config.checkpointEveryBatches());
+        while (stato.epoch() < config.maxEpochs()) {
+            int batch = stato.batch();
+            metriche.startEpoch(stato.epoch(), batch);
+            while (batch < totale) {
+                int fine = Math.min(batch + segmento, totale);
+                training.seek(batch, fine);
+                if (wrapper != null) {
+                    wrapper.fit(training);
+                } else {
+                    ModelArchitecture.fit(modello, training);
+                }
+                batch = fine;
+                if (batch < totale) {
+                    stato = salvaCheckpoint(modello, stato.epoch(), batch, stato.bestValidationLoss(),
+                            stato.epochsWithoutImprovement());
+                }
+            }
+
+            double loss = validazione != null ? lossDiValidazione(modello) : Double.NaN;
+            double migliore = stato.bestValidationLoss();
+            int senzaMiglioramento = stato.epochsWithoutImprovement();
+            if (validazione != null) {
+                if (loss < migliore) {
+                    migliore = loss;
+                    senzaMiglioramento = 0;
+                    ModelSerializer.writeModel(modello, new File(cartellaCheckpoint, BEST_MODEL), false);
+                } else {
+                    senzaMiglioramento++;
+                }
+            }
+            TrainingMetricsListener.EpochSummary riepilogo = metriche.endEpoch(loss);
+            String statsPrefetch = training.getStats();
+            int epoca = stato.epoch() + 1;
+            training.reset();
+            stato = salvaCheckpoint(modello, epoca, 0, migliore, senzaMiglioramento);
+            logger.accept(String.format("[INFO] Epoca %d/%d completata in %.1f s (%.1f immagini/s, %.0f%% in attesa dei "
+                            + "dati), loss training %.5f%s, %s", epoca, config.maxEpochs(), riepilogo.seconds(),
+                    riepilogo.imagesPerSecond(), 100 * riepilogo.dataFraction(), riepilogo.meanLoss(),
+                    validazione != null ? String.format(", loss validazione %.5f (migliore %.5f)", loss, migliore) : "",
+                    statsPrefetch));
+            boolean prosegui = osservatore == null || osservatore.epochDone(riepilogo);
+            if (validazione != null && senzaMiglioramento >= config.patience()) {
+                logger.accept("[INFO] Early stopping: nessun miglioramento della validazione da "
+                        + senzaMiglioramento + " epoche.");
+                break;
+            }
+            if (!prosegui) {
+                logger.accept("[INFO] Addestramento interrotto dopo l'epoca " + epoca + ".");
+                break;
+            }
+        }
+        return stato;
+    }
+
+    /**
+     * Calcola la loss media per esempio sull'insieme di validazione.
+     */
+    private double lossDiValidazione(Model modello) {
+        double somma = 0;
+        long esempi = 0;
+        for (int i = 0; i < validazione.batchesPerEpoch(); i++) {
+            DataSet batch = validazione.loadBatch(i);
+            somma += ModelArchitecture.score(modello, batch) * batch.numExamples();
+            esempi += batch.numExamples();
+        }
+        return esempi == 0 ? Double.NaN : somma / esempi;
+    }
+
+    /**
+     * Salva modello, updater e posizione dell'iteratore, poi elimina i checkpoint più vecchi.
+     */
+    private Checkpoint salvaCheckpoint(Model modello, int epoca, int batch, double migliore,
+                                       int senzaMiglioramento) throws IOException {
+        String nome = String.format("%se%04d-b%05d", PREFISSO_CHECKPOINT, epoca, batch);
+        File fileModello = new File(cartellaCheckpoint, nome + ".zip");
+        File temporaneo = new File(cartellaCheckpoint, nome + ".zip.tmp");
+        ModelSerializer.writeModel(modello, temporaneo, true);
+        Files.move(temporaneo.toPath(), fileModello.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Checkpoint checkpoint = new Checkpoint(fileModello.getName(), epoca, batch, config.seed(), config.variant(),
+                training.batchesPerEpoch(), nomiTraining, migliore, senzaMiglioramento, LocalDateTime.now().toString());
+        MAPPER.writeValue(new File(cartellaCheckpoint, nome + ".json"), checkpoint);
+
+        List<File> sidecar = elencoCheckpoint();
+        for (int i = 0; i < sidecar.size() - CHECKPOINT_CONSERVATI; i++) {
+            File json = sidecar.get(i);
+            Files.deleteIfExists(json.toPath());
+            Files.deleteIfExists(new File(cartellaCheckpoint, json.getName().replace(".json", ".zip")).toPath());
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Restituisce l'ultimo checkpoint se è compatibile con seed, architettura, dataset e batch dell'iteratore corrente.
+     *
+     * @return il checkpoint da cui riprendere, oppure null
+     */
+    private Checkpoint ultimoCheckpointCompatibile() throws IOException {
+        List<File> sidecar = elencoCheckpoint();
+        if (sidecar.isEmpty()) {
+            logger.accept("[INFO] Nessun checkpoint trovato: l'addestramento parte da zero.");
+            return null;
+        }
+        Checkpoint checkpoint = MAPPER.readValue(sidecar.get(sidecar.size() - 1), Checkpoint.class);
+        boolean compatibile = checkpoint.seed() == config.seed()
+                && checkpoint.variant() == config.variant()
+                && checkpoint.batchesPerEpoch() == training.batchesPerEpoch()
+                && checkpoint.trainingPairs().equals(nomiTraining)
+                && new File(cartellaCheckpoint, checkpoint.modelFile()).exists();
+        if (!compatibile) {
+            logger.accept("[ERRORE] L'ultimo checkpoint non corrisponde al dataset o ai parametri correnti: "
+                    + "l'addestramento parte da zero.");
+            return null;
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Elenca i file JSON dei checkpoint, dal più vecchio al più recente.
+     */
+    private List<File> elencoCheckpoint() {
+        File[] files = cartellaCheckpoint.listFiles((dir, name) -> name.startsWith(PREFISSO_CHECKPOINT)
+                && name.endsWith(".json"));
+        List<File> elenco = new ArrayList<>(files == null ? List.of() : List.of(files));
+        // I nomi contengono epoca e batch con zeri iniziali, quindi l'ordine alfabetico è cronologico
+        elenco.sort(Comparator.comparing(File::getName));
+        return elenco;
+    }
+
+    /**
+     * Rimuove checkpoint e modello migliore di un addestramento precedente.
+     */
+    private void rimuoviCheckpoint() throws IOException {
+        File[] files = cartellaCheckpoint.listFiles((dir, name) -> name.startsWith(PREFISSO_CHECKPOINT)
+                || name.equals(BEST_MODEL));
+        if (files != null) {
+            for (File file : files) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+}
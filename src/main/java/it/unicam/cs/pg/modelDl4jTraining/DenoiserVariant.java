@@ -0,0 +1,49 @@
+package it.unicam.cs.pg.modelDl4jTraining;
+
+/**
+ * Varianti di architettura della rete di denoising, costruite da {@link ModelArchitecture}.
+ */
+public enum DenoiserVariant {
+    /** Encoder-decoder originale con convoluzioni a 16 canali a piena risoluzione. */
+    ENCODER_DECODER("Encoder-decoder", false, 2),
+    /** U-Net a due livelli con skip connection tra encoder e decoder (ComputationGraph). */
+    UNET("U-Net", true, 4),
+    /** Stessa topologia dell'encoder-decoder con convoluzioni separabili depthwise. */
+    SEPARABLE("Separabile (leggera)", false, 2),
+    /** Rete poco profonda con pochi canali a piena risoluzione, per l'inferenza veloce. */
+    SHALLOW("Poco profonda (veloce)", false, 2);
+
+    private final String etichetta;
+    private final boolean graph;
+    private final int downsampling;
+
+    DenoiserVariant(String etichetta, boolean graph, int downsampling) {
+        this.etichetta = etichetta;
+        this.graph = graph;
+        this.downsampling = downsampling;
+    }
+
+    /**
+     * Indica se la variante è costruita come {@code ComputationGraph} anziché {@code MultiLayerNetwork}.
+     *
+     * @return true per le reti a grafo
+     */
+    public boolean isGraph() {
+        return graph;
+    }
+
+    /**
+     * Restituisce il fattore di sottocampionamento complessivo: altezza e larghezza dell'input
+     * devono esserne multipli perché l'output abbia la stessa dimensione dell'input.
+     *
+     * @return il fattore di sottocampionamento
+     */
+    public int getDownsampling() {
+        return downsampling;
+    }
+
+    @Override
+    public String toString() {
+        return etichetta;
+    }
+}
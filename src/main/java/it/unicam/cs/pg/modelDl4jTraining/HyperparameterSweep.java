@@ -0,0 +1,506 @@
+package it.unicam.cs.pg.modelDl4jTraining;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.conf.CacheMode;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.memory.MemoryUseMode;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Ricerca degli iperparametri della rete di denoising, eseguita a riga di comando senza interfaccia grafica.
+ * <p>
+ * Lo spazio di ricerca (architettura, learning rate, lato delle patch, batch) è letto da un file JSON ed esplorato
+ * a griglia o per campionamento casuale. Le prove vengono eseguite in parallelo entro un budget di core e di
+ * memoria: ogni prova riserva la memoria stimata da DL4J per il proprio modello e parte solo quando il budget lo
+ * consente, mentre i thread di ND4J vengono ripartiti tra le prove contemporanee. Ogni prova è addestrata da
+ * {@link DenoiserTrainer} con early stopping sulla validazione; inoltre, superate {@code graceEpochs} epoche,
+ * una prova viene interrotta se la sua migliore loss di validazione è peggiore della mediana delle altre prove
+ * alla stessa epoca.
+ * </p>
+ * <p>
+ * Al termine viene scritta una classifica (CSV e JSON) con la migliore loss di validazione di ogni configurazione
+ * e il tempo impiegato per raggiungere la qualità obiettivo: {@code targetLoss} se indicata, altrimenti il 5% in
+ * più della migliore loss ottenuta dall'intera ricerca.
+ * </p>
+ * Esempio di specifica:
+ * <pre>
+ * {
+ *   "mode": "random", "trials": 8, "maxEpochs": 6, "concurrentTrials": 2, "memoryBudgetMb": 4096,
+ *   "space": {
+ *     "variant": ["ENCODER_DECODER", "UNET", "SHALLOW"],
+ *     "learningRateRange": [1e-4, 1e-2],
+ *     "patchSize": [128, 256],
+ *     "batchSize": [4, 8]
+ *   }
+ * }
+ * </pre>
+ * Uso: {@code HyperparameterSweep <specifica.json> [cartella risultati]}
+ */
+public class HyperparameterSweep {
+
+    private static final String PROJECT_ROOT = System.getProperty("user.dir");
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private static final DateTimeFormatter FORMATO_NOME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final double TEXT_BIAS = 0.7;
+    private static final double TOLLERANZA_OBIETTIVO = 1.05;
+    private static final int CODA_PREFETCH = 2;
+    private static final int PAGINE_IN_MEMORIA = 2;
+    private static final double MB = 1024.0 * 1024.0;
+
+    /**
+     * Specifica della ricerca. I campi assenti nel JSON assumono i valori predefiniti.
+     *
+     * @param mode               "grid" (prodotto cartesiano dello spazio) o "random" (campionamento)
+     * @param trials             numero di prove in modalità random
+     * @param seed               seed del campionamento e degli iteratori
+     * @param maxEpochs          epoche massime per prova
+     * @param patience           epoche senza miglioramento prima dell'early stopping di una prova
+     * @param graceEpochs        epoche prima che una prova possa essere interrotta dal confronto con la mediana
+     * @param concurrentTrials   prove eseguite contemporaneamente
+     * @param cpuBudget          core a disposizione della ricerca, ripartiti tra le prove contemporanee
+     * @param memoryBudgetMb     memoria complessiva che le prove contemporanee possono riservare
+     * @param targetLoss         loss di validazione obiettivo per il tempo di raggiungimento della qualità
+     * @param validationFraction frazione delle coppie usata per la validazione
+     * @param patchesPerPage     patch estratte da ogni pagina in un'epoca
+     * @param tensorCache        se true, le coppie vengono lette dalla cache tensori invece che dai PNG
+     * @param space              spazio di ricerca
+     */
+    public record Spec(String mode, int trials, Long seed, int maxEpochs, int patience, int graceEpochs,
+                       int concurrentTrials, int cpuBudget, long memoryBudgetMb, Double targetLoss,
+                       double validationFraction, int patchesPerPage, Boolean tensorCache, SearchSpace space) {
+        public Spec {
+            mode = mode == null ? "grid" : mode.toLowerCase(Locale.ROOT);
+            if (!mode.equals("grid") && !mode.equals("random")) {
+                throw new IllegalArgumentException("Modalità di ricerca non valida (grid o random): " + mode);
+            }
+            trials = trials > 0 ? trials : 8;
+            seed = seed != null ? seed : 123L;
+            maxEpochs = maxEpochs > 0 ? maxEpochs : 5;
+            patience = patience > 0 ? patience : 2;
+            graceEpochs = graceEpochs > 0 ? graceEpochs : 1;
+            cpuBudget = cpuBudget > 0 ? cpuBudget : Runtime.getRuntime().availableProcessors();
+            concurrentTrials = Math.min(cpuBudget, concurrentTrials > 0 ? concurrentTrials : Math.max(1, cpuBudget / 2));
+            memoryBudgetMb = memoryBudgetMb > 0 ? memoryBudgetMb : memoriaFisicaMb() / 2;
+            validationFraction = validationFraction > 0 ? validationFraction : 0.2;
+            patchesPerPage = patchesPerPage > 0 ? patchesPerPage : 16;
+            tensorCache = tensorCache == null || tensorCache;
+            space = space != null ? space : new SearchSpace(null, null, null, null, null);
+        }
+    }
+
+    /**
+     * Spazio di ricerca: ogni dimensione è un elenco di valori ammessi.
+     *
+     * @param variant           architetture da provare
+     * @param learningRate      learning rate da provare
+     * @param learningRateRange intervallo [minimo, massimo] campionato in scala logaritmica in modalità random
+     *                          (sostituisce {@code learningRate})
+     * @param patchSize         lati delle patch, arrotondati al sottocampionamento dell'architettura
+     * @param batchSize         patch per batch
+     */
+    public record SearchSpace(List<DenoiserVariant> variant, List<Double> learningRate, double[] learningRateRange,
+                              List<Integer> patchSize, List<Integer> batchSize) {
+        public SearchSpace {
+            variant = variant == null || variant.isEmpty() ? List.of(DenoiserVariant.ENCODER_DECODER) : variant;
+            learningRate = learningRate == null || learningRate.isEmpty()
+                    ? List.of(ModelArchitecture.DEFAULT_LEARNING_RATE) : learningRate;
+            if (learningRateRange != null && (learningRateRange.length != 2 || learningRateRange[0] <= 0
+                    || learningRateRange[1] < learningRateRange[0])) {
+                throw new IllegalArgumentException("learningRateRange deve essere [minimo, massimo] con 0 < minimo <= massimo");
+            }
+            patchSize = patchSize == null || patchSize.isEmpty() ? List.of(256) : patchSize;
+            batchSize = batchSize == null || batchSize.isEmpty() ? List.of(8) : batchSize;
+        }
+    }
+
+    /**
+     * Configurazione di una prova.
+     *
+     * @param id           numero della prova (1-based)
+     * @param variant      architettura
+     * @param learningRate learning rate di Adam
+     * @param patchSize    lato delle patch, già multiplo del sottocampionamento dell'architettura
+     * @param batchSize    patch per batch
+     */
+    public record Trial(int id, DenoiserVariant variant, double learningRate, int patchSize, int batchSize) {
+    }
+
+    /**
+     * Riga della classifica.
+     *
+     * @param rank               posizione in classifica
+     * @param trial              configurazione della prova
+     * @param outcome            esito (completata, early stopping, interrotta sotto la mediana, fuori budget, errore)
+     * @param epochs             epoche addestrate
+     * @param bestValidationLoss migliore loss di validazione (NaN se nessuna epoca è stata completata)
+     * @param bestEpoch          epoca della migliore loss
+     * @param secondsToTarget    secondi per raggiungere la loss obiettivo (NaN se non raggiunta)
+     * @param totalSeconds       durata complessiva della prova
+     * @param estimatedMemoryMb  memoria riservata dalla prova nel budget
+     */
+    public record TrialResult(int rank, Trial trial, String outcome, int epochs, double bestValidationLoss,
+                              int bestEpoch, double secondsToTarget, double totalSeconds, double estimatedMemoryMb) {
+    }
+
+    /**
+     * Stato di una prova durante l'esecuzione: loss di validazione e istante di ogni epoca.
+     */
+    private static final class Esecuzione {
+        private final Trial prova;
+        private final List<Double> loss = new ArrayList<>();
+        private final List<Double> secondi = new ArrayList<>();
+        private String esito;
+        private double secondiTotali;
+        private double memoriaMb;
+
+        private Esecuzione(Trial prova) {
+            this.prova = prova;
+        }
+
+        private double migliore() {
+            return loss.stream().mapToDouble(Double::doubleValue).filter(l -> !Double.isNaN(l)).min().orElse(Double.NaN);
+        }
+    }
+
+    private final Spec spec;
+    private final List<DatasetPair> training;
+    private final List<DatasetPair> validazione;
+    private final TrainingPairLoader loader;
+    private final File cartella;
+    private final Semaphore memoria;
+    private final Map<Integer, List<Double>> miglioriPerEpoca = new HashMap<>();
+
+    /**
+     * Costruttore della ricerca.
+     *
+     * @param spec        specifica della ricerca
+     * @param training    coppie di training
+     * @param validazione coppie di validazione
+     * @param loader      strategia di caricamento delle coppie, condivisa dalle prove
+     * @param cartella    cartella dei risultati
+     */
+    public HyperparameterSweep(Spec spec, List<DatasetPair> training, List<DatasetPair> validazione,
+                               TrainingPairLoader loader, File cartella) {
+        this.spec = spec;
+        this.training = training;
+        this.validazione = validazione;
+        this.loader = loader;
+        this.cartella = cartella;
+        this.memoria = new Semaphore((int) Math.min(Integer.MAX_VALUE, spec.memoryBudgetMb()), true);
+    }
+
+    /**
+     * Punto d'ingresso della ricerca.
+     *
+     * @param args file JSON della specifica e cartella dei risultati (opzionale)
+     * @throws IOException          se la specifica, il dataset o i risultati non possono essere letti o scritti
+     * @throws InterruptedException se la ricerca viene interrotta
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.out.println("Uso: HyperparameterSweep <specifica.json> [cartella risultati]");
+            return;
+        }
+        Spec spec = MAPPER.readValue(new File(args[0]), Spec.class);
+        File cartella = args.length > 1 ? new File(args[1]) : new File(PROJECT_ROOT + File.separator + "dl4j model"
+                + File.separator + "sweep" + File.separator + "sweep-" + LocalDateTime.now().format(FORMATO_NOME));
+        if (!cartella.exists() && !cartella.mkdirs()) {
+            throw new IOException("Impossibile creare la cartella dei risultati: " + cartella.getAbsolutePath());
+        }
+
+        File datasetDir = new File(PROJECT_ROOT + File.separator + "dl4j dataset");
+        List<DatasetPair> coppie = DatasetPair.discover(new File(datasetDir, "originali"),
+                new File(datasetDir, "maschere"), System.out::println);
+        if (coppie.isEmpty()) {
+            System.out.println("[ERRORE] Nessuna coppia trovata in " + datasetDir.getAbsolutePath());
+            return;
+        }
+        TrainingPairLoader loader = TrainingImageLoader::loadPair;
+        if (spec.tensorCache()) {
+            loader = TensorCache.build(coppie, new File(datasetDir, "cache"), System.out::println);
+        }
+        DatasetPair.Split split = DatasetPair.split(coppie, spec.validationFraction(), spec.seed());
+        List<DatasetPair> validazione = split.validation();
+        if (validazione.isEmpty()) {
+            System.out.println("[INFO] Insieme di validazione vuoto: la loss di validazione è misurata su patch "
+                    + "diverse delle coppie di training.");
+            validazione = split.training();
+        }
+        MAPPER.writeValue(new File(cartella, "specifica.json"), spec);
+
+        List<TrialResult> classifica = new HyperparameterSweep(spec, split.training(), validazione, loader, cartella)
+                .run(System.out::println);
+        System.out.println();
+        System.out.printf("%-5s %-5s %-24s %10s %6s %6s %-28s %7s %11s %13s %9s%n", "Pos.", "Prova", "Architettura",
+                "LR", "Patch", "Batch", "Esito", "Epoche", "Loss val.", "Tempo obiet.", "Durata");
+        for (TrialResult r : classifica) {
+            System.out.printf(Locale.ROOT, "%-5d %-5d %-24s %10.2e %6d %6d %-28s %7d %11.5f %13s %8.1fs%n", r.rank(),
+                    r.trial().id(), r.trial().variant(), r.trial().learningRate(), r.trial().patchSize(),
+                    r.trial().batchSize(), r.outcome(), r.epochs(), r.bestValidationLoss(),
+                    Double.isNaN(r.secondsToTarget()) ? "-" : String.format(Locale.ROOT, "%.1fs", r.secondsToTarget()),
+                    r.totalSeconds());
+        }
+        System.out.println("[SUCCESSO] Classifica salvata in " + cartella.getAbsolutePath());
+    }
+
+    /**
+     * Esegue tutte le prove della specifica e scrive la classifica nella cartella dei risultati.
+     *
+     * @param logger destinazione dei messaggi di log
+     * @return la classifica, dalla migliore loss di validazione alla peggiore
+     * @throws IOException          se la classifica non può essere scritta
+     * @throws InterruptedException se la ricerca viene interrotta
+     */
+    public List<TrialResult> run(Consumer<String> logger) throws IOException, InterruptedException {
+        List<Trial> prove = generaProve();
+        int threadPerProva = Math.max(1, spec.cpuBudget() / spec.concurrentTrials());
+        // I thread OpenMP di ND4J sono globali: ogni operazione ne usa al massimo la quota di una prova
+        Nd4j.getEnvironment().setMaxThreads(threadPerProva);
+        logger.accept("[INFO] Ricerca " + spec.mode() + ": " + prove.size() + " prove, " + spec.concurrentTrials()
+                + " contemporanee con " + threadPerProva + " thread ND4J ciascuna, budget di memoria "
+                + spec.memoryBudgetMb() + " MB.");
+
+        ExecutorService esecutore = Executors.newFixedThreadPool(spec.concurrentTrials());
+        List<Future<Esecuzione>> future = new ArrayList<>();
+        for (Trial prova : prove) {
+            future.add(esecutore.submit(() -> esegui(prova, logger)));
+        }
+        esecutore.shutdown();
+        List<Esecuzione> esecuzioni = new ArrayList<>();
+        try {
+            for (Future<Esecuzione> f : future) {
+                esecuzioni.add(f.get());
+            }
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Prova terminata in modo inatteso", ex.getCause());
+        } finally {
+            esecutore.shutdownNow();
+        }
+
+        double obiettivo = spec.targetLoss() != null ? spec.targetLoss()
+                : esecuzioni.stream().mapToDouble(Esecuzione::migliore).filter(l -> !Double.isNaN(l)).min()
+                .orElse(Double.NaN) * TOLLERANZA_OBIETTIVO;
+        logger.accept(String.format("[INFO] Loss di validazione obiettivo per il tempo di raggiungimento: %.5f", obiettivo));
+        esecuzioni.sort(Comparator.comparingDouble((Esecuzione e) -> Double.isNaN(e.migliore())
+                ? Double.POSITIVE_INFINITY : e.migliore()).thenComparingDouble(e -> tempoObiettivo(e, obiettivo)));
+        List<TrialResult> classifica = new ArrayList<>();
+        for (Esecuzione e : esecuzioni) {
+            double migliore = e.migliore();
+            classifica.add(new TrialResult(classifica.size() + 1, e.prova, e.esito, e.loss.size(), migliore,
+                    e.loss.indexOf(migliore) + 1, tempoObiettivo(e, obiettivo), e.secondiTotali, e.memoriaMb));
+        }
+        scriviClassifica(classifica);
+        return classifica;
+    }
+
+    /**
+     * Costruisce l'elenco delle prove: prodotto cartesiano in modalità grid, campionamento in modalità random.
+     */
+    private List<Trial> generaProve() {
+        SearchSpace spazio = spec.space();
+        List<Trial> prove = new ArrayList<>();
+        if (spec.mode().equals("grid")) {
+            for (DenoiserVariant variante : spazio.variant()) {
+                for (double lr : spazio.learningRate()) {
+                    for (int patch : spazio.patchSize()) {
+                        for (int batch : spazio.batchSize()) {
+                            prove.add(new Trial(prove.size() + 1, variante, lr, arrotonda(patch, variante), batch));
+                        }
+                    }
+                }
+            }
+            return prove;
+        }
+        Random random = new Random(spec.seed());
+        for (int i = 0; i < spec.trials(); i++) {
+            DenoiserVariant variante = scegli(spazio.variant(), random);
+            double lr;
+            if (spazio.learningRateRange() != null) {
+                double min = Math.log(spazio.learningRateRange()[0]);
+                double max = Math.log(spazio.learningRateRange()[1]);
+                lr = Math.exp(min + random.nextDouble() * (max - min));
+            } else {
+                lr = scegli(spazio.learningRate(), random);
+            }
+            prove.add(new Trial(i + 1, variante, lr, arrotonda(scegli(spazio.patchSize(), random), variante),
+                    scegli(spazio.batchSize(), random)));
+        }
+        return prove;
+    }
+
+    /**
+     * Addestra una prova dopo aver riservato la sua memoria stimata nel budget.
+     */
+    private Esecuzione esegui(Trial prova, Consumer<String> logger) {
+        Esecuzione esecuzione = new Esecuzione(prova);
+        Consumer<String> log = messaggio -> logger.accept(String.format("[prova %02d] %s", prova.id(), messaggio));
+        try {
+            esecuzione.memoriaMb = stimaMemoriaMb(prova);
+        } catch (RuntimeException ex) {
+            esecuzione.esito = "errore: " + ex.getMessage();
+            log.accept("[ERRORE] Configurazione non valida: " + ex.getMessage());
+            return esecuzione;
+        }
+        int permessi = (int) Math.ceil(esecuzione.memoriaMb);
+        if (permessi > spec.memoryBudgetMb()) {
+            esecuzione.esito = "fuori budget di memoria";
+            log.accept(String.format("[ERRORE] Memoria stimata %.0f MB oltre il budget di %d MB: prova saltata.",
+                    esecuzione.memoriaMb, spec.memoryBudgetMb()));
+            return esecuzione;
+        }
+        memoria.acquireUninterruptibly(permessi);
+        long inizio = System.nanoTime();
+        try {
+            log.accept(String.format(Locale.ROOT, "[INFO] Avvio: %s, learning rate %.2e, patch %d, batch %d, "
+                            + "memoria stimata %.0f MB.", prova.variant(), prova.learningRate(), prova.patchSize(),
+                    prova.batchSize(), esecuzione.memoriaMb));
+            BatchSource sorgente = new RandomPatchDataSetIterator(training, prova.patchSize(), prova.batchSize(),
+                    spec.patchesPerPage(), TEXT_BIAS, spec.seed(), loader, null);
+            BatchSource val = new RandomPatchDataSetIterator(validazione, prova.patchSize(), prova.batchSize(),
+                    spec.patchesPerPage(), TEXT_BIAS, spec.seed() + 1, loader, null);
+            PrefetchDataSetIterator iteratore = new PrefetchDataSetIterator(sorgente, 1, CODA_PREFETCH);
+            // Checkpoint solo a fine epoca: la ricerca non riprende prove interrotte
+            DenoiserTrainer.Config config = new DenoiserTrainer.Config(spec.maxEpochs(), iteratore.batchesPerEpoch(),
+                    spec.patience(), 1, 1, CODA_PREFETCH, spec.seed(), prova.variant(), prova.learningRate());
+            DenoiserTrainer trainer = new DenoiserTrainer(iteratore, training, val,
+                    new File(cartella, String.format("prova-%02d", prova.id())), config, log, null);
+            trainer.setEpochObserver(riepilogo -> registraEpoca(esecuzione, riepilogo, inizio, log));
+            trainer.train(false);
+            if (esecuzione.esito == null) {
+                esecuzione.esito = esecuzione.loss.size() < spec.maxEpochs() ? "early stopping" : "completata";
+            }
+        } catch (Exception ex) {
+            esecuzione.esito = "errore: " + ex.getMessage();
+            log.accept("[ERRORE] Prova fallita: " + ex.getMessage());
+        } finally {
+            memoria.release(permessi);
+            esecuzione.secondiTotali = (System.nanoTime() - inizio) / 1e9;
+        }
+        log.accept(String.format("[INFO] Esito: %s, migliore loss di validazione %.5f in %.1f s.", esecuzione.esito,
+                esecuzione.migliore(), esecuzione.secondiTotali));
+        return esecuzione;
+    }
+
+    /**
+     * Registra la loss di validazione di un'epoca e decide se la prova deve proseguire: dopo le epoche di
+     * tolleranza, la prova viene interrotta se la sua migliore loss è peggiore della mediana delle altre prove
+     * alla stessa epoca (servono almeno due prove di confronto).
+     *
+     * @return true se la prova deve proseguire
+     */
+    private boolean registraEpoca(Esecuzione esecuzione, TrainingMetricsListener.EpochSummary riepilogo, long inizio,
+                                  Consumer<String> log) {
+        esecuzione.loss.add(riepilogo.validationLoss());
+        esecuzione.secondi.add((System.nanoTime() - inizio) / 1e9);
+        double migliore = esecuzione.migliore();
+        int epoca = esecuzione.loss.size();
+        List<Double> altre;
+        synchronized (miglioriPerEpoca) {
+            List<Double> registrate = miglioriPerEpoca.computeIfAbsent(epoca, e -> new ArrayList<>());
+            altre = new ArrayList<>(registrate);
+            registrate.add(migliore);
+        }
+        if (epoca < spec.graceEpochs() || altre.size() < 2 || Double.isNaN(migliore)) {
+            return true;
+        }
+        altre.sort(null);
+        int meta = altre.size() / 2;
+        double mediana = altre.size() % 2 == 1 ? altre.get(meta) : (altre.get(meta - 1) + altre.get(meta)) / 2;
+        if (migliore > mediana) {
+            esecuzione.esito = "interrotta sotto la mediana";
+            log.accept(String.format("[INFO] Loss %.5f peggiore della mediana %.5f delle altre prove all'epoca %d: "
+                    + "prova interrotta.", migliore, mediana, epoca));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stima la memoria di una prova: attivazioni, parametri e stato dell'updater stimati da DL4J per il batch di
+     * training, più i batch in coda e le pagine decodificate dall'iteratore a patch.
+     */
+    private double stimaMemoriaMb(Trial prova) {
+        Model modello = ModelArchitecture.createModel(prova.variant(), prova.learningRate());
+        long rete = ModelArchitecture.memoryReport(modello, InputType.convolutional(prova.patchSize(), prova.patchSize(), 3))
+                .getTotalMemoryBytes(prova.batchSize(), MemoryUseMode.TRAINING, CacheMode.NONE, DataType.FLOAT);
+        long batch = (long) prova.batchSize() * prova.patchSize() * prova.patchSize() * 4 * Float.BYTES;
+        long pagina = (long) ImagePreprocessor.TARGET_WIDTH * ImagePreprocessor.TARGET_HEIGHT * 4 * Float.BYTES;
+        return (rete + batch * (CODA_PREFETCH + 2) + pagina * PAGINE_IN_MEMORIA) / MB;
+    }
+
+    /**
+     * Restituisce i secondi impiegati dalla prova per raggiungere la loss obiettivo, oppure NaN.
+     */
+    private static double tempoObiettivo(Esecuzione esecuzione, double obiettivo) {
+        for (int i = 0; i < esecuzione.loss.size(); i++) {
+            if (esecuzione.loss.get(i) <= obiettivo) {
+                return esecuzione.secondi.get(i);
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Scrive la classifica in {@code classifica.csv} e {@code classifica.json}.
+     */
+    private void scriviClassifica(List<TrialResult> classifica) throws IOException {
+        MAPPER.writeValue(new File(cartella, "classifica.json"), classifica);
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(new File(cartella, "classifica.csv").toPath(),
+                StandardCharsets.UTF_8))) {
+            csv.println("posizione,prova,architettura,learning_rate,patch,batch,esito,epoche,loss_validazione,"
+                    + "epoca_migliore,secondi_obiettivo,secondi_totali,memoria_mb");
+            for (TrialResult r : classifica) {
+                csv.printf(Locale.ROOT, "%d,%d,%s,%.6g,%d,%d,\"%s\",%d,%s,%d,%s,%.1f,%.0f%n", r.rank(), r.trial().id(),
+                        r.trial().variant().name(), r.trial().learningRate(), r.trial().patchSize(),
+                        r.trial().batchSize(), r.outcome(), r.epochs(), valoreCsv(r.bestValidationLoss(), "%.6f"),
+                        r.bestEpoch(), valoreCsv(r.secondsToTarget(), "%.1f"), r.totalSeconds(), r.estimatedMemoryMb());
+            }
+        }
+    }
+
+    private static String valoreCsv(double valore, String formato) {
+        return Double.isNaN(valore) ? "" : String.format(Locale.ROOT, formato, valore);
+    }
+
+    private static int arrotonda(int patch, DenoiserVariant variante) {
+        int multiplo = variante.getDownsampling();
+        return Math.max(multiplo, patch - patch % multiplo);
+    }
+
+    private static <T> T scegli(List<T> valori, Random random) {
+        return valori.get(random.nextInt(valori.size()));
+    }
+
+    /**
+     * Memoria fisica totale della macchina in MB.
+     */
+    private static long memoriaFisicaMb() {
+        return (long) (((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getTotalMemorySize() / MB);
+    }
+}
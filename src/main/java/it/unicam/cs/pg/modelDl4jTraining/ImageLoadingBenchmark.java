@@ -0,0 +1,144 @@
+package it.unicam.cs.pg.modelDl4jTraining;
+
+import org.datavec.image.loader.NativeImageLoader;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Strumento a riga di comando che confronta il caricamento delle immagini del dataset in INDArray.
+ * <p>
+ * Il caricatore attuale di {@link TrainingImageLoader} copia i byte del raster direttamente nel tensore; quello
+ * precedente disegnava l'immagine su una tela con padding, la codificava in PNG e la decodificava con
+ * {@code NativeImageLoader}. Per ogni immagine del dataset il benchmark misura il tempo medio e i byte allocati
+ * sull'heap Java dal thread corrente con i due metodi, e verifica che i tensori prodotti siano identici.
+ * La lettura del file con ImageIO è comune ai due metodi ed è inclusa nelle misure.
+ * </p>
+ * Uso: {@code ImageLoadingBenchmark [ripetizioni]}
+ */
+public class ImageLoadingBenchmark {
+
+    private static final String PROJECT_ROOT = System.getProperty("user.dir");
+    private static final double MB = 1024.0 * 1024.0;
+
+    /**
+     * Metodo di caricamento da misurare.
+     */
+    private interface Caricatore {
+        INDArray carica(File file, int canali) throws IOException;
+    }
+
+    /**
+     * Tempo medio e byte allocati per immagine.
+     */
+    private record Misura(double msPerImmagine, double mbPerImmagine) {
+    }
+
+    /**
+     * Punto d'ingresso del benchmark.
+     *
+     * @param args numero di ripetizioni per immagine (opzionale)
+     * @throws IOException se le immagini non possono essere lette
+     */
+    public static void main(String[] args) throws IOException {
+        int ripetizioni = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        File datasetDir = new File(PROJECT_ROOT + File.separator + "dl4j dataset");
+        List<DatasetPair> coppie = DatasetPair.discover(new File(datasetDir, "originali"),
+                new File(datasetDir, "maschere"), System.out::println);
+        if (coppie.isEmpty()) {
+            System.out.println("[ERRORE] Nessuna coppia trovata in " + datasetDir.getAbsolutePath());
+            return;
+        }
+        com.sun.management.ThreadMXBean thread = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!thread.isThreadAllocatedMemorySupported()) {
+            System.out.println("[ERRORE] La JVM non supporta la misura della memoria allocata per thread.");
+            return;
+        }
+        thread.setThreadAllocatedMemoryEnabled(true);
+
+        List<File> file = new ArrayList<>();
+        List<Integer> canali = new ArrayList<>();
+        for (DatasetPair coppia : coppie) {
+            file.add(coppia.original());
+            canali.add(3);
+            file.add(coppia.mask());
+            canali.add(1);
+        }
+        System.out.println("[INFO] " + file.size() + " immagini, " + ripetizioni + " ripetizioni per immagine");
+
+        int differenti = 0;
+        for (int i = 0; i < file.size(); i++) {
+            INDArray atteso = caricaConPng(file.get(i), canali.get(i));
+            INDArray ottenuto = TrainingImageLoader.loadImageWithImageIO(file.get(i), canali.get(i));
+            if (!atteso.equals(ottenuto)) {
+                differenti++;
+                System.out.println("[ERRORE] Tensori diversi per " + file.get(i).getName());
+            }
+        }
+
+        Misura png = misura(ImageLoadingBenchmark::caricaConPng, file, canali, ripetizioni, thread);
+        Misura diretto = misura(TrainingImageLoader::loadImageWithImageIO, file, canali, ripetizioni, thread);
+
+        System.out.println();
+        System.out.printf("%-26s %12s %16s%n", "Caricatore", "ms/immagine", "heap/immagine");
+        System.out.printf("%-26s %12.1f %13.1f MB%n", "Round-trip PNG", png.msPerImmagine(), png.mbPerImmagine());
+        System.out.printf("%-26s %12.1f %13.1f MB%n", "Copia diretta del raster", diretto.msPerImmagine(),
+                diretto.mbPerImmagine());
+        System.out.printf("[INFO] Speedup %.2fx, %.1f MB di heap risparmiati per immagine%n",
+                png.msPerImmagine() / diretto.msPerImmagine(), png.mbPerImmagine() - diretto.mbPerImmagine());
+        System.out.println(differenti == 0
+                ? "[SUCCESSO] I due caricatori producono tensori identici."
+                : "[ERRORE] " + differenti + " immagini producono tensori diversi.");
+    }
+
+    /**
+     * Misura tempo medio e memoria heap allocata per immagine, dopo un passaggio di riscaldamento.
+     */
+    private static Misura misura(Caricatore caricatore, List<File> file, List<Integer> canali, int ripetizioni,
+                                 com.sun.management.ThreadMXBean thread) throws IOException {
+        for (int i = 0; i < file.size(); i++) {
+            caricatore.carica(file.get(i), canali.get(i));
+        }
+        long id = Thread.currentThread().getId();
+        long byteIniziali = thread.getThreadAllocatedBytes(id);
+        long inizio = System.nanoTime();
+        for (int r = 0; r < ripetizioni; r++) {
+            for (int i = 0; i < file.size(); i++) {
+                caricatore.carica(file.get(i), canali.get(i));
+            }
+        }
+        long durata = System.nanoTime() - inizio;
+        long allocati = thread.getThreadAllocatedBytes(id) - byteIniziali;
+        int caricamenti = ripetizioni * file.size();
+        return new Misura(durata / 1e6 / caricamenti, allocati / MB / caricamenti);
+    }
+
+    /**
+     * Caricatore precedente: padding su tela BGR, codifica PNG in memoria e decodifica con NativeImageLoader.
+     */
+    private static INDArray caricaConPng(File file, int canali) throws IOException {
+        BufferedImage bf = ImageIO.read(file);
+        int width = ImagePreprocessor.TARGET_WIDTH;
+        int height = ImagePreprocessor.TARGET_HEIGHT;
+        BufferedImage paddedImage = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g2d = paddedImage.createGraphics();
+        g2d.setColor(Color.WHITE);
+        g2d.fillRect(0, 0, width, height);
+        g2d.drawImage(bf, 0, 0, null);
+        g2d.dispose();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(paddedImage, "png", baos);
+        ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
+        return new NativeImageLoader(height, width, canali).asMatrix(bais);
+    }
+}
@@ -1,7 +1,6 @@
 package it.unicam.cs.pg.modelDl4jTraining;
 
 import javafx.scene.control.TextArea;
-import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfInt;
 import org.opencv.core.Rect;
@@ -13,47 +12,67 @@ import org.opencv.imgproc.Imgproc;
 import java.io.File;
 
 public class ImagePreprocessor {
+    /** Larghezza delle immagini in ingresso alla rete di denoising. */
+    public static final int TARGET_WIDTH = 1200;
+    /** Altezza delle immagini in ingresso alla rete di denoising. */
+    public static final int TARGET_HEIGHT = 1700;
+
     /**
-     * Carica, elabora e salva un'immagine mantenendo le proporzioni.
-     * <p>
-     * L’immagine viene letta dal file fornito; se ha 4 canali (trasparenza) o è in scala di grigi,
-     * viene convertita in BGR. Successivamente, l’immagine viene ridimensionata mantenendo le proporzioni
-     * e aggiunta di padding per raggiungere le dimensioni di 1200x1700 pixel. Infine, l’immagine viene
-     * salvata nella cartella di destinazione utilizzando una compressione PNG di livello 3.
-     * </p>
+     * Trasformazione di letterbox applicata a un'immagine: ridimensionamento proporzionale e centratura
+     * su una tela di dimensioni fisse con padding bianco.
      *
-     * @param file              il file immagine da processare
-     * @param destinationFolder la cartella in cui salvare l'immagine processata
-     * @param logger            un TextArea su cui registrare i messaggi (se null, i messaggi non vengono registrati)
+     * @param sourceWidth  larghezza dell'immagine originale
+     * @param sourceHeight altezza dell'immagine originale
+     * @param targetWidth  larghezza della tela
+     * @param targetHeight altezza della tela
+     * @param offsetX      ascissa dell'angolo superiore sinistro dell'immagine ridimensionata nella tela
+     * @param offsetY      ordinata dell'angolo superiore sinistro dell'immagine ridimensionata nella tela
+     * @param scaledWidth  larghezza dell'immagine ridimensionata
+     * @param scaledHeight altezza dell'immagine ridimensionata
      */
-    public static void processAndSaveImage(File file, String destinationFolder, TextArea logger) {
-        if (!file.exists() || file.length() == 0) {
-            if (logger != null) {
-                logger.appendText("[ERRORE] File non valido: " + file.getAbsolutePath() + "\n");
-            }
-            return;
-        }
-        Mat img = Imgcodecs.imread(file.getAbsolutePath(), Imgcodecs.IMREAD_UNCHANGED);
-        if (img.empty()) {
-            if (logger != null) {
-                logger.appendText("[ERRORE] OpenCV non ha caricato l'immagine: " + file.getAbsolutePath() + "\n");
-            }
-            return;
+    public record LetterboxTransform(int sourceWidth, int sourceHeight, int targetWidth, int targetHeight,
+                                     int offsetX, int offsetY, int scaledWidth, int scaledHeight) {
+
+        /**
+         * Restituisce la regione della tela occupata dall'immagine (padding escluso).
+         *
+         * @return il rettangolo della regione utile
+         */
+        public Rect contentRegion() {
+            return new Rect(offsetX, offsetY, scaledWidth, scaledHeight);
         }
-        // Se l'immagine ha 4 canali (alpha) o è in scala di grigi, la converte in BGR
+    }
+
+    /**
+     * Converte un'immagine a 1 o 4 canali in BGR a 3 canali; le immagini già BGR vengono restituite invariate.
+     *
+     * @param img immagine da convertire
+     * @return l'immagine in formato BGR
+     */
+    public static Mat toBgr(Mat img) {
         if (img.channels() == 4) {
             Mat converted = new Mat();
             Imgproc.cvtColor(img, converted, Imgproc.COLOR_BGRA2BGR);
-            img = converted;
+            return converted;
         } else if (img.channels() == 1) {
             Mat converted = new Mat();
             Imgproc.cvtColor(img, converted, Imgproc.COLOR_GRAY2BGR);
-            img = converted;
+            return converted;
         }
+        return img;
+    }
 
-        int targetWidth = 1200;
-        int targetHeight = 1700;
-        double aspectRatio = (double) img.width() / img.height();
+    /**
+     * Calcola la trasformazione di letterbox che porta un'immagine nelle dimensioni target mantenendo le proporzioni.
+     *
+     * @param width        larghezza dell'immagine originale
+     * @param height       altezza dell'immagine originale
+     * @param targetWidth  larghezza della tela
+     * @param targetHeight altezza della tela
+     * @return la trasformazione calcolata
+     */
+    public static LetterboxTransform computeLetterbox(int width, int height, int targetWidth, int targetHeight) {
+        double aspectRatio = (double) width / height;
 
         // Calcola le nuove dimensioni mantenendo le proporzioni
         int newWidth, newHeight;
@@ -65,20 +84,79 @@ public class ImagePreprocessor {
             newWidth = (int) (targetHeight * aspectRatio);
         }
 
+        // Calcola le coordinate per centrare l'immagine ridimensionata
+        int x = (targetWidth - newWidth) / 2;
+        int y = (targetHeight - newHeight) / 2;
+        return new LetterboxTransform(width, height, targetWidth, targetHeight, x, y, newWidth, newHeight);
+    }
+
+    /**
+     * Applica la trasformazione di letterbox: ridimensiona l'immagine e la centra su una tela con padding bianco.
+     *
+     * @param img       immagine BGR da trasformare
+     * @param transform trasformazione calcolata con {@link #computeLetterbox}
+     * @return l'immagine con le dimensioni della tela
+     */
+    public static Mat letterbox(Mat img, LetterboxTransform transform) {
         // Ridimensiona l'immagine mantenendo le proporzioni
         Mat imgResized = new Mat();
-        Imgproc.resize(img, imgResized, new Size(newWidth, newHeight));
+        Imgproc.resize(img, imgResized, new Size(transform.scaledWidth(), transform.scaledHeight()));
 
         // Crea una matrice di destinazione con le dimensioni target e padding bianco
-        Mat imgPadded = new Mat(targetHeight, targetWidth, CvType.CV_8UC3, new Scalar(255, 255, 255)); // Sfondo bianco
-
-        // Calcola le coordinate per centrare l'immagine ridimensionata
-        int x = (targetWidth - newWidth) / 2;
-        int y = (targetHeight - newHeight) / 2;
+        Mat imgPadded = new Mat(transform.targetHeight(), transform.targetWidth(), img.type(),
+                new Scalar(255, 255, 255)); // Sfondo bianco
 
         // Copia l'immagine ridimensionata nella matrice di destinazione
-        Rect roi = new Rect(x, y, newWidth, newHeight);
-        imgResized.copyTo(imgPadded.submat(roi));
+        imgResized.copyTo(imgPadded.submat(transform.contentRegion()));
+        return imgPadded;
+    }
+
+    /**
+     * Inverte la trasformazione di letterbox su un'immagine prodotta sulla tela (ad esempio la maschera della rete):
+     * rimuove il padding e riporta il contenuto alle dimensioni dell'immagine originale.
+     *
+     * @param canvas    immagine con le dimensioni della tela
+     * @param transform trasformazione applicata all'immagine originale
+     * @return l'immagine ritagliata e riscalata alla geometria originale
+     */
+    public static Mat invertLetterbox(Mat canvas, LetterboxTransform transform) {
+        Mat content = canvas.submat(transform.contentRegion());
+        Mat restored = new Mat();
+        int interpolation = transform.sourceWidth() > transform.scaledWidth() ? Imgproc.INTER_LINEAR : Imgproc.INTER_AREA;
+        Imgproc.resize(content, restored, new Size(transform.sourceWidth(), transform.sourceHeight()), 0, 0, interpolation);
+        return restored;
+    }
+
+    /**
+     * Carica, elabora e salva un'immagine mantenendo le proporzioni.
+     * <p>
+     * L’immagine viene letta dal file fornito; se ha 4 canali (trasparenza) o è in scala di grigi,
+     * viene convertita in BGR. Successivamente, l’immagine viene ridimensionata mantenendo le proporzioni
+     * e aggiunta di padding per raggiungere le dimensioni di 1200x1700 pixel. Infine, l’immagine viene
+     * salvata nella cartella di destinazione utilizzando una compressione PNG di livello 3.
+     * </p>
+     *
+     * @param file              il file immagine da processare
+     * @param destinationFolder la cartella in cui salvare l'immagine processata
+     * @param logger            un TextArea su cui registrare i messaggi (se null, i messaggi non vengono registrati)
+     */
+    public static void processAndSaveImage(File file, String destinationFolder, TextArea logger) {
+        if (!file.exists() || file.length() == 0) {
+            if (logger != null) {
+                logger.appendText("[ERRORE] File non valido: " + file.getAbsolutePath() + "\n");
+            }
+            return;
+        }
+        Mat img = Imgcodecs.imread(file.getAbsolutePath(), Imgcodecs.IMREAD_UNCHANGED);
+        if (img.empty()) {
+            if (logger != null) {
+                logger.appendText("[ERRORE] OpenCV non ha caricato l'immagine: " + file.getAbsolutePath() + "\n");
+            }
+            return;
+        }
+        // Converte in BGR e applica il letterbox alle dimensioni target con padding bianco
+        img = toBgr(img);
+        Mat imgPadded = letterbox(img, computeLetterbox(img.width(), img.height(), TARGET_WIDTH, TARGET_HEIGHT));
 
         // Mantiene l'estensione originale; qui si assume il formato PNG
         String fileName = file.getName();
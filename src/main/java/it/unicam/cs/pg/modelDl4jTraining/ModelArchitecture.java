@@ -1,30 +1,99 @@
 package it.unicam.cs.pg.modelDl4jTraining;
 
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.api.NeuralNetwork;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.WorkspaceMode;
+import org.deeplearning4j.nn.conf.graph.MergeVertex;
 import org.deeplearning4j.nn.conf.inputs.InputType;
 import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
 import org.deeplearning4j.nn.conf.layers.CnnLossLayer;
 import org.deeplearning4j.nn.conf.layers.Deconvolution2D;
+import org.deeplearning4j.nn.conf.layers.SeparableConvolution2D;
 import org.deeplearning4j.nn.conf.layers.SubsamplingLayer;
+import org.deeplearning4j.nn.conf.memory.MemoryReport;
+import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.nn.weights.WeightInit;
+import org.deeplearning4j.util.ModelSerializer;
 import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
 import org.nd4j.linalg.learning.config.Adam;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
+import org.nd4j.shade.jackson.databind.ObjectMapper;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Architetture della rete di denoising e operazioni comuni a {@code MultiLayerNetwork} e {@code ComputationGraph}.
+ * <p>
+ * Le varianti selezionabili sono descritte da {@link DenoiserVariant}: tutte sono completamente convoluzionali,
+ * ricevono un'immagine a 3 canali e producono una maschera a 1 canale della stessa dimensione.
+ * </p>
+ */
 public class ModelArchitecture {
 
+    private static final int HEIGHT = 1700;  // Altezza dell'input
+    private static final int WIDTH = 1200;   // Larghezza dell'input
+    private static final int CHANNELS = 3;   // Numero di canali (RGB)
+    public static final double DEFAULT_LEARNING_RATE = 1e-3;
+    private static final long SEED = 123;
+
+    /**
+     * Crea e inizializza la rete della variante indicata.
+     *
+     * @param variante architettura da costruire
+     * @return il modello inizializzato ({@code ComputationGraph} per la U-Net, {@code MultiLayerNetwork} altrimenti)
+     */
+    public static Model createModel(DenoiserVariant variante) {
+        return createModel(variante, DEFAULT_LEARNING_RATE);
+    }
+
+    /**
+     * Crea e inizializza la rete della variante indicata con un learning rate esplicito per Adam.
+     *
+     * @param variante     architettura da costruire
+     * @param learningRate learning rate dell'ottimizzatore
+     * @return il modello inizializzato ({@code ComputationGraph} per la U-Net, {@code MultiLayerNetwork} altrimenti)
+     */
+    public static Model createModel(DenoiserVariant variante, double learningRate) {
+        return switch (variante) {
+            case ENCODER_DECODER -> createEncoderDecoder(learningRate);
+            case UNET -> createUNet(learningRate);
+            case SEPARABLE -> createSeparable(learningRate);
+            case SHALLOW -> createShallow(learningRate);
+        };
+    }
+
     /**
      * Crea e inizializza la rete neurale (configurazione di esempio).
      *
      * @return il modello DL4J creato
      */
     public static MultiLayerNetwork createModel() {
-        int height = 1700; // Altezza dell'input
-        int width = 1200;  // Larghezza dell'input
-        int channels = 3;  // Numero di canali (RGB)
-        double lr = 1e-3;  // Learning rate
+        return createEncoderDecoder(DEFAULT_LEARNING_RATE);
+    }
+
+    /**
+     * Encoder-decoder originale.
+     *
+     * @param lr learning rate dell'ottimizzatore
+     * @return il modello inizializzato
+     */
+    private static MultiLayerNetwork createEncoderDecoder(double lr) {
+        int height = HEIGHT;
+        int width = WIDTH;
+        int channels = CHANNELS;
 
         MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
                 .seed(123) // Imposta un seed per la riproducibilità
@@ -95,4 +164,257 @@ public class ModelArchitecture {
         model.init();
         return model;
     }
-}
\ No newline at end of file
+
+    /**
+     * U-Net a due livelli: le feature dell'encoder a piena e a mezza risoluzione vengono concatenate a quelle del
+     * decoder, così che i tratti sottili del testo non vadano persi nel sottocampionamento.
+     *
+     * @param lr learning rate dell'ottimizzatore
+     * @return il grafo inizializzato
+     */
+    private static ComputationGraph createUNet(double lr) {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(SEED)
+                .updater(new Adam(lr))
+                .weightInit(WeightInit.XAVIER)
+                .graphBuilder()
+                .addInputs("input")
+                // Encoder
+                .addLayer("enc1a", conv3x3(CHANNELS, 16), "input")
+                .addLayer("enc1b", conv3x3(16, 16), "enc1a")
+                .addLayer("pool1", maxPool(), "enc1b")
+                .addLayer("enc2a", conv3x3(16, 32), "pool1")
+                .addLayer("enc2b", conv3x3(32, 32), "enc2a")
+                .addLayer("pool2", maxPool(), "enc2b")
+                // Collo di bottiglia a un quarto della risoluzione
+                .addLayer("centro1", conv3x3(32, 64), "pool2")
+                .addLayer("centro2", conv3x3(64, 64), "centro1")
+                // Decoder con skip connection
+                .addLayer("up2", upsample(64, 32), "centro2")
+                .addVertex("skip2", new MergeVertex(), "up2", "enc2b")
+                .addLayer("dec2a", conv3x3(64, 32), "skip2")
+                .addLayer("dec2b", conv3x3(32, 32), "dec2a")
+                .addLayer("up1", upsample(32, 16), "dec2b")
+                .addVertex("skip1", new MergeVertex(), "up1", "enc1b")
+                .addLayer("dec1a", conv3x3(32, 16), "skip1")
+                .addLayer("dec1b", conv3x3(16, 16), "dec1a")
+                // Output: maschera a 1 canale
+                .addLayer("maschera", outputConv(16), "dec1b")
+                .addLayer("loss", lossLayer(), "maschera")
+                .setOutputs("loss")
+                .setInputTypes(InputType.convolutional(HEIGHT, WIDTH, CHANNELS))
+                .build();
+
+        ComputationGraph model = new ComputationGraph(conf);
+        model.init();
+        return model;
+    }
+
+    /**
+     * Encoder-decoder con la stessa topologia della rete originale, ma con convoluzioni separabili depthwise
+     * dopo il primo strato: ogni filtro 3x3 lavora su un solo canale e la combinazione tra canali è affidata
+     * a una convoluzione 1x1, riducendo parametri e operazioni di circa un ordine di grandezza.
+     *
+     * @param lr learning rate dell'ottimizzatore
+     * @return il modello inizializzato
+     */
+    private static MultiLayerNetwork createSeparable(double lr) {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(SEED)
+                .updater(new Adam(lr))
+                .weightInit(WeightInit.XAVIER)
+                .list()
+                // Il primo strato resta standard: su 3 canali la versione separabile non fa risparmiare
+                .layer(conv3x3(CHANNELS, 16))
+                .layer(separable3x3(16, 16))
+                .layer(maxPool())
+                .layer(separable3x3(16, 32))
+                .layer(separable3x3(32, 32))
+                .layer(upsample(32, 16))
+                .layer(separable3x3(16, 16))
+                .layer(outputConv(16))
+                .layer(lossLayer())
+                .setInputType(InputType.convolutional(HEIGHT, WIDTH, CHANNELS))
+                .build();
+
+        MultiLayerNetwork model = new MultiLayerNetwork(conf);
+        model.init();
+        return model;
+    }
+
+    /**
+     * Rete poco profonda: un solo strato a piena risoluzione con 8 canali, il resto del calcolo a metà risoluzione.
+     *
+     * @param lr learning rate dell'ottimizzatore
+     * @return il modello inizializzato
+     */
+    private static MultiLayerNetwork createShallow(double lr) {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(SEED)
+                .updater(new Adam(lr))
+                .weightInit(WeightInit.XAVIER)
+                .list()
+                .layer(conv3x3(CHANNELS, 8))
+                .layer(maxPool())
+                .layer(conv3x3(8, 16))
+                .layer(upsample(16, 8))
+                .layer(outputConv(8))
+                .layer(lossLayer())
+                .setInputType(InputType.convolutional(HEIGHT, WIDTH, CHANNELS))
+                .build();
+
+        MultiLayerNetwork model = new MultiLayerNetwork(conf);
+        model.init();
+        return model;
+    }
+
+    private static ConvolutionLayer conv3x3(int nIn, int nOut) {
+        return new ConvolutionLayer.Builder(3, 3).nIn(nIn).nOut(nOut).stride(1, 1).padding(1, 1)
+                .activation(Activation.RELU).build();
+    }
+
+    private static SeparableConvolution2D separable3x3(int nIn, int nOut) {
+        return new SeparableConvolution2D.Builder(3, 3).nIn(nIn).nOut(nOut).depthMultiplier(1).stride(1, 1)
+                .padding(1, 1).activation(Activation.RELU).build();
+    }
+
+    private static SubsamplingLayer maxPool() {
+        return new SubsamplingLayer.Builder(SubsamplingLayer.PoolingType.MAX).kernelSize(2, 2).stride(2, 2).build();
+    }
+
+    private static Deconvolution2D upsample(int nIn, int nOut) {
+        return new Deconvolution2D.Builder(2, 2).nIn(nIn).nOut(nOut).stride(2, 2).padding(0, 0)
+                .activation(Activation.RELU).build();
+    }
+
+    private static ConvolutionLayer outputConv(int nIn) {
+        return new ConvolutionLayer.Builder(1, 1).nIn(nIn).nOut(1).stride(1, 1).activation(Activation.SIGMOID).build();
+    }
+
+    private static CnnLossLayer lossLayer() {
+        return new CnnLossLayer.Builder().lossFunction(LossFunctions.LossFunction.XENT).build();
+    }
+
+    /**
+     * Addestra il modello per un passaggio completo sull'iteratore.
+     *
+     * @param modello   rete da addestrare
+     * @param iteratore dati di training
+     */
+    public static void fit(Model modello, DataSetIterator iteratore) {
+        ((NeuralNetwork) modello).fit(iteratore);
+    }
+
+    /**
+     * Esegue l'inferenza in modalità test.
+     *
+     * @param modello rete da eseguire
+     * @param input   tensore di input [batch, canali, altezza, larghezza]
+     * @return la maschera prodotta dalla rete
+     */
+    public static INDArray output(Model modello, INDArray input) {
+        return modello instanceof ComputationGraph grafo ? grafo.outputSingle(false, input)
+                : ((MultiLayerNetwork) modello).output(input, false);
+    }
+
+    /**
+     * Esegue l'inferenza in modalità test allocando l'output nel workspace indicato.
+     *
+     * @param modello   rete da eseguire
+     * @param input     tensore di input [batch, canali, altezza, larghezza]
+     * @param workspace workspace in cui allocare l'output (null per allocarlo fuori dai workspace)
+     * @return la maschera prodotta dalla rete
+     */
+    public static INDArray output(Model modello, INDArray input, MemoryWorkspace workspace) {
+        return modello instanceof ComputationGraph grafo ? grafo.output(false, workspace, input)[0]
+                : ((MultiLayerNetwork) modello).output(input, false, workspace);
+    }
+
+    /**
+     * Restituisce gli strati del modello: in ordine per le reti sequenziali, in ordine di indice per i grafi.
+     *
+     * @param modello rete da analizzare
+     * @return gli strati con i relativi parametri
+     */
+    public static Layer[] layers(Model modello) {
+        return modello instanceof ComputationGraph grafo ? grafo.getLayers() : ((MultiLayerNetwork) modello).getLayers();
+    }
+
+    /**
+     * Calcola la loss del modello su un batch, senza aggiornare i parametri.
+     *
+     * @param modello rete da valutare
+     * @param batch   batch di input ed etichette
+     * @return la loss media del batch
+     */
+    public static double score(Model modello, DataSet batch) {
+        if (!(modello instanceof ComputationGraph grafo)) {
+            return ((MultiLayerNetwork) modello).score(batch);
+        }
+        // In DL4J 1.0.0-beta7 ComputationGraph.score con CnnLossLayer fallisce se il workspace di inferenza è attivo
+        // ("WS_LAYER_WORKING_MEM is not open"): la loss viene calcolata senza workspace
+        ComputationGraphConfiguration conf = grafo.getConfiguration();
+        WorkspaceMode modo = conf.getInferenceWorkspaceMode();
+        conf.setInferenceWorkspaceMode(WorkspaceMode.NONE);
+        try {
+            return grafo.score(batch);
+        } finally {
+            conf.setInferenceWorkspaceMode(modo);
+        }
+    }
+
+    /**
+     * Restituisce il report di memoria stimato da DL4J per un input della dimensione indicata.
+     *
+     * @param modello rete da analizzare
+     * @param input   tipo dell'input
+     * @return il report di memoria
+     */
+    public static MemoryReport memoryReport(Model modello, InputType input) {
+        return modello instanceof ComputationGraph grafo ? grafo.getConfiguration().getMemoryReport(input)
+                : ((MultiLayerNetwork) modello).getLayerWiseConfigurations().getMemoryReport(input);
+    }
+
+    /**
+     * Carica un modello salvato con {@link ModelSerializer}.
+     *
+     * @param file        file ZIP del modello
+     * @param variante    variante con cui il modello è stato creato
+     * @param loadUpdater se true, ripristina anche lo stato dell'updater
+     * @return il modello caricato
+     * @throws IOException se il file non può essere letto
+     */
+    public static Model restore(File file, DenoiserVariant variante, boolean loadUpdater) throws IOException {
+        return variante.isGraph() ? ModelSerializer.restoreComputationGraph(file, loadUpdater)
+                : ModelSerializer.restoreMultiLayerNetwork(file, loadUpdater);
+    }
+
+    /**
+     * Carica un modello salvato con {@link ModelSerializer} senza conoscerne la variante: il tipo di rete
+     * ({@code ComputationGraph} o {@code MultiLayerNetwork}) viene ricavato dalla configurazione salvata nel file.
+     *
+     * @param file        file ZIP del modello
+     * @param loadUpdater se true, ripristina anche lo stato dell'updater
+     * @return il modello caricato
+     * @throws IOException se il file non può essere letto o non contiene un modello DL4J
+     */
+    public static Model load(File file, boolean loadUpdater) throws IOException {
+        return isGraph(file) ? ModelSerializer.restoreComputationGraph(file, loadUpdater)
+                : ModelSerializer.restoreMultiLayerNetwork(file, loadUpdater);
+    }
+
+    /**
+     * Indica se il file contiene un {@code ComputationGraph}: solo la sua configurazione ha l'elenco dei vertici.
+     */
+    private static boolean isGraph(File file) throws IOException {
+        try (ZipFile zip = new ZipFile(file)) {
+            ZipEntry configurazione = zip.getEntry(ModelSerializer.CONFIGURATION_JSON);
+            if (configurazione == null) {
+                throw new IOException("Il file non contiene un modello DL4J: " + file.getName());
+            }
+            try (InputStream in = zip.getInputStream(configurazione)) {
+                return new ObjectMapper().readTree(in).has("vertices");
+            }
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package it.unicam.cs.pg.modelDl4jTraining;
+
+import onnx.OnnxMl;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.conf.ConvolutionMode;
+import org.deeplearning4j.nn.conf.layers.BaseLayer;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.Deconvolution2D;
+import org.deeplearning4j.nn.conf.layers.PoolingType;
+import org.deeplearning4j.nn.conf.layers.SeparableConvolution2D;
+import org.deeplearning4j.nn.conf.layers.SubsamplingLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.graph.vertex.GraphVertex;
+import org.deeplearning4j.nn.graph.vertex.VertexIndices;
+import org.deeplearning4j.nn.graph.vertex.impl.MergeVertex;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.activations.IActivation;
+import org.nd4j.linalg.activations.impl.ActivationIdentity;
+import org.nd4j.linalg.activations.impl.ActivationReLU;
+import org.nd4j.linalg.activations.impl.ActivationSigmoid;
+import org.nd4j.linalg.activations.impl.ActivationTanH;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.shade.protobuf.ByteString;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Esporta in formato ONNX la rete di denoising costruita da {@link ModelArchitecture}.
+ * <p>
+ * Sono supportate tutte le varianti di {@link DenoiserVariant}: le reti sequenziali e i grafi con un solo input e
+ * un solo output, le cui skip connection ({@code MergeVertex}) diventano nodi {@code Concat}. Gli strati supportati
+ * sono convoluzioni, convoluzioni separabili (esportate come convoluzione depthwise a gruppi seguita da una
+ * convoluzione 1x1), deconvoluzioni, pooling e strato di perdita CNN (esportato come sola attivazione). Input e
+ * output usano il formato
+ * NCHW di DL4J con batch, altezza e larghezza dinamici, per cui il modello esportato accetta pagine
+ * di qualsiasi dimensione pari.
+ * </p>
+ * Uso: {@code OnnxExporter [modello.zip] [modello.onnx]}
+ */
+public class OnnxExporter {
+
+    private static final String PROJECT_ROOT = System.getProperty("user.dir");
+    public static final String INPUT_NAME = "input";
+    public static final String OUTPUT_NAME = "output";
+    private static final int OPSET_VERSION = 11;
+    private static final int IR_VERSION = 6;
+
+    /**
+     * Punto d'ingresso per l'esportazione da riga di comando.
+     *
+     * @param args percorso del modello DL4J e percorso del file ONNX da creare (entrambi opzionali)
+     * @throws IOException se il modello non può essere letto o il file ONNX scritto
+     */
+    public static void main(String[] args) throws IOException {
+        File modelDir = new File(PROJECT_ROOT + File.separator + "dl4j model");
+        File fileModello = args.length > 0 ? new File(args[0]) : new File(modelDir, "modelloAddestrato.zip");
+        File fileOnnx = args.length > 1 ? new File(args[1]) : new File(modelDir, "modelloAddestrato.onnx");
+        Model modello = ModelArchitecture.load(fileModello, false);
+        export(modello, fileOnnx);
+        System.out.println("[SUCCESSO] Modello ONNX salvato in: " + fileOnnx.getAbsolutePath());
+    }
+
+    /**
+     * Converte la rete DL4J in un modello ONNX e lo scrive su file.
+     *
+     * @param modello rete DL4J da esportare ({@code MultiLayerNetwork} o {@code ComputationGraph})
+     * @param file    file ONNX di destinazione
+     * @throws IOException se la scrittura del file fallisce
+     */
+    public static void export(Model modello, File file) throws IOException {
+        OnnxMl.GraphProto.Builder graph = OnnxMl.GraphProto.newBuilder().setName("denoiser");
+        Layer primo;
+        Layer ultimo;
+        String corrente;
+        if (modello instanceof ComputationGraph grafo) {
+            if (grafo.getNumInputArrays() != 1 || grafo.getNumOutputArrays() != 1) {
+                throw new IllegalArgumentException("Esportazione ONNX possibile solo per grafi con un input e un output");
+            }
+            primo = primoStrato(grafo);
+            ultimo = grafo.getOutputLayer(0);
+            corrente = addGraph(graph, grafo);
+        } else {
+            MultiLayerNetwork rete = (MultiLayerNetwork) modello;
+            primo = rete.getLayer(0);
+            ultimo = rete.getLayer(rete.getnLayers() - 1);
+            corrente = INPUT_NAME;
+            for (int i = 0; i < rete.getnLayers(); i++) {
+                corrente = addLayer(graph, rete.getLayer(i), "layer" + i, corrente);
+            }
+        }
+        long canaliInput = ((ConvolutionLayer) primo.conf().getLayer()).getNIn();
+        graph.addInput(valueInfo(INPUT_NAME, canaliInput));
+        // Nodo finale che assegna all'uscita il nome pubblico atteso dai backend di inferenza
+        graph.addNode(OnnxMl.NodeProto.newBuilder()
+                .setName("output_identity").setOpType("Identity")
+                .addInput(corrente).addOutput(OUTPUT_NAME));
+        long canaliOutput = ultimo.conf().getLayer() instanceof ConvolutionLayer c ? c.getNOut() : 1;
+        graph.addOutput(valueInfo(OUTPUT_NAME, canaliOutput));
+
+        OnnxMl.ModelProto model = OnnxMl.ModelProto.newBuilder()
+                .setIrVersion(IR_VERSION)
+                .setProducerName("OCR-Historica-Java")
+                .setProducerVersion("1.0")
+                .addOpsetImport(OnnxMl.OperatorSetIdProto.newBuilder().setDomain("").setVersion(OPSET_VERSION))
+                .setGraph(graph)
+                .build();
+        try (OutputStream out = new FileOutputStream(file)) {
+            model.writeTo(out);
+        }
+    }
+
+    /**
+     * Aggiunge al grafo ONNX i vertici di un {@code ComputationGraph} in ordine topologico.
+     *
+     * @return il nome del tensore prodotto dal vertice di output
+     */
+    private static String addGraph(OnnxMl.GraphProto.Builder graph, ComputationGraph grafo) {
+        GraphVertex[] vertici = grafo.getVertices();
+        String[] uscite = new String[vertici.length];
+        for (int indice : grafo.topologicalSortOrder()) {
+            GraphVertex vertice = vertici[indice];
+            if (vertice.isInputVertex()) {
+                uscite[indice] = INPUT_NAME;
+                continue;
+            }
+            VertexIndices[] ingressi = vertice.getInputVertices();
+            String nome = vertice.getVertexName();
+            if (vertice.hasLayer()) {
+                uscite[indice] = addLayer(graph, vertice.getLayer(), nome, uscite[ingressi[0].getVertexIndex()]);
+            } else if (vertice instanceof MergeVertex) {
+                // La concatenazione di DL4J per input convoluzionali avviene lungo i canali (asse 1 in NCHW)
+                OnnxMl.NodeProto.Builder node = OnnxMl.NodeProto.newBuilder()
+                        .setName(nome).setOpType("Concat").addOutput(nome + "_out")
+                        .addAttribute(OnnxMl.AttributeProto.newBuilder()
+                                .setName("axis").setType(OnnxMl.AttributeProto.AttributeType.INT).setI(1));
+                for (VertexIndices ingresso : ingressi) {
+                    node.addInput(uscite[ingresso.getVertexIndex()]);
+                }
+                graph.addNode(node);
+                uscite[indice] = nome + "_out";
+            } else {
+                throw new IllegalArgumentException("Vertice non supportato per l'esportazione ONNX: "
+                        + vertice.getClass().getSimpleName());
+            }
+        }
+        String output = grafo.getConfiguration().getNetworkOutputs().get(0);
+        return uscite[grafo.getVertex(output).getVertexIndex()];
+    }
+
+    /**
+     * Restituisce lo strato che riceve l'input del grafo, da cui si ricava il numero di canali in ingresso.
+     */
+    private static Layer primoStrato(ComputationGraph grafo) {
+        GraphVertex[] vertici = grafo.getVertices();
+        for (int indice : grafo.topologicalSortOrder()) {
+            GraphVertex vertice = vertici[indice];
+            if (vertice.hasLayer() && vertici[vertice.getInputVertices()[0].getVertexIndex()].isInputVertex()) {
+                return vertice.getLayer();
+            }
+        }
+        throw new IllegalArgumentException("Il grafo non ha strati collegati al suo input");
+    }
+
+    /**
+     * Aggiunge al grafo i nodi di uno strato DL4J seguiti dalla sua funzione di attivazione.
+     *
+     * @return il nome del tensore prodotto dallo strato
+     */
+    private static String addLayer(OnnxMl.GraphProto.Builder graph, Layer layer, String nome, String input) {
+        org.deeplearning4j.nn.conf.layers.Layer conf = layer.conf().getLayer();
+        String corrente = input;
+        // SeparableConvolution2D e Deconvolution2D estendono ConvolutionLayer: vanno riconosciute prima
+        if (conf instanceof Deconvolution2D deconv) {
+            corrente = addConvolution(graph, layer, deconv, "ConvTranspose", nome, corrente);
+        } else if (conf instanceof SeparableConvolution2D separabile) {
+            corrente = addSeparableConvolution(graph, layer, separabile, nome, corrente);
+        } else if (conf instanceof ConvolutionLayer conv) {
+            corrente = addConvolution(graph, layer, conv, "Conv", nome, corrente);
+        } else if (conf instanceof SubsamplingLayer pool) {
+            corrente = addPooling(graph, pool, nome, corrente);
+        }
+        if (conf instanceof BaseLayer base) {
+            corrente = addActivation(graph, base.getActivationFn(), nome, corrente);
+        } else if (!(conf instanceof SubsamplingLayer)) {
+            throw new IllegalArgumentException("Strato non supportato per l'esportazione ONNX: "
+                    + conf.getClass().getSimpleName());
+        }
+        return corrente;
+    }
+
+    /**
+     * Aggiunge al grafo una convoluzione separabile come convoluzione depthwise (un gruppo per canale di input)
+     * seguita dalla convoluzione 1x1 che combina i canali, con il bias dello strato.
+     */
+    private static String addSeparableConvolution(OnnxMl.GraphProto.Builder graph, Layer layer,
+                                                  SeparableConvolution2D conf, String nome, String input) {
+        // DL4J memorizza i pesi depthwise come [moltiplicatore, nIn, kH, kW]; ONNX vuole [nIn * moltiplicatore, 1, kH, kW]
+        // con i filtri dello stesso canale di input consecutivi
+        INDArray depthwise = layer.getParam("W");
+        long moltiplicatore = depthwise.size(0);
+        long canali = depthwise.size(1);
+        String pesiDepthwise = nome + "_dw_W";
+        graph.addInitializer(tensor(pesiDepthwise, depthwise.permute(1, 0, 2, 3),
+                new long[]{canali * moltiplicatore, 1, depthwise.size(2), depthwise.size(3)}));
+        OnnxMl.NodeProto.Builder node = OnnxMl.NodeProto.newBuilder()
+                .setName(nome + "_dw").setOpType("Conv")
+                .addInput(input).addInput(pesiDepthwise).addOutput(nome + "_dw_out")
+                .addAttribute(ints("kernel_shape", conf.getKernelSize()))
+                .addAttribute(ints("strides", conf.getStride()))
+                .addAttribute(ints("dilations", conf.getDilation()))
+                .addAttribute(OnnxMl.AttributeProto.newBuilder()
+                        .setName("group").setType(OnnxMl.AttributeProto.AttributeType.INT).setI(canali));
+        addPadding(node, conf.getConvolutionMode(), conf.getPadding());
+        graph.addNode(node);
+
+        String pesiPointwise = nome + "_pw_W";
+        graph.addInitializer(tensor(pesiPointwise, layer.getParam("pW"), layer.getParam("pW").shape()));
+        OnnxMl.NodeProto.Builder pointwise = OnnxMl.NodeProto.newBuilder()
+                .setName(nome + "_pw").setOpType("Conv")
+                .addInput(nome + "_dw_out").addInput(pesiPointwise).addOutput(nome + "_out")
+                .addAttribute(ints("kernel_shape", new int[]{1, 1}));
+        if (conf.hasBias()) {
+            String bias = nome + "_b";
+            INDArray b = layer.getParam("b");
+            graph.addInitializer(tensor(bias, b, new long[]{b.length()}));
+            pointwise.addInput(bias);
+        }
+        graph.addNode(pointwise);
+        return nome + "_out";
+    }
+
+    /**
+     * Aggiunge al grafo un nodo di convoluzione (o convoluzione trasposta) con i relativi pesi.
+     */
+    private static String addConvolution(OnnxMl.GraphProto.Builder graph, Layer layer, ConvolutionLayer conf,
+                                         String opType, String nome, String input) {
+        String pesi = nome + "_W";
+        graph.addInitializer(tensor(pesi, layer.getParam("W"), layer.getParam("W").shape()));
+        OnnxMl.NodeProto.Builder node = OnnxMl.NodeProto.newBuilder()
+                .setName(nome).setOpType(opType)
+                .addInput(input).addInput(pesi).addOutput(nome + "_out")
+                .addAttribute(ints("kernel_shape", conf.getKernelSize()))
+                .addAttribute(ints("strides", conf.getStride()));
+        if (!"ConvTranspose".equals(opType)) {
+            node.addAttribute(ints("dilations", conf.getDilation()));
+        }
+        addPadding(node, conf.getConvolutionMode(), conf.getPadding());
+        if (conf.hasBias()) {
+            String bias = nome + "_b";
+            INDArray b = layer.getParam("b");
+            graph.addInitializer(tensor(bias, b, new long[]{b.length()}));
+            node.addInput(bias);
+        }
+        graph.addNode(node);
+        return nome + "_out";
+    }
+
+    /**
+     * Aggiunge al grafo un nodo di pooling massimo o medio.
+     */
+    private static String addPooling(OnnxMl.GraphProto.Builder graph, SubsamplingLayer conf, String nome, String input) {
+        String opType;
+        if (conf.getPoolingType() == PoolingType.MAX) {
+            opType = "MaxPool";
+        } else if (conf.getPoolingType() == PoolingType.AVG) {
+            opType = "AveragePool";
+        } else {
+            throw new IllegalArgumentException("Tipo di pooling non supportato: " + conf.getPoolingType());
+        }
+        OnnxMl.NodeProto.Builder node = OnnxMl.NodeProto.newBuilder()
+                .setName(nome).setOpType(opType)
+                .addInput(input).addOutput(nome + "_out")
+                .addAttribute(ints("kernel_shape", conf.getKernelSize()))
+                .addAttribute(ints("strides", conf.getStride()));
+        addPadding(node, conf.getConvolutionMode(), conf.getPadding());
+        graph.addNode(node);
+        return nome + "_out";
+    }
+
+    /**
+     * Aggiunge al grafo la funzione di attivazione dello strato, se diversa dall'identità.
+     */
+    private static String addActivation(OnnxMl.GraphProto.Builder graph, IActivation activation, String nome, String input) {
+        String opType;
+        if (activation == null || activation instanceof ActivationIdentity) {
+            return input;
+        } else if (activation instanceof ActivationReLU) {
+            opType = "Relu";
+        } else if (activation instanceof ActivationSigmoid) {
+            opType = "Sigmoid";
+        } else if (activation instanceof ActivationTanH) {
+            opType = "Tanh";
+        } else {
+            throw new IllegalArgumentException("Attivazione non supportata per l'esportazione ONNX: " + activation);
+        }
+        graph.addNode(OnnxMl.NodeProto.newBuilder()
+                .setName(nome + "_act").setOpType(opType)
+                .addInput(input).addOutput(nome + "_act_out"));
+        return nome + "_act_out";
+    }
+
+    /**
+     * Imposta il padding del nodo: esplicito in modalità Truncate/Strict, automatico in modalità Same.
+     */
+    private static void addPadding(OnnxMl.NodeProto.Builder node, ConvolutionMode mode, int[] padding) {
+        if (mode == ConvolutionMode.Same) {
+            node.addAttribute(OnnxMl.AttributeProto.newBuilder()
+                    .setName("auto_pad").setType(OnnxMl.AttributeProto.AttributeType.STRING)
+                    .setS(ByteString.copyFromUtf8("SAME_UPPER")));
+        } else {
+            node.addAttribute(ints("pads", new int[]{padding[0], padding[1], padding[0], padding[1]}));
+        }
+    }
+
+    /**
+     * Crea un attributo ONNX di tipo lista di interi.
+     */
+    private static OnnxMl.AttributeProto ints(String nome, int[] valori) {
+        OnnxMl.AttributeProto.Builder attr = OnnxMl.AttributeProto.newBuilder()
+                .setName(nome).setType(OnnxMl.AttributeProto.AttributeType.INTS);
+        for (int v : valori) {
+            attr.addInts(v);
+        }
+        return attr.build();
+    }
+
+    /**
+     * Serializza un parametro della rete come tensore ONNX FP32 little-endian.
+     */
+    private static OnnxMl.TensorProto tensor(String nome, INDArray valori, long[] shape) {
+        float[] dati = valori.castTo(DataType.FLOAT).dup('c').data().asFloat();
+        ByteBuffer buffer = ByteBuffer.allocate(dati.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(dati);
+        OnnxMl.TensorProto.Builder tensor = OnnxMl.TensorProto.newBuilder()
+                .setName(nome)
+                .setDataType(OnnxMl.TensorProto.DataType.FLOAT)
+                .setRawData(ByteString.copyFrom(buffer.array()));
+        for (long dim : shape) {
+            tensor.addDims(dim);
+        }
+        return tensor.build();
+    }
+
+    /**
+     * Descrive un tensore di input o output NCHW con batch, altezza e larghezza simbolici.
+     */
+    private static OnnxMl.ValueInfoProto valueInfo(String nome, long canali) {
+        OnnxMl.TensorShapeProto.Builder shape = OnnxMl.TensorShapeProto.newBuilder()
+                .addDim(OnnxMl.TensorShapeProto.Dimension.newBuilder().setDimParam("batch"))
+                .addDim(OnnxMl.TensorShapeProto.Dimension.newBuilder().setDimValue(canali))
+                .addDim(OnnxMl.TensorShapeProto.Dimension.newBuilder().setDimParam("height"))
+                .addDim(OnnxMl.TensorShapeProto.Dimension.newBuilder().setDimParam("width"));
+        return OnnxMl.ValueInfoProto.newBuilder()
+                .setName(nome)
+                .setType(OnnxMl.TypeProto.newBuilder().setTensorType(OnnxMl.TypeProto.Tensor.newBuilder()
+                        .setElemType(OnnxMl.TensorProto.DataType.FLOAT)
+                        .setShape(shape)))
+                .build();
+    }
+}
@@ -0,0 +1,106 @@
+package it.unicam.cs.pg.modelDl4jTraining;
+
+import org.deeplearning4j.datasets.iterator.ExistingDataSetIterator;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.parallelism.ParallelWrapper;
+import org.nd4j.linalg.dataset.DataSet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Strumento a riga di comando che misura l'efficienza di scalatura dell'addestramento data-parallel.
+ * <p>
+ * Estrae dal dataset un insieme fisso di batch di patch e lo tiene in memoria, così che la misura riguardi
+ * solo il calcolo. Addestra poi una replica singola ({@code model.fit}) e {@link ParallelWrapper} con ciascun
+ * numero di worker indicato, riportando esempi al secondo, speedup ed efficienza
+ * (throughput con N worker diviso N volte il throughput della replica singola).
+ * </p>
+ * Uso: {@code ParallelTrainingBenchmark [worker (>= 2),...] [frequenzaMedia] [epoche] [lato patch] [batch] [numero batch]}
+ */
+public class ParallelTrainingBenchmark {
+
+    private static final String PROJECT_ROOT = System.getProperty("user.dir");
+    private static final long SEED = 123;
+
+    /**
+     * Punto d'ingresso del benchmark.
+     *
+     * @param args elenco di worker, frequenza di media, epoche, lato patch, batch e numero di batch (tutti opzionali)
+     */
+    public static void main(String[] args) {
+        int cpu = Runtime.getRuntime().availableProcessors();
+        String elencoWorker = args.length > 0 ? args[0] : (cpu > 2 ? "2," + cpu : "2");
+        int frequenzaMedia = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int epoche = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        int latoPatch = args.length > 3 ? Integer.parseInt(args[3]) : 128;
+        int batch = args.length > 4 ? Integer.parseInt(args[4]) : 8;
+        int numeroBatch = args.length > 5 ? Integer.parseInt(args[5]) : 4 * cpu;
+
+        File datasetDir = new File(PROJECT_ROOT + File.separator + "dl4j dataset");
+        List<DatasetPair> coppie = DatasetPair.discover(new File(datasetDir, "originali"),
+                new File(datasetDir, "maschere"), System.out::println);
+        if (coppie.isEmpty()) {
+            System.out.println("[ERRORE] Nessuna coppia trovata in " + datasetDir.getAbsolutePath());
+            return;
+        }
+        int patchPerPagina = (numeroBatch * batch + coppie.size() - 1) / coppie.size();
+        RandomPatchDataSetIterator sorgente = new RandomPatchDataSetIterator(coppie, latoPatch, batch,
+                patchPerPagina, 0.7, SEED, null);
+        List<DataSet> batches = new ArrayList<>();
+        while (sorgente.hasNext() && batches.size() < numeroBatch) {
+            batches.add(sorgente.next());
+        }
+        int esempiPerEpoca = batches.stream().mapToInt(DataSet::numExamples).sum();
+        System.out.println("[INFO] " + batches.size() + " batch in memoria (" + esempiPerEpoca + " patch "
+                + latoPatch + "x" + latoPatch + "), " + epoche + " epoche, media ogni " + frequenzaMedia + " iterazioni");
+
+        double base = misura(0, frequenzaMedia, epoche, batches, esempiPerEpoca);
+        System.out.printf("%-20s %14s %10s %12s%n", "Configurazione", "esempi/s", "speedup", "efficienza");
+        System.out.printf("%-20s %14.1f %10.2f %11.0f%%%n", "replica singola", base, 1.0, 100.0);
+        for (String valore : elencoWorker.split(",")) {
+            int workers = Integer.parseInt(valore.trim());
+            double throughput = misura(workers, frequenzaMedia, epoche, batches, esempiPerEpoca);
+            System.out.printf("%-20s %14.1f %10.2f %11.0f%%%n", workers + " worker", throughput,
+                    throughput / base, 100 * throughput / (workers * base));
+        }
+    }
+
+    /**
+     * Addestra un modello nuovo sui batch in memoria e restituisce il throughput in esempi al secondo.
+     * Un'epoca iniziale di riscaldamento è esclusa dalla misura.
+     *
+     * @param workers        numero di worker (0 = replica singola senza ParallelWrapper)
+     * @param frequenzaMedia iterazioni tra due medie dei parametri
+     * @param epoche         epoche misurate
+     * @param batches        batch di training
+     * @param esempiPerEpoca esempi contenuti in un'epoca
+     * @return esempi elaborati al secondo
+     */
+    private static double misura(int workers, int frequenzaMedia, int epoche, List<DataSet> batches, int esempiPerEpoca) {
+        MultiLayerNetwork modello = ModelArchitecture.createModel();
+        ExistingDataSetIterator iteratore = new ExistingDataSetIterator(batches);
+        if (workers == 0) {
+            modello.fit(iteratore);
+            long inizio = System.nanoTime();
+            for (int e = 0; e < epoche; e++) {
+                iteratore.reset();
+                modello.fit(iteratore);
+            }
+            return epoche * esempiPerEpoca / ((System.nanoTime() - inizio) / 1e9);
+        }
+        ParallelWrapper wrapper = DataParallelTrainer.create(modello, workers, frequenzaMedia, 0);
+        try {
+            wrapper.fit(iteratore);
+            long inizio = System.nanoTime();
+            for (int e = 0; e < epoche; e++) {
+                iteratore.reset();
+                wrapper.fit(iteratore);
+            }
+            return epoche * esempiPerEpoca / ((System.nanoTime() - inizio) / 1e9);
+        } finally {
+            wrapper.shutdown();
+        }
+    }
+}
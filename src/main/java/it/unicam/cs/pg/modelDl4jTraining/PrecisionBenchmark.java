@@ -0,0 +1,138 @@
+package it.unicam.cs.pg.modelDl4jTraining;
+
+import org.datavec.image.loader.NativeImageLoader;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.conf.CacheMode;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.memory.MemoryReport;
+import org.deeplearning4j.nn.conf.memory.MemoryUseMode;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.preprocessor.ImagePreProcessingScaler;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Strumento a riga di comando che confronta l'inferenza del modello di denoising in FP32, FP16 e INT8.
+ * <p>
+ * Per ogni immagine di {@code dl4j dataset/originali} esegue il modello in tutte le modalità di precisione,
+ * confronta le maschere binarizzate con quella FP32 (accordo dei pixel e IoU del testo) e riporta
+ * latenza media, memoria dei parametri e memoria stimata delle attivazioni.
+ * </p>
+ * Uso: {@code PrecisionBenchmark [percorsoModello] [cartellaImmagini] [ripetizioni]}
+ */
+public class PrecisionBenchmark {
+
+    private static final String PROJECT_ROOT = System.getProperty("user.dir");
+    private static final int TARGET_WIDTH = 1200;
+    private static final int TARGET_HEIGHT = 1700;
+    private static final double SOGLIA_MASCHERA = 0.5;
+
+    /**
+     * Punto d'ingresso del benchmark.
+     *
+     * @param args percorso del modello, cartella delle immagini e numero di ripetizioni (tutti opzionali)
+     * @throws IOException se il modello o le immagini non possono essere letti
+     */
+    public static void main(String[] args) throws IOException {
+        File fileModello = new File(args.length > 0 ? args[0]
+                : PROJECT_ROOT + File.separator + "dl4j model" + File.separator + "modelloAddestrato.zip");
+        File cartellaImmagini = new File(args.length > 1 ? args[1]
+                : PROJECT_ROOT + File.separator + "dl4j dataset" + File.separator + "originali");
+        int ripetizioni = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        File[] immagini = cartellaImmagini.listFiles((dir, name) -> name.toLowerCase().endsWith(".png"));
+        if (immagini == null || immagini.length == 0) {
+            System.out.println("[ERRORE] Nessuna immagine .png trovata in " + cartellaImmagini.getAbsolutePath());
+            return;
+        }
+
+        Model modelloFp32 = ModelArchitecture.load(fileModello, false);
+        Map<PrecisionMode, Model> modelli = new EnumMap<>(PrecisionMode.class);
+        for (PrecisionMode mode : PrecisionMode.values()) {
+            modelli.put(mode, ReducedPrecisionConverter.convert(modelloFp32, mode));
+        }
+
+        Map<PrecisionMode, Double> tempoTotale = new EnumMap<>(PrecisionMode.class);
+        Map<PrecisionMode, Double> accordoTotale = new EnumMap<>(PrecisionMode.class);
+        Map<PrecisionMode, Double> iouTotale = new EnumMap<>(PrecisionMode.class);
+        NativeImageLoader loader = new NativeImageLoader(TARGET_HEIGHT, TARGET_WIDTH, 3);
+        ImagePreProcessingScaler scaler = new ImagePreProcessingScaler(0, 1);
+
+        for (File immagine : immagini) {
+            INDArray input = loader.asMatrix(immagine);
+            scaler.transform(input);
+            INDArray riferimento = null;
+            INDArray uscitaRiferimento = null;
+            System.out.println("[INFO] " + immagine.getName());
+            for (PrecisionMode mode : PrecisionMode.values()) {
+                Model modello = modelli.get(mode);
+                INDArray inputMode = input.castTo(mode.getComputeType());
+                INDArray output = ModelArchitecture.output(modello, inputMode).castTo(DataType.FLOAT); // riscaldamento
+                long inizio = System.nanoTime();
+                for (int i = 0; i < ripetizioni; i++) {
+                    output = ModelArchitecture.output(modello, inputMode).castTo(DataType.FLOAT);
+                }
+                double ms = (System.nanoTime() - inizio) / 1e6 / ripetizioni;
+                INDArray maschera = output.gt(SOGLIA_MASCHERA).castTo(DataType.FLOAT);
+                if (riferimento == null) {
+                    riferimento = maschera;
+                    uscitaRiferimento = output;
+                }
+                double accordo = maschera.eq(riferimento).castTo(DataType.FLOAT).meanNumber().doubleValue();
+                double mae = Transforms.abs(output.sub(uscitaRiferimento)).meanNumber().doubleValue();
+                double iou = textIoU(maschera, riferimento);
+                tempoTotale.merge(mode, ms, Double::sum);
+                accordoTotale.merge(mode, accordo, Double::sum);
+                iouTotale.merge(mode, iou, Double::sum);
+                System.out.printf("    %-20s %9.1f ms  accordo %.5f  IoU testo %.4f  MAE %.5f%n",
+                        mode, ms, accordo, iou, mae);
+            }
+        }
+
+        InputType tipoInput = InputType.convolutional(TARGET_HEIGHT, TARGET_WIDTH, 3);
+        MemoryReport report = ModelArchitecture.memoryReport(modelloFp32, tipoInput);
+        long attivazioniFp32 = report.getTotalMemoryBytes(1, MemoryUseMode.INFERENCE, CacheMode.NONE, DataType.FLOAT);
+        long parametriFp32 = ReducedPrecisionConverter.parameterBytes(modelloFp32, PrecisionMode.FP32);
+        double tempoFp32 = tempoTotale.get(PrecisionMode.FP32);
+
+        System.out.println();
+        System.out.println("[INFO] Riepilogo su " + immagini.length + " immagini (" + ripetizioni + " ripetizioni ciascuna)");
+        System.out.printf("%-20s %12s %9s %12s %12s %10s %10s%n",
+                "Modalità", "ms/pagina", "speedup", "parametri", "attivazioni", "accordo", "IoU testo");
+        for (PrecisionMode mode : PrecisionMode.values()) {
+            long parametri = ReducedPrecisionConverter.parameterBytes(modelloFp32, mode);
+            long attivazioni = report.getTotalMemoryBytes(1, MemoryUseMode.INFERENCE, CacheMode.NONE, mode.getComputeType());
+            System.out.printf("%-20s %12.1f %8.2fx %9.1f KB %9.1f MB %10.5f %10.4f%n",
+                    mode,
+                    tempoTotale.get(mode) / immagini.length,
+                    tempoFp32 / tempoTotale.get(mode),
+                    parametri / 1024.0,
+                    attivazioni / (1024.0 * 1024.0),
+                    accordoTotale.get(mode) / immagini.length,
+                    iouTotale.get(mode) / immagini.length);
+        }
+        System.out.printf("[INFO] Risparmio memoria FP16: parametri %.0f%%, attivazioni %.0f%%%n",
+                100.0 * (1 - (double) ReducedPrecisionConverter.parameterBytes(modelloFp32, PrecisionMode.FP16) / parametriFp32),
+                100.0 * (1 - (double) report.getTotalMemoryBytes(1, MemoryUseMode.INFERENCE, CacheMode.NONE, DataType.FLOAT16) / attivazioniFp32));
+    }
+
+    /**
+     * Calcola l'Intersection over Union dei pixel di testo (valori sotto soglia) tra due maschere binarie.
+     *
+     * @param maschera    maschera da valutare (1 = sfondo, 0 = testo)
+     * @param riferimento maschera di riferimento
+     * @return IoU dei pixel di testo, 1 se entrambe le maschere non contengono testo
+     */
+    static double textIoU(INDArray maschera, INDArray riferimento) {
+        INDArray testo = maschera.eq(0).castTo(DataType.FLOAT);
+        INDArray testoRif = riferimento.eq(0).castTo(DataType.FLOAT);
+        double intersezione = testo.mul(testoRif).sumNumber().doubleValue();
+        double unione = testo.add(testoRif).gt(0).castTo(DataType.FLOAT).sumNumber().doubleValue();
+        return unione == 0 ? 1.0 : intersezione / unione;
+    }
+}
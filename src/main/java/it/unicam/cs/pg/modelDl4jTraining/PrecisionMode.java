@@ -0,0 +1,37 @@
+package it.unicam.cs.pg.modelDl4jTraining;
+
+import org.nd4j.linalg.api.buffer.DataType;
+
+/**
+ * Modalità di precisione numerica utilizzabili per l'inferenza del modello di denoising.
+ */
+public enum PrecisionMode {
+    /** Parametri e attivazioni in virgola mobile a 32 bit (comportamento originale). */
+    FP32("FP32", DataType.FLOAT),
+    /** Parametri e attivazioni in mezza precisione (16 bit). */
+    FP16("FP16", DataType.FLOAT16),
+    /** Pesi quantizzati a 8 bit per canale, attivazioni in mezza precisione. */
+    INT8("INT8 (pesi) + FP16", DataType.FLOAT16);
+
+    private final String etichetta;
+    private final DataType computeType;
+
+    PrecisionMode(String etichetta, DataType computeType) {
+        this.etichetta = etichetta;
+        this.computeType = computeType;
+    }
+
+    /**
+     * Restituisce il tipo di dato usato per parametri e attivazioni durante l'inferenza.
+     *
+     * @return il DataType di calcolo
+     */
+    public DataType getComputeType() {
+        return computeType;
+    }
+
+    @Override
+    public String toString() {
+        return etichetta;
+    }
+}
@@ -0,0 +1,282 @@
+package it.unicam.cs.pg.modelDl4jTraining;
+
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Iteratore che prepara in anticipo i batch di un {@link BatchSource} su un pool di thread,
+ * così che decodifica, padding e scalatura delle immagini avvengano mentre {@code model.fit}
+ * elabora il batch corrente.
+ * <p>
+ * Fino a {@code queueDepth} batch successivi vengono caricati in parallelo dai worker; l'iteratore li
+ * restituisce comunque nell'ordine originale, per cui i dati visti dalla rete sono identici a quelli
+ * della lettura sequenziale. Il tempo in cui il thread di training resta bloccato in attesa dei dati
+ * viene misurato e riportato da {@link #getStats()}: se è vicino a zero il caricamento è completamente
+ * nascosto dietro al calcolo.
+ * </p>
+ * <p>
+ * Con {@link #seek(int, int)} l'iterazione può essere limitata a un intervallo di batch dell'epoca corrente:
+ * è quanto usa {@link DenoiserTrainer} per addestrare per segmenti e riprendere un'epoca interrotta.
+ * Con zero worker i batch vengono caricati in modo sincrono sul thread chiamante. {@link #next(int)} unisce o
+ * divide i batch della sorgente, tenendo da parte gli esempi in eccesso per la chiamata successiva.
+ * </p>
+ */
+public class PrefetchDataSetIterator implements DataSetIterator {
+    private final BatchSource sorgente;
+    private final int queueDepth;
+    private final ExecutorService pool;
+    private final ArrayDeque<Future<DataSet>> coda = new ArrayDeque<>();
+    private DataSetPreProcessor preProcessor;
+    private final BatchRemainder resto = new BatchRemainder();
+
+    private int prossimoDaSottomettere;
+    private int prossimoDaRestituire;
+    private int fineIntervallo;
+    private int batchRestituiti;
+
+    private volatile long nanoAttesa;
+    private long inizioEpoca;
+    private long fineUltimoBatch;
+    private final AtomicLong nanoCaricamento = new AtomicLong();
+
+    /**
+     * Costruttore dell'iteratore con prefetch.
+     *
+     * @param sorgente   iteratore di cui caricare i batch in anticipo
+     * @param workers    numero di thread che caricano i batch (0 = caricamento sincrono)
+     * @param queueDepth numero massimo di batch caricati in anticipo
+     */
+    public PrefetchDataSetIterator(BatchSource sorgente, int workers, int queueDepth) {
+        if (workers < 0 || queueDepth < 1) {
+            throw new IllegalArgumentException("Numero di worker o profondità della coda non validi");
+        }
+        this.sorgente = sorgente;
+        this.queueDepth = queueDepth;
+        this.fineIntervallo = sorgente.batchesPerEpoch();
+        AtomicInteger contatore = new AtomicInteger();
+        this.pool = workers == 0 ? null : Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "prefetch-dati-" + contatore.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !resto.isEmpty() || prossimoDaRestituire < fineIntervallo;
+    }
+
+    /**
+     * Limita l'iterazione ai batch compresi tra due indici dell'epoca corrente, senza rimescolare la sorgente.
+     * Se l'intervallo prosegue da dove si era arrivati, i batch già caricati in anticipo restano validi;
+     * altrimenti vengono scartati.
+     *
+     * @param primo  indice del primo batch da restituire
+     * @param ultimo indice del batch finale (escluso)
+     */
+    public void seek(int primo, int ultimo) {
+        if (primo < 0 || ultimo > sorgente.batchesPerEpoch() || primo > ultimo) {
+            throw new IllegalArgumentException("Intervallo di batch non valido: " + primo + "-" + ultimo);
+        }
+        resto.clear();
+        if (primo != prossimoDaRestituire) {
+            svuotaCoda();
+            prossimoDaSottomettere = primo;
+            prossimoDaRestituire = primo;
+        }
+        fineIntervallo = ultimo;
+    }
+
+    /**
+     * Restituisce il numero di batch che compongono un'epoca della sorgente.
+     *
+     * @return il numero di batch per epoca
+     */
+    public int batchesPerEpoch() {
+        return sorgente.batchesPerEpoch();
+    }
+
+    @Override
+    public DataSet next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("Nessun altro batch disponibile nell'epoca corrente");
+        }
+        if (!resto.isEmpty()) {
+            return resto.poll();
+        }
+        long inizio = System.nanoTime();
+        if (inizioEpoca == 0) {
+            inizioEpoca = inizio;
+        }
+        riempiCoda();
+        DataSet batch;
+        try {
+            batch = pool == null ? sorgente.loadBatch(prossimoDaSottomettere++) : coda.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Attesa del batch interrotta", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause
+                    : new IllegalStateException("Caricamento del batch fallito", e.getCause());
+        }
+        prossimoDaRestituire++;
+        batchRestituiti++;
+        riempiCoda();
+        fineUltimoBatch = System.nanoTime();
+        nanoAttesa += fineUltimoBatch - inizio;
+        if (preProcessor != null) {
+            preProcessor.preProcess(batch);
+        }
+        return batch;
+    }
+
+    /**
+     * Sottomette ai worker i batch successivi fino a raggiungere la profondità della coda.
+     */
+    private void riempiCoda() {
+        if (pool == null) {
+            return;
+        }
+        int totale = sorgente.batchesPerEpoch();
+        while (coda.size() < queueDepth && prossimoDaSottomettere < totale) {
+            int indice = prossimoDaSottomettere++;
+            coda.add(pool.submit(() -> {
+                long inizio = System.nanoTime();
+                DataSet batch = sorgente.loadBatch(indice);
+                nanoCaricamento.addAndGet(System.nanoTime() - inizio);
+                return batch;
+            }));
+        }
+    }
+
+    /**
+     * Annulla i batch in coda e attende la fine di quelli già in caricamento,
+     * così che nessun worker legga lo stato della sorgente durante il reset.
+     */
+    private void svuotaCoda() {
+        for (Future<DataSet> futuro : coda) {
+            futuro.cancel(false);
+        }
+        for (Future<DataSet> futuro : coda) {
+            try {
+                if (!futuro.isCancelled()) {
+                    futuro.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException ignored) {
+                // il batch scartato non serve più
+            }
+        }
+        coda.clear();
+    }
+
+    /**
+     * Restituisce le metriche dell'epoca corrente: tempo di attesa dei dati sul thread di training,
+     * quota del tempo totale trascorso in attesa e tempo di caricamento speso dai worker.
+     *
+     * @return descrizione testuale delle metriche
+     */
+    public String getStats() {
+        double attesaMs = nanoAttesa / 1e6;
+        double totaleMs = inizioEpoca == 0 ? 0 : (fineUltimoBatch - inizioEpoca) / 1e6;
+        return String.format("attesa dati %.0f ms su %d batch (%.1f%% del tempo, %.1f ms/batch), caricamento worker %.0f ms",
+                attesaMs, batchRestituiti, totaleMs > 0 ? 100 * attesaMs / totaleMs : 0,
+                batchRestituiti > 0 ? attesaMs / batchRestituiti : 0, nanoCaricamento.get() / 1e6);
+    }
+
+    /**
+     * Restituisce il tempo complessivo in cui il thread di training ha atteso i dati nell'epoca corrente.
+     * Può essere letto da altri thread, ad esempio da {@link TrainingMetricsListener}.
+     *
+     * @return il tempo di attesa in nanosecondi
+     */
+    public long getDataWaitNanos() {
+        return nanoAttesa;
+    }
+
+    /**
+     * Termina i worker del prefetch. L'iteratore non è più utilizzabile dopo la chiamata.
+     */
+    public void shutdown() {
+        svuotaCoda();
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    @Override
+    public DataSet next(int num) {
+        return resto.take(num, this::hasNext, this::next);
+    }
+
+    @Override
+    public int inputColumns() {
+        return sorgente.inputColumns();
+    }
+
+    @Override
+    public int totalOutcomes() {
+        return sorgente.totalOutcomes();
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    /**
+     * Il prefetch è già asincrono: DL4J non deve avvolgerlo in un ulteriore iteratore asincrono.
+     */
+    @Override
+    public boolean asyncSupported() {
+        return false;
+    }
+
+    @Override
+    public void reset() {
+        svuotaCoda();
+        resto.clear();
+        sorgente.reset();
+        prossimoDaSottomettere = 0;
+        prossimoDaRestituire = 0;
+        fineIntervallo = sorgente.batchesPerEpoch();
+        batchRestituiti = 0;
+        nanoAttesa = 0;
+        inizioEpoca = 0;
+        fineUltimoBatch = 0;
+        nanoCaricamento.set(0);
+    }
+
+    @Override
+    public int batch() {
+        return sorgente.batch();
+    }
+
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public DataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return sorgente.getLabels();
+    }
+}
@@ -0,0 +1,330 @@
+package it.unicam.cs.pg.modelDl4jTraining;
+
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Iteratore DL4J che estrae ritagli (patch) casuali allineati dalle coppie originale/maschera.
+ * <p>
+ * Poiché la rete di denoising è completamente convoluzionale, può essere addestrata su patch più piccole
+ * della pagina intera: ogni passo usa così un vero mini-batch e un'epoca richiede una frazione del tempo.
+ * A ogni epoca le pagine vengono visitate in ordine casuale e da ciascuna si estraggono {@code patchesPerPage}
+ * patch; una pagina decodificata resta in memoria solo finché non ne sono state ritagliate tutte le patch.
+ * </p>
+ * <p>
+ * Il campionamento privilegia le zone con testo: per ogni patch vengono estratte alcune posizioni candidate e,
+ * con probabilità {@code textBias}, viene scelta quella con più pixel di testo nella maschera (pixel scuri),
+ * altrimenti una posizione uniforme. La quantità di testo di ogni candidata è calcolata in tempo costante
+ * tramite un'immagine integrale della maschera.
+ * </p>
+ * <p>
+ * Le posizioni di ogni patch dipendono solo dal seed dell'epoca e dall'indice della patch, per cui i batch
+ * caricati in parallelo da {@link PrefetchDataSetIterator} coincidono con quelli della lettura sequenziale.
+ * </p>
+ */
+public class RandomPatchDataSetIterator implements BatchSource {
+    private static final int CANDIDATI_PER_PATCH = 8;
+    private static final float SOGLIA_TESTO = 0.5f;
+    private static final long MOLTIPLICATORE_SEED = 0x9E3779B97F4A7C15L;
+
+    private final List<DatasetPair> coppie;
+    private final int patchSize;
+    private final int batchSize;
+    private final int patchesPerPage;
+    private final double textBias;
+    private final Random random;
+    private final Consumer<String> logger;
+    private final TrainingPairLoader loader;
+    private final List<Integer> ordine = new ArrayList<>();
+    private final ConcurrentHashMap<Integer, PaginaDecodificata> pagineInUso = new ConcurrentHashMap<>();
+    private DataSetPreProcessor preProcessor;
+
+    private int cursore;
+    private long seedEpoca;
+
+    /**
+     * Costruttore dell'iteratore a patch.
+     *
+     * @param coppie         coppie originale/maschera da cui estrarre le patch
+     * @param patchSize      lato delle patch quadrate (pari, per via del pooling 2x2 della rete)
+     * @param batchSize      numero di patch per batch
+     * @param patchesPerPage numero di patch estratte da ogni pagina in un'epoca
+     * @param textBias       probabilità (0-1) di scegliere la candidata con più testo
+     * @param seed           seed del generatore casuale
+     * @param logger         destinazione dei messaggi di log (può essere null)
+     */
+    public RandomPatchDataSetIterator(List<DatasetPair> coppie, int patchSize, int batchSize, int patchesPerPage,
+                                      double textBias, long seed, Consumer<String> logger) {
+        this(coppie, patchSize, batchSize, patchesPerPage, textBias, seed, TrainingImageLoader::loadPair, logger);
+    }
+
+    /**
+     * Costruttore dell'iteratore a patch con una strategia di caricamento delle coppie esplicita
+     * (ad esempio {@link TensorCache}).
+     *
+     * @param coppie         coppie originale/maschera da cui estrarre le patch
+     * @param patchSize      lato delle patch quadrate (pari, per via del pooling 2x2 della rete)
+     * @param batchSize      numero di patch per batch
+     * @param patchesPerPage numero di patch estratte da ogni pagina in un'epoca
+     * @param textBias       probabilità (0-1) di scegliere la candidata con più testo
+     * @param seed           seed del generatore casuale
+     * @param loader         strategia di caricamento delle coppie
+     * @param logger         destinazione dei messaggi di log (può essere null)
+     */
+    public RandomPatchDataSetIterator(List<DatasetPair> coppie, int patchSize, int batchSize, int patchesPerPage,
+                                      double textBias, long seed, TrainingPairLoader loader, Consumer<String> logger) {
+        if (patchSize < 2 || patchSize % 2 != 0
+                || patchSize > Math.min(ImagePreprocessor.TARGET_WIDTH, ImagePreprocessor.TARGET_HEIGHT)) {
+            throw new IllegalArgumentException("Dimensione patch non valida (deve essere pari e non superiore alla pagina): "
+                    + patchSize);
+        }
+        if (batchSize < 1 || patchesPerPage < 1) {
+            throw new IllegalArgumentException("Batch size e patch per pagina devono essere positivi");
+        }
+        this.coppie = List.copyOf(coppie);
+        this.patchSize = patchSize;
+        this.batchSize = batchSize;
+        this.patchesPerPage = patchesPerPage;
+        this.textBias = Math.max(0, Math.min(1, textBias));
+        this.random = new Random(seed);
+        this.loader = loader;
+        this.logger = logger;
+        for (int i = 0; i < this.coppie.size(); i++) {
+            ordine.add(i);
+        }
+        reset();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return cursore < numExamples();
+    }
+
+    @Override
+    public DataSet next() {
+        return next(batchSize);
+    }
+
+    @Override
+    public DataSet next(int num) {
+        if (!hasNext()) {
+            throw new NoSuchElementException("Nessun altro batch disponibile nell'epoca corrente");
+        }
+        int fine = Math.min(cursore + num, numExamples());
+        DataSet batch = ritagliaPatch(cursore, fine);
+        cursore = fine;
+        if (preProcessor != null) {
+            preProcessor.preProcess(batch);
+        }
+        return batch;
+    }
+
+    @Override
+    public int batchesPerEpoch() {
+        return (numExamples() + batchSize - 1) / batchSize;
+    }
+
+    @Override
+    public DataSet loadBatch(int index) {
+        int inizio = index * batchSize;
+        return ritagliaPatch(inizio, Math.min(inizio + batchSize, numExamples()));
+    }
+
+    /**
+     * Ritaglia le patch comprese tra due indici dell'epoca corrente, decodificando le pagine necessarie.
+     * La pagina viene rilasciata quando ne è stata ritagliata l'ultima patch.
+     *
+     * @param inizio indice della prima patch (inclusa)
+     * @param fine   indice dell'ultima patch (esclusa)
+     * @return il batch con input e maschere concatenati
+     */
+    private DataSet ritagliaPatch(int inizio, int fine) {
+        List<INDArray> inputs = new ArrayList<>();
+        List<INDArray> labels = new ArrayList<>();
+        for (int k = inizio; k < fine; k++) {
+            int slot = k / patchesPerPage;
+            PaginaDecodificata pagina = pagineInUso.computeIfAbsent(slot,
+                    s -> new PaginaDecodificata(coppie.get(ordine.get(s))));
+            pagina.carica();
+            int[] posizione = pagina.scegliPosizione(new SplittableRandom(seedEpoca ^ (k * MOLTIPLICATORE_SEED)));
+            inputs.add(ritaglia(pagina.input, posizione[0], posizione[1]));
+            labels.add(ritaglia(pagina.label, posizione[0], posizione[1]));
+            if (pagina.patchRimanenti.decrementAndGet() == 0) {
+                pagineInUso.remove(slot);
+            }
+        }
+        return new DataSet(Nd4j.concat(0, inputs.toArray(new INDArray[0])),
+                Nd4j.concat(0, labels.toArray(new INDArray[0])));
+    }
+
+    /**
+     * Ritaglia una patch quadrata dal tensore di una pagina.
+     */
+    private INDArray ritaglia(INDArray pagina, int y, int x) {
+        return pagina.get(NDArrayIndex.all(), NDArrayIndex.all(),
+                NDArrayIndex.interval(y, y + patchSize), NDArrayIndex.interval(x, x + patchSize)).dup();
+    }
+
+    /**
+     * Pagina decodificata condivisa tra i batch che ne contengono le patch, con l'immagine integrale
+     * dei pixel di testo della maschera.
+     */
+    private final class PaginaDecodificata {
+        private final DatasetPair coppia;
+        private final AtomicInteger patchRimanenti = new AtomicInteger(patchesPerPage);
+        private INDArray input;
+        private INDArray label;
+        private int[] integraleTesto;
+
+        private PaginaDecodificata(DatasetPair coppia) {
+            this.coppia = coppia;
+        }
+
+        /**
+         * Decodifica la coppia al primo utilizzo; le chiamate concorrenti attendono la stessa decodifica.
+         */
+        private synchronized void carica() {
+            if (input != null) {
+                return;
+            }
+            try {
+                DataSet esempio = loader.load(coppia);
+                integraleTesto = integrale(esempio.getLabels());
+                label = esempio.getLabels();
+                input = esempio.getFeatures();
+            } catch (IOException ex) {
+                throw new IllegalStateException("Problema caricamento coppia " + coppia.original().getName()
+                        + ": " + ex.getMessage(), ex);
+            }
+            if (logger != null) {
+                logger.accept("[INFO] Pagina caricata per l'estrazione di patch: " + coppia.original().getName());
+            }
+        }
+
+        /**
+         * Calcola l'immagine integrale dei pixel di testo (scuri) della maschera.
+         */
+        private int[] integrale(INDArray maschera) {
+            int altezza = (int) maschera.size(2);
+            int larghezza = (int) maschera.size(3);
+            float[] pixel = maschera.castTo(DataType.FLOAT).dup('c').data().asFloat();
+            int[] somme = new int[(altezza + 1) * (larghezza + 1)];
+            for (int r = 0; r < altezza; r++) {
+                int sommaRiga = 0;
+                for (int c = 0; c < larghezza; c++) {
+                    sommaRiga += pixel[r * larghezza + c] < SOGLIA_TESTO ? 1 : 0;
+                    somme[(r + 1) * (larghezza + 1) + c + 1] = somme[r * (larghezza + 1) + c + 1] + sommaRiga;
+                }
+            }
+            return somme;
+        }
+
+        /**
+         * Sceglie l'angolo superiore sinistro di una patch, privilegiando le zone con testo.
+         *
+         * @param rng generatore della patch
+         * @return coordinate {y, x} dell'angolo della patch
+         */
+        private int[] scegliPosizione(SplittableRandom rng) {
+            int altezza = (int) input.size(2);
+            int larghezza = (int) input.size(3);
+            int[] migliore = {rng.nextInt(altezza - patchSize + 1), rng.nextInt(larghezza - patchSize + 1)};
+            if (rng.nextDouble() >= textBias) {
+                return migliore;
+            }
+            int testoMigliore = pixelDiTesto(migliore[0], migliore[1], larghezza);
+            for (int i = 1; i < CANDIDATI_PER_PATCH; i++) {
+                int y = rng.nextInt(altezza - patchSize + 1);
+                int x = rng.nextInt(larghezza - patchSize + 1);
+                int testo = pixelDiTesto(y, x, larghezza);
+                if (testo > testoMigliore) {
+                    testoMigliore = testo;
+                    migliore = new int[]{y, x};
+                }
+            }
+            return migliore;
+        }
+
+        /**
+         * Conta i pixel di testo nella finestra della patch usando l'immagine integrale.
+         */
+        private int pixelDiTesto(int y, int x, int larghezza) {
+            int w = larghezza + 1;
+            int y2 = y + patchSize;
+            int x2 = x + patchSize;
+            return integraleTesto[y2 * w + x2] - integraleTesto[y * w + x2] - integraleTesto[y2 * w + x] + integraleTesto[y * w + x];
+        }
+    }
+
+    /**
+     * Restituisce il numero di patch estratte in un'epoca.
+     *
+     * @return il numero di patch per epoca
+     */
+    public int numExamples() {
+        return coppie.size() * patchesPerPage;
+    }
+
+    @Override
+    public int inputColumns() {
+        return patchSize * patchSize * 3;
+    }
+
+    @Override
+    public int totalOutcomes() {
+        return patchSize * patchSize;
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        cursore = 0;
+        pagineInUso.clear();
+        Collections.shuffle(ordine, random);
+        seedEpoca = random.nextLong();
+    }
+
+    @Override
+    public int batch() {
+        return batchSize;
+    }
+
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public DataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return null;
+    }
+}
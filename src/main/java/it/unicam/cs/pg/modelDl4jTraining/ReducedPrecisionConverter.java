@@ -0,0 +1,108 @@
+package it.unicam.cs.pg.modelDl4jTraining;
+
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.conf.layers.Deconvolution2D;
+import org.deeplearning4j.nn.conf.layers.SeparableConvolution2D;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+/**
+ * Classe di utilità per convertire un modello DL4J addestrato in FP32 in una variante a precisione ridotta.
+ * Sono supportate sia le reti sequenziali sia i grafi ({@code ComputationGraph}, come la U-Net).
+ * <p>
+ * La modalità FP16 converte parametri e attivazioni in mezza precisione. La modalità INT8 applica una
+ * quantizzazione post-training simmetrica per canale di output ai pesi delle convoluzioni (i bias restano
+ * invariati) e poi esegue il calcolo in FP16: il backend CPU di ND4J non dispone di kernel convoluzionali
+ * interi, per cui i pesi quantizzati vengono subito dequantizzati e memorizzati in FP16. La modalità misura
+ * quindi l'effetto dei soli 255 livelli per canale sulla qualità, mentre la memoria occupata è quella di FP16.
+ * Sulle CPU prive di aritmetica FP16 nativa la mezza precisione riduce la memoria ma può aumentare la latenza:
+ * {@link PrecisionBenchmark} permette di verificarlo sulla macchina di destinazione.
+ * </p>
+ */
+public class ReducedPrecisionConverter {
+
+    private static final int INT8_MAX = 127;
+
+    /**
+     * Restituisce una copia del modello convertita nella modalità di precisione richiesta.
+     * Il modello originale non viene modificato.
+     *
+     * @param modello modello addestrato in FP32
+     * @param mode    modalità di precisione desiderata
+     * @return il modello convertito (lo stesso modello se la modalità è FP32)
+     */
+    public static Model convert(Model modello, PrecisionMode mode) {
+        if (modello == null || mode == PrecisionMode.FP32) {
+            return modello;
+        }
+        if (modello instanceof ComputationGraph grafo) {
+            ComputationGraph copia = grafo.clone();
+            if (mode == PrecisionMode.INT8) {
+                quantizeWeightsPerChannel(copia.getLayers());
+            }
+            return copia.convertDataType(mode.getComputeType());
+        }
+        MultiLayerNetwork copia = ((MultiLayerNetwork) modello).clone();
+        if (mode == PrecisionMode.INT8) {
+            quantizeWeightsPerChannel(copia.getLayers());
+        }
+        return copia.convertDataType(mode.getComputeType());
+    }
+
+    /**
+     * Quantizza a 8 bit, in modo simmetrico e per canale di output, i pesi "W" di ogni strato (e i pesi
+     * "pW" della parte 1x1 delle convoluzioni separabili) e li sostituisce con i valori dequantizzati.
+     *
+     * @param layers strati del modello da quantizzare (modificati sul posto)
+     */
+    private static void quantizeWeightsPerChannel(Layer[] layers) {
+        for (Layer layer : layers) {
+            org.deeplearning4j.nn.conf.layers.Layer conf = layer.conf().getLayer();
+            // Nelle convoluzioni i pesi sono [nOut, nIn, kH, kW], nelle deconvoluzioni [nIn, nOut, kH, kW];
+            // nelle separabili i pesi depthwise sono [moltiplicatore, nIn, kH, kW], con un filtro per canale di input
+            boolean perInput = conf instanceof Deconvolution2D || conf instanceof SeparableConvolution2D;
+            quantize(layer.paramTable().get("W"), perInput ? 1 : 0);
+            quantize(layer.paramTable().get("pW"), 0);
+        }
+    }
+
+    /**
+     * Quantizza sul posto un tensore di pesi convoluzionali, con una scala per ogni indice dell'asse indicato.
+     *
+     * @param pesi       pesi [.., .., kH, kW] da quantizzare (ignorati se null o di rango diverso da 4)
+     * @param asseOutput asse dei canali di output
+     */
+    private static void quantize(INDArray pesi, int asseOutput) {
+        if (pesi == null || pesi.rank() != 4) {
+            return;
+        }
+        for (long c = 0; c < pesi.size(asseOutput); c++) {
+            INDArray canale = asseOutput == 0
+                    ? pesi.get(NDArrayIndex.point(c), NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.all())
+                    : pesi.get(NDArrayIndex.all(), NDArrayIndex.point(c), NDArrayIndex.all(), NDArrayIndex.all());
+            double maxAbs = canale.amaxNumber().doubleValue();
+            if (maxAbs == 0) {
+                continue;
+            }
+            double scala = maxAbs / INT8_MAX;
+            INDArray quantizzato = Transforms.round(canale.div(scala));
+            canale.assign(quantizzato.muli(scala));
+        }
+    }
+
+    /**
+     * Restituisce lo spazio occupato dai parametri del modello convertito nella modalità indicata.
+     * In modalità INT8 i pesi dequantizzati sono memorizzati in FP16 come tutti gli altri parametri.
+     *
+     * @param modello modello di riferimento
+     * @param mode    modalità di precisione
+     * @return dimensione dei parametri in byte
+     */
+    public static long parameterBytes(Model modello, PrecisionMode mode) {
+        return modello.numParams() * mode.getComputeType().width();
+    }
+}
@@ -0,0 +1,260 @@
+package it.unicam.cs.pg.modelDl4jTraining;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Cache su disco dei tensori di training del dataset DL4J.
+ * <p>
+ * Ogni coppia originale/maschera viene decodificata una sola volta con {@link TrainingImageLoader} e salvata
+ * in uno shard binario: un'intestazione fissa seguita dai pixel dell'input (CHW, ordine BGR) e della maschera
+ * come byte senza segno. I valori prodotti dal loader sono interi tra 0 e 255, per cui la rappresentazione a
+ * 8 bit è esatta e quattro volte più compatta dei float; la normalizzazione in [0, 1] avviene in lettura.
+ * Gli shard vengono letti tramite file mappati in memoria.
+ * </p>
+ * <p>
+ * Il file {@code index.json} elenca gli shard con l'hash SHA-256 delle immagini sorgente: a ogni
+ * {@link #build} vengono ricreati solo gli shard delle coppie nuove o modificate, mentre quelli
+ * delle coppie rimosse vengono cancellati.
+ * </p>
+ * Uso: {@code TensorCache [cartellaOriginali] [cartellaMaschere] [cartellaCache]}
+ */
+public class TensorCache implements TrainingPairLoader {
+
+    private static final String PROJECT_ROOT = System.getProperty("user.dir");
+    private static final String INDEX_FILE = "index.json";
+    private static final int MAGIC = 0x4F435254; // "OCRT"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 6 * Integer.BYTES;
+    private static final int INPUT_CHANNELS = 3;
+    private static final int LABEL_CHANNELS = 1;
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    /**
+     * Voce dell'indice: shard di una coppia e hash delle immagini da cui è stato generato.
+     */
+    public record ShardEntry(String original, String mask, String originalSha256, String maskSha256,
+                             String file, long bytes) {
+    }
+
+    /**
+     * Contenuto del file indice.
+     */
+    public record Index(int version, int width, int height, List<ShardEntry> shards) {
+    }
+
+    private final File cartella;
+    private final Map<String, MappedByteBuffer> shardPerOriginale = new HashMap<>();
+
+    private TensorCache(File cartella, Index indice) throws IOException {
+        this.cartella = cartella;
+        for (ShardEntry voce : indice.shards()) {
+            try (FileChannel canale = FileChannel.open(new File(cartella, voce.file()).toPath(), StandardOpenOption.READ)) {
+                shardPerOriginale.put(voce.original(), canale.map(FileChannel.MapMode.READ_ONLY, 0, canale.size()));
+            }
+        }
+    }
+
+    /**
+     * Punto d'ingresso per l'esportazione una tantum del dataset da riga di comando.
+     *
+     * @param args cartella degli originali, delle maschere e della cache (tutte opzionali)
+     * @throws IOException se la cache non può essere scritta
+     */
+    public static void main(String[] args) throws IOException {
+        File datasetDir = new File(PROJECT_ROOT + File.separator + "dl4j dataset");
+        File originali = args.length > 0 ? new File(args[0]) : new File(datasetDir, "originali");
+        File maschere = args.length > 1 ? new File(args[1]) : new File(datasetDir, "maschere");
+        File cache = args.length > 2 ? new File(args[2]) : new File(datasetDir, "cache");
+        List<DatasetPair> coppie = DatasetPair.discover(originali, maschere, System.out::println);
+        TensorCache tensorCache = build(coppie, cache, System.out::println);
+        System.out.println("[SUCCESSO] Cache tensori pronta in: " + tensorCache.cartella.getAbsolutePath());
+    }
+
+    /**
+     * Aggiorna la cache per le coppie indicate e la apre in lettura.
+     * Gli shard esistenti vengono riutilizzati se gli hash delle immagini sorgente non sono cambiati.
+     *
+     * @param coppie   coppie originale/maschera del dataset
+     * @param cartella cartella della cache (creata se non esiste)
+     * @param logger   destinazione dei messaggi di log (può essere null)
+     * @return la cache aperta in lettura
+     * @throws IOException se una coppia non può essere decodificata o la cache scritta
+     */
+    public static TensorCache build(List<DatasetPair> coppie, File cartella, Consumer<String> logger) throws IOException {
+        if (!cartella.exists() && !cartella.mkdirs()) {
+            throw new IOException("Impossibile creare la cartella della cache: " + cartella.getAbsolutePath());
+        }
+        int larghezza = ImagePreprocessor.TARGET_WIDTH;
+        int altezza = ImagePreprocessor.TARGET_HEIGHT;
+        long byteAttesi = HEADER_BYTES + (long) (INPUT_CHANNELS + LABEL_CHANNELS) * larghezza * altezza;
+
+        Map<String, ShardEntry> precedenti = new HashMap<>();
+        File fileIndice = new File(cartella, INDEX_FILE);
+        if (fileIndice.exists()) {
+            Index vecchio = MAPPER.readValue(fileIndice, Index.class);
+            if (vecchio.version() == FORMAT_VERSION && vecchio.width() == larghezza && vecchio.height() == altezza) {
+                for (ShardEntry voce : vecchio.shards()) {
+                    precedenti.put(voce.original(), voce);
+                }
+            }
+        }
+
+        List<ShardEntry> voci = new ArrayList<>();
+        Set<String> fileValidi = new HashSet<>();
+        int ricostruiti = 0;
+        for (DatasetPair coppia : coppie) {
+            String hashOriginale = sha256(coppia.original());
+            String hashMaschera = sha256(coppia.mask());
+            String nomeShard = coppia.original().getName().replaceFirst("\\.[^.]+$", "") + ".bin";
+            File shard = new File(cartella, nomeShard);
+            ShardEntry voce = precedenti.get(coppia.original().getName());
+            boolean valido = voce != null && voce.originalSha256().equals(hashOriginale)
+                    && voce.maskSha256().equals(hashMaschera) && voce.file().equals(nomeShard)
+                    && shard.length() == byteAttesi;
+            if (!valido) {
+                scriviShard(coppia, shard, larghezza, altezza);
+                ricostruiti++;
+                if (logger != null) {
+                    logger.accept("[INFO] Shard creato: " + nomeShard);
+                }
+            }
+            voci.add(new ShardEntry(coppia.original().getName(), coppia.mask().getName(),
+                    hashOriginale, hashMaschera, nomeShard, byteAttesi));
+            fileValidi.add(nomeShard);
+        }
+
+        // Rimuove gli shard delle coppie non più presenti nel dataset
+        File[] esistenti = cartella.listFiles((dir, name) -> name.endsWith(".bin"));
+        if (esistenti != null) {
+            for (File file : esistenti) {
+                if (!fileValidi.contains(file.getName()) && file.delete() && logger != null) {
+                    logger.accept("[INFO] Shard obsoleto rimosso: " + file.getName());
+                }
+            }
+        }
+
+        Index indice = new Index(FORMAT_VERSION, larghezza, altezza, voci);
+        MAPPER.writeValue(fileIndice, indice);
+        if (logger != null) {
+            logger.accept("[INFO] Cache tensori: " + voci.size() + " shard, " + ricostruiti + " ricostruiti, "
+                    + (voci.size() - ricostruiti) + " riutilizzati.");
+        }
+        return new TensorCache(cartella, indice);
+    }
+
+    /**
+     * Decodifica una coppia e ne scrive lo shard binario.
+     */
+    private static void scriviShard(DatasetPair coppia, File shard, int larghezza, int altezza) throws IOException {
+        INDArray input = TrainingImageLoader.loadImageWithImageIO(coppia.original(), INPUT_CHANNELS);
+        INDArray label = TrainingImageLoader.loadImageWithImageIO(coppia.mask(), LABEL_CHANNELS);
+        float[] pixelInput = input.dup('c').data().asFloat();
+        float[] pixelLabel = label.dup('c').data().asFloat();
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + pixelInput.length + pixelLabel.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(altezza).putInt(larghezza)
+                .putInt(INPUT_CHANNELS).putInt(LABEL_CHANNELS);
+        for (float valore : pixelInput) {
+            buffer.put((byte) Math.round(valore));
+        }
+        for (float valore : pixelLabel) {
+            buffer.put((byte) Math.round(valore));
+        }
+        // Scrittura su file temporaneo e rinomina, per non lasciare shard troncati in caso di errore
+        File temporaneo = new File(shard.getParentFile(), shard.getName() + ".tmp");
+        Files.write(temporaneo.toPath(), buffer.array());
+        Files.move(temporaneo.toPath(), shard.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Legge dallo shard mappato i tensori della coppia, normalizzati in [0, 1].
+     *
+     * @param coppia coppia da caricare
+     * @return un DataSet con input a 3 canali ed etichetta a 1 canale
+     * @throws IOException se la coppia non è presente nella cache o lo shard non è valido
+     */
+    @Override
+    public DataSet load(DatasetPair coppia) throws IOException {
+        MappedByteBuffer mappato = shardPerOriginale.get(coppia.original().getName());
+        if (mappato == null) {
+            throw new IOException("Coppia non presente nella cache tensori: " + coppia.original().getName());
+        }
+        // Vista indipendente: posizione e limite non sono condivisi tra i thread
+        ByteBuffer shard = mappato.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (shard.getInt() != MAGIC || shard.getInt() != FORMAT_VERSION) {
+            throw new IOException("Shard non valido per " + coppia.original().getName());
+        }
+        int h = shard.getInt();
+        int w = shard.getInt();
+        int canaliInput = shard.getInt();
+        int canaliLabel = shard.getInt();
+        INDArray input = Nd4j.create(leggiNormalizzati(shard, canaliInput * h * w), new long[]{1, canaliInput, h, w}, 'c');
+        INDArray label = Nd4j.create(leggiNormalizzati(shard, canaliLabel * h * w), new long[]{1, canaliLabel, h, w}, 'c');
+        return new DataSet(input, label);
+    }
+
+    /**
+     * Legge una sequenza di byte senza segno e la converte in float divisi per 255.
+     */
+    private static float[] leggiNormalizzati(ByteBuffer shard, int quanti) {
+        byte[] grezzi = new byte[quanti];
+        shard.get(grezzi);
+        float[] valori = new float[quanti];
+        for (int i = 0; i < quanti; i++) {
+            valori[i] = (grezzi[i] & 0xFF) / 255f;
+        }
+        return valori;
+    }
+
+    /**
+     * Calcola l'hash SHA-256 del contenuto di un file.
+     */
+    private static String sha256(File file) throws IOException {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            int letti;
+            while ((letti = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, letti);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 non disponibile", e);
+        }
+    }
+
+    /**
+     * Restituisce il numero di coppie presenti nella cache.
+     *
+     * @return il numero di shard
+     */
+    public int size() {
+        return shardPerOriginale.size();
+    }
+}
@@ -0,0 +1,116 @@
+package it.unicam.cs.pg.modelDl4jTraining;
+
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.preprocessor.ImagePreProcessingScaler;
+import org.nd4j.linalg.factory.Nd4j;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+
+/**
+ * Caricamento delle immagini del dataset DL4J come tensori di input/etichetta per il training.
+ */
+public class TrainingImageLoader {
+
+    private static final ImagePreProcessingScaler SCALER = new ImagePreProcessingScaler(0, 1);
+
+    /**
+     * Decodifica una coppia originale/maschera e ne scala i valori in [0, 1].
+     *
+     * @param coppia coppia da caricare
+     * @return un DataSet con input a 3 canali ed etichetta a 1 canale
+     * @throws IOException se una delle due immagini non può essere letta
+     */
+    public static DataSet loadPair(DatasetPair coppia) throws IOException {
+        INDArray input = loadImageWithImageIO(coppia.original(), 3);
+        SCALER.transform(input);
+        INDArray label = loadImageWithImageIO(coppia.mask(), 1);
+        SCALER.transform(label);
+        return new DataSet(input, label);
+    }
+
+    /**
+     * Carica un'immagine utilizzando ImageIO e applica un padding bianco per uniformare le dimensioni.
+     * <p>
+     * I byte del raster vengono copiati direttamente nel buffer di un INDArray preallocato, in formato CHW con
+     * canali in ordine BGR; padding e conversione in scala di grigi avvengono durante la copia. Il risultato
+     * coincide con quello di {@code NativeImageLoader} applicato all'immagine con padding, senza passare per
+     * una codifica PNG intermedia. Le immagini che non sono BGR a 8 bit vengono prima disegnate su un raster BGR.
+     * </p>
+     *
+     * @param file      il file immagine da caricare
+     * @param channels  il numero di canali dell'immagine (3 per BGR, 1 per scala di grigi)
+     * @return un array INDArray [1, canali, altezza, larghezza] con valori tra 0 e 255
+     * @throws IOException se si verifica un errore durante il caricamento dell'immagine
+     */
+    public static INDArray loadImageWithImageIO(File file, int channels) throws IOException {
+        if (channels != 1 && channels != 3) {
+            throw new IllegalArgumentException("Numero di canali non supportato: " + channels);
+        }
+        BufferedImage bf = ImageIO.read(file);
+        if (bf == null) {
+            throw new IOException("ImageIO non riconosce il file: " + file.getName());
+        }
+        byte[] bgr = toBgrRaster(bf);
+        int width = ImagePreprocessor.TARGET_WIDTH;
+        int height = ImagePreprocessor.TARGET_HEIGHT;
+        int srcWidth = bf.getWidth();
+        int copyWidth = Math.min(srcWidth, width);
+        int copyHeight = Math.min(bf.getHeight(), height);
+        int plane = width * height;
+
+        INDArray tensor = Nd4j.createUninitialized(DataType.FLOAT, 1, channels, height, width);
+        FloatBuffer out = tensor.data().asNioFloat();
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            int src = y * srcWidth * 3;
+            int x = 0;
+            if (y < copyHeight) {
+                for (; x < copyWidth; x++, src += 3) {
+                    int b = bgr[src] & 0xFF;
+                    int g = bgr[src + 1] & 0xFF;
+                    int r = bgr[src + 2] & 0xFF;
+                    if (channels == 3) {
+                        out.put(row + x, b);
+                        out.put(plane + row + x, g);
+                        out.put(2 * plane + row + x, r);
+                    } else {
+                        // Stessi coefficienti a virgola fissa di cvtColor(BGR2GRAY) per immagini a 8 bit
+                        out.put(row + x, (b * 3735 + g * 19235 + r * 9798 + 16384) >> 15);
+                    }
+                }
+            }
+            // Padding bianco a destra e in basso
+            for (; x < width; x++) {
+                for (int c = 0; c < channels; c++) {
+                    out.put(c * plane + row + x, 255f);
+                }
+            }
+        }
+        return tensor;
+    }
+
+    /**
+     * Restituisce i byte BGR interlacciati dell'immagine, senza copia se il raster è già BGR a 8 bit.
+     */
+    private static byte[] toBgrRaster(BufferedImage bf) {
+        if (bf.getType() != BufferedImage.TYPE_3BYTE_BGR) {
+            BufferedImage bgr = new BufferedImage(bf.getWidth(), bf.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+            Graphics2D g2d = bgr.createGraphics();
+            g2d.setColor(Color.WHITE);
+            g2d.fillRect(0, 0, bf.getWidth(), bf.getHeight());
+            g2d.drawImage(bf, 0, 0, null);
+            g2d.dispose();
+            bf = bgr;
+        }
+        return ((DataBufferByte) bf.getRaster().getDataBuffer()).getData();
+    }
+}
@@ -0,0 +1,212 @@
+package it.unicam.cs.pg.modelDl4jTraining;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.bytedeco.javacpp.Pointer;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.optimize.api.BaseTrainingListener;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Listener DL4J che misura l'andamento dell'addestramento iterazione per iterazione.
+ * <p>
+ * Per ogni batch registra loss, immagini al secondo, suddivisione del tempo tra attesa dei dati e calcolo,
+ * memoria heap e off-heap e le scrive in un file CSV; al termine di ogni epoca aggiunge un riepilogo a un file
+ * JSON. Il tempo di attesa dei dati è fornito dall'iteratore di training (vedi
+ * {@link PrefetchDataSetIterator#getDataWaitNanos()}): il resto dell'intervallo tra due iterazioni è attribuito
+ * al calcolo. Il listener aggiorna anche l'avanzamento complessivo e, ogni {@code logEvery}
+ * iterazioni, scrive una riga di riepilogo nel log.
+ * </p>
+ * <p>
+ * Il backend CPU di ND4J non registra le proprie allocazioni native nei contatori di JavaCPP, per cui la memoria
+ * off-heap è stimata come memoria fisica del processo meno l'heap riservato dalla JVM.
+ * </p>
+ * <p>
+ * In modalità data-parallel lo stesso listener è condiviso dalle repliche: i metodi sono sincronizzati e le
+ * immagini al secondo misurate corrispondono al throughput complessivo delle repliche.
+ * </p>
+ */
+public class TrainingMetricsListener extends BaseTrainingListener implements Closeable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private static final DateTimeFormatter FORMATO_NOME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final String INTESTAZIONE_CSV = "timestamp_ms,epoca,iterazione,batch,esempi,loss,durata_ms,"
+            + "dati_ms,calcolo_ms,immagini_s,heap_mb,offheap_mb,rss_mb";
+    private static final double MB = 1024.0 * 1024.0;
+
+    /**
+     * Riepilogo di un'epoca, scritto nel file JSON.
+     *
+     * @param epoch            epoca (1-based)
+     * @param iterations       iterazioni eseguite nell'epoca
+     * @param examples         esempi elaborati nell'epoca
+     * @param seconds          durata dell'epoca in secondi
+     * @param imagesPerSecond  throughput medio
+     * @param dataSeconds      tempo trascorso in attesa dei dati
+     * @param computeSeconds   tempo trascorso nel calcolo
+     * @param dataFraction     quota del tempo in attesa dei dati
+     * @param meanLoss         loss media di training sull'epoca
+     * @param validationLoss   loss di validazione (NaN se non disponibile)
+     * @param peakHeapMb       massimo heap utilizzato
+     * @param peakOffHeapMb    massima memoria off-heap stimata
+     * @param peakRssMb        massima memoria fisica del processo
+     */
+    public record EpochSummary(int epoch, int iterations, long examples, double seconds, double imagesPerSecond,
+                               double dataSeconds, double computeSeconds, double dataFraction, double meanLoss,
+                               double validationLoss, double peakHeapMb, double peakOffHeapMb, double peakRssMb) {
+    }
+
+    private final LongSupplier attesaDati;
+    private final int batchesPerEpoch;
+    private final int maxEpochs;
+    private final int logEvery;
+    private final Consumer<String> logger;
+    private final DoubleConsumer progresso;
+    private final PrintWriter csv;
+    private final File fileJson;
+    private final List<EpochSummary> riepiloghi = new ArrayList<>();
+
+    private int epoca;
+    private int batchNellEpoca;
+    private int iterazioniEpoca;
+    private long esempiEpoca;
+    private double sommaLoss;
+    private long inizioEpoca;
+    private long ultimoIstante;
+    private long ultimaAttesa;
+    private long nanoDatiEpoca;
+    private double piccoHeap;
+    private double piccoOffHeap;
+    private double piccoRss;
+
+    /**
+     * Costruttore del listener. I file {@code addestramento-<data>.csv} e {@code .json} vengono creati nella
+     * cartella indicata.
+     *
+     * @param cartella        cartella dei file di metriche (creata se non esiste)
+     * @param attesaDati      tempo cumulativo di attesa dei dati nell'epoca corrente, in nanosecondi
+     * @param batchesPerEpoch batch per epoca, per calcolare l'avanzamento
+     * @param maxEpochs       numero massimo di epoche, per calcolare l'avanzamento
+     * @param logEvery        iterazioni tra due righe di log (0 = nessun log per iterazione)
+     * @param logger          destinazione dei messaggi di log
+     * @param progresso       riceve l'avanzamento complessivo tra 0 e 1 (può essere null)
+     * @throws IOException se i file di metriche non possono essere creati
+     */
+    public TrainingMetricsListener(File cartella, LongSupplier attesaDati, int batchesPerEpoch, int maxEpochs,
+                                   int logEvery, Consumer<String> logger, DoubleConsumer progresso) throws IOException {
+        if (!cartella.exists() && !cartella.mkdirs()) {
+            throw new IOException("Impossibile creare la cartella delle metriche: " + cartella.getAbsolutePath());
+        }
+        String nome = "addestramento-" + LocalDateTime.now().format(FORMATO_NOME);
+        this.attesaDati = attesaDati;
+        this.batchesPerEpoch = batchesPerEpoch;
+        this.maxEpochs = maxEpochs;
+        this.logEvery = logEvery;
+        this.logger = logger;
+        this.progresso = progresso;
+        this.csv = new PrintWriter(Files.newBufferedWriter(new File(cartella, nome + ".csv").toPath(),
+                StandardCharsets.UTF_8));
+        this.fileJson = new File(cartella, nome + ".json");
+        csv.println(INTESTAZIONE_CSV);
+    }
+
+    /**
+     * Segnala l'inizio (o la ripresa) di un'epoca. Va invocato dopo il reset dell'iteratore di training.
+     *
+     * @param epoca      epoca (0-based)
+     * @param primoBatch primo batch dell'epoca che verrà addestrato
+     */
+    public synchronized void startEpoch(int epoca, int primoBatch) {
+        this.epoca = epoca;
+        this.batchNellEpoca = primoBatch;
+        this.iterazioniEpoca = 0;
+        this.esempiEpoca = 0;
+        this.sommaLoss = 0;
+        this.nanoDatiEpoca = 0;
+        this.piccoHeap = 0;
+        this.piccoOffHeap = 0;
+        this.piccoRss = 0;
+        this.inizioEpoca = System.nanoTime();
+        this.ultimoIstante = inizioEpoca;
+        this.ultimaAttesa = attesaDati.getAsLong();
+    }
+
+    @Override
+    public synchronized void iterationDone(Model model, int iteration, int epoch) {
+        long adesso = System.nanoTime();
+        long attesa = attesaDati.getAsLong();
+        long durata = adesso - ultimoIstante;
+        long dati = Math.min(durata, Math.max(0, attesa - ultimaAttesa));
+        ultimoIstante = adesso;
+        ultimaAttesa = attesa;
+
+        int esempi = model.batchSize();
+        double loss = model.score();
+        Runtime runtime = Runtime.getRuntime();
+        double heap = (runtime.totalMemory() - runtime.freeMemory()) / MB;
+        double rss = Pointer.physicalBytes() / MB;
+        double offHeap = Math.max(0, rss - runtime.totalMemory() / MB);
+        double immaginiAlSecondo = durata > 0 ? esempi * 1e9 / durata : 0;
+
+        batchNellEpoca++;
+        iterazioniEpoca++;
+        esempiEpoca += esempi;
+        sommaLoss += loss;
+        nanoDatiEpoca += dati;
+        piccoHeap = Math.max(piccoHeap, heap);
+        piccoOffHeap = Math.max(piccoOffHeap, offHeap);
+        piccoRss = Math.max(piccoRss, rss);
+
+        csv.printf(Locale.ROOT, "%d,%d,%d,%d,%d,%.6f,%.2f,%.2f,%.2f,%.2f,%.1f,%.1f,%.1f%n", System.currentTimeMillis(),
+                epoca + 1, iteration, batchNellEpoca, esempi, loss, durata / 1e6, dati / 1e6, (durata - dati) / 1e6,
+                immaginiAlSecondo, heap, offHeap, rss);
+        if (logEvery > 0 && iterazioniEpoca % logEvery == 0) {
+            csv.flush();
+            logger.accept(String.format("[INFO] Epoca %d, batch %d/%d: loss %.5f, %.1f immagini/s, dati %.0f%%, "
+                            + "heap %.0f MB, off-heap %.0f MB", epoca + 1, batchNellEpoca, batchesPerEpoch, loss,
+                    immaginiAlSecondo, durata > 0 ? 100.0 * dati / durata : 0, heap, offHeap));
+        }
+        if (progresso != null) {
+            progresso.accept(Math.min(1.0, (epoca + (double) batchNellEpoca / batchesPerEpoch) / maxEpochs));
+        }
+    }
+
+    /**
+     * Chiude l'epoca corrente, aggiunge il riepilogo al file JSON e lo restituisce.
+     *
+     * @param validationLoss loss di validazione dell'epoca (NaN se non disponibile)
+     * @return il riepilogo dell'epoca
+     * @throws IOException se il file JSON non può essere scritto
+     */
+    public synchronized EpochSummary endEpoch(double validationLoss) throws IOException {
+        double secondi = (ultimoIstante - inizioEpoca) / 1e9;
+        double secondiDati = nanoDatiEpoca / 1e9;
+        EpochSummary riepilogo = new EpochSummary(epoca + 1, iterazioniEpoca, esempiEpoca, secondi,
+                secondi > 0 ? esempiEpoca / secondi : 0, secondiDati, secondi - secondiDati,
+                secondi > 0 ? secondiDati / secondi : 0, iterazioniEpoca > 0 ? sommaLoss / iterazioniEpoca : Double.NaN,
+                validationLoss, piccoHeap, piccoOffHeap, piccoRss);
+        riepiloghi.add(riepilogo);
+        csv.flush();
+        MAPPER.writeValue(fileJson, riepiloghi);
+        return riepilogo;
+    }
+
+    @Override
+    public synchronized void close() {
+        csv.close();
+    }
+}
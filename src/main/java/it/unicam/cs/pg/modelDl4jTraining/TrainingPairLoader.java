@@ -0,0 +1,26 @@
+package it.unicam.cs.pg.modelDl4jTraining;
+
+import org.nd4j.linalg.dataset.DataSet;
+
+import java.io.IOException;
+
+/**
+ * Strategia di caricamento di una coppia originale/maschera come tensori pronti per il training.
+ * <p>
+ * L'implementazione predefinita ({@link TrainingImageLoader#loadPair(DatasetPair)}) decodifica i PNG a ogni
+ * lettura, mentre {@link TensorCache} legge i tensori già serializzati su disco.
+ * Le implementazioni devono poter essere invocate contemporaneamente da più thread.
+ * </p>
+ */
+@FunctionalInterface
+public interface TrainingPairLoader {
+
+    /**
+     * Carica la coppia come tensori NCHW scalati in [0, 1]: input a 3 canali ed etichetta a 1 canale.
+     *
+     * @param coppia coppia originale/maschera da caricare
+     * @return un DataSet con un solo esempio
+     * @throws IOException se la coppia non può essere letta
+     */
+    DataSet load(DatasetPair coppia) throws IOException;
+}
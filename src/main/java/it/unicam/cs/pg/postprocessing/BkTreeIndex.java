@@ -0,0 +1,115 @@
+package it.unicam.cs.pg.postprocessing;
+
+import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Indice dei candidati basato su un BK-tree, alternativo a {@link SymSpellIndex} quando la memoria è limitata.
+ * <p>
+ * Ogni nodo contiene una parola e i figli sono etichettati con la loro distanza di modifica dal padre. Per la
+ * disuguaglianza triangolare, cercando le parole entro {@code k} da una parola che dista {@code d} dal nodo
+ * basta visitare i figli con etichetta compresa tra {@code d - k} e {@code d + k}. La memoria è lineare nel
+ * vocabolario e indipendente dalla distanza massima, ma una ricerca calcola la distanza per una frazione del
+ * vocabolario che cresce rapidamente con {@code k}.
+ * </p>
+ * <p>
+ * L'albero è memorizzato in array primitivi (primo figlio e fratello successivo di ogni nodo) anziché in oggetti.
+ * </p>
+ */
+public class BkTreeIndex implements CandidateIndex {
+    private final String[] vocabolario;
+    private final int[] primoFiglio;
+    private final int[] fratello;
+    private final short[] distanzaDalPadre;
+
+    /**
+     * Costruisce l'albero sul vocabolario del modello, inserendo le parole nell'ordine del modello.
+     *
+     * @param wordVectors modello Word2Vec da cui leggere il vocabolario
+     */
+    public BkTreeIndex(WordVectors wordVectors) {
+        this(TextCorrector.vocabulary(wordVectors));
+    }
+
+    /**
+     * Costruisce l'albero su un vocabolario esplicito. Il nodo {@code i} contiene la parola {@code i}.
+     *
+     * @param vocabolario parole del vocabolario, nell'ordine del modello
+     */
+    BkTreeIndex(String[] vocabolario) {
+        this.vocabolario = vocabolario;
+        this.primoFiglio = new int[vocabolario.length];
+        this.fratello = new int[vocabolario.length];
+        this.distanzaDalPadre = new short[vocabolario.length];
+        Arrays.fill(primoFiglio, -1);
+        Arrays.fill(fratello, -1);
+        for (int id = 1; id < vocabolario.length; id++) {
+            inserisci(id);
+        }
+    }
+
+    private void inserisci(int id) {
+        int nodo = 0;
+        while (true) {
+            int distanza = EditDistance.damerau(vocabolario[id], vocabolario[nodo]);
+            if (distanza == 0) {
+                return; // parola duplicata
+            }
+            int figlio = primoFiglio[nodo];
+            while (figlio >= 0 && distanzaDalPadre[figlio] != distanza) {
+                figlio = fratello[figlio];
+            }
+            if (figlio < 0) {
+                distanzaDalPadre[id] = (short) distanza;
+                fratello[id] = primoFiglio[nodo];
+                primoFiglio[nodo] = id;
+                return;
+            }
+            nodo = figlio;
+        }
+    }
+
+    @Override
+    public List<String> candidates(String word, int maxDistance) {
+        List<int[]> trovati = new ArrayList<>();
+        if (vocabolario.length == 0) {
+            return List.of();
+        }
+        int[] pila = new int[64];
+        int cima = 0;
+        pila[cima++] = 0;
+        while (cima > 0) {
+            int nodo = pila[--cima];
+            int distanza = EditDistance.damerau(word, vocabolario[nodo]);
+            // La distanza completa non supera quella ristretta: i candidati vengono filtrati con quest'ultima
+            if (distanza <= maxDistance) {
+                int ristretta = EditDistance.bounded(word, vocabolario[nodo], maxDistance);
+                if (ristretta <= maxDistance) {
+                    trovati.add(new int[]{ristretta, nodo});
+                }
+            }
+            for (int figlio = primoFiglio[nodo]; figlio >= 0; figlio = fratello[figlio]) {
+                if (Math.abs(distanzaDalPadre[figlio] - distanza) <= maxDistance) {
+                    if (cima == pila.length) {
+                        pila = Arrays.copyOf(pila, pila.length * 2);
+                    }
+                    pila[cima++] = figlio;
+                }
+            }
+        }
+        return TextCorrector.sortCandidates(trovati, vocabolario);
+    }
+
+    @Override
+    public String getName() {
+        return "BK-tree";
+    }
+
+    @Override
+    public long memoryBytes() {
+        return (long) vocabolario.length * (2 * Integer.BYTES + Short.BYTES);
+    }
+}
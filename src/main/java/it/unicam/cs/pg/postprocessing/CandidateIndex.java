@@ -0,0 +1,35 @@
+package it.unicam.cs.pg.postprocessing;
+
+import java.util.List;
+
+/**
+ * Struttura di ricerca delle parole del vocabolario vicine a una parola fuori vocabolario.
+ * Le implementazioni vengono costruite una sola volta per modello e possono essere interrogate
+ * contemporaneamente da più thread.
+ */
+public interface CandidateIndex {
+
+    /**
+     * Restituisce le parole del vocabolario la cui distanza di modifica dalla parola data non supera il limite.
+     *
+     * @param word        parola normalizzata da cercare
+     * @param maxDistance massima distanza di modifica consentita
+     * @return i candidati ordinati per distanza crescente e, a parità di distanza, per posizione nel vocabolario
+     */
+    List<String> candidates(String word, int maxDistance);
+
+    /**
+     * Restituisce un nome descrittivo dell'indice, utilizzato nei log e nei benchmark.
+     *
+     * @return il nome dell'indice
+     */
+    String getName();
+
+    /**
+     * Restituisce la memoria occupata dalle strutture dell'indice, escluse le parole del vocabolario
+     * condivise con il modello.
+     *
+     * @return la memoria in byte
+     */
+    long memoryBytes();
+}
@@ -0,0 +1,145 @@
+package it.unicam.cs.pg.postprocessing;
+
+import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
+import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Strumento a riga di comando che confronta gli indici dei candidati per distanze di modifica da 1 a 3.
+ * <p>
+ * Per ogni distanza vengono costruiti {@link SymSpellIndex} e {@link BkTreeIndex} e ne vengono misurati tempo di
+ * costruzione, memoria delle strutture e latenza delle ricerche (media, mediana e 99° percentile in
+ * microsecondi). Le ricerche sono le parole fuori vocabolario della trascrizione indicata, completate con parole
+ * del vocabolario alterate da un errore casuale. Il benchmark verifica anche che i due indici restituiscano gli
+ * stessi candidati; il confronto con la scansione lineare è svolto da {@link TextCorrectionBenchmark}.
+ * </p>
+ * Uso: {@code CandidateIndexBenchmark <modello.vec> [trascrizione.txt] [ricerche]}
+ */
+public class CandidateIndexBenchmark {
+
+    private static final long SEED = 42;
+    private static final int DISTANZA_MASSIMA = 3;
+    private static final double MB = 1024.0 * 1024.0;
+
+    /**
+     * Risultati di un indice per una distanza.
+     */
+    private record Misura(String indice, int distanza, double secondiCostruzione, double memoriaMb, double mediaUs,
+                          double medianaUs, double p99Us, double candidatiMedi) {
+    }
+
+    /**
+     * Punto d'ingresso del benchmark.
+     *
+     * @param args modello Word2Vec, trascrizione da cui prendere le parole fuori vocabolario e numero minimo di
+     *             ricerche (opzionali gli ultimi due)
+     * @throws IOException se il modello o il testo non possono essere letti
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Uso: CandidateIndexBenchmark <modello.vec> [trascrizione.txt] [ricerche]");
+            return;
+        }
+        WordVectors wordVectors = WordVectorSerializer.loadStaticModel(new File(args[0]));
+        String testo = args.length > 1 ? Files.readString(new File(args[1]).toPath(), StandardCharsets.UTF_8) : "";
+        int minimoRicerche = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        String[] vocabolario = TextCorrector.vocabulary(wordVectors);
+        List<String> ricerche = ricerche(wordVectors, vocabolario, testo, minimoRicerche);
+        System.out.println("[INFO] Vocabolario di " + vocabolario.length + " parole, " + ricerche.size() + " ricerche");
+
+        long inizio = System.nanoTime();
+        BkTreeIndex bkTree = new BkTreeIndex(vocabolario);
+        double costruzioneBkTree = (System.nanoTime() - inizio) / 1e9;
+
+        List<Misura> misure = new ArrayList<>();
+        int differenze = 0;
+        for (int distanza = 1; distanza <= DISTANZA_MASSIMA; distanza++) {
+            inizio = System.nanoTime();
+            SymSpellIndex symSpell = new SymSpellIndex(vocabolario, distanza);
+            double costruzioneSymSpell = (System.nanoTime() - inizio) / 1e9;
+            for (String parola : ricerche) {
+                if (!symSpell.candidates(parola, distanza).equals(bkTree.candidates(parola, distanza))) {
+                    differenze++;
+                    System.out.println("[ERRORE] Candidati diversi per \"" + parola + "\" a distanza " + distanza);
+                }
+            }
+            misure.add(misura(symSpell, costruzioneSymSpell, distanza, ricerche));
+            misure.add(misura(bkTree, costruzioneBkTree, distanza, ricerche));
+        }
+
+        System.out.println();
+        System.out.printf("%-38s %8s %12s %10s %11s %11s %11s %10s%n", "Indice", "distanza", "costruzione",
+                "memoria", "media µs", "mediana µs", "p99 µs", "candidati");
+        for (Misura m : misure) {
+            System.out.printf("%-38s %8d %11.2fs %7.1f MB %11.1f %11.1f %11.1f %10.1f%n", m.indice(), m.distanza(),
+                    m.secondiCostruzione(), m.memoriaMb(), m.mediaUs(), m.medianaUs(), m.p99Us(), m.candidatiMedi());
+        }
+        System.out.println("[INFO] La memoria non include le parole del vocabolario, condivise con il modello; "
+                + "il BK-tree è costruito una sola volta per tutte le distanze.");
+        System.out.println(differenze == 0
+                ? "[SUCCESSO] I due indici restituiscono gli stessi candidati."
+                : "[ERRORE] " + differenze + " ricerche con candidati diversi.");
+    }
+
+    /**
+     * Misura la latenza delle ricerche dopo un passaggio di riscaldamento.
+     */
+    private static Misura misura(CandidateIndex indice, double secondiCostruzione, int distanza, List<String> ricerche) {
+        for (String parola : ricerche) {
+            indice.candidates(parola, distanza);
+        }
+        double[] latenze = new double[ricerche.size()];
+        long candidati = 0;
+        for (int i = 0; i < ricerche.size(); i++) {
+            long t0 = System.nanoTime();
+            candidati += indice.candidates(ricerche.get(i), distanza).size();
+            latenze[i] = (System.nanoTime() - t0) / 1e3;
+        }
+        Arrays.sort(latenze);
+        double media = Arrays.stream(latenze).average().orElse(0);
+        return new Misura(indice.getName(), distanza, secondiCostruzione, indice.memoryBytes() / MB, media,
+                latenze[latenze.length / 2], latenze[Math.min(latenze.length - 1, (int) (latenze.length * 0.99))],
+                (double) candidati / ricerche.size());
+    }
+
+    /**
+     * Raccoglie le parole fuori vocabolario del testo e aggiunge parole del vocabolario con un errore casuale
+     * (sostituzione, inserimento o cancellazione) fino al numero minimo di ricerche.
+     */
+    private static List<String> ricerche(WordVectors wordVectors, String[] vocabolario, String testo, int minimo) {
+        Set<String> ricerche = TextCorrector.outOfVocabularyWords(wordVectors, testo);
+        Random random = new Random(SEED);
+        String lettere = "abcdefghilmnopqrstuvz";
+        for (int tentativi = 0; ricerche.size() < minimo && tentativi < minimo * 10 && vocabolario.length > 0; tentativi++) {
+            StringBuilder parola = new StringBuilder(vocabolario[random.nextInt(vocabolario.length)]);
+            int posizione = random.nextInt(parola.length() + 1);
+            char lettera = lettere.charAt(random.nextInt(lettere.length()));
+            switch (random.nextInt(3)) {
+                case 0 -> {
+                    if (posizione < parola.length()) {
+                        parola.setCharAt(posizione, lettera);
+                    }
+                }
+                case 1 -> parola.insert(posizione, lettera);
+                default -> {
+                    if (posizione < parola.length() && parola.length() > 1) {
+                        parola.deleteCharAt(posizione);
+                    }
+                }
+            }
+            if (!wordVectors.hasWord(parola.toString())) {
+                ricerche.add(parola.toString());
+            }
+        }
+        return new ArrayList<>(ricerche);
+    }
+}
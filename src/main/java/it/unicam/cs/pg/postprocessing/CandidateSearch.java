@@ -0,0 +1,41 @@
+package it.unicam.cs.pg.postprocessing;
+
+import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
+
+/**
+ * Strutture disponibili per la ricerca dei candidati di correzione, costruite da {@link #create(WordVectors, int)}.
+ */
+public enum CandidateSearch {
+    /** Indice a cancellazioni simmetriche: ricerche più veloci, memoria crescente con la distanza massima. */
+    SYMSPELL("SymSpell (veloce)"),
+    /** BK-tree: memoria lineare nel vocabolario e indipendente dalla distanza, ricerche più lente. */
+    BK_TREE("BK-tree (poca memoria)"),
+    /** Scansione completa del vocabolario, senza strutture aggiuntive. */
+    LINEAR("Scansione lineare");
+
+    private final String etichetta;
+
+    CandidateSearch(String etichetta) {
+        this.etichetta = etichetta;
+    }
+
+    /**
+     * Costruisce l'indice sul vocabolario del modello.
+     *
+     * @param wordVectors modello Word2Vec
+     * @param maxDistance massima distanza di modifica delle ricerche
+     * @return l'indice dei candidati
+     */
+    public CandidateIndex create(WordVectors wordVectors, int maxDistance) {
+        return switch (this) {
+            case SYMSPELL -> new SymSpellIndex(wordVectors, maxDistance);
+            case BK_TREE -> new BkTreeIndex(wordVectors);
+            case LINEAR -> new LinearCandidateIndex(wordVectors);
+        };
+    }
+
+    @Override
+    public String toString() {
+        return etichetta;
+    }
+}
@@ -0,0 +1,73 @@
+package it.unicam.cs.pg.postprocessing;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Ricerca dei candidati che riordina e filtra i risultati di un altro indice con la distanza pesata di
+ * {@link OcrConfusionModel}.
+ * <p>
+ * L'indice di base trova i candidati entro la distanza di modifica richiesta; vengono tenuti solo quelli la cui
+ * distanza pesata non supera la soglia, ordinati per distanza pesata e, a parità, nell'ordine dell'indice di base.
+ * Con una soglia inferiore alla distanza massima restano le parole spiegate da confusioni tipiche dell'OCR (ad
+ * esempio {@code rn} per {@code m}, a distanza di Levenshtein 2) e vengono scartati i candidati casuali alla stessa
+ * distanza.
+ * </p>
+ * <p>
+ * La soglia agisce solo da filtro: la ricerca nell'indice di base avviene comunque entro {@code maxDistance}, perché
+ * una confusione tipica può costare meno di 1 pur coprendo più modifiche di Levenshtein e la distanza di modifica
+ * non dà quindi un limite più stretto. Il costo della ricerca resta quello dell'indice di base; il calcolo della
+ * distanza pesata si interrompe appena supera la soglia.
+ * </p>
+ */
+public class ConfusionWeightedIndex implements CandidateIndex {
+    private final CandidateIndex base;
+    private final OcrConfusionModel confusioni;
+    private final float soglia;
+
+    /**
+     * Costruttore dell'indice.
+     *
+     * @param base       indice che trova i candidati entro la distanza di modifica
+     * @param confusions modello delle confusioni OCR
+     * @param maxCost    massima distanza pesata consentita
+     */
+    public ConfusionWeightedIndex(CandidateIndex base, OcrConfusionModel confusions, float maxCost) {
+        this.base = base;
+        this.confusioni = confusions;
+        this.soglia = maxCost;
+    }
+
+    @Override
+    public List<String> candidates(String word, int maxDistance) {
+        List<String> candidati = base.candidates(word, maxDistance);
+        List<Candidato> pesati = new ArrayList<>(candidati.size());
+        for (String candidato : candidati) {
+            float costo = confusioni.distance(word, candidato, soglia);
+            if (costo <= soglia) {
+                pesati.add(new Candidato(candidato, costo));
+            }
+        }
+        // Ordinamento stabile: a parità di costo resta l'ordine dell'indice di base
+        pesati.sort(Comparator.comparingDouble(Candidato::costo));
+        List<String> risultato = new ArrayList<>(pesati.size());
+        for (Candidato c : pesati) {
+            risultato.add(c.parola());
+        }
+        return risultato;
+    }
+
+    private record Candidato(String parola, float costo) {
+    }
+
+    @Override
+    public String getName() {
+        return base.getName() + " + confusioni OCR";
+    }
+
+    @Override
+    public long memoryBytes() {
+        return base.memoryBytes();
+    }
+}
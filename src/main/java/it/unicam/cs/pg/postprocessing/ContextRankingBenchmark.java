@@ -0,0 +1,85 @@
+package it.unicam.cs.pg.postprocessing;
+
+import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
+import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Strumento a riga di comando che misura l'effetto del {@link NgramLanguageModel} sulla correzione.
+ * <p>
+ * Il testo OCR viene corretto riga per riga senza e con il modello linguistico, e per ciascun caso viene riportata
+ * la percentuale di parole uguali alla trascrizione corretta, allineate come in {@link OcrConfusionTrainer}. Con le
+ * confusioni OCR indicate i candidati sono cercati con {@link ConfusionWeightedIndex}. Viene misurato anche il tempo
+ * di {@link NgramLanguageModel#best(String[], String, String, String)} su {@value TextCorrector#CONTEXT_CANDIDATES}
+ * candidati presi a caso dal vocabolario. Il modello linguistico va costruito su testi diversi da quello valutato.
+ * </p>
+ * Uso: {@code ContextRankingBenchmark <modello.vec> <modello.lm> <ocr.txt> <corretto.txt|.box> [confusioni.tsv]}
+ */
+public class ContextRankingBenchmark {
+
+    private static final int MAX_EDIT_DISTANCE = 2;
+    private static final float CONFUSION_MAX_COST = 1f;
+    private static final int SCELTE = 1_000_000;
+
+    /**
+     * Punto d'ingresso del benchmark.
+     *
+     * @param args modello Word2Vec, modello linguistico, testo OCR, trascrizione corretta e confusioni OCR
+     *             (opzionali)
+     * @throws IOException se i modelli o i testi non possono essere letti
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.out.println("Uso: ContextRankingBenchmark <modello.vec> <modello.lm> <ocr.txt> <corretto.txt|.box> "
+                    + "[confusioni.tsv]");
+            return;
+        }
+        WordVectors wordVectors = WordVectorSerializer.loadStaticModel(new File(args[0]));
+        NgramLanguageModel modello = NgramLanguageModel.load(new File(args[1]));
+        List<String> righeOcr = OcrConfusionTrainer.readLines(new File(args[2]));
+        List<String> righeCorrette = OcrConfusionTrainer.readLines(new File(args[3]));
+        CandidateIndex indice = CandidateSearch.SYMSPELL.create(wordVectors, MAX_EDIT_DISTANCE);
+        if (args.length > 4) {
+            indice = new ConfusionWeightedIndex(indice, OcrConfusionModel.load(new File(args[4])), CONFUSION_MAX_COST);
+        }
+        System.out.printf("[INFO] Modello linguistico di %d parole, %.1f MB; ricerca %s%n", modello.words(),
+                modello.memoryBytes() / 1048576.0, indice.getName());
+
+        TextCorrector corrector = new TextCorrector(wordVectors, MAX_EDIT_DISTANCE, indice);
+        System.out.println();
+        System.out.printf("%-28s %s%n", "Senza correzione",
+                OcrConfusionTrainer.wordAccuracy(righeOcr, righeCorrette, null));
+        System.out.printf("%-28s %s%n", "Senza contesto",
+                OcrConfusionTrainer.wordAccuracy(righeOcr, righeCorrette, corrector));
+        corrector.setLanguageModel(modello);
+        System.out.printf("%-28s %s%n", "Con il modello linguistico",
+                OcrConfusionTrainer.wordAccuracy(righeOcr, righeCorrette, corrector));
+
+        String[] vocabolario = TextCorrector.vocabulary(wordVectors);
+        Random random = new Random(42);
+        String[][] scelte = new String[1024][];
+        for (int i = 0; i < scelte.length; i++) {
+            scelte[i] = new String[TextCorrector.CONTEXT_CANDIDATES + 3];
+            for (int j = 0; j < scelte[i].length; j++) {
+                scelte[i][j] = vocabolario[random.nextInt(vocabolario.length)];
+            }
+        }
+        String[] candidati = new String[TextCorrector.CONTEXT_CANDIDATES];
+        int controllo = 0;
+        long inizio = 0;
+        for (int i = -SCELTE; i < SCELTE; i++) {
+            if (i == 0) {
+                inizio = System.nanoTime(); // Dopo il riscaldamento
+            }
+            String[] s = scelte[i & (scelte.length - 1)];
+            System.arraycopy(s, 3, candidati, 0, candidati.length);
+            controllo += modello.best(candidati, s[0], s[1], s[2]).length();
+        }
+        System.out.printf("%n[INFO] Scelta nel contesto tra %d candidati: %.2f µs (controllo %d)%n",
+                TextCorrector.CONTEXT_CANDIDATES, (System.nanoTime() - inizio) / 1e3 / SCELTE, controllo);
+    }
+}
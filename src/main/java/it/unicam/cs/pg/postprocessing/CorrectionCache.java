@@ -0,0 +1,252 @@
+package it.unicam.cs.pg.postprocessing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Cache limitata e concorrente delle correzioni: parola fuori vocabolario normalizzata → parola corretta.
+ * <p>
+ * Le trascrizioni OCR ripetono molte volte gli stessi errori di riconoscimento, per cui la ricerca dei candidati e
+ * la scelta semantica vengono svolte una sola volta per ogni parola normalizzata. Sono memorizzati anche i
+ * risultati negativi (parole senza correzione), rappresentati dalla stringa vuota.
+ * </p>
+ * <p>
+ * La cache è divisa in segmenti, ciascuno con il proprio lock e con una {@link LinkedHashMap} in ordine di accesso
+ * che scarta la voce usata meno di recente quando il segmento è pieno. Il contenuto può essere salvato accanto al
+ * modello e ricaricato alla sessione successiva: il file registra l'impronta del modello
+ * ({@link EmbeddingMatrix#fingerprint()}) e la distanza massima di modifica, e viene ignorato se una delle due
+ * cambia.
+ * </p>
+ */
+public class CorrectionCache {
+    private static final int MAGIC = 0x434F5252; // "CORR"
+    private static final int VERSIONE = 1;
+    private static final int SEGMENTI = 16;
+
+    /**
+     * Valore memorizzato per le parole per cui non è stata trovata una correzione.
+     */
+    public static final String NO_CORRECTION = "";
+
+    /**
+     * Contatori della cache.
+     *
+     * @param hits         ricerche risolte dalla cache
+     * @param negativeHits ricerche risolte dalla cache con un risultato negativo
+     * @param misses       ricerche che hanno richiesto la correzione completa
+     * @param evictions    voci scartate per rispettare la capacità
+     * @param size         voci presenti
+     */
+    public record Stats(long hits, long negativeHits, long misses, long evictions, int size) {
+        /**
+         * @return la frazione di ricerche risolte dalla cache, tra 0 e 1
+         */
+        public double hitRate() {
+            long totale = hits + misses;
+            return totale == 0 ? 0 : (double) hits / totale;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.1f%% dalla cache (%d su %d ricerche, %d negative), %d voci, %d scartate",
+                    hitRate() * 100, hits, hits + misses, negativeHits, size, evictions);
+        }
+    }
+
+    private final Segmento[] segmenti;
+    private final long impronta;
+    private final int distanzaMassima;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Crea una cache vuota.
+     *
+     * @param capacity        numero massimo di voci
+     * @param fingerprint     impronta del modello su cui sono calcolate le correzioni
+     * @param maxEditDistance distanza massima di modifica usata dal correttore
+     */
+    public CorrectionCache(int capacity, long fingerprint, int maxEditDistance) {
+        this.impronta = fingerprint;
+        this.distanzaMassima = maxEditDistance;
+        this.segmenti = new Segmento[SEGMENTI];
+        int perSegmento = Math.max(1, (capacity + SEGMENTI - 1) / SEGMENTI);
+        for (int i = 0; i < SEGMENTI; i++) {
+            segmenti[i] = new Segmento(perSegmento);
+        }
+    }
+
+    /**
+     * Carica la cache salvata se è stata calcolata sullo stesso modello e con la stessa distanza, altrimenti ne
+     * crea una vuota.
+     *
+     * @param file            file della cache (ad esempio il percorso del modello con estensione {@code .correzioni})
+     * @param capacity        numero massimo di voci
+     * @param fingerprint     impronta del modello
+     * @param maxEditDistance distanza massima di modifica usata dal correttore
+     * @param logger          destinazione dei messaggi di log
+     * @return la cache
+     */
+    public static CorrectionCache loadOrCreate(File file, int capacity, long fingerprint, int maxEditDistance,
+                                               Consumer<String> logger) {
+        CorrectionCache cache = new CorrectionCache(capacity, fingerprint, maxEditDistance);
+        if (!file.exists()) {
+            return cache;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSIONE || in.readLong() != fingerprint
+                    || in.readInt() != maxEditDistance) {
+                logger.accept("[INFO] La cache delle correzioni salvata appartiene a un altro modello: viene ignorata.");
+                return cache;
+            }
+            int voci = in.readInt();
+            for (int i = 0; i < voci; i++) {
+                String parola = in.readUTF();
+                cache.put(parola, in.readUTF());
+            }
+            cache.resetStats();
+            logger.accept("[INFO] Cache delle correzioni caricata: " + cache.size() + " voci.");
+        } catch (IOException ex) {
+            logger.accept("[ERRORE] Lettura della cache delle correzioni fallita: " + ex.getMessage());
+            return new CorrectionCache(capacity, fingerprint, maxEditDistance);
+        }
+        return cache;
+    }
+
+    /**
+     * Restituisce la correzione memorizzata per una parola normalizzata.
+     *
+     * @param word parola normalizzata
+     * @return la correzione, {@link #NO_CORRECTION} se la parola non ha una correzione, oppure null se la parola
+     * non è nella cache
+     */
+    public String get(String word) {
+        Segmento segmento = segmento(word);
+        String correzione;
+        synchronized (segmento) {
+            correzione = segmento.get(word);
+        }
+        if (correzione == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+            if (correzione.isEmpty()) {
+                negativeHits.increment();
+            }
+        }
+        return correzione;
+    }
+
+    /**
+     * Memorizza la correzione di una parola normalizzata.
+     *
+     * @param word       parola normalizzata
+     * @param correction correzione, oppure null o {@link #NO_CORRECTION} se la parola non ha una correzione
+     */
+    public void put(String word, String correction) {
+        Segmento segmento = segmento(word);
+        synchronized (segmento) {
+            segmento.put(word, correction == null ? NO_CORRECTION : correction);
+        }
+    }
+
+    /**
+     * Salva le voci della cache, dalla meno alla più recente di ogni segmento.
+     *
+     * @param file file di destinazione
+     * @throws IOException se il file non può essere scritto
+     */
+    public void save(File file) throws IOException {
+        List<Map.Entry<String, String>> voci = new ArrayList<>();
+        for (Segmento segmento : segmenti) {
+            synchronized (segmento) {
+                for (Map.Entry<String, String> voce : segmento.entrySet()) {
+                    voci.add(Map.entry(voce.getKey(), voce.getValue()));
+                }
+            }
+        }
+        File temporaneo = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaneo.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSIONE);
+            out.writeLong(impronta);
+            out.writeInt(distanzaMassima);
+            out.writeInt(voci.size());
+            for (Map.Entry<String, String> voce : voci) {
+                out.writeUTF(voce.getKey());
+                out.writeUTF(voce.getValue());
+            }
+        }
+        Files.move(temporaneo.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return il numero di voci presenti
+     */
+    public int size() {
+        int voci = 0;
+        for (Segmento segmento : segmenti) {
+            synchronized (segmento) {
+                voci += segmento.size();
+            }
+        }
+        return voci;
+    }
+
+    /**
+     * @return i contatori accumulati dalla creazione o dall'ultimo {@link #resetStats()}
+     */
+    public Stats stats() {
+        return new Stats(hits.sum(), negativeHits.sum(), misses.sum(), evictions.sum(), size());
+    }
+
+    /**
+     * Azzera i contatori senza svuotare la cache.
+     */
+    public void resetStats() {
+        hits.reset();
+        negativeHits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    private Segmento segmento(String word) {
+        int h = word.hashCode();
+        return segmenti[(h ^ (h >>> 16)) & (SEGMENTI - 1)];
+    }
+
+    /**
+     * Segmento della cache: mappa in ordine di accesso che scarta la voce meno recente oltre la capacità.
+     */
+    private final class Segmento extends LinkedHashMap<String, String> {
+        private final int capacita;
+
+        private Segmento(int capacita) {
+            super(16, 0.75f, true);
+            this.capacita = capacita;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            if (size() > capacita) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
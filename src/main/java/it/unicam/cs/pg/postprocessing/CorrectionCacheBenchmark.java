@@ -0,0 +1,130 @@
+package it.unicam.cs.pg.postprocessing;
+
+import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
+import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+
+/**
+ * Strumento a riga di comando che misura l'effetto di {@link CorrectionCache} sulla correzione di più documenti.
+ * <p>
+ * Le trascrizioni indicate vengono corrette in sequenza, ripetute il numero di volte richiesto per simulare un
+ * corpus in cui gli stessi errori OCR ricorrono in documenti diversi. Il benchmark confronta le parole al secondo
+ * senza cache, con la cache inizialmente vuota e con la cache salvata e ricaricata da file (come in una nuova
+ * sessione), riporta percentuale di risposte dalla cache e voci scartate, e verifica che i testi corretti siano
+ * identici in tutti i casi.
+ * </p>
+ * Uso: {@code CorrectionCacheBenchmark <modello.vec> <ripetizioni> <trascrizione.txt> [altre trascrizioni...]}
+ */
+public class CorrectionCacheBenchmark {
+
+    private static final int MAX_EDIT_DISTANCE = 2;
+    private static final int CAPACITA = 100000;
+    private static final int CAPACITA_RIDOTTA = 32;
+
+    /**
+     * Punto d'ingresso del benchmark.
+     *
+     * @param args modello Word2Vec, numero di ripetizioni dei documenti e trascrizioni da correggere
+     * @throws IOException se il modello o le trascrizioni non possono essere letti
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("Uso: CorrectionCacheBenchmark <modello.vec> <ripetizioni> <trascrizione.txt> [altre trascrizioni...]");
+            return;
+        }
+        WordVectors wordVectors = WordVectorSerializer.loadStaticModel(new File(args[0]));
+        int ripetizioni = Integer.parseInt(args[1]);
+        List<String> documenti = new ArrayList<>();
+        for (int r = 0; r < ripetizioni; r++) {
+            for (int i = 2; i < args.length; i++) {
+                documenti.add(Files.readString(new File(args[i]).toPath(), StandardCharsets.UTF_8));
+            }
+        }
+        int parole = 0;
+        for (String documento : documenti) {
+            Matcher matcher = TextCorrector.WORD_PATTERN.matcher(documento);
+            while (matcher.find()) {
+                parole++;
+            }
+        }
+        long impronta = new EmbeddingMatrix(wordVectors).fingerprint();
+        TextCorrector corrector = new TextCorrector(wordVectors, MAX_EDIT_DISTANCE);
+        System.out.println("[INFO] " + documenti.size() + " documenti, " + parole + " parole");
+
+        List<String> riferimento = correggi(corrector, documenti);
+        double secondiSenzaCache = misura(corrector, documenti);
+        System.out.println();
+        System.out.printf("%-34s %12s %10s   %s%n", "Correzione", "parole/s", "speedup", "cache");
+        System.out.printf("%-34s %12.0f %9.1fx%n", "Senza cache", parole / secondiSenzaCache, 1.0);
+
+        int differenze = 0;
+        CorrectionCache cache = new CorrectionCache(CAPACITA, impronta, MAX_EDIT_DISTANCE);
+        corrector.setCorrectionCache(cache);
+        long inizio = System.nanoTime();
+        differenze += confronta(riferimento, correggi(corrector, documenti));
+        double secondi = (System.nanoTime() - inizio) / 1e9;
+        System.out.printf("%-34s %12.0f %9.1fx   %s%n", "Cache inizialmente vuota", parole / secondi,
+                secondiSenzaCache / secondi, cache.stats());
+
+        File file = File.createTempFile("correzioni", ".cache");
+        file.deleteOnExit();
+        cache.save(file);
+        CorrectionCache ricaricata = CorrectionCache.loadOrCreate(file, CAPACITA, impronta, MAX_EDIT_DISTANCE,
+                System.out::println);
+        corrector.setCorrectionCache(ricaricata);
+        inizio = System.nanoTime();
+        differenze += confronta(riferimento, correggi(corrector, documenti));
+        secondi = (System.nanoTime() - inizio) / 1e9;
+        System.out.printf("%-34s %12.0f %9.1fx   %s%n", "Cache ricaricata da file", parole / secondi,
+                secondiSenzaCache / secondi, ricaricata.stats());
+
+        CorrectionCache ridotta = new CorrectionCache(CAPACITA_RIDOTTA, impronta, MAX_EDIT_DISTANCE);
+        corrector.setCorrectionCache(ridotta);
+        inizio = System.nanoTime();
+        differenze += confronta(riferimento, correggi(corrector, documenti));
+        secondi = (System.nanoTime() - inizio) / 1e9;
+        System.out.printf("%-34s %12.0f %9.1fx   %s%n", "Cache di " + CAPACITA_RIDOTTA + " voci", parole / secondi,
+                secondiSenzaCache / secondi, ridotta.stats());
+
+        CorrectionCache altroModello = CorrectionCache.loadOrCreate(file, CAPACITA, impronta + 1, MAX_EDIT_DISTANCE,
+                System.out::println);
+        if (altroModello.size() != 0) {
+            differenze++;
+            System.out.println("[ERRORE] La cache salvata è stata caricata per un modello diverso.");
+        }
+        System.out.println(differenze == 0
+                ? "[SUCCESSO] Testi corretti identici con e senza cache."
+                : "[ERRORE] " + differenze + " documenti corretti in modo diverso.");
+    }
+
+    private static List<String> correggi(TextCorrector corrector, List<String> documenti) {
+        List<String> corretti = new ArrayList<>(documenti.size());
+        for (String documento : documenti) {
+            corretti.add(corrector.advancedCorrectText(documento));
+        }
+        return corretti;
+    }
+
+    private static double misura(TextCorrector corrector, List<String> documenti) {
+        long inizio = System.nanoTime();
+        correggi(corrector, documenti);
+        return (System.nanoTime() - inizio) / 1e9;
+    }
+
+    private static int confronta(List<String> attesi, List<String> corretti) {
+        int differenze = 0;
+        for (int i = 0; i < attesi.size(); i++) {
+            if (!attesi.get(i).equals(corretti.get(i))) {
+                differenze++;
+            }
+        }
+        return differenze;
+    }
+}
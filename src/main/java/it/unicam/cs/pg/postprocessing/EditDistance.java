@@ -0,0 +1,181 @@
+package it.unicam.cs.pg.postprocessing;
+
+/**
+ * Distanze di modifica tra parole, con buffer riutilizzati per thread.
+ * <p>
+ * {@link #bounded(String, String, int)} calcola la distanza di Damerau-Levenshtein ristretta (Optimal String
+ * Alignment): inserimenti, cancellazioni, sostituzioni e scambi di due caratteri adiacenti, frequenti negli errori
+ * OCR, costano 1. Il calcolo è limitato alla banda di Ukkonen di larghezza {@code 2k + 1} intorno alla diagonale e
+ * si interrompe appena l'intera riga supera il limite, per cui il costo è {@code O(k * n)} invece di
+ * {@code O(n * m)}.
+ * </p>
+ * <p>
+ * La distanza ristretta non rispetta la disuguaglianza triangolare; per le strutture metriche come
+ * {@link BkTreeIndex} è disponibile {@link #damerau(String, String)}, la distanza di Damerau-Levenshtein completa,
+ * che non supera mai quella ristretta.
+ * </p>
+ */
+public class EditDistance {
+
+    /**
+     * Buffer di un thread: tre righe per la distanza limitata, matrice e ultima riga di ogni carattere per quella completa.
+     */
+    private static final class Buffer {
+        private int[] riga2 = new int[32];
+        private int[] riga1 = new int[32];
+        private int[] riga0 = new int[32];
+        private int[] matrice = new int[32 * 32];
+        private final int[] ultimaRiga = new int[Character.MAX_VALUE + 1];
+    }
+
+    private static final ThreadLocal<Buffer> BUFFER = ThreadLocal.withInitial(Buffer::new);
+
+    /**
+     * Calcola la distanza di Damerau-Levenshtein ristretta tra due stringhe, fino a un limite.
+     *
+     * @param a   prima stringa
+     * @param b   seconda stringa
+     * @param max limite della distanza (non negativo)
+     * @return la distanza se non supera {@code max}, altrimenti {@code max + 1}
+     */
+    public static int bounded(String a, String b, int max) {
+        int n = a.length();
+        int m = b.length();
+        int oltre = max + 1;
+        if (Math.abs(n - m) > max) {
+            return oltre;
+        }
+        if (n == 0 || m == 0) {
+            return Math.max(n, m);
+        }
+        Buffer buffer = BUFFER.get();
+        if (buffer.riga0.length < m + 2) {
+            int lunghezza = Math.max(m + 2, buffer.riga0.length * 2);
+            buffer.riga0 = new int[lunghezza];
+            buffer.riga1 = new int[lunghezza];
+            buffer.riga2 = new int[lunghezza];
+        }
+        int[] precedente2 = buffer.riga2;
+        int[] precedente = buffer.riga1;
+        int[] corrente = buffer.riga0;
+
+        int fineBanda = Math.min(m, max);
+        for (int j = 0; j <= fineBanda; j++) {
+            precedente[j] = j;
+        }
+        precedente[fineBanda + 1] = oltre;
+
+        for (int i = 1; i <= n; i++) {
+            // Colonne della banda di Ukkonen per la riga i
+            int inizio = Math.max(1, i - max);
+            int fine = Math.min(m, i + max);
+            corrente[inizio - 1] = inizio == 1 ? Math.min(i, oltre) : oltre;
+            int minimoRiga = corrente[inizio - 1];
+            char ca = a.charAt(i - 1);
+            for (int j = inizio; j <= fine; j++) {
+                char cb = b.charAt(j - 1);
+                int valore = precedente[j - 1] + (ca == cb ? 0 : 1);
+                valore = Math.min(valore, Math.min(precedente[j], corrente[j - 1]) + 1);
+                if (i > 1 && j > 1 && ca == b.charAt(j - 2) && a.charAt(i - 2) == cb) {
+                    valore = Math.min(valore, precedente2[j - 2] + 1);
+                }
+                corrente[j] = Math.min(valore, oltre);
+                minimoRiga = Math.min(minimoRiga, corrente[j]);
+            }
+            if (fine < m) {
+                corrente[fine + 1] = oltre;
+            }
+            // Ogni cella della riga successiva, anche tramite uno scambio, vale almeno il minimo di questa riga
+            if (minimoRiga > max) {
+                return oltre;
+            }
+            int[] libera = precedente2;
+            precedente2 = precedente;
+            precedente = corrente;
+            corrente = libera;
+        }
+        return precedente[m];
+    }
+
+    /**
+     * Calcola la distanza di Damerau-Levenshtein completa (scambi di caratteri adiacenti anche se seguiti da altre
+     * modifiche). È una metrica e può essere usata per indici basati sulla disuguaglianza triangolare.
+     *
+     * @param a prima stringa
+     * @param b seconda stringa
+     * @return la distanza tra le due stringhe
+     */
+    public static int damerau(String a, String b) {
+        int n = a.length();
+        int m = b.length();
+        if (n == 0 || m == 0) {
+            return Math.max(n, m);
+        }
+        Buffer buffer = BUFFER.get();
+        int colonne = m + 2;
+        int celle = (n + 2) * colonne;
+        if (buffer.matrice.length < celle) {
+            buffer.matrice = new int[Math.max(celle, buffer.matrice.length * 2)];
+        }
+        int[] h = buffer.matrice;
+        int[] ultimaRiga = buffer.ultimaRiga;
+        int infinito = n + m;
+        h[0] = infinito;
+        for (int i = 0; i <= n; i++) {
+            h[(i + 1) * colonne] = infinito;
+            h[(i + 1) * colonne + 1] = i;
+        }
+        for (int j = 0; j <= m; j++) {
+            h[j + 1] = infinito;
+            h[colonne + j + 1] = j;
+        }
+        for (int i = 1; i <= n; i++) {
+            char ca = a.charAt(i - 1);
+            int ultimaColonna = 0;
+            for (int j = 1; j <= m; j++) {
+                char cb = b.charAt(j - 1);
+                int i1 = ultimaRiga[cb];
+                int j1 = ultimaColonna;
+                int costo = 1;
+                if (ca == cb) {
+                    costo = 0;
+                    ultimaColonna = j;
+                }
+                int valore = Math.min(h[i * colonne + j] + costo,
+                        Math.min(h[(i + 1) * colonne + j] + 1, h[i * colonne + j + 1] + 1));
+                valore = Math.min(valore, h[i1 * colonne + j1] + (i - i1 - 1) + 1 + (j - j1 - 1));
+                h[(i + 1) * colonne + j + 1] = valore;
+            }
+            ultimaRiga[ca] = i;
+        }
+        int distanza = h[(n + 1) * colonne + m + 1];
+        for (int i = 0; i < n; i++) {
+            ultimaRiga[a.charAt(i)] = 0;
+        }
+        return distanza;
+    }
+
+    /**
+     * Calcola la distanza di Damerau-Levenshtein ristretta senza limite, sulla matrice completa.
+     * Usata come riferimento per verificare la versione a banda.
+     *
+     * @param a prima stringa
+     * @param b seconda stringa
+     * @return la distanza tra le due stringhe
+     */
+    static int unbounded(String a, String b) {
+        int[][] dp = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) dp[i][0] = i;
+        for (int j = 0; j <= b.length(); j++) dp[0][j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = (a.charAt(i - 1) == b.charAt(j - 1)) ? 0 : 1;
+                dp[i][j] = Math.min(Math.min(dp[i - 1][j] + 1, dp[i][j - 1] + 1), dp[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    dp[i][j] = Math.min(dp[i][j], dp[i - 2][j - 2] + 1);
+                }
+            }
+        }
+        return dp[a.length()][b.length()];
+    }
+}
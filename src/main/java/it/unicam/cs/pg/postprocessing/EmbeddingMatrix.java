@@ -0,0 +1,199 @@
+package it.unicam.cs.pg.postprocessing;
+
+import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Matrice contigua dei vettori delle parole, normalizzati in L2, con l'indice parola → riga.
+ * <p>
+ * La matrice viene preparata una sola volta al caricamento del modello: con i vettori normalizzati la similarità
+ * coseno è un prodotto scalare tra due righe, per cui i candidati di una parola ({@link #similarities(int, int[])})
+ * e l'intero vocabolario ({@link #nearest(int, int)}) si confrontano scorrendo l'array dei vettori, senza
+ * un'allocazione e una chiamata nativa per ogni coppia.
+ * </p>
+ * <p>
+ * Le righe sono memorizzate in un unico array Java e i prodotti sono calcolati direttamente su di esso: con
+ * poche centinaia di candidati il costo di una moltiplicazione ND4J è dominato dalla copia delle righe e dalla
+ * chiamata nativa, e anche sull'intero vocabolario il prodotto nativo non è più veloce del ciclo Java. Lo stesso
+ * array è usato da {@link HnswIndex}.
+ * </p>
+ */
+public class EmbeddingMatrix {
+    private final String[] vocabolario;
+    private final Map<String, Integer> righe;
+    private final int dimensione;
+    private final float[] vettori;
+    private final long impronta;
+
+    /** Numero massimo di elementi di un array Java accettato da tutte le JVM. */
+    private static final int MAX_ELEMENTI = Integer.MAX_VALUE - 8;
+
+    /**
+     * Copia e normalizza i vettori del modello, nell'ordine di {@link TextCorrector#vocabulary(WordVectors)}.
+     *
+     * @param wordVectors modello Word2Vec
+     */
+    public EmbeddingMatrix(WordVectors wordVectors) {
+        this.vocabolario = TextCorrector.vocabulary(wordVectors);
+        int n = vocabolario.length;
+        this.dimensione = n == 0 ? 0 : wordVectors.getWordVector(vocabolario[0]).length;
+        long elementi = (long) n * dimensione;
+        if (elementi > MAX_ELEMENTI) {
+            throw new IllegalArgumentException(String.format("Il modello ha %d parole di %d dimensioni: %d valori "
+                    + "superano il limite di %d di un singolo array", n, dimensione, elementi, MAX_ELEMENTI));
+        }
+        // Da qui in poi ogni posizione riga * dimensione + colonna è minore di elementi e sta in un int
+        this.vettori = new float[(int) elementi];
+        this.righe = new HashMap<>(n * 2);
+        CRC32 crc = new CRC32();
+        byte[] bit = new byte[4];
+        for (int i = 0; i < n; i++) {
+            righe.put(vocabolario[i], i);
+            double[] v = wordVectors.getWordVector(vocabolario[i]);
+            double norma = 0;
+            for (double x : v) {
+                norma += x * x;
+            }
+            norma = norma > 0 ? Math.sqrt(norma) : 1;
+            crc.update(vocabolario[i].getBytes(StandardCharsets.UTF_8));
+            for (int j = 0; j < dimensione; j++) {
+                float x = (float) (v[j] / norma);
+                vettori[i * dimensione + j] = x;
+                int b = Float.floatToIntBits(x);
+                bit[0] = (byte) (b >>> 24);
+                bit[1] = (byte) (b >>> 16);
+                bit[2] = (byte) (b >>> 8);
+                bit[3] = (byte) b;
+                crc.update(bit);
+            }
+        }
+        this.impronta = crc.getValue() ^ ((long) n << 32) ^ ((long) dimensione << 48);
+    }
+
+    /**
+     * Restituisce la riga di una parola.
+     *
+     * @param word parola
+     * @return la riga, oppure -1 se la parola non è nel vocabolario
+     */
+    public int row(String word) {
+        Integer riga = righe.get(word);
+        return riga == null ? -1 : riga;
+    }
+
+    /**
+     * Restituisce la parola di una riga.
+     *
+     * @param row riga
+     * @return la parola
+     */
+    public String word(int row) {
+        return vocabolario[row];
+    }
+
+    /**
+     * @return il numero di parole, cioè di righe della matrice
+     */
+    public int size() {
+        return vocabolario.length;
+    }
+
+    /**
+     * @return la dimensione dei vettori
+     */
+    public int dimension() {
+        return dimensione;
+    }
+
+    /**
+     * Restituisce un'impronta del vocabolario e dei vettori, usata per riconoscere i file derivati dallo stesso modello.
+     *
+     * @return l'impronta
+     */
+    public long fingerprint() {
+        return impronta;
+    }
+
+    /**
+     * Restituisce la memoria occupata dai vettori normalizzati, escluse le parole.
+     *
+     * @return la memoria in byte
+     */
+    public long memoryBytes() {
+        return (long) vocabolario.length * dimensione * Float.BYTES;
+    }
+
+    /**
+     * Calcola la similarità coseno tra una parola e un insieme di candidati come prodotto scalare delle loro righe.
+     *
+     * @param row        riga della parola
+     * @param candidates righe dei candidati
+     * @return la similarità di ogni candidato, nello stesso ordine
+     */
+    public float[] similarities(int row, int[] candidates) {
+        float[] similarita = new float[candidates.length];
+        int base = row * dimensione;
+        for (int i = 0; i < candidates.length; i++) {
+            similarita[i] = prodotto(base, candidates[i] * dimensione);
+        }
+        return similarita;
+    }
+
+    /**
+     * Trova le parole più simili a quella di una riga calcolando il prodotto scalare con ogni riga della matrice,
+     * con selezione parziale dei migliori risultati; la ricerca è esatta e include la parola stessa.
+     *
+     * @param row riga della parola
+     * @param k   numero di righe da restituire
+     * @return le righe dalla più simile; a parità di similarità prevale la riga più bassa
+     */
+    public int[] nearest(int row, int k) {
+        k = Math.min(k, vocabolario.length);
+        if (k <= 0) {
+            return new int[0];
+        }
+        int base = row * dimensione;
+        int[] migliori = new int[k];
+        float[] valoriMigliori = new float[k];
+        Arrays.fill(valoriMigliori, Float.NEGATIVE_INFINITY);
+        for (int i = 0; i < vocabolario.length; i++) {
+            float s = prodotto(base, i * dimensione);
+            if (s <= valoriMigliori[k - 1]) {
+                continue;
+            }
+            int j = k - 1;
+            while (j > 0 && valoriMigliori[j - 1] < s) {
+                valoriMigliori[j] = valoriMigliori[j - 1];
+                migliori[j] = migliori[j - 1];
+                j--;
+            }
+            valoriMigliori[j] = s;
+            migliori[j] = i;
+        }
+        return migliori;
+    }
+
+    /**
+     * Prodotto scalare tra due righe.
+     *
+     * @param a prima riga
+     * @param b seconda riga
+     * @return la similarità coseno tra le due parole
+     */
+    float dot(int a, int b) {
+        return prodotto(a * dimensione, b * dimensione);
+    }
+
+    private float prodotto(int baseA, int baseB) {
+        float prodotto = 0;
+        for (int j = 0; j < dimensione; j++) {
+            prodotto += vettori[baseA + j] * vettori[baseB + j];
+        }
+        return prodotto;
+    }
+}
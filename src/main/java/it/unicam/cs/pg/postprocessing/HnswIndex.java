@@ -0,0 +1,580 @@
+package it.unicam.cs.pg.postprocessing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Indice approssimato dei vicini più prossimi (HNSW, Hierarchical Navigable Small World) sui vettori delle parole.
+ * <p>
+ * Il grafo è costruito sulla {@link EmbeddingMatrix} del modello, in cui la similarità coseno è un prodotto
+ * scalare tra righe normalizzate. Ogni parola è un nodo di un grafo a più livelli: i livelli alti,
+ * sempre più radi, permettono di avvicinarsi rapidamente alla zona della parola cercata, e il livello 0 contiene
+ * tutti i nodi con al più {@code 2 * M} vicini. Una ricerca visita poche centinaia di nodi invece dell'intero
+ * vocabolario, con un richiamo che dipende dall'ampiezza della ricerca ({@code efSearch}).
+ * </p>
+ * <p>
+ * La costruzione richiede un calcolo proporzionale a {@code n log n} prodotti scalari: il grafo viene quindi
+ * salvato accanto al modello ({@link #loadOrBuild(EmbeddingMatrix, File, Consumer)}) insieme a un'impronta del
+ * vocabolario e dei vettori, e ricostruito solo se il modello cambia.
+ * </p>
+ */
+public class HnswIndex {
+    private static final int MAGIC = 0x484E5357; // "HNSW"
+    private static final int VERSIONE = 1;
+    private static final int M = 16;
+    private static final int M0 = 2 * M;
+    private static final int EF_COSTRUZIONE = 100;
+    private static final int EF_RICERCA = 64;
+    private static final long SEED = 42;
+
+    private final EmbeddingMatrix matrice;
+    private final int[] livelli;
+    private final int[] vicini0;
+    private final int[] numeroVicini0;
+    private final int[][][] viciniSuperiori;
+    private int ingresso = -1;
+    private int livelloMassimo = -1;
+
+    private final ThreadLocal<Ricerca> ricerche;
+
+    /**
+     * Costruisce l'indice sui vettori normalizzati del modello.
+     *
+     * @param matrice matrice dei vettori normalizzati
+     */
+    public HnswIndex(EmbeddingMatrix matrice) {
+        this(matrice, null);
+    }
+
+    /**
+     * Prepara le strutture del grafo; se {@code livelliSalvati} è null il grafo viene costruito.
+     */
+    private HnswIndex(EmbeddingMatrix matrice, int[] livelliSalvati) {
+        this.matrice = matrice;
+        int n = matrice.size();
+        this.vicini0 = new int[n * M0];
+        this.numeroVicini0 = new int[n];
+        this.viciniSuperiori = new int[n][][];
+        this.ricerche = ThreadLocal.withInitial(() -> new Ricerca(matrice.size()));
+        if (livelliSalvati != null) {
+            this.livelli = livelliSalvati;
+            return;
+        }
+        this.livelli = new int[n];
+        Random random = new Random(SEED);
+        double mL = 1 / Math.log(M);
+        for (int i = 0; i < n; i++) {
+            livelli[i] = (int) Math.floor(-Math.log(1 - random.nextDouble()) * mL);
+            inserisci(i);
+        }
+    }
+
+    /**
+     * Carica l'indice salvato accanto al modello se corrisponde ai vettori correnti, altrimenti lo costruisce
+     * e lo salva.
+     *
+     * @param matrice matrice dei vettori normalizzati del modello
+     * @param file    file dell'indice (ad esempio il percorso del modello con estensione {@code .hnsw})
+     * @param logger  destinazione dei messaggi di log
+     * @return l'indice pronto per le ricerche
+     */
+    public static HnswIndex loadOrBuild(EmbeddingMatrix matrice, File file, Consumer<String> logger) {
+        if (file.exists()) {
+            try {
+                HnswIndex indice = load(matrice, file);
+                if (indice != null) {
+                    logger.accept("[INFO] Indice HNSW caricato da " + file.getName());
+                    return indice;
+                }
+                logger.accept("[INFO] L'indice HNSW salvato non corrisponde al modello: viene ricostruito.");
+            } catch (IOException ex) {
+                logger.accept("[ERRORE] Lettura dell'indice HNSW fallita, viene ricostruito: " + ex.getMessage());
+            }
+        }
+        long inizio = System.nanoTime();
+        HnswIndex indice = new HnswIndex(matrice);
+        logger.accept(String.format("[INFO] Indice HNSW costruito in %.1f s.", (System.nanoTime() - inizio) / 1e9));
+        try {
+            indice.save(file);
+        } catch (IOException ex) {
+            logger.accept("[ERRORE] Salvataggio dell'indice HNSW fallito: " + ex.getMessage());
+        }
+        return indice;
+    }
+
+    /**
+     * Restituisce le parole più simili a quella data secondo la similarità coseno, inclusa la parola stessa.
+     *
+     * @param word parola del vocabolario
+     * @param k    numero di parole da restituire
+     * @return le parole dalla più simile alla meno simile, oppure una lista vuota se la parola non ha un vettore
+     */
+    public List<String> nearest(String word, int k) {
+        int riga = matrice.row(word);
+        if (riga < 0) {
+            return List.of();
+        }
+        int[] trovati = search(riga, k, Math.max(k, EF_RICERCA));
+        List<String> parole = new ArrayList<>(trovati.length);
+        for (int id : trovati) {
+            parole.add(matrice.word(id));
+        }
+        return parole;
+    }
+
+    /**
+     * Cerca i vicini approssimati del vettore di una riga.
+     *
+     * @param riga riga della parola nella matrice dei vettori
+     * @param k    numero di vicini
+     * @param ef   ampiezza della ricerca (almeno {@code k}); valori più alti aumentano richiamo e latenza
+     * @return le righe dei vicini, dal più simile
+     */
+    int[] search(int riga, int k, int ef) {
+        if (ingresso < 0) {
+            return new int[0];
+        }
+        Ricerca r = ricerche.get();
+        int corrente = ingresso;
+        float distanzaCorrente = distanza(riga, corrente);
+        for (int livello = livelloMassimo; livello > 0; livello--) {
+            boolean migliorato = true;
+            while (migliorato) {
+                migliorato = false;
+                int[] vicini = viciniSuperiori[corrente][livello - 1];
+                for (int i = 1; i <= vicini[0]; i++) {
+                    float d = distanza(riga, vicini[i]);
+                    if (d < distanzaCorrente) {
+                        distanzaCorrente = d;
+                        corrente = vicini[i];
+                        migliorato = true;
+                    }
+                }
+            }
+        }
+        cercaNelLivello(r, riga, corrente, distanzaCorrente, Math.max(ef, k), 0);
+        int quanti = Math.min(k, r.risultati.size);
+        int[] ordinati = r.risultati.ordinaCrescente();
+        return Arrays.copyOf(ordinati, quanti);
+    }
+
+    /**
+     * Restituisce la memoria occupata dal grafo, esclusa la matrice dei vettori condivisa con il correttore.
+     *
+     * @return la memoria in byte
+     */
+    public long memoryBytes() {
+        long byteGrafo = (long) vicini0.length * Integer.BYTES + (long) numeroVicini0.length * Integer.BYTES
+                + (long) livelli.length * Integer.BYTES;
+        for (int[][] superiori : viciniSuperiori) {
+            if (superiori != null) {
+                for (int[] vicini : superiori) {
+                    byteGrafo += (long) vicini.length * Integer.BYTES;
+                }
+            }
+        }
+        return byteGrafo;
+    }
+
+    /**
+     * Salva il grafo su file; i vettori non vengono salvati, perché la matrice è ricalcolata dal modello.
+     *
+     * @param file file di destinazione
+     * @throws IOException se il file non può essere scritto
+     */
+    public void save(File file) throws IOException {
+        File temporaneo = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaneo.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSIONE);
+            out.writeInt(matrice.size());
+            out.writeInt(matrice.dimension());
+            out.writeLong(matrice.fingerprint());
+            out.writeInt(ingresso);
+            out.writeInt(livelloMassimo);
+            for (int i = 0; i < matrice.size(); i++) {
+                out.writeByte(livelli[i]);
+                out.writeByte(numeroVicini0[i]);
+                for (int j = 0; j < numeroVicini0[i]; j++) {
+                    out.writeInt(vicini0[i * M0 + j]);
+                }
+                for (int l = 0; l < livelli[i]; l++) {
+                    int[] vicini = viciniSuperiori[i][l];
+                    out.writeByte(vicini[0]);
+                    for (int j = 1; j <= vicini[0]; j++) {
+                        out.writeInt(vicini[j]);
+                    }
+                }
+            }
+        }
+        Files.move(temporaneo.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Carica il grafo salvato, oppure restituisce null se non corrisponde al vocabolario e ai vettori del modello.
+     */
+    private static HnswIndex load(EmbeddingMatrix matrice, File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSIONE) {
+                return null;
+            }
+            int n = in.readInt();
+            int d = in.readInt();
+            long impronta = in.readLong();
+            if (n != matrice.size() || d != matrice.dimension() || impronta != matrice.fingerprint()) {
+                return null;
+            }
+            HnswIndex indice = new HnswIndex(matrice, new int[n]);
+            indice.ingresso = in.readInt();
+            indice.livelloMassimo = in.readInt();
+            for (int i = 0; i < n; i++) {
+                indice.livelli[i] = in.readUnsignedByte();
+                indice.numeroVicini0[i] = in.readUnsignedByte();
+                for (int j = 0; j < indice.numeroVicini0[i]; j++) {
+                    indice.vicini0[i * M0 + j] = in.readInt();
+                }
+                if (indice.livelli[i] > 0) {
+                    indice.viciniSuperiori[i] = new int[indice.livelli[i]][];
+                    for (int l = 0; l < indice.livelli[i]; l++) {
+                        int quanti = in.readUnsignedByte();
+                        int[] vicini = new int[M + 1];
+                        vicini[0] = quanti;
+                        for (int j = 1; j <= quanti; j++) {
+                            vicini[j] = in.readInt();
+                        }
+                        indice.viciniSuperiori[i][l] = vicini;
+                    }
+                }
+            }
+            return indice;
+        }
+    }
+
+    /**
+     * Inserisce il nodo {@code q} nel grafo (algoritmo 1 di Malkov e Yashunin).
+     */
+    private void inserisci(int q) {
+        int livello = livelli[q];
+        if (livello > 0) {
+            viciniSuperiori[q] = new int[livello][];
+            for (int l = 0; l < livello; l++) {
+                viciniSuperiori[q][l] = new int[M + 1];
+            }
+        }
+        if (ingresso < 0) {
+            ingresso = q;
+            livelloMassimo = livello;
+            return;
+        }
+        Ricerca r = ricerche.get();
+        int corrente = ingresso;
+        float distanzaCorrente = distanza(q, corrente);
+        for (int l = livelloMassimo; l > livello; l--) {
+            boolean migliorato = true;
+            while (migliorato) {
+                migliorato = false;
+                int[] vicini = viciniSuperiori[corrente][l - 1];
+                for (int i = 1; i <= vicini[0]; i++) {
+                    float d = distanza(q, vicini[i]);
+                    if (d < distanzaCorrente) {
+                        distanzaCorrente = d;
+                        corrente = vicini[i];
+                        migliorato = true;
+                    }
+                }
+            }
+        }
+        for (int l = Math.min(livello, livelloMassimo); l >= 0; l--) {
+            cercaNelLivello(r, q, corrente, distanzaCorrente, EF_COSTRUZIONE, l);
+            int[] candidati = r.risultati.ordinaCrescente();
+            int massimo = l == 0 ? M0 : M;
+            int[] scelti = selezionaVicini(q, candidati, candidati.length, M);
+            impostaVicini(q, l, scelti, scelti.length);
+            for (int vicino : scelti) {
+                collega(vicino, q, l, massimo);
+            }
+            corrente = candidati[0];
+            distanzaCorrente = distanza(q, corrente);
+        }
+        if (livello > livelloMassimo) {
+            livelloMassimo = livello;
+            ingresso = q;
+        }
+    }
+
+    /**
+     * Aggiunge {@code nuovo} ai vicini di {@code nodo}, sfoltendo la lista con l'euristica se è piena.
+     */
+    private void collega(int nodo, int nuovo, int livello, int massimo) {
+        int quanti = numeroVicini(nodo, livello);
+        if (quanti < massimo) {
+            if (livello == 0) {
+                vicini0[nodo * M0 + quanti] = nuovo;
+                numeroVicini0[nodo]++;
+            } else {
+                int[] vicini = viciniSuperiori[nodo][livello - 1];
+                vicini[++vicini[0]] = nuovo;
+            }
+            return;
+        }
+        int[] candidati = new int[quanti + 1];
+        for (int i = 0; i < quanti; i++) {
+            candidati[i] = vicino(nodo, livello, i);
+        }
+        candidati[quanti] = nuovo;
+        ordinaPerDistanza(nodo, candidati);
+        int[] scelti = selezionaVicini(nodo, candidati, candidati.length, massimo);
+        impostaVicini(nodo, livello, scelti, scelti.length);
+    }
+
+    /**
+     * Euristica di selezione dei vicini (algoritmo 4): un candidato viene scartato se è più vicino a un vicino già
+     * scelto che al nodo, per mantenere collegamenti in direzioni diverse. I posti rimasti liberi vengono riempiti
+     * con i candidati scartati più vicini.
+     *
+     * @param candidati candidati ordinati per distanza crescente dal nodo
+     */
+    private int[] selezionaVicini(int nodo, int[] candidati, int quanti, int massimo) {
+        int[] scelti = new int[Math.min(massimo, quanti)];
+        int numeroScelti = 0;
+        boolean[] scartati = new boolean[quanti];
+        for (int i = 0; i < quanti && numeroScelti < scelti.length; i++) {
+            int c = candidati[i];
+            if (c == nodo) {
+                scartati[i] = true;
+                continue;
+            }
+            float distanzaDalNodo = distanza(nodo, c);
+            boolean buono = true;
+            for (int j = 0; j < numeroScelti; j++) {
+                if (distanza(c, scelti[j]) < distanzaDalNodo) {
+                    buono = false;
+                    break;
+                }
+            }
+            if (buono) {
+                scelti[numeroScelti++] = c;
+            } else {
+                scartati[i] = true;
+            }
+        }
+        for (int i = 0; i < quanti && numeroScelti < scelti.length; i++) {
+            if (scartati[i] && candidati[i] != nodo) {
+                scelti[numeroScelti++] = candidati[i];
+            }
+        }
+        return Arrays.copyOf(scelti, numeroScelti);
+    }
+
+    private void impostaVicini(int nodo, int livello, int[] scelti, int quanti) {
+        if (livello == 0) {
+            System.arraycopy(scelti, 0, vicini0, nodo * M0, quanti);
+            numeroVicini0[nodo] = quanti;
+        } else {
+            int[] vicini = viciniSuperiori[nodo][livello - 1];
+            System.arraycopy(scelti, 0, vicini, 1, quanti);
+            vicini[0] = quanti;
+        }
+    }
+
+    private int numeroVicini(int nodo, int livello) {
+        return livello == 0 ? numeroVicini0[nodo] : viciniSuperiori[nodo][livello - 1][0];
+    }
+
+    private int vicino(int nodo, int livello, int i) {
+        return livello == 0 ? vicini0[nodo * M0 + i] : viciniSuperiori[nodo][livello - 1][i + 1];
+    }
+
+    /**
+     * Ricerca best-first in un livello (algoritmo 2): al termine {@code r.risultati} contiene i migliori
+     * {@code ef} nodi trovati.
+     */
+    private void cercaNelLivello(Ricerca r, int query, int partenza, float distanzaPartenza, int ef, int livello) {
+        r.nuovaVisita();
+        r.candidati.svuota();
+        r.risultati.svuota();
+        r.visita(partenza);
+        r.candidati.aggiungi(partenza, distanzaPartenza);
+        r.risultati.aggiungi(partenza, distanzaPartenza);
+        while (r.candidati.size > 0) {
+            float distanzaCandidato = r.candidati.primaDistanza();
+            if (distanzaCandidato > r.risultati.primaDistanza() && r.risultati.size >= ef) {
+                break;
+            }
+            int c = r.candidati.estrai();
+            int quanti = numeroVicini(c, livello);
+            for (int i = 0; i < quanti; i++) {
+                int v = vicino(c, livello, i);
+                if (!r.visita(v)) {
+                    continue;
+                }
+                float d = distanza(query, v);
+                if (r.risultati.size < ef || d < r.risultati.primaDistanza()) {
+                    r.candidati.aggiungi(v, d);
+                    r.risultati.aggiungi(v, d);
+                    if (r.risultati.size > ef) {
+                        r.risultati.estrai();
+                    }
+                }
+            }
+        }
+    }
+
+    private void ordinaPerDistanza(int nodo, int[] nodi) {
+        float[] distanze = new float[nodi.length];
+        Integer[] ordine = new Integer[nodi.length];
+        for (int i = 0; i < nodi.length; i++) {
+            distanze[i] = distanza(nodo, nodi[i]);
+            ordine[i] = i;
+        }
+        Arrays.sort(ordine, (x, y) -> Float.compare(distanze[x], distanze[y]));
+        int[] copia = nodi.clone();
+        for (int i = 0; i < nodi.length; i++) {
+            nodi[i] = copia[ordine[i]];
+        }
+    }
+
+    /**
+     * Distanza coseno tra due nodi.
+     */
+    private float distanza(int a, int b) {
+        return 1 - matrice.dot(a, b);
+    }
+
+    /**
+     * Stato di una ricerca, riutilizzato dallo stesso thread: marcatori di visita e due heap di nodi.
+     */
+    private static final class Ricerca {
+        private final int[] visitato;
+        private int generazione;
+        private final Heap candidati = new Heap(false);
+        private final Heap risultati = new Heap(true);
+
+        private Ricerca(int n) {
+            this.visitato = new int[n];
+        }
+
+        private void nuovaVisita() {
+            if (++generazione == Integer.MAX_VALUE) {
+                Arrays.fill(visitato, 0);
+                generazione = 1;
+            }
+        }
+
+        /**
+         * Segna il nodo come visitato; restituisce false se lo era già.
+         */
+        private boolean visita(int nodo) {
+            if (visitato[nodo] == generazione) {
+                return false;
+            }
+            visitato[nodo] = generazione;
+            return true;
+        }
+    }
+
+    /**
+     * Heap binario di coppie (nodo, distanza) su array primitivi: minimo in cima, oppure massimo se {@code max}.
+     */
+    private static final class Heap {
+        private final boolean max;
+        private int[] nodi = new int[64];
+        private float[] distanze = new float[64];
+        private int size;
+
+        private Heap(boolean max) {
+            this.max = max;
+        }
+
+        private void svuota() {
+            size = 0;
+        }
+
+        private float primaDistanza() {
+            return distanze[0];
+        }
+
+        private boolean prima(int i, int j) {
+            return max ? distanze[i] > distanze[j] : distanze[i] < distanze[j];
+        }
+
+        private void aggiungi(int nodo, float distanza) {
+            if (size == nodi.length) {
+                nodi = Arrays.copyOf(nodi, size * 2);
+                distanze = Arrays.copyOf(distanze, size * 2);
+            }
+            int i = size++;
+            nodi[i] = nodo;
+            distanze[i] = distanza;
+            while (i > 0) {
+                int padre = (i - 1) / 2;
+                if (!prima(i, padre)) {
+                    break;
+                }
+                scambia(i, padre);
+                i = padre;
+            }
+        }
+
+        private int estrai() {
+            int primo = nodi[0];
+            size--;
+            nodi[0] = nodi[size];
+            distanze[0] = distanze[size];
+            int i = 0;
+            while (true) {
+                int sinistro = 2 * i + 1;
+                int destro = sinistro + 1;
+                int scelto = i;
+                if (sinistro < size && prima(sinistro, scelto)) {
+                    scelto = sinistro;
+                }
+                if (destro < size && prima(destro, scelto)) {
+                    scelto = destro;
+                }
+                if (scelto == i) {
+                    break;
+                }
+                scambia(i, scelto);
+                i = scelto;
+            }
+            return primo;
+        }
+
+        /**
+         * Restituisce i nodi ordinati per distanza crescente, senza modificare lo heap.
+         */
+        private int[] ordinaCrescente() {
+            Integer[] ordine = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                ordine[i] = i;
+            }
+            Arrays.sort(ordine, (x, y) -> Float.compare(distanze[x], distanze[y]));
+            int[] ordinati = new int[size];
+            for (int i = 0; i < size; i++) {
+                ordinati[i] = nodi[ordine[i]];
+            }
+            return ordinati;
+        }
+
+        private void scambia(int i, int j) {
+            int nodo = nodi[i];
+            nodi[i] = nodi[j];
+            nodi[j] = nodo;
+            float distanza = distanze[i];
+            distanze[i] = distanze[j];
+            distanze[j] = distanza;
+        }
+    }
+}
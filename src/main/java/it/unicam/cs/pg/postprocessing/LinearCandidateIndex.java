@@ -0,0 +1,45 @@
+package it.unicam.cs.pg.postprocessing;
+
+import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ricerca dei candidati per scansione completa del vocabolario: calcola la distanza di modifica
+ * rispetto a ogni parola. Non richiede memoria aggiuntiva ed è il riferimento per gli altri indici.
+ */
+public class LinearCandidateIndex implements CandidateIndex {
+    private final String[] vocabolario;
+
+    /**
+     * Costruttore dell'indice.
+     *
+     * @param wordVectors modello Word2Vec da cui leggere il vocabolario
+     */
+    public LinearCandidateIndex(WordVectors wordVectors) {
+        this.vocabolario = TextCorrector.vocabulary(wordVectors);
+    }
+
+    @Override
+    public List<String> candidates(String word, int maxDistance) {
+        List<int[]> trovati = new ArrayList<>();
+        for (int id = 0; id < vocabolario.length; id++) {
+            int distanza = EditDistance.bounded(word, vocabolario[id], maxDistance);
+            if (distanza <= maxDistance) {
+                trovati.add(new int[]{distanza, id});
+            }
+        }
+        return TextCorrector.sortCandidates(trovati, vocabolario);
+    }
+
+    @Override
+    public String getName() {
+        return "Scansione lineare";
+    }
+
+    @Override
+    public long memoryBytes() {
+        return 0;
+    }
+}
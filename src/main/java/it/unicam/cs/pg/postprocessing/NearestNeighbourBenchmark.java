@@ -0,0 +1,161 @@
+package it.unicam.cs.pg.postprocessing;
+
+import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
+import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Strumento a riga di comando che misura richiamo e latenza di {@link HnswIndex} rispetto alla ricerca esatta.
+ * <p>
+ * L'indice viene costruito (o caricato, se già salvato accanto al modello) e interrogato con parole del vocabolario
+ * scelte a caso. Per diverse ampiezze di ricerca vengono riportati il richiamo@k rispetto alla ricerca esatta
+ * di {@link EmbeddingMatrix#nearest(int, int)} e la latenza media, mediana e al 99° percentile in microsecondi. Per confronto viene
+ * misurato su poche parole anche il percorso originale, che calcola la similarità coseno con ogni vettore del
+ * modello e ordina l'intero vocabolario.
+ * </p>
+ * Uso: {@code NearestNeighbourBenchmark <modello.vec> [ricerche] [k]}
+ */
+public class NearestNeighbourBenchmark {
+
+    private static final long SEED = 42;
+    private static final int[] AMPIEZZE = {10, 32, 64, 128, 256};
+    private static final int RICERCHE_PERCORSO_ORIGINALE = 5;
+    private static final double MB = 1024.0 * 1024.0;
+
+    /**
+     * Punto d'ingresso del benchmark.
+     *
+     * @param args modello Word2Vec, numero di ricerche e numero di vicini (opzionali gli ultimi due)
+     * @throws Exception se il modello non può essere letto
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Uso: NearestNeighbourBenchmark <modello.vec> [ricerche] [k]");
+            return;
+        }
+        int numeroRicerche = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int k = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        File fileModello = new File(args[0]);
+        WordVectors wordVectors = WordVectorSerializer.loadStaticModel(fileModello);
+        File fileIndice = new File(fileModello.getPath() + ".hnsw");
+
+        long inizio = System.nanoTime();
+        EmbeddingMatrix matrice = new EmbeddingMatrix(wordVectors);
+        double secondiMatrice = (System.nanoTime() - inizio) / 1e9;
+        inizio = System.nanoTime();
+        HnswIndex indice = HnswIndex.loadOrBuild(matrice, fileIndice, System.out::println);
+        double secondiPreparazione = (System.nanoTime() - inizio) / 1e9;
+        inizio = System.nanoTime();
+        HnswIndex.loadOrBuild(matrice, fileIndice, System.out::println);
+        double secondiCaricamento = (System.nanoTime() - inizio) / 1e9;
+        System.out.printf("[INFO] Vocabolario di %d parole; matrice normalizzata in %.2f s (%.1f MB), indice pronto "
+                        + "in %.2f s, ricaricato dal file in %.2f s (%.1f MB su disco, %.1f MB in memoria)%n",
+                matrice.size(), secondiMatrice, matrice.memoryBytes() / MB, secondiPreparazione, secondiCaricamento,
+                fileIndice.length() / MB, indice.memoryBytes() / MB);
+
+        Random random = new Random(SEED);
+        int[] ricerche = new int[Math.min(numeroRicerche, matrice.size())];
+        for (int i = 0; i < ricerche.length; i++) {
+            ricerche[i] = random.nextInt(matrice.size());
+        }
+
+        int[][] esatti = new int[ricerche.length][];
+        double[] latenzeEsatte = new double[ricerche.length];
+        for (int i = 0; i < ricerche.length; i++) {
+            long t0 = System.nanoTime();
+            esatti[i] = matrice.nearest(ricerche[i], k);
+            latenzeEsatte[i] = (System.nanoTime() - t0) / 1e3;
+        }
+
+        System.out.println();
+        System.out.printf("%-40s %10s %11s %11s %11s%n", "Ricerca", "richiamo@" + k, "media µs", "mediana µs", "p99 µs");
+        stampa("Scansione esatta (matrice x vettore)", 1, latenzeEsatte);
+        for (int ef : AMPIEZZE) {
+            if (ef < k) {
+                continue;
+            }
+            for (int ricerca : ricerche) {
+                indice.search(ricerca, k, ef);
+            }
+            double[] latenze = new double[ricerche.length];
+            long trovati = 0;
+            for (int i = 0; i < ricerche.length; i++) {
+                long t0 = System.nanoTime();
+                int[] vicini = indice.search(ricerche[i], k, ef);
+                latenze[i] = (System.nanoTime() - t0) / 1e3;
+                trovati += intersezione(vicini, esatti[i]);
+            }
+            stampa("HNSW efSearch=" + ef, (double) trovati / ((long) ricerche.length * k), latenze);
+        }
+
+        int campione = Math.min(RICERCHE_PERCORSO_ORIGINALE, ricerche.length);
+        double[] latenzeOriginali = new double[campione];
+        long trovati = 0;
+        for (int i = 0; i < campione; i++) {
+            long t0 = System.nanoTime();
+            List<String> vicini = percorsoOriginale(wordVectors, matrice.word(ricerche[i]), k);
+            latenzeOriginali[i] = (System.nanoTime() - t0) / 1e3;
+            for (int id : esatti[i]) {
+                if (vicini.contains(matrice.word(id))) {
+                    trovati++;
+                }
+            }
+        }
+        stampa("Percorso originale (" + campione + " ricerche)", (double) trovati / ((long) campione * k), latenzeOriginali);
+        System.out.println("[INFO] Le ricerche includono la parola stessa, come il percorso originale.");
+    }
+
+    /**
+     * Ricerca originale di {@code TextCorrector.wordsNearest}: similarità coseno con ogni vettore e ordinamento completo.
+     */
+    private static List<String> percorsoOriginale(WordVectors wordVectors, String parola, int k) {
+        INDArray vettore = wordVectors.getWordVectorMatrix(parola);
+        List<String> parole = new ArrayList<>();
+        List<Double> similarita = new ArrayList<>();
+        for (Object parolaVocabolario : wordVectors.vocab().words()) {
+            String altra = (String) parolaVocabolario;
+            INDArray altro = wordVectors.getWordVectorMatrix(altra);
+            if (altro != null) {
+                parole.add(altra);
+                similarita.add(Transforms.cosineSim(vettore, altro));
+            }
+        }
+        Integer[] ordine = new Integer[parole.size()];
+        for (int i = 0; i < ordine.length; i++) {
+            ordine[i] = i;
+        }
+        Arrays.sort(ordine, (a, b) -> Double.compare(similarita.get(b), similarita.get(a)));
+        List<String> vicini = new ArrayList<>(k);
+        for (int i = 0; i < Math.min(k, ordine.length); i++) {
+            vicini.add(parole.get(ordine[i]));
+        }
+        return vicini;
+    }
+
+    private static int intersezione(int[] a, int[] b) {
+        int comuni = 0;
+        for (int x : a) {
+            for (int y : b) {
+                if (x == y) {
+                    comuni++;
+                    break;
+                }
+            }
+        }
+        return comuni;
+    }
+
+    private static void stampa(String nome, double richiamo, double[] latenze) {
+        Arrays.sort(latenze);
+        double media = Arrays.stream(latenze).average().orElse(0);
+        System.out.printf("%-40s %10.4f %11.1f %11.1f %11.1f%n", nome, richiamo, media, latenze[latenze.length / 2],
+                latenze[Math.min(latenze.length - 1, (int) (latenze.length * 0.99))]);
+    }
+}
@@ -0,0 +1,339 @@
+package it.unicam.cs.pg.postprocessing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+
+/**
+ * Modello linguistico a trigrammi compatto, usato per scegliere tra i candidati di correzione in base alle parole
+ * vicine.
+ * <p>
+ * I conteggi di unigrammi, bigrammi e trigrammi non memorizzano le parole: ogni n-gramma è ridotto a un hash di 64
+ * bit e contato in uno sketch count-min di due righe di interi, con aggiornamento conservativo. La memoria è fissata
+ * alla costruzione e non cresce con il corpus; le collisioni possono solo sovrastimare un conteggio, tanto meno
+ * quanto più ampio è il budget rispetto al numero di n-grammi distinti.
+ * </p>
+ * <p>
+ * Il punteggio di una parola nel suo contesto segue lo "stupid backoff": la frequenza relativa del trigramma, se è
+ * stato osservato, altrimenti {@value #BACKOFF} volte quella del bigramma e così via fino all'unigramma. Il calcolo
+ * richiede poche letture di array e nessuna allocazione.
+ * </p>
+ */
+public class NgramLanguageModel {
+    private static final int MAGIC = 0x4E47524D; // "NGRM"
+    private static final int VERSIONE = 1;
+    private static final double BACKOFF = 0.4;
+    private static final int LARGHEZZA_MINIMA = 1024;
+    private static final long SEME_BIGRAMMA = 0x9E3779B97F4A7C15L;
+    private static final long SEME_TRIGRAMMA = 0xC2B2AE3D27D4EB4FL;
+
+    /**
+     * Penalità, in potenze di dieci del punteggio, per ogni posizione di un candidato dopo la prima nell'ordine del
+     * correttore: il contesto deve essere molto più probabile per scavalcare la distanza di modifica.
+     */
+    static final double PESO_RANGO = 1.0;
+
+    private final int[] unigrammi;
+    private final int[] bigrammi;
+    private final int[] trigrammi;
+    private long parole;
+
+    /**
+     * Crea un modello vuoto.
+     *
+     * @param memoryBudget memoria massima dei conteggi, in byte
+     */
+    public NgramLanguageModel(long memoryBudget) {
+        long perUnigrammi = memoryBudget / 4;
+        long perBigrammi = (memoryBudget - perUnigrammi) / 2;
+        this.unigrammi = new int[2 * larghezza(perUnigrammi)];
+        this.bigrammi = new int[2 * larghezza(perBigrammi)];
+        this.trigrammi = new int[2 * larghezza(memoryBudget - perUnigrammi - perBigrammi)];
+    }
+
+    private NgramLanguageModel(int[] unigrammi, int[] bigrammi, int[] trigrammi, long parole) {
+        this.unigrammi = unigrammi;
+        this.bigrammi = bigrammi;
+        this.trigrammi = trigrammi;
+        this.parole = parole;
+    }
+
+    /**
+     * Larghezza di una riga dello sketch: la massima potenza di due per cui due righe di interi stanno nei byte dati.
+     */
+    private static int larghezza(long byteDisponibili) {
+        long celle = Math.max(LARGHEZZA_MINIMA, Math.min(1L << 29, byteDisponibili / (2 * Integer.BYTES)));
+        return Integer.highestOneBit((int) celle);
+    }
+
+    /**
+     * Costruisce un modello dai testi di un corpus locale. Le parole sono normalizzate come in
+     * {@link TextCorrector}; i file {@code .box} contribuiscono le righe delle voci {@code WordStr}.
+     *
+     * @param corpus       file di testo del corpus
+     * @param memoryBudget memoria massima dei conteggi, in byte
+     * @return il modello
+     * @throws IOException se un file non può essere letto
+     */
+    public static NgramLanguageModel train(List<File> corpus, long memoryBudget) throws IOException {
+        NgramLanguageModel modello = new NgramLanguageModel(memoryBudget);
+        for (File file : corpus) {
+            long[] precedenti = new long[2];
+            if (file.getName().endsWith(".box")) {
+                for (String riga : OcrConfusionTrainer.readLines(file)) {
+                    modello.add(riga, precedenti);
+                }
+            } else {
+                try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                    String riga;
+                    while ((riga = reader.readLine()) != null) {
+                        modello.add(riga, precedenti);
+                    }
+                }
+            }
+        }
+        return modello;
+    }
+
+    /**
+     * Conta gli n-grammi di un testo come continuazione di quello precedente.
+     *
+     * @param text       testo da aggiungere
+     * @param precedenti hash delle due parole precedenti (0 se assenti), aggiornati al termine
+     */
+    private void add(CharSequence text, long[] precedenti) {
+        Matcher matcher = TextCorrector.WORD_PATTERN.matcher(text);
+        while (matcher.find()) {
+            long h = hash(TextCorrector.normalizeWord(matcher.group()));
+            incrementa(unigrammi, h);
+            if (precedenti[1] != 0) {
+                incrementa(bigrammi, bigramma(precedenti[1], h));
+                if (precedenti[0] != 0) {
+                    incrementa(trigrammi, trigramma(precedenti[0], precedenti[1], h));
+                }
+            }
+            precedenti[0] = precedenti[1];
+            precedenti[1] = h;
+            parole++;
+        }
+    }
+
+    /**
+     * Aggiunge un testo al modello, senza contesto con i testi aggiunti in precedenza.
+     *
+     * @param text testo da aggiungere
+     */
+    public void add(CharSequence text) {
+        add(text, new long[2]);
+    }
+
+    /**
+     * Sceglie tra i candidati quello più probabile nel contesto. Il punteggio di un candidato combina la sua
+     * probabilità dopo le parole a sinistra, quella della parola a destra dopo il candidato e la penalità
+     * {@link #PESO_RANGO} per la posizione nell'ordine del correttore.
+     *
+     * @param candidates candidati ordinati dal correttore
+     * @param left2      penultima parola a sinistra, oppure null
+     * @param left1      ultima parola a sinistra, oppure null
+     * @param right      prima parola a destra, oppure null
+     * @return il candidato scelto
+     */
+    public String best(String[] candidates, String left2, String left1, String right) {
+        long s2 = left2 == null ? 0 : hash(left2);
+        long s1 = left1 == null ? 0 : hash(left1);
+        long d = right == null ? 0 : hash(right);
+        String migliore = candidates[0];
+        double punteggioMigliore = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < candidates.length; i++) {
+            long c = hash(candidates[i]);
+            double punteggio = log10Score(s2, s1, c) - PESO_RANGO * i;
+            if (d != 0) {
+                punteggio += log10Score(s1, c, d);
+            }
+            if (punteggio > punteggioMigliore) {
+                punteggioMigliore = punteggio;
+                migliore = candidates[i];
+            }
+        }
+        return migliore;
+    }
+
+    /**
+     * Punteggio "stupid backoff" di una parola dopo due parole di contesto.
+     *
+     * @param left2 penultima parola, oppure null
+     * @param left1 ultima parola, oppure null
+     * @param word  parola
+     * @return il logaritmo in base dieci del punteggio
+     */
+    public double log10Score(String left2, String left1, String word) {
+        return log10Score(left2 == null ? 0 : hash(left2), left1 == null ? 0 : hash(left1), hash(word));
+    }
+
+    private double log10Score(long s2, long s1, long w) {
+        double penalita = 0;
+        if (s1 != 0) {
+            int contesto1 = conteggio(unigrammi, s1);
+            if (s2 != 0) {
+                long b = bigramma(s2, s1);
+                int contesto2 = conteggio(bigrammi, b);
+                int t = contesto2 == 0 ? 0 : conteggio(trigrammi, trigramma(s2, s1, w));
+                if (t > 0) {
+                    return Math.log10((double) Math.min(t, contesto2) / contesto2);
+                }
+                penalita += Math.log10(BACKOFF);
+            }
+            int b = contesto1 == 0 ? 0 : conteggio(bigrammi, bigramma(s1, w));
+            if (b > 0) {
+                return penalita + Math.log10((double) Math.min(b, contesto1) / contesto1);
+            }
+            penalita += Math.log10(BACKOFF);
+        }
+        return penalita + Math.log10((conteggio(unigrammi, w) + 1.0) / (parole + 1.0));
+    }
+
+    /**
+     * Hash di 64 bit di una parola (FNV-1a seguito da un mescolamento); mai 0, che indica una parola assente.
+     */
+    private static long hash(String parola) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < parola.length(); i++) {
+            h = (h ^ parola.charAt(i)) * 0x100000001B3L;
+        }
+        h = mescola(h);
+        return h == 0 ? 1 : h;
+    }
+
+    private static long bigramma(long a, long b) {
+        return mescola(a * SEME_BIGRAMMA + b);
+    }
+
+    private static long trigramma(long a, long b, long c) {
+        return mescola((a * SEME_TRIGRAMMA + b) * SEME_BIGRAMMA + c);
+    }
+
+    private static long mescola(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * Incrementa un conteggio dello sketch aggiornando solo le celle uguali al minimo (aggiornamento conservativo).
+     */
+    private static void incrementa(int[] tabella, long h) {
+        int larghezza = tabella.length >>> 1;
+        int i1 = (int) h & (larghezza - 1);
+        int i2 = larghezza + ((int) (h >>> 32) & (larghezza - 1));
+        int nuovo = Math.min(tabella[i1], tabella[i2]);
+        if (nuovo == Integer.MAX_VALUE) {
+            return;
+        }
+        nuovo++;
+        tabella[i1] = Math.max(tabella[i1], nuovo);
+        tabella[i2] = Math.max(tabella[i2], nuovo);
+    }
+
+    private static int conteggio(int[] tabella, long h) {
+        int larghezza = tabella.length >>> 1;
+        return Math.min(tabella[(int) h & (larghezza - 1)], tabella[larghezza + ((int) (h >>> 32) & (larghezza - 1))]);
+    }
+
+    /**
+     * @return il numero di parole del corpus
+     */
+    public long words() {
+        return parole;
+    }
+
+    /**
+     * @return la memoria occupata dai conteggi, in byte
+     */
+    public long memoryBytes() {
+        return (long) (unigrammi.length + bigrammi.length + trigrammi.length) * Integer.BYTES;
+    }
+
+    /**
+     * @return la frazione di celle dei trigrammi occupate, indicativa delle collisioni
+     */
+    public double trigramLoad() {
+        long occupate = Arrays.stream(trigrammi).filter(c -> c != 0).count();
+        return (double) occupate / trigrammi.length;
+    }
+
+    /**
+     * Restituisce un'impronta dei conteggi, da combinare con quella del modello Word2Vec per riconoscere le
+     * correzioni calcolate con un modello linguistico diverso (ad esempio in {@link CorrectionCache}).
+     *
+     * @return l'impronta del modello linguistico
+     */
+    public long fingerprint() {
+        long h = parole;
+        for (int[] tabella : new int[][]{unigrammi, bigrammi, trigrammi}) {
+            h = mescola(h * 31 + Arrays.hashCode(tabella) + tabella.length);
+        }
+        return h;
+    }
+
+    /**
+     * Salva il modello in un file binario.
+     *
+     * @param file file di destinazione
+     * @throws IOException se il file non può essere scritto
+     */
+    public void save(File file) throws IOException {
+        File temporaneo = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaneo.toPath()), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSIONE);
+            out.writeLong(parole);
+            for (int[] tabella : new int[][]{unigrammi, bigrammi, trigrammi}) {
+                out.writeInt(tabella.length);
+                for (int c : tabella) {
+                    out.writeInt(c);
+                }
+            }
+        }
+        Files.move(temporaneo.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Carica un modello salvato con {@link #save(File)}.
+     *
+     * @param file file del modello
+     * @return il modello
+     * @throws IOException se il file non può essere letto o non è un modello valido
+     */
+    public static NgramLanguageModel load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSIONE) {
+                throw new IOException("Il file non contiene un modello linguistico valido: " + file);
+            }
+            long parole = in.readLong();
+            int[][] tabelle = new int[3][];
+            for (int t = 0; t < 3; t++) {
+                int lunghezza = in.readInt();
+                if (lunghezza < 2 || Integer.bitCount(lunghezza) != 1) {
+                    throw new IOException("Dimensione dei conteggi non valida nel modello linguistico: " + lunghezza);
+                }
+                tabelle[t] = new int[lunghezza];
+                for (int i = 0; i < lunghezza; i++) {
+                    tabelle[t][i] = in.readInt();
+                }
+            }
+            return new NgramLanguageModel(tabelle[0], tabelle[1], tabelle[2], parole);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package it.unicam.cs.pg.postprocessing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Comando a riga di comando che costruisce un {@link NgramLanguageModel} da un corpus locale e lo salva per
+ * {@link NgramLanguageModel#load(File)}.
+ * <p>
+ * Il corpus è formato da file di testo o da file {@code .box} di addestramento di Tesseract; la memoria dei
+ * conteggi è fissata dal budget indicato, indipendentemente dalla dimensione del corpus.
+ * </p>
+ * Uso: {@code NgramModelTrainer <modello.lm> <memoria in MB> <corpus.txt|.box> [altri file...]}
+ */
+public class NgramModelTrainer {
+
+    /**
+     * Punto d'ingresso del comando.
+     *
+     * @param args file di destinazione, budget di memoria in megabyte e file del corpus
+     * @throws IOException se il corpus non può essere letto o il modello non può essere salvato
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("Uso: NgramModelTrainer <modello.lm> <memoria in MB> <corpus.txt|.box> [altri file...]");
+            return;
+        }
+        long budget = Long.parseLong(args[1]) << 20;
+        List<File> corpus = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            corpus.add(new File(args[i]));
+        }
+        long inizio = System.nanoTime();
+        NgramLanguageModel modello = NgramLanguageModel.train(corpus, budget);
+        System.out.printf("[INFO] %d parole contate in %.1f s; %.1f MB di conteggi, %.1f%% delle celle dei trigrammi "
+                        + "occupate%n", modello.words(), (System.nanoTime() - inizio) / 1e9,
+                modello.memoryBytes() / 1048576.0, modello.trigramLoad() * 100);
+        modello.save(new File(args[0]));
+        System.out.println("[SUCCESSO] Modello linguistico salvato in " + args[0]);
+    }
+}
@@ -0,0 +1,87 @@
+package it.unicam.cs.pg.postprocessing;
+
+import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
+import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Strumento a riga di comando che confronta la ricerca dei candidati con la distanza di Levenshtein e con la
+ * distanza pesata dalle confusioni OCR ({@link ConfusionWeightedIndex}).
+ * <p>
+ * Il testo OCR viene allineato alla trascrizione corretta come in {@link OcrConfusionTrainer}. Per ogni parola
+ * letta in modo errato, fuori vocabolario e la cui forma corretta è nel vocabolario, vengono riportati il numero
+ * medio di candidati, la frazione di ricerche che contengono la parola corretta, quella in cui la parola corretta è
+ * il primo candidato (la scelta del correttore per le parole senza vettore) e il tempo medio di ricerca. Infine il
+ * testo viene corretto con entrambi gli indici e viene misurata la percentuale di parole uguali alla trascrizione.
+ * Le confusioni vanno apprese su testi diversi da quello valutato.
+ * </p>
+ * Uso: {@code OcrConfusionBenchmark <modello.vec> <confusioni.tsv> <ocr.txt> <corretto.txt|.box> [distanza] [soglia]}
+ */
+public class OcrConfusionBenchmark {
+
+    /**
+     * Punto d'ingresso del benchmark.
+     *
+     * @param args modello Word2Vec, confusioni apprese, testo OCR e trascrizione corretta, distanza massima e soglia
+     *             della distanza pesata (opzionali)
+     * @throws IOException se il modello o i testi non possono essere letti
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.out.println("Uso: OcrConfusionBenchmark <modello.vec> <confusioni.tsv> <ocr.txt> <corretto.txt|.box> "
+                    + "[distanza] [soglia]");
+            return;
+        }
+        WordVectors wordVectors = WordVectorSerializer.loadStaticModel(new File(args[0]));
+        OcrConfusionModel confusioni = OcrConfusionModel.load(new File(args[1]));
+        File ocr = new File(args[2]);
+        File corretto = new File(args[3]);
+        int distanza = args.length > 4 ? Integer.parseInt(args[4]) : 2;
+        float soglia = args.length > 5 ? Float.parseFloat(args[5]) : 1f;
+
+        CandidateIndex levenshtein = CandidateSearch.SYMSPELL.create(wordVectors, distanza);
+        CandidateIndex pesato = new ConfusionWeightedIndex(levenshtein, confusioni, soglia);
+        List<String[]> errori = OcrConfusionTrainer.alignedWords(ocr, corretto).stream()
+                .filter(c -> !c[0].equals(c[1]) && !wordVectors.hasWord(c[0]) && wordVectors.hasWord(c[1]))
+                .toList();
+        System.out.println("[INFO] " + confusioni.confusions().size() + " confusioni, " + errori.size()
+                + " parole errate correggibili; distanza " + distanza + ", soglia pesata " + soglia);
+
+        System.out.println();
+        System.out.printf("%-52s %10s %10s %10s %12s%n", "Ricerca", "candidati", "richiamo", "primo", "µs/parola");
+        for (CandidateIndex indice : List.of(levenshtein, pesato)) {
+            // Riscaldamento
+            for (String[] e : errori) {
+                indice.candidates(e[0], distanza);
+            }
+            long candidati = 0;
+            int trovate = 0;
+            int prime = 0;
+            long inizio = System.nanoTime();
+            for (String[] e : errori) {
+                List<String> risultato = indice.candidates(e[0], distanza);
+                candidati += risultato.size();
+                trovate += risultato.contains(e[1]) ? 1 : 0;
+                prime += !risultato.isEmpty() && risultato.get(0).equals(e[1]) ? 1 : 0;
+            }
+            double micro = (System.nanoTime() - inizio) / 1e3 / Math.max(1, errori.size());
+            int n = Math.max(1, errori.size());
+            System.out.printf("%-52s %10.1f %9.1f%% %9.1f%% %12.1f%n", indice.getName(),
+                    (double) candidati / n, 100.0 * trovate / n, 100.0 * prime / n, micro);
+        }
+
+        System.out.println();
+        List<String> righeOcr = OcrConfusionTrainer.readLines(ocr);
+        List<String> righeCorrette = OcrConfusionTrainer.readLines(corretto);
+        System.out.printf("%-52s %s%n", "Senza correzione",
+                OcrConfusionTrainer.wordAccuracy(righeOcr, righeCorrette, null));
+        for (CandidateIndex indice : List.of(levenshtein, pesato)) {
+            TextCorrector corrector = new TextCorrector(wordVectors, distanza, indice);
+            System.out.printf("%-52s %s%n", indice.getName(),
+                    OcrConfusionTrainer.wordAccuracy(righeOcr, righeCorrette, corrector));
+        }
+    }
+}
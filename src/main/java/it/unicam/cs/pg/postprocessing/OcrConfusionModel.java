@@ -0,0 +1,460 @@
+package it.unicam.cs.pg.postprocessing;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.zip.CRC32;
+
+/**
+ * Distanza di modifica pesata dalle confusioni tipiche dell'OCR, apprese da testo OCR allineato alla trascrizione
+ * corretta.
+ * <p>
+ * Una confusione è una coppia (α letto dall'OCR, β nel testo corretto) di al più {@value #MAX_LUNGHEZZA}
+ * caratteri per lato, come {@code rn} letto al posto di {@code m} o {@code ſ} al posto di {@code s}. Il costo di
+ * una confusione dipende dalla sua probabilità {@code p = conteggio(α ← β) / occorrenze(β)}: vale
+ * {@code ln p / ln }{@value #P_ERRORE_CASUALE}, limitato tra {@value #COSTO_MINIMO} e 1, per cui un errore casuale
+ * costa 1 come nella distanza di Levenshtein e una confusione frequente costa poco. Inserimenti, cancellazioni,
+ * sostituzioni e scambi non appresi costano 1, quindi la distanza pesata non supera mai quella di
+ * {@link EditDistance#bounded(String, String, int)}.
+ * </p>
+ * <p>
+ * Le confusioni di un carattere sono compilate in tabelle indicizzate per carattere, quelle di più caratteri in
+ * liste di regole indicizzate dall'ultimo carattere letto dall'OCR; il calcolo di una distanza non alloca memoria
+ * oltre ai buffer riutilizzati per thread.
+ * </p>
+ */
+public class OcrConfusionModel {
+    /**
+     * Numero massimo di caratteri per lato di una confusione.
+     */
+    public static final int MAX_LUNGHEZZA = 3;
+    private static final double P_ERRORE_CASUALE = 1e-3;
+    private static final float COSTO_MINIMO = 0.1f;
+    private static final int CONTEGGIO_MINIMO = 2;
+    private static final String VUOTO = "-";
+
+    /**
+     * Confusione appresa.
+     *
+     * @param ocr   caratteri letti dall'OCR (α), eventualmente vuoti
+     * @param truth caratteri del testo corretto (β), eventualmente vuoti
+     * @param cost  costo della confusione, tra {@value #COSTO_MINIMO} e 1
+     * @param count numero di occorrenze osservate
+     */
+    public record Confusion(String ocr, String truth, float cost, int count) {
+    }
+
+    private final List<Confusion> confusioni;
+    private final int[] indiceCarattere = new int[Character.MAX_VALUE + 1];
+    private final int caratteri;
+    private final float[] sostituzione;
+    private final float[] inserimento;
+    private final float[] cancellazione;
+    private final int[][] regolePerUltimo;
+    private final String[] regoleOcr;
+    private final String[] regoleVerita;
+    private final float[] regoleCosto;
+
+    /**
+     * Buffer di un thread: matrice dei costi, minimi di riga e regole applicabili a ogni posizione della parola.
+     */
+    private static final class Buffer {
+        private float[] matrice = new float[32 * 32];
+        private float[] minimi = new float[32];
+        private int[][] regole = new int[32][];
+    }
+
+    private static final ThreadLocal<Buffer> BUFFER = ThreadLocal.withInitial(Buffer::new);
+
+    /**
+     * Compila le confusioni in tabelle di ricerca.
+     *
+     * @param confusions confusioni con il loro costo
+     */
+    public OcrConfusionModel(List<Confusion> confusions) {
+        this.confusioni = List.copyOf(confusions);
+        Map<Character, Integer> indici = new HashMap<>();
+        for (Confusion c : confusioni) {
+            for (char ch : (c.ocr() + c.truth()).toCharArray()) {
+                indici.putIfAbsent(ch, indici.size() + 1);
+            }
+        }
+        indici.forEach((ch, i) -> indiceCarattere[ch] = i);
+        this.caratteri = indici.size() + 1;
+        this.sostituzione = new float[caratteri * caratteri];
+        this.inserimento = new float[caratteri];
+        this.cancellazione = new float[caratteri];
+        Arrays.fill(sostituzione, 1f);
+        Arrays.fill(inserimento, 1f);
+        Arrays.fill(cancellazione, 1f);
+        List<Confusion> multiple = new ArrayList<>();
+        for (Confusion c : confusioni) {
+            int lo = c.ocr().length();
+            int lv = c.truth().length();
+            if (lo == 1 && lv == 1) {
+                int k = indice(c.ocr().charAt(0)) * caratteri + indice(c.truth().charAt(0));
+                sostituzione[k] = Math.min(sostituzione[k], c.cost());
+            } else if (lo == 1 && lv == 0) {
+                int k = indice(c.ocr().charAt(0));
+                inserimento[k] = Math.min(inserimento[k], c.cost());
+            } else if (lo == 0 && lv == 1) {
+                int k = indice(c.truth().charAt(0));
+                cancellazione[k] = Math.min(cancellazione[k], c.cost());
+            } else if (lo > 0 && lv > 0) {
+                multiple.add(c);
+            }
+        }
+        this.regoleOcr = new String[multiple.size()];
+        this.regoleVerita = new String[multiple.size()];
+        this.regoleCosto = new float[multiple.size()];
+        List<List<Integer>> perUltimo = new ArrayList<>();
+        for (int i = 0; i < caratteri; i++) {
+            perUltimo.add(new ArrayList<>());
+        }
+        for (int r = 0; r < multiple.size(); r++) {
+            Confusion c = multiple.get(r);
+            regoleOcr[r] = c.ocr();
+            regoleVerita[r] = c.truth();
+            regoleCosto[r] = c.cost();
+            perUltimo.get(indice(c.ocr().charAt(c.ocr().length() - 1))).add(r);
+        }
+        this.regolePerUltimo = new int[caratteri][];
+        for (int i = 0; i < caratteri; i++) {
+            regolePerUltimo[i] = perUltimo.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Apprende le confusioni da coppie di parole allineate (parola OCR, parola corretta).
+     * Ogni coppia viene allineata carattere per carattere; le sequenze contigue di modifiche diventano confusioni
+     * candidate, tenute se osservate almeno {@value #CONTEGGIO_MINIMO} volte e più probabili di un errore casuale.
+     *
+     * @param wordPairs coppie {parola OCR, parola corretta}, incluse quelle lette correttamente
+     * @return il modello appreso
+     */
+    public static OcrConfusionModel learn(List<String[]> wordPairs) {
+        Map<String, Integer> occorrenze = new HashMap<>();
+        Map<String, Integer> conteggi = new HashMap<>();
+        long posizioni = 0;
+        for (String[] coppia : wordPairs) {
+            String ocr = coppia[0];
+            String verita = coppia[1];
+            posizioni += verita.length() + 1;
+            for (int i = 0; i < verita.length(); i++) {
+                for (int l = 1; l <= MAX_LUNGHEZZA && i + l <= verita.length(); l++) {
+                    occorrenze.merge(verita.substring(i, i + l), 1, Integer::sum);
+                }
+            }
+            if (!ocr.equals(verita)) {
+                for (String[] modifica : modifiche(ocr, verita)) {
+                    conteggi.merge(modifica[0] + '\t' + modifica[1], 1, Integer::sum);
+                }
+            }
+        }
+        List<Confusion> confusioni = new ArrayList<>();
+        for (Map.Entry<String, Integer> voce : conteggi.entrySet()) {
+            if (voce.getValue() < CONTEGGIO_MINIMO) {
+                continue;
+            }
+            String[] lati = voce.getKey().split("\t", -1);
+            double base = lati[1].isEmpty() ? posizioni : occorrenze.getOrDefault(lati[1], 0);
+            double p = Math.min(1, voce.getValue() / Math.max(base, 1));
+            float costo = (float) Math.max(COSTO_MINIMO, Math.log(p) / Math.log(P_ERRORE_CASUALE));
+            if (costo < 1) {
+                confusioni.add(new Confusion(lati[0], lati[1], costo, voce.getValue()));
+            }
+        }
+        confusioni.sort((a, b) -> Float.compare(a.cost(), b.cost()));
+        return new OcrConfusionModel(confusioni);
+    }
+
+    /**
+     * Allinea carattere per carattere una parola OCR alla parola corretta (distanza di Levenshtein) e restituisce
+     * le sequenze contigue di modifiche {α, β} lunghe al più {@value #MAX_LUNGHEZZA} caratteri per lato.
+     */
+    static List<String[]> modifiche(String ocr, String verita) {
+        int n = ocr.length();
+        int m = verita.length();
+        int[][] d = new int[n + 1][m + 1];
+        for (int i = 0; i <= n; i++) d[i][0] = i;
+        for (int j = 0; j <= m; j++) d[0][j] = j;
+        for (int i = 1; i <= n; i++) {
+            for (int j = 1; j <= m; j++) {
+                int costo = ocr.charAt(i - 1) == verita.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(d[i - 1][j - 1] + costo, Math.min(d[i - 1][j], d[i][j - 1]) + 1);
+            }
+        }
+        List<String[]> modifiche = new ArrayList<>();
+        StringBuilder alfa = new StringBuilder();
+        StringBuilder beta = new StringBuilder();
+        int i = n;
+        int j = m;
+        while (i > 0 || j > 0) {
+            if (i > 0 && j > 0 && ocr.charAt(i - 1) == verita.charAt(j - 1) && d[i][j] == d[i - 1][j - 1]) {
+                chiudi(alfa, beta, modifiche);
+                i--;
+                j--;
+            } else if (i > 0 && j > 0 && d[i][j] == d[i - 1][j - 1] + 1) {
+                alfa.insert(0, ocr.charAt(--i));
+                beta.insert(0, verita.charAt(--j));
+            } else if (i > 0 && d[i][j] == d[i - 1][j] + 1) {
+                alfa.insert(0, ocr.charAt(--i));
+            } else {
+                beta.insert(0, verita.charAt(--j));
+            }
+        }
+        chiudi(alfa, beta, modifiche);
+        return modifiche;
+    }
+
+    private static void chiudi(StringBuilder alfa, StringBuilder beta, List<String[]> modifiche) {
+        if (alfa.length() + beta.length() > 0 && alfa.length() <= MAX_LUNGHEZZA && beta.length() <= MAX_LUNGHEZZA) {
+            modifiche.add(new String[]{alfa.toString(), beta.toString()});
+        }
+        alfa.setLength(0);
+        beta.setLength(0);
+    }
+
+    /**
+     * Allinea le parole di una riga letta dall'OCR a quelle della riga corretta corrispondente.
+     * Le parole sono normalizzate come in {@link TextCorrector} e allineate con una distanza di modifica sulle
+     * sequenze di parole; le coppie troppo diverse per essere la stessa parola vengono scartate.
+     *
+     * @param ocrLine   riga letta dall'OCR
+     * @param truthLine riga corretta
+     * @return le coppie {parola OCR, parola corretta}
+     */
+    public static List<String[]> alignWords(String ocrLine, String truthLine) {
+        List<String> ocr = parole(ocrLine);
+        List<String> verita = parole(truthLine);
+        int n = ocr.size();
+        int m = verita.size();
+        double[][] d = new double[n + 1][m + 1];
+        for (int i = 0; i <= n; i++) d[i][0] = i;
+        for (int j = 0; j <= m; j++) d[0][j] = j;
+        for (int i = 1; i <= n; i++) {
+            for (int j = 1; j <= m; j++) {
+                d[i][j] = Math.min(d[i - 1][j - 1] + differenza(ocr.get(i - 1), verita.get(j - 1)),
+                        Math.min(d[i - 1][j], d[i][j - 1]) + 1);
+            }
+        }
+        List<String[]> coppie = new ArrayList<>();
+        int i = n;
+        int j = m;
+        while (i > 0 && j > 0) {
+            double diagonale = d[i - 1][j - 1] + differenza(ocr.get(i - 1), verita.get(j - 1));
+            if (d[i][j] == diagonale) {
+                if (differenza(ocr.get(i - 1), verita.get(j - 1)) <= 0.5) {
+                    coppie.add(new String[]{ocr.get(i - 1), verita.get(j - 1)});
+                }
+                i--;
+                j--;
+            } else if (d[i][j] == d[i - 1][j] + 1) {
+                i--;
+            } else {
+                j--;
+            }
+        }
+        java.util.Collections.reverse(coppie);
+        return coppie;
+    }
+
+    private static List<String> parole(String riga) {
+        List<String> parole = new ArrayList<>();
+        Matcher matcher = TextCorrector.WORD_PATTERN.matcher(riga);
+        while (matcher.find()) {
+            String parola = TextCorrector.normalizeWord(matcher.group());
+            if (!parola.isEmpty()) {
+                parole.add(parola);
+            }
+        }
+        return parole;
+    }
+
+    /**
+     * Distanza di modifica tra due parole relativa alla lunghezza della più lunga, tra 0 e 1.
+     */
+    private static double differenza(String a, String b) {
+        if (a.equals(b)) {
+            return 0;
+        }
+        return Math.min(1, (double) EditDistance.unbounded(a, b) / Math.max(a.length(), b.length()));
+    }
+
+    /**
+     * Calcola la distanza pesata tra una parola letta dall'OCR e una parola candidata, fino a un limite.
+     *
+     * @param ocr       parola letta dall'OCR (normalizzata)
+     * @param candidate parola candidata del vocabolario
+     * @param max       limite della distanza
+     * @return la distanza se non supera {@code max}, altrimenti un valore maggiore di {@code max}
+     */
+    public float distance(String ocr, String candidate, float max) {
+        int n = ocr.length();
+        int m = candidate.length();
+        Buffer buffer = BUFFER.get();
+        int colonne = m + 1;
+        if (buffer.matrice.length < (n + 1) * colonne) {
+            buffer.matrice = new float[Math.max((n + 1) * colonne, buffer.matrice.length * 2)];
+        }
+        if (buffer.minimi.length < n + 1) {
+            buffer.minimi = new float[Math.max(n + 1, buffer.minimi.length * 2)];
+            buffer.regole = new int[buffer.minimi.length][];
+        }
+        float[] d = buffer.matrice;
+        float[] minimi = buffer.minimi;
+        int[][] regole = buffer.regole;
+        for (int i = 1; i <= n; i++) {
+            regole[i] = regoleApplicabili(ocr, i);
+        }
+        d[0] = 0;
+        for (int j = 1; j <= m; j++) {
+            d[j] = d[j - 1] + cancellazione[indice(candidate.charAt(j - 1))];
+        }
+        minimi[0] = 0;
+        for (int i = 1; i <= n; i++) {
+            char co = ocr.charAt(i - 1);
+            int io = indice(co);
+            int riga = i * colonne;
+            int rigaPrecedente = riga - colonne;
+            d[riga] = d[rigaPrecedente] + inserimento[io];
+            float minimo = d[riga];
+            for (int j = 1; j <= m; j++) {
+                char cv = candidate.charAt(j - 1);
+                int iv = indice(cv);
+                float valore = d[rigaPrecedente + j - 1] + (co == cv ? 0 : sostituzione[io * caratteri + iv]);
+                valore = Math.min(valore, d[rigaPrecedente + j] + inserimento[io]);
+                valore = Math.min(valore, d[riga + j - 1] + cancellazione[iv]);
+                if (i > 1 && j > 1 && co == candidate.charAt(j - 2) && ocr.charAt(i - 2) == cv) {
+                    valore = Math.min(valore, d[rigaPrecedente - colonne + j - 2] + 1);
+                }
+                for (int r : regole[i]) {
+                    int lv = regoleVerita[r].length();
+                    if (lv <= j && candidate.startsWith(regoleVerita[r], j - lv)) {
+                        valore = Math.min(valore, d[(i - regoleOcr[r].length()) * colonne + j - lv] + regoleCosto[r]);
+                    }
+                }
+                d[riga + j] = valore;
+                minimo = Math.min(minimo, valore);
+            }
+            minimi[i] = minimo;
+            // Ogni percorso passa per almeno una delle ultime MAX_LUNGHEZZA righe, perché una regola ne salta al più
+            // MAX_LUNGHEZZA - 1
+            if (i >= MAX_LUNGHEZZA - 1) {
+                float minimoFinestra = minimo;
+                for (int k = 1; k < MAX_LUNGHEZZA; k++) {
+                    minimoFinestra = Math.min(minimoFinestra, minimi[i - k]);
+                }
+                if (minimoFinestra > max) {
+                    return max + 1;
+                }
+            }
+        }
+        return d[n * colonne + m];
+    }
+
+    /**
+     * Restituisce le regole di più caratteri la cui parte OCR termina alla posizione {@code i} della parola.
+     */
+    private int[] regoleApplicabili(String ocr, int i) {
+        int[] candidate = regolePerUltimo[indice(ocr.charAt(i - 1))];
+        if (candidate.length == 0) {
+            return candidate;
+        }
+        int quante = 0;
+        int[] applicabili = new int[candidate.length];
+        for (int r : candidate) {
+            int lo = regoleOcr[r].length();
+            if (lo <= i && ocr.startsWith(regoleOcr[r], i - lo)) {
+                applicabili[quante++] = r;
+            }
+        }
+        return quante == candidate.length ? applicabili : Arrays.copyOf(applicabili, quante);
+    }
+
+    private int indice(char c) {
+        return indiceCarattere[c];
+    }
+
+    /**
+     * @return le confusioni del modello, dalla meno costosa
+     */
+    public List<Confusion> confusions() {
+        return confusioni;
+    }
+
+    /**
+     * Restituisce un'impronta delle confusioni, da combinare con quella del modello per riconoscere le correzioni
+     * calcolate con confusioni diverse (ad esempio in {@link CorrectionCache}).
+     *
+     * @return l'impronta delle confusioni
+     */
+    public long fingerprint() {
+        CRC32 crc = new CRC32();
+        for (Confusion c : confusioni) {
+            crc.update((c.ocr() + '\t' + c.truth() + '\t' + c.cost() + '\n').getBytes(StandardCharsets.UTF_8));
+        }
+        return crc.getValue() << 16 ^ confusioni.size();
+    }
+
+    /**
+     * Salva le confusioni in un file di testo con colonne separate da tabulazioni: caratteri OCR, caratteri corretti,
+     * costo e conteggio; {@value #VUOTO} indica un lato vuoto.
+     *
+     * @param file file di destinazione
+     * @throws IOException se il file non può essere scritto
+     */
+    public void save(File file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("# ocr\tcorretto\tcosto\tconteggio");
+            writer.newLine();
+            for (Confusion c : confusioni) {
+                writer.write(lato(c.ocr()) + "\t" + lato(c.truth()) + "\t" + c.cost() + "\t" + c.count());
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Carica le confusioni salvate con {@link #save(File)}.
+     *
+     * @param file file delle confusioni
+     * @return il modello compilato
+     * @throws IOException se il file non può essere letto o non è valido
+     */
+    public static OcrConfusionModel load(File file) throws IOException {
+        List<Confusion> confusioni = new ArrayList<>();
+        for (String riga : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            if (riga.isBlank() || riga.startsWith("#")) {
+                continue;
+            }
+            String[] campi = riga.split("\t");
+            if (campi.length != 4) {
+                throw new IOException("Riga non valida nelle confusioni OCR: " + riga);
+            }
+            try {
+                confusioni.add(new Confusion(daLato(campi[0]), daLato(campi[1]), Float.parseFloat(campi[2]),
+                        Integer.parseInt(campi[3])));
+            } catch (NumberFormatException ex) {
+                throw new IOException("Riga non valida nelle confusioni OCR: " + riga, ex);
+            }
+        }
+        return new OcrConfusionModel(confusioni);
+    }
+
+    private static String lato(String s) {
+        return s.isEmpty() ? VUOTO : s;
+    }
+
+    private static String daLato(String s) {
+        return s.equals(VUOTO) ? "" : s;
+    }
+}
@@ -0,0 +1,121 @@
+package it.unicam.cs.pg.postprocessing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Comando a riga di comando che apprende le confusioni OCR da coppie di testi allineati e le salva per
+ * {@link OcrConfusionModel#load(File)}.
+ * <p>
+ * Ogni coppia è formata da un testo letto dall'OCR e dalla trascrizione corretta, allineati riga per riga. La
+ * trascrizione corretta può essere un file di testo oppure un file {@code .box} di addestramento di Tesseract, da
+ * cui vengono lette le righe delle voci {@code WordStr}.
+ * </p>
+ * Uso: {@code OcrConfusionTrainer <confusioni.tsv> <ocr.txt> <corretto.txt|.box> [altre coppie...]}
+ */
+public class OcrConfusionTrainer {
+
+    /**
+     * Punto d'ingresso del comando.
+     *
+     * @param args file di destinazione seguito da coppie di testo OCR e trascrizione corretta
+     * @throws IOException se i testi non possono essere letti o le confusioni non possono essere salvate
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3 || args.length % 2 == 0) {
+            System.out.println("Uso: OcrConfusionTrainer <confusioni.tsv> <ocr.txt> <corretto.txt|.box> [altre coppie...]");
+            return;
+        }
+        List<String[]> coppie = new ArrayList<>();
+        for (int i = 1; i < args.length; i += 2) {
+            coppie.addAll(alignedWords(new File(args[i]), new File(args[i + 1])));
+        }
+        long errate = coppie.stream().filter(c -> !c[0].equals(c[1])).count();
+        System.out.println("[INFO] " + coppie.size() + " parole allineate, " + errate + " lette in modo errato");
+
+        OcrConfusionModel modello = OcrConfusionModel.learn(coppie);
+        modello.save(new File(args[0]));
+        System.out.println("[SUCCESSO] " + modello.confusions().size() + " confusioni salvate in " + args[0]);
+        for (OcrConfusionModel.Confusion c : modello.confusions().subList(0, Math.min(15, modello.confusions().size()))) {
+            System.out.printf("  %-4s letto al posto di %-4s costo %.2f (%d volte)%n", c.ocr(), c.truth(), c.cost(), c.count());
+        }
+    }
+
+    /**
+     * Allinea parola per parola un testo OCR alla trascrizione corretta, riga per riga.
+     *
+     * @param ocr   testo letto dall'OCR
+     * @param truth trascrizione corretta, di testo o in formato {@code .box}
+     * @return le coppie {parola OCR, parola corretta}
+     * @throws IOException se i file non possono essere letti
+     */
+    static List<String[]> alignedWords(File ocr, File truth) throws IOException {
+        List<String> righeOcr = readLines(ocr);
+        List<String> righeCorrette = readLines(truth);
+        if (righeOcr.size() != righeCorrette.size()) {
+            System.out.println("[INFO] " + ocr.getName() + ": " + righeOcr.size() + " righe contro "
+                    + righeCorrette.size() + " della trascrizione, vengono allineate le prime "
+                    + Math.min(righeOcr.size(), righeCorrette.size()));
+        }
+        List<String[]> coppie = new ArrayList<>();
+        for (int i = 0; i < Math.min(righeOcr.size(), righeCorrette.size()); i++) {
+            coppie.addAll(OcrConfusionModel.alignWords(righeOcr.get(i), righeCorrette.get(i)));
+        }
+        return coppie;
+    }
+
+    /**
+     * Legge le righe non vuote di un testo, oppure le righe delle voci {@code WordStr} di un file {@code .box},
+     * nell'ordine del file. Le righe ripetute vengono mantenute, perché le righe dei due file sono appaiate
+     * per posizione.
+     *
+     * @param file file da leggere
+     * @return le righe
+     * @throws IOException se il file non può essere letto
+     */
+    static List<String> readLines(File file) throws IOException {
+        List<String> righe = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        if (!file.getName().endsWith(".box")) {
+            return righe.stream().filter(r -> !r.isBlank()).toList();
+        }
+        List<String> voci = new ArrayList<>();
+        for (String riga : righe) {
+            int cancelletto = riga.indexOf('#');
+            if (riga.startsWith("WordStr") && cancelletto >= 0) {
+                voci.add(riga.substring(cancelletto + 1).trim());
+            }
+        }
+        return voci;
+    }
+
+    /**
+     * Misura la percentuale di parole della trascrizione corretta riprodotte esattamente, appaiando le righe per
+     * posizione. Le righe OCR vengono corrette come un unico testo, così che con un modello linguistico il contesto
+     * continui da una riga all'altra.
+     *
+     * @param righeOcr      righe lette dall'OCR
+     * @param righeCorrette righe della trascrizione corretta
+     * @param corrector     correttore da applicare, oppure null per misurare il testo OCR
+     * @return la descrizione dell'accuratezza
+     */
+    static String wordAccuracy(List<String> righeOcr, List<String> righeCorrette, TextCorrector corrector) {
+        long uguali = 0;
+        long parole = 0;
+        List<String> righe = righeOcr.subList(0, Math.min(righeOcr.size(), righeCorrette.size()));
+        if (corrector != null) {
+            righe = List.of(corrector.advancedCorrectText(String.join("\n", righe)).split("\n", -1));
+        }
+        for (int i = 0; i < righe.size(); i++) {
+            for (String[] coppia : OcrConfusionModel.alignWords(righe.get(i), righeCorrette.get(i))) {
+                uguali += coppia[0].equals(coppia[1]) ? 1 : 0;
+            }
+            parole += TextCorrector.WORD_PATTERN.matcher(righeCorrette.get(i)).results().count();
+        }
+        return String.format("%.1f%% parole uguali alla trascrizione (%d su %d)", 100.0 * uguali / Math.max(1, parole),
+                uguali, parole);
+    }
+}
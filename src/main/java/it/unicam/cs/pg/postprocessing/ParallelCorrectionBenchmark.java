@@ -0,0 +1,89 @@
+package it.unicam.cs.pg.postprocessing;
+
+import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
+import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+
+/**
+ * Strumento a riga di comando che misura la scalabilità della correzione parallela a blocchi.
+ * <p>
+ * La trascrizione indicata viene ripetuta fino a formare un testo lungo come un libro e corretta con
+ * {@link TextCorrector#advancedCorrectText(String)} e con
+ * {@link TextCorrector#advancedCorrectText(String, ForkJoinPool)} su pool di 1, 2, 4, ... thread fino al numero
+ * indicato. Per ogni pool vengono riportati parole al secondo, speedup ed efficienza rispetto al percorso
+ * sequenziale, e viene verificato che il testo corretto sia identico byte per byte. Il correttore non usa la
+ * cache delle correzioni, che renderebbe gratuite le ripetizioni.
+ * </p>
+ * Uso: {@code ParallelCorrectionBenchmark <modello.vec> <trascrizione.txt> [ripetizioni] [thread massimi]}
+ */
+public class ParallelCorrectionBenchmark {
+
+    private static final int MAX_EDIT_DISTANCE = 2;
+
+    /**
+     * Punto d'ingresso del benchmark.
+     *
+     * @param args modello Word2Vec, trascrizione, numero di ripetizioni del testo e numero massimo di thread
+     *             (opzionali gli ultimi due)
+     * @throws IOException se il modello o il testo non possono essere letti
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Uso: ParallelCorrectionBenchmark <modello.vec> <trascrizione.txt> [ripetizioni] [thread massimi]");
+            return;
+        }
+        WordVectors wordVectors = WordVectorSerializer.loadStaticModel(new File(args[0]));
+        String trascrizione = Files.readString(new File(args[1]).toPath(), StandardCharsets.UTF_8);
+        int ripetizioni = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int threadMassimi = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        String testo = (trascrizione + "\n").repeat(ripetizioni);
+        int parole = 0;
+        Matcher matcher = TextCorrector.WORD_PATTERN.matcher(testo);
+        while (matcher.find()) {
+            parole++;
+        }
+        TextCorrector corrector = new TextCorrector(wordVectors, MAX_EDIT_DISTANCE,
+                CandidateSearch.SYMSPELL.create(wordVectors, MAX_EDIT_DISTANCE), new EmbeddingMatrix(wordVectors), null);
+        System.out.println("[INFO] Testo di " + testo.length() + " caratteri, " + parole + " parole, "
+                + (TextCorrector.chunkBoundaries(testo, TextCorrector.CHUNK_SIZE).length - 1) + " blocchi; "
+                + Runtime.getRuntime().availableProcessors() + " processori disponibili");
+
+        // Riscaldamento dei percorsi sequenziale e parallelo sull'intero testo
+        corrector.advancedCorrectText(testo);
+        corrector.advancedCorrectText(testo, ForkJoinPool.commonPool());
+        long inizio = System.nanoTime();
+        String riferimento = corrector.advancedCorrectText(testo);
+        double secondiSequenziale = (System.nanoTime() - inizio) / 1e9;
+
+        System.out.println();
+        System.out.printf("%-22s %12s %10s %11s%n", "Correzione", "parole/s", "speedup", "efficienza");
+        System.out.printf("%-22s %12.0f %9.2fx %10.0f%%%n", "Sequenziale", parole / secondiSequenziale, 1.0, 100.0);
+        int differenze = 0;
+        for (int thread = 1; thread <= threadMassimi; thread *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(thread);
+            try {
+                inizio = System.nanoTime();
+                String corretto = corrector.advancedCorrectText(testo, pool);
+                double secondi = (System.nanoTime() - inizio) / 1e9;
+                if (!riferimento.equals(corretto)) {
+                    differenze++;
+                    System.out.println("[ERRORE] Testo corretto con " + thread + " thread diverso dal sequenziale.");
+                }
+                double speedup = secondiSequenziale / secondi;
+                System.out.printf("%-22s %12.0f %9.2fx %10.0f%%%n", "Fork-join, " + thread + " thread",
+                        parole / secondi, speedup, speedup / thread * 100);
+            } finally {
+                pool.shutdown();
+            }
+        }
+        System.out.println(differenze == 0
+                ? "[SUCCESSO] Testo corretto identico al percorso sequenziale per ogni numero di thread."
+                : "[ERRORE] " + differenze + " esecuzioni con testo diverso.");
+    }
+}
@@ -0,0 +1,128 @@
+package it.unicam.cs.pg.postprocessing;
+
+import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
+import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Strumento a riga di comando che confronta il punteggio semantico dei candidati coppia per coppia con quello
+ * calcolato sulla {@link EmbeddingMatrix}.
+ * <p>
+ * Le parole di prova sono scelte a caso nel vocabolario, così che abbiano un vettore; i loro candidati sono le
+ * altre parole del vocabolario entro la distanza di modifica indicata, trovate con {@link SymSpellIndex}. Per
+ * ogni parola viene scelto il candidato semanticamente più simile sia con il percorso originale (un
+ * {@code getWordVectorMatrix} e un {@code Transforms.cosineSim} per coppia) sia con un'unica moltiplicazione
+ * sulla matrice normalizzata: il benchmark riporta le parole al secondo e le coppie al secondo dei due percorsi e
+ * verifica che scelgano gli stessi candidati.
+ * </p>
+ * Uso: {@code SemanticScoringBenchmark <modello.vec> [parole] [distanza massima]}
+ */
+public class SemanticScoringBenchmark {
+
+    private static final long SEED = 42;
+
+    /**
+     * Punto d'ingresso del benchmark.
+     *
+     * @param args modello Word2Vec, numero di parole di prova e distanza massima (opzionali gli ultimi due)
+     * @throws Exception se il modello non può essere letto
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Uso: SemanticScoringBenchmark <modello.vec> [parole] [distanza massima]");
+            return;
+        }
+        int numeroParole = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int distanza = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        WordVectors wordVectors = WordVectorSerializer.loadStaticModel(new File(args[0]));
+
+        long inizio = System.nanoTime();
+        EmbeddingMatrix matrice = new EmbeddingMatrix(wordVectors);
+        System.out.printf("[INFO] Matrice normalizzata di %d x %d preparata in %.2f s%n", matrice.size(),
+                matrice.dimension(), (System.nanoTime() - inizio) / 1e9);
+
+        SymSpellIndex symSpell = new SymSpellIndex(wordVectors, distanza);
+        Random random = new Random(SEED);
+        List<String> parole = new ArrayList<>();
+        List<List<String>> candidati = new ArrayList<>();
+        long coppie = 0;
+        for (int tentativi = 0; parole.size() < numeroParole && tentativi < numeroParole * 20; tentativi++) {
+            String parola = matrice.word(random.nextInt(matrice.size()));
+            List<String> trovati = new ArrayList<>(symSpell.candidates(parola, distanza));
+            trovati.remove(parola);
+            if (trovati.size() > 1) {
+                parole.add(parola);
+                candidati.add(trovati);
+                coppie += trovati.size();
+            }
+        }
+        System.out.printf("[INFO] %d parole con in media %.1f candidati entro distanza %d%n", parole.size(),
+                (double) coppie / Math.max(1, parole.size()), distanza);
+
+        // Riscaldamento di entrambi i percorsi
+        for (int i = 0; i < Math.min(200, parole.size()); i++) {
+            perCoppie(wordVectors, parole.get(i), candidati.get(i));
+            TextCorrector.findBestSemanticMatch(matrice, parole.get(i), candidati.get(i));
+        }
+
+        String[] sceltePerCoppie = new String[parole.size()];
+        inizio = System.nanoTime();
+        for (int i = 0; i < parole.size(); i++) {
+            sceltePerCoppie[i] = perCoppie(wordVectors, parole.get(i), candidati.get(i));
+        }
+        double secondiPerCoppie = (System.nanoTime() - inizio) / 1e9;
+
+        String[] scelteMatrice = new String[parole.size()];
+        inizio = System.nanoTime();
+        for (int i = 0; i < parole.size(); i++) {
+            scelteMatrice[i] = TextCorrector.findBestSemanticMatch(matrice, parole.get(i), candidati.get(i));
+        }
+        double secondiMatrice = (System.nanoTime() - inizio) / 1e9;
+
+        int differenze = 0;
+        for (int i = 0; i < parole.size(); i++) {
+            if (!sceltePerCoppie[i].equals(scelteMatrice[i])) {
+                differenze++;
+                System.out.println("[INFO] Scelta diversa per \"" + parole.get(i) + "\": " + sceltePerCoppie[i]
+                        + " / " + scelteMatrice[i]);
+            }
+        }
+
+        System.out.println();
+        System.out.printf("%-40s %12s %14s %10s%n", "Punteggio semantico", "parole/s", "coppie/s", "speedup");
+        System.out.printf("%-40s %12.0f %14.0f %9.1fx%n", "Per coppia (INDArray + cosineSim)",
+                parole.size() / secondiPerCoppie, coppie / secondiPerCoppie, 1.0);
+        System.out.printf("%-40s %12.0f %14.0f %9.1fx%n", "Matrice normalizzata (matrice x vettore)",
+                parole.size() / secondiMatrice, coppie / secondiMatrice, secondiPerCoppie / secondiMatrice);
+        System.out.println(differenze == 0
+                ? "[SUCCESSO] I due percorsi scelgono gli stessi candidati."
+                : "[INFO] " + differenze + " scelte diverse, dovute a similarità uguali entro l'arrotondamento float.");
+    }
+
+    /**
+     * Percorso originale di {@code TextCorrector.findBestSemanticMatch}: un vettore e una similarità per ogni coppia.
+     */
+    private static String perCoppie(WordVectors wordVectors, String target, List<String> candidati) {
+        INDArray vettore = wordVectors.getWordVectorMatrix(target);
+        String migliore = candidati.get(0);
+        double massimo = -1;
+        for (String candidato : candidati) {
+            INDArray altro = wordVectors.getWordVectorMatrix(candidato);
+            if (altro == null) {
+                continue;
+            }
+            double similarita = Transforms.cosineSim(vettore, altro);
+            if (similarita > massimo) {
+                massimo = similarita;
+                migliore = candidato;
+            }
+        }
+        return migliore;
+    }
+}
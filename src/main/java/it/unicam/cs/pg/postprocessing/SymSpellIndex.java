@@ -0,0 +1,174 @@
+package it.unicam.cs.pg.postprocessing;
+
+import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Indice a cancellazioni simmetriche (SymSpell) per la ricerca dei candidati entro una distanza di modifica.
+ * <p>
+ * Se due parole distano al più {@code k}, esiste una stringa ottenibile da entrambe con al più {@code k}
+ * cancellazioni. L'indice associa quindi a ogni variante per cancellazione del prefisso di ogni parola del
+ * vocabolario le parole che la generano; alla ricerca vengono generate le cancellazioni della parola cercata e
+ * la distanza esatta viene calcolata solo per le parole che condividono almeno una variante. Il costo della
+ * ricerca dipende dalla lunghezza della parola e non dalla dimensione del vocabolario.
+ * </p>
+ * <p>
+ * Per contenere la memoria le varianti sono generate solo sui primi {@value #PREFIX_LENGTH} caratteri e non
+ * vengono conservate come stringhe: ogni variante è ridotta a un hash di 39 bit e le coppie (hash, parola) sono
+ * compattate in array ordinati interrogati per ricerca binaria. Le collisioni di hash producono solo candidati
+ * in più, scartati dalla verifica della distanza.
+ * </p>
+ */
+public class SymSpellIndex implements CandidateIndex {
+    static final int PREFIX_LENGTH = 7;
+    private static final int BIT_ID = 24;
+    private static final int MAX_PAROLE = 1 << BIT_ID;
+
+    private final String[] vocabolario;
+    private final int maxDistance;
+    private final long[] chiavi;
+    private final int[] inizi;
+    private final int[] parole;
+
+    /**
+     * Costruisce l'indice sul vocabolario del modello.
+     *
+     * @param wordVectors modello Word2Vec da cui leggere il vocabolario
+     * @param maxDistance massima distanza di modifica supportata dalle ricerche
+     */
+    public SymSpellIndex(WordVectors wordVectors, int maxDistance) {
+        this(TextCorrector.vocabulary(wordVectors), maxDistance);
+    }
+
+    /**
+     * Costruisce l'indice su un vocabolario esplicito.
+     *
+     * @param vocabolario parole del vocabolario, nell'ordine del modello
+     * @param maxDistance massima distanza di modifica supportata dalle ricerche
+     */
+    SymSpellIndex(String[] vocabolario, int maxDistance) {
+        if (vocabolario.length > MAX_PAROLE) {
+            throw new IllegalArgumentException("Vocabolario troppo grande per l'indice: " + vocabolario.length + " parole");
+        }
+        this.vocabolario = vocabolario;
+        this.maxDistance = maxDistance;
+
+        // Ogni voce contiene l'hash della variante nei bit alti e l'indice della parola nei 24 bit bassi
+        long[] voci = new long[Math.max(16, vocabolario.length * 8)];
+        int n = 0;
+        for (int id = 0; id < vocabolario.length; id++) {
+            for (String variante : cancellazioni(prefisso(vocabolario[id]), maxDistance)) {
+                if (n == voci.length) {
+                    voci = Arrays.copyOf(voci, voci.length + (voci.length >> 1));
+                }
+                voci[n++] = (hash39(variante) << BIT_ID) | id;
+            }
+        }
+        Arrays.parallelSort(voci, 0, n);
+
+        int distinte = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || voci[i] >>> BIT_ID != voci[i - 1] >>> BIT_ID) {
+                distinte++;
+            }
+        }
+        chiavi = new long[distinte];
+        inizi = new int[distinte + 1];
+        parole = new int[n];
+        int k = -1;
+        for (int i = 0; i < n; i++) {
+            long chiave = voci[i] >>> BIT_ID;
+            if (k < 0 || chiavi[k] != chiave) {
+                chiavi[++k] = chiave;
+                inizi[k] = i;
+            }
+            parole[i] = (int) (voci[i] & (MAX_PAROLE - 1));
+        }
+        inizi[distinte] = n;
+    }
+
+    @Override
+    public List<String> candidates(String word, int maxDistance) {
+        if (maxDistance > this.maxDistance) {
+            throw new IllegalArgumentException("Distanza " + maxDistance + " oltre quella dell'indice (" + this.maxDistance + ")");
+        }
+        List<int[]> trovati = new ArrayList<>();
+        BitSet verificate = new BitSet();
+        for (String variante : cancellazioni(prefisso(word), maxDistance)) {
+            int posizione = Arrays.binarySearch(chiavi, hash39(variante));
+            if (posizione < 0) {
+                continue;
+            }
+            for (int i = inizi[posizione]; i < inizi[posizione + 1]; i++) {
+                int id = parole[i];
+                if (verificate.get(id)) {
+                    continue;
+                }
+                verificate.set(id);
+                String candidato = vocabolario[id];
+                int distanza = EditDistance.bounded(word, candidato, maxDistance);
+                if (distanza <= maxDistance) {
+                    trovati.add(new int[]{distanza, id});
+                }
+            }
+        }
+        return TextCorrector.sortCandidates(trovati, vocabolario);
+    }
+
+    @Override
+    public String getName() {
+        return "SymSpell (cancellazioni simmetriche)";
+    }
+
+    @Override
+    public long memoryBytes() {
+        return (long) chiavi.length * Long.BYTES + (long) inizi.length * Integer.BYTES + (long) parole.length * Integer.BYTES;
+    }
+
+    private static String prefisso(String parola) {
+        return parola.length() > PREFIX_LENGTH ? parola.substring(0, PREFIX_LENGTH) : parola;
+    }
+
+    /**
+     * Genera la parola e tutte le sue varianti ottenute con al più {@code k} cancellazioni.
+     */
+    private static Set<String> cancellazioni(String parola, int k) {
+        Set<String> varianti = new HashSet<>();
+        varianti.add(parola);
+        List<String> livello = List.of(parola);
+        for (int d = 0; d < k; d++) {
+            List<String> successivo = new ArrayList<>();
+            for (String s : livello) {
+                for (int i = 0; i < s.length(); i++) {
+                    String variante = s.substring(0, i) + s.substring(i + 1);
+                    if (varianti.add(variante)) {
+                        successivo.add(variante);
+                    }
+                }
+            }
+            livello = successivo;
+        }
+        return varianti;
+    }
+
+    /**
+     * Hash FNV-1a a 64 bit con rimescolamento finale, ridotto a 39 bit (la voce compattata resta positiva).
+     */
+    private static long hash39(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h >>> (64 - 39);
+    }
+}
@@ -0,0 +1,143 @@
+package it.unicam.cs.pg.postprocessing;
+
+import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
+import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Strumento a riga di comando che misura la velocità della correzione lessicale su una trascrizione reale.
+ * <p>
+ * Il testo viene corretto con la ricerca dei candidati per scansione lineare del vocabolario e con l'indice
+ * {@link SymSpellIndex}: per ciascuno vengono riportati il tempo di costruzione dell'indice e le parole
+ * corrette al secondo. Il benchmark verifica inoltre che i due metodi trovino gli stessi candidati per ogni
+ * parola fuori vocabolario e producano lo stesso testo corretto.
+ * </p>
+ * <p>
+ * Viene misurata anche la velocità della distanza di modifica limitata di {@link EditDistance} rispetto al
+ * calcolo sulla matrice completa, confrontando le parole fuori vocabolario con un campione del vocabolario.
+ * </p>
+ * Uso: {@code TextCorrectionBenchmark <modello.vec> <trascrizione.txt> [distanza massima]}
+ */
+public class TextCorrectionBenchmark {
+
+    private static final double MB = 1024.0 * 1024.0;
+    private static final int CAMPIONE_VOCABOLARIO = 20000;
+
+    /**
+     * Punto d'ingresso del benchmark.
+     *
+     * @param args modello Word2Vec, file di testo da correggere e distanza massima (opzionale)
+     * @throws IOException se il modello o il testo non possono essere letti
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Uso: TextCorrectionBenchmark <modello.vec> <trascrizione.txt> [distanza massima]");
+            return;
+        }
+        int distanza = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        WordVectors wordVectors = WordVectorSerializer.loadStaticModel(new File(args[0]));
+        String testo = Files.readString(new File(args[1]).toPath(), StandardCharsets.UTF_8);
+
+        Set<String> paroleFuoriVocabolario = TextCorrector.outOfVocabularyWords(wordVectors, testo);
+        long parole = TextCorrector.TOKEN_PATTERN.matcher(testo).results().filter(r -> r.group(1) != null).count();
+        System.out.println("[INFO] Vocabolario di " + wordVectors.vocab().numWords() + " parole; testo di " + parole
+                + " parole, " + paroleFuoriVocabolario.size() + " distinte fuori vocabolario; distanza massima " + distanza);
+
+        long inizio = System.nanoTime();
+        CandidateIndex lineare = new LinearCandidateIndex(wordVectors);
+        double costruzioneLineare = (System.nanoTime() - inizio) / 1e9;
+        inizio = System.nanoTime();
+        SymSpellIndex symSpell = new SymSpellIndex(wordVectors, distanza);
+        double costruzioneSymSpell = (System.nanoTime() - inizio) / 1e9;
+        System.out.printf("[INFO] Indice SymSpell costruito in %.2f s, %.1f MB%n", costruzioneSymSpell,
+                symSpell.memoryBytes() / MB);
+
+        int differenze = 0;
+        for (String parola : paroleFuoriVocabolario) {
+            List<String> attesi = lineare.candidates(parola, distanza);
+            List<String> trovati = symSpell.candidates(parola, distanza);
+            if (!attesi.equals(trovati)) {
+                differenze++;
+                System.out.println("[ERRORE] Candidati diversi per \"" + parola + "\": " + attesi + " / " + trovati);
+            }
+        }
+
+        differenze += confrontaDistanze(paroleFuoriVocabolario, TextCorrector.vocabulary(wordVectors), distanza);
+
+        String riferimento = null;
+        System.out.println();
+        System.out.printf("%-38s %13s %14s %12s%n", "Ricerca dei candidati", "costruzione", "parole/s", "speedup");
+        double parolePerSecondoLineare = 0;
+        for (CandidateIndex indice : List.of(lineare, symSpell)) {
+            TextCorrector corrector = new TextCorrector(wordVectors, distanza, indice);
+            inizio = System.nanoTime();
+            String corretto = corrector.advancedCorrectText(testo);
+            double secondi = (System.nanoTime() - inizio) / 1e9;
+            double parolePerSecondo = parole / secondi;
+            if (riferimento == null) {
+                riferimento = corretto;
+                parolePerSecondoLineare = parolePerSecondo;
+            } else if (!riferimento.equals(corretto)) {
+                differenze++;
+                System.out.println("[ERRORE] Il testo corretto con " + indice.getName() + " è diverso dal riferimento.");
+            }
+            System.out.printf("%-38s %12.2fs %14.1f %11.1fx%n", indice.getName(),
+                    indice == lineare ? costruzioneLineare : costruzioneSymSpell, parolePerSecondo,
+                    parolePerSecondo / parolePerSecondoLineare);
+        }
+        System.out.println(differenze == 0
+                ? "[SUCCESSO] Candidati e testo corretto identici alla scansione lineare."
+                : "[ERRORE] " + differenze + " differenze rispetto alla scansione lineare.");
+    }
+
+    /**
+     * Confronta la distanza sulla matrice completa con quella limitata alla banda, su tutte le coppie tra parole
+     * fuori vocabolario e un campione del vocabolario.
+     *
+     * @return il numero di coppie con risultati diversi
+     */
+    private static int confrontaDistanze(Set<String> parole, String[] vocabolario, int distanza) {
+        int campione = Math.min(vocabolario.length, CAMPIONE_VOCABOLARIO);
+        long coppie = (long) parole.size() * campione;
+        if (coppie == 0) {
+            return 0;
+        }
+        int[] completa = new int[(int) coppie];
+        int[] limitata = new int[(int) coppie];
+        long inizio = System.nanoTime();
+        int k = 0;
+        for (String parola : parole) {
+            for (int i = 0; i < campione; i++) {
+                completa[k++] = EditDistance.unbounded(parola, vocabolario[i]);
+            }
+        }
+        double secondiCompleta = (System.nanoTime() - inizio) / 1e9;
+        inizio = System.nanoTime();
+        k = 0;
+        for (String parola : parole) {
+            for (int i = 0; i < campione; i++) {
+                limitata[k++] = EditDistance.bounded(parola, vocabolario[i], distanza);
+            }
+        }
+        double secondiLimitata = (System.nanoTime() - inizio) / 1e9;
+        int differenze = 0;
+        for (int i = 0; i < completa.length; i++) {
+            if (Math.min(completa[i], distanza + 1) != limitata[i]) {
+                differenze++;
+            }
+        }
+        System.out.printf("[INFO] Distanza di modifica su %d coppie: matrice completa %.2f M/s, banda limitata a %d "
+                        + "%.2f M/s (%.1fx)%n", coppie, coppie / secondiCompleta / 1e6, distanza,
+                coppie / secondiLimitata / 1e6, secondiCompleta / secondiLimitata);
+        if (differenze > 0) {
+            System.out.println("[ERRORE] " + differenze + " coppie con distanza limitata diversa da quella completa.");
+        }
+        return differenze;
+    }
+}
@@ -0,0 +1,105 @@
+package it.unicam.cs.pg.postprocessing;
+
+import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
+import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Comando a riga di comando, senza interfaccia grafica, che corregge una trascrizione in streaming.
+ * <p>
+ * Il testo viene letto e scritto un blocco alla volta con {@link TextCorrector#correct(Reader, Writer)}, per cui
+ * anche corpora di centinaia di megabyte vengono corretti in memoria costante. Come nell'interfaccia grafica, la
+ * cache delle correzioni viene caricata e salvata accanto al modello. I messaggi di log sono scritti sullo standard
+ * error, così che il testo corretto possa essere scritto sullo standard output. Se vengono indicate le confusioni
+ * OCR apprese con {@link OcrConfusionTrainer}, i candidati sono filtrati e ordinati con la distanza pesata
+ * ({@link ConfusionWeightedIndex}); con un modello linguistico costruito con {@link NgramModelTrainer} i candidati
+ * sono scelti in base alle parole vicine.
+ * </p>
+ * Uso: {@code TextCorrectionCli <modello.vec> <input.txt|-> <output.txt|-> [distanza massima] [SYMSPELL|BK_TREE|LINEAR]
+ * [confusioni.tsv|-] [modello.lm]}
+ */
+public class TextCorrectionCli {
+
+    private static final int CORRECTION_CACHE_SIZE = 100000;
+    private static final float CONFUSION_MAX_COST = 1f;
+
+    /**
+     * Punto d'ingresso del comando.
+     *
+     * @param args modello Word2Vec, file da correggere e file di destinazione ({@code -} per standard input e
+     *             standard output), distanza massima, struttura di ricerca dei candidati, confusioni OCR
+     *             ({@code -} per non usarle) e modello linguistico (opzionali)
+     * @throws IOException se il modello o i file non possono essere letti o scritti
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Uso: TextCorrectionCli <modello.vec> <input.txt|-> <output.txt|-> [distanza massima] "
+                    + "[SYMSPELL|BK_TREE|LINEAR] [confusioni.tsv|-] [modello.lm]");
+            return;
+        }
+        File fileModello = new File(args[0]);
+        int distanza = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+        CandidateSearch ricerca = args.length > 4 ? CandidateSearch.valueOf(args[4]) : CandidateSearch.SYMSPELL;
+
+        long inizio = System.nanoTime();
+        WordVectors wordVectors = WordVectorSerializer.loadStaticModel(fileModello);
+        EmbeddingMatrix vettori = new EmbeddingMatrix(wordVectors);
+        CandidateIndex indice = ricerca.create(wordVectors, distanza);
+        long impronta = vettori.fingerprint();
+        if (args.length > 5 && !args[5].equals("-")) {
+            OcrConfusionModel confusioni = OcrConfusionModel.load(new File(args[5]));
+            indice = new ConfusionWeightedIndex(indice, confusioni, CONFUSION_MAX_COST);
+            impronta ^= confusioni.fingerprint();
+            System.err.println("[INFO] " + confusioni.confusions().size() + " confusioni OCR caricate.");
+        }
+        TextCorrector corrector = new TextCorrector(wordVectors, distanza, indice, vettori, null);
+        if (args.length > 6) {
+            NgramLanguageModel modelloLinguistico = NgramLanguageModel.load(new File(args[6]));
+            corrector.setLanguageModel(modelloLinguistico);
+            impronta ^= modelloLinguistico.fingerprint();
+            System.err.println("[INFO] Modello linguistico di " + modelloLinguistico.words() + " parole caricato.");
+        }
+        File fileCache = new File(fileModello.getPath() + ".correzioni");
+        CorrectionCache cache = CorrectionCache.loadOrCreate(fileCache, CORRECTION_CACHE_SIZE, impronta, distanza,
+                System.err::println);
+        corrector.setCorrectionCache(cache);
+        System.err.printf("[INFO] Modello di %d parole pronto in %.1f s (%s)%n", vettori.size(),
+                (System.nanoTime() - inizio) / 1e9, indice.getName());
+
+        inizio = System.nanoTime();
+        try (Reader in = apriInput(args[1]); Writer out = apriOutput(args[2])) {
+            corrector.correct(in, out);
+        }
+        System.err.printf("[SUCCESSO] Testo corretto in %.1f s%n", (System.nanoTime() - inizio) / 1e9);
+        System.err.println("[INFO] Cache delle correzioni: " + cache.stats());
+        try {
+            cache.save(fileCache);
+        } catch (IOException ex) {
+            System.err.println("[ERRORE] Salvataggio della cache delle correzioni fallito: " + ex.getMessage());
+        }
+    }
+
+    private static Reader apriInput(String percorso) throws IOException {
+        if (percorso.equals("-")) {
+            return new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        }
+        return Files.newBufferedReader(new File(percorso).toPath(), StandardCharsets.UTF_8);
+    }
+
+    private static Writer apriOutput(String percorso) throws IOException {
+        if (percorso.equals("-")) {
+            return new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        }
+        return Files.newBufferedWriter(new File(percorso).toPath(), StandardCharsets.UTF_8);
+    }
+}
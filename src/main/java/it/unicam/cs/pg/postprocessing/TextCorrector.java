@@ -5,27 +5,163 @@ import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.ops.transforms.Transforms;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
  * Classe per la correzione avanzata del testo utilizzando modelli Word2Vec.
+ * I candidati per le parole fuori vocabolario sono cercati con un {@link CandidateIndex}
+ * costruito una sola volta per modello. Con una {@link EmbeddingMatrix} i candidati vengono confrontati
+ * semanticamente con un'unica moltiplicazione, e le parole vicine possono essere cercate con un
+ * {@link HnswIndex} invece che confrontando l'intero vocabolario. Una {@link CorrectionCache} opzionale
+ * evita di ripetere la ricerca per le parole già corrette. Con un {@link NgramLanguageModel} i primi
+ * {@value #CONTEXT_CANDIDATES} candidati vengono riordinati in base alle parole vicine nel testo originale.
  */
 public class TextCorrector {
+    static final Pattern TOKEN_PATTERN = Pattern.compile("(\\p{L}+-?\\p{L}*)|([^\\p{L}\\s]+)|\\s+");
+    static final Pattern WORD_PATTERN = Pattern.compile("\\p{L}+-?\\p{L}*");
+    static final int CHUNK_SIZE = 16 * 1024;
+    static final int STREAM_BUFFER_SIZE = 8 * 1024;
+    static final int CONTEXT_WINDOW = STREAM_BUFFER_SIZE / 2;
+    static final int CONTEXT_CANDIDATES = 5;
     private final WordVectors wordVectors;
     private final int MAX_EDIT_DISTANCE;
+    private final CandidateIndex candidateIndex;
+    private final EmbeddingMatrix embeddings;
+    private final HnswIndex nearestIndex;
+    private volatile CorrectionCache correctionCache;
+    private volatile NgramLanguageModel languageModel;
 
     /**
-     * Costruttore della classe TextCorrector.
+     * Costruttore della classe TextCorrector. I candidati vengono cercati con un indice {@link SymSpellIndex}.
      *
      * @param wordVectors        modello Word2Vec utilizzato per la correzione del testo
      * @param MAX_EDIT_DISTANCE  massima distanza di modifica consentita tra parole
      */
     public TextCorrector(WordVectors wordVectors, int MAX_EDIT_DISTANCE) {
+        this(wordVectors, MAX_EDIT_DISTANCE, CandidateSearch.SYMSPELL);
+    }
+
+    /**
+     * Costruttore della classe TextCorrector con la struttura di ricerca dei candidati indicata.
+     *
+     * @param wordVectors        modello Word2Vec utilizzato per la correzione del testo
+     * @param MAX_EDIT_DISTANCE  massima distanza di modifica consentita tra parole
+     * @param search             struttura di ricerca dei candidati da costruire sul vocabolario del modello
+     */
+    public TextCorrector(WordVectors wordVectors, int MAX_EDIT_DISTANCE, CandidateSearch search) {
+        this(wordVectors, MAX_EDIT_DISTANCE, search.create(wordVectors, MAX_EDIT_DISTANCE));
+    }
+
+    /**
+     * Costruttore della classe TextCorrector con un indice dei candidati esplicito.
+     *
+     * @param wordVectors        modello Word2Vec utilizzato per la correzione del testo
+     * @param MAX_EDIT_DISTANCE  massima distanza di modifica consentita tra parole
+     * @param candidateIndex     indice per la ricerca dei candidati, costruito sullo stesso modello
+     */
+    public TextCorrector(WordVectors wordVectors, int MAX_EDIT_DISTANCE, CandidateIndex candidateIndex) {
+        this(wordVectors, MAX_EDIT_DISTANCE, candidateIndex, null, null);
+    }
+
+    /**
+     * Costruttore della classe TextCorrector con un indice dei candidati, la matrice dei vettori normalizzati
+     * e un indice dei vicini semantici.
+     *
+     * @param wordVectors        modello Word2Vec utilizzato per la correzione del testo
+     * @param MAX_EDIT_DISTANCE  massima distanza di modifica consentita tra parole
+     * @param candidateIndex     indice per la ricerca dei candidati, costruito sullo stesso modello
+     * @param embeddings         matrice dei vettori normalizzati dello stesso modello, oppure null per
+     *                           confrontare i vettori una coppia alla volta
+     * @param nearestIndex       indice dei vicini semantici costruito sullo stesso modello, oppure null per
+     *                           confrontare la parola con l'intero vocabolario
+     */
+    public TextCorrector(WordVectors wordVectors, int MAX_EDIT_DISTANCE, CandidateIndex candidateIndex,
+                         EmbeddingMatrix embeddings, HnswIndex nearestIndex) {
         this.wordVectors = wordVectors;
         this.MAX_EDIT_DISTANCE = MAX_EDIT_DISTANCE;
+        this.candidateIndex = candidateIndex;
+        this.embeddings = embeddings;
+        this.nearestIndex = nearestIndex;
+    }
+
+    /**
+     * Imposta la cache delle correzioni, condivisa tra i testi corretti.
+     *
+     * @param correctionCache cache costruita per lo stesso modello e la stessa distanza massima, oppure null per
+     *                        cercare ogni volta la correzione
+     */
+    public void setCorrectionCache(CorrectionCache correctionCache) {
+        this.correctionCache = correctionCache;
+    }
+
+    /**
+     * @return la cache delle correzioni, oppure null se non è impostata
+     */
+    public CorrectionCache getCorrectionCache() {
+        return correctionCache;
+    }
+
+    /**
+     * Imposta il modello linguistico con cui scegliere tra i candidati in base al contesto.
+     * <p>
+     * Il contesto è formato dalle due parole precedenti e dalla parola successiva del testo originale, non
+     * corretto, per cui il risultato non dipende dalla divisione in blocchi. Due parole fanno da contesto l'una
+     * all'altra solo se tra la fine della prima e l'inizio della seconda ci sono meno di {@value #CONTEXT_WINDOW}
+     * caratteri: così la ricerca del contesto non legge mai più di una finestra limitata di testo. Con un modello
+     * linguistico la cache
+     * delle correzioni memorizza i candidati in ordine invece della sola correzione, e va quindi costruita con
+     * un'impronta che includa {@link NgramLanguageModel#fingerprint()}.
+     * </p>
+     *
+     * @param languageModel modello linguistico, oppure null per scegliere senza contesto
+     */
+    public void setLanguageModel(NgramLanguageModel languageModel) {
+        this.languageModel = languageModel;
+    }
+
+    /**
+     * Restituisce le parole del vocabolario del modello nell'ordine di iterazione del modello.
+     * L'indice di ogni parola nell'array è usato dagli indici dei candidati per ordinare i risultati a parità di distanza.
+     *
+     * @param wordVectors modello Word2Vec
+     * @return le parole del vocabolario
+     */
+    static String[] vocabulary(WordVectors wordVectors) {
+        List<String> parole = new ArrayList<>(wordVectors.vocab().numWords());
+        for (Object parola : wordVectors.vocab().words()) {
+            parole.add((String) parola);
+        }
+        return parole.toArray(new String[0]);
+    }
+
+    /**
+     * Raccoglie le parole del testo, normalizzate, che non sono nel vocabolario del modello.
+     *
+     * @param wordVectors modello Word2Vec
+     * @param text        testo da analizzare
+     * @return le parole fuori vocabolario distinte, nell'ordine della prima occorrenza
+     */
+    static Set<String> outOfVocabularyWords(WordVectors wordVectors, String text) {
+        Set<String> parole = new LinkedHashSet<>();
+        Matcher matcher = TOKEN_PATTERN.matcher(text);
+        while (matcher.find()) {
+            if (matcher.group(1) != null) {
+                String normalizzata = normalizeWord(matcher.group());
+                if (!wordVectors.hasWord(normalizzata)) {
+                    parole.add(normalizzata);
+                }
+            }
+        }
+        return parole;
     }
 
     /**
@@ -35,52 +171,408 @@ public class TextCorrector {
      * @return testo corretto
      */
     public String advancedCorrectText(String text) {
-        StringBuilder corrected = new StringBuilder();
-        Pattern pattern = Pattern.compile("(\\p{L}+-?\\p{L}*)|([^\\p{L}\\s]+)|\\s+");
-        Matcher matcher = pattern.matcher(text);
+        StringBuilder corrected = new StringBuilder(text.length());
+        correctRange(text, 0, text.length(), corrected, contesto(languageModel));
+        return corrected.toString();
+    }
+
+    /**
+     * Corregge il testo dividendolo in blocchi che vengono corretti in parallelo sul pool indicato.
+     * I blocchi iniziano sempre con una sequenza di spazi, dove termina un token, per cui il risultato è
+     * identico a quello di {@link #advancedCorrectText(String)}.
+     *
+     * @param text testo da correggere
+     * @param pool pool su cui correggere i blocchi
+     * @return testo corretto
+     */
+    public String advancedCorrectText(String text, ForkJoinPool pool) {
+        int[] limiti = chunkBoundaries(text, CHUNK_SIZE);
+        if (limiti.length <= 2) {
+            return advancedCorrectText(text);
+        }
+        String[] blocchi = new String[limiti.length - 1];
+        pool.invoke(new CorrezioneBlocchi(text, limiti, blocchi, 0, blocchi.length, languageModel));
+        StringBuilder corrected = new StringBuilder(text.length());
+        for (String blocco : blocchi) {
+            corrected.append(blocco);
+        }
+        return corrected.toString();
+    }
+
+    /**
+     * Corregge il testo letto da un {@link Reader} e lo scrive su un {@link Writer} un blocco alla volta.
+     * <p>
+     * Il testo viene letto in un buffer di {@value #STREAM_BUFFER_SIZE} caratteri; viene corretto fino all'ultima
+     * sequenza di spazi del buffer, dove termina certamente un token, mentre la parte successiva resta nel buffer
+     * come anticipo della lettura seguente. La memoria usata non dipende dalla lunghezza del testo, ma solo dalla
+     * sequenza più lunga senza spazi, per la quale il buffer viene ingrandito. Il risultato è identico a quello di
+     * {@link #advancedCorrectText(String)}: con un modello linguistico la correzione si ferma prima dell'ultima parola
+     * completa del buffer, che fa da contesto a destra, a meno che dopo di essa ci siano già almeno
+     * {@value #CONTEXT_WINDOW} caratteri senza parole; il contesto a sinistra passa da una lettura all'altra.
+     * </p>
+     *
+     * @param in  testo da correggere
+     * @param out destinazione del testo corretto; non viene chiuso
+     * @throws IOException se la lettura o la scrittura falliscono
+     */
+    public void correct(Reader in, Writer out) throws IOException {
+        char[] buffer = new char[STREAM_BUFFER_SIZE];
+        int lunghezza = 0;
+        StringBuilder corrected = new StringBuilder(STREAM_BUFFER_SIZE);
+        Contesto contesto = contesto(languageModel);
+        int letti;
+        while ((letti = in.read(buffer, lunghezza, buffer.length - lunghezza)) >= 0) {
+            lunghezza += letti;
+            CharBuffer testo = CharBuffer.wrap(buffer, 0, lunghezza);
+            int confine = contesto != null ? contextBoundary(testo, lunghezza) : lastTokenBoundary(testo, lunghezza);
+            if (confine > 0) {
+                corrected.setLength(0);
+                correctRange(testo, 0, confine, corrected, contesto);
+                out.append(corrected);
+                System.arraycopy(buffer, confine, buffer, 0, lunghezza - confine);
+                lunghezza -= confine;
+            }
+            if (lunghezza == buffer.length) {
+                // Nessuno spazio nell'intero buffer: serve più anticipo per completare il token
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            } else if (buffer.length > STREAM_BUFFER_SIZE && lunghezza < STREAM_BUFFER_SIZE) {
+                buffer = Arrays.copyOf(buffer, STREAM_BUFFER_SIZE);
+            }
+        }
+        corrected.setLength(0);
+        correctRange(CharBuffer.wrap(buffer, 0, lunghezza), 0, lunghezza, corrected, contesto);
+        out.append(corrected);
+        out.flush();
+    }
+
+    /**
+     * Corregge i token del testo compresi tra due posizioni che cadono al confine tra due token.
+     *
+     * @param text     testo da correggere
+     * @param start    inizio dell'intervallo
+     * @param end      fine dell'intervallo (esclusa)
+     * @param out      destinazione del testo corretto
+     * @param contesto parole precedenti l'intervallo e modello linguistico, aggiornati al termine, oppure null
+     *                 per correggere senza contesto
+     */
+    private void correctRange(CharSequence text, int start, int end, StringBuilder out, Contesto contesto) {
+        Matcher matcher = TOKEN_PATTERN.matcher(text);
+        matcher.region(start, end);
         while (matcher.find()) {
             String token = matcher.group();
-            if (token.matches("\\p{L}+-?\\p{L}*")) {
-                corrected.append(processWordToken(token));
+            if (matcher.group(1) == null) {
+                out.append(token);
+                if (contesto != null) {
+                    contesto.avanza(token.length());
+                }
+                continue;
+            }
+            String normalized = normalizeWord(token);
+            out.append(processWordToken(token, normalized, contesto, text, matcher.end()));
+            if (contesto != null) {
+                contesto.aggiungi(normalized);
+            }
+        }
+    }
+
+    /**
+     * Contesto a sinistra di una parola: le due parole precedenti del testo originale, normalizzate. Le parole
+     * vengono dimenticate quando dalla fine dell'ultima sono passati {@value #CONTEXT_WINDOW} caratteri.
+     */
+    private static final class Contesto {
+        private final NgramLanguageModel modello;
+        private String sinistra2;
+        private String sinistra1;
+        private int distanza;
+
+        private Contesto(NgramLanguageModel modello) {
+            this.modello = modello;
+        }
+
+        private void aggiungi(String parola) {
+            sinistra2 = sinistra1;
+            sinistra1 = parola;
+            distanza = 0;
+        }
+
+        private void avanza(int caratteri) {
+            distanza = Math.min(CONTEXT_WINDOW, distanza + caratteri);
+            if (distanza == CONTEXT_WINDOW) {
+                sinistra2 = null;
+                sinistra1 = null;
+            }
+        }
+    }
+
+    private static Contesto contesto(NgramLanguageModel modello) {
+        return modello == null ? null : new Contesto(modello);
+    }
+
+    /**
+     * Ricostruisce il contesto a sinistra di una posizione al confine tra due token. Conta solo l'ultima parola che
+     * termina entro {@value #CONTEXT_WINDOW} caratteri dalla posizione e la parola che la precede alla stessa
+     * distanza, per cui il testo analizzato è limitato a due finestre più la lunghezza dell'ultima parola.
+     */
+    private static Contesto contextBefore(CharSequence text, int start, NgramLanguageModel modello) {
+        // Una parola che termina dopo un confine inizia dopo di esso, perché non contiene spazi
+        int ultima = lastWordStart(text, lastTokenBoundary(text, start - CONTEXT_WINDOW), start);
+        Contesto contesto = new Contesto(modello);
+        if (ultima < 0) {
+            contesto.avanza(CONTEXT_WINDOW);
+            return contesto;
+        }
+        Matcher matcher = TOKEN_PATTERN.matcher(text);
+        matcher.region(lastTokenBoundary(text, ultima - CONTEXT_WINDOW), start);
+        while (matcher.find()) {
+            if (matcher.group(1) != null) {
+                contesto.aggiungi(normalizeWord(matcher.group()));
             } else {
-                corrected.append(token);
+                contesto.avanza(matcher.end() - matcher.start());
             }
         }
-        return corrected.toString();
+        return contesto;
+    }
+
+    /**
+     * Restituisce l'inizio dell'ultima parola tra due posizioni al confine tra due token.
+     *
+     * @return la posizione, oppure -1 se tra le due posizioni non ci sono parole
+     */
+    private static int lastWordStart(CharSequence text, int from, int to) {
+        Matcher matcher = TOKEN_PATTERN.matcher(text);
+        matcher.region(from, to);
+        int ultima = -1;
+        while (matcher.find()) {
+            if (matcher.group(1) != null) {
+                ultima = matcher.start();
+            }
+        }
+        return ultima;
+    }
+
+    /**
+     * Restituisce la prima parola, normalizzata, che inizia entro {@value #CONTEXT_WINDOW} caratteri da una
+     * posizione al confine tra due token.
+     *
+     * @return la parola, oppure null se nella finestra non inizia nessuna parola
+     */
+    private static String nextWord(CharSequence text, int from) {
+        Matcher matcher = TOKEN_PATTERN.matcher(text);
+        matcher.region(from, text.length());
+        while (matcher.find() && matcher.start() - from < CONTEXT_WINDOW) {
+            if (matcher.group(1) != null) {
+                return normalizeWord(matcher.group());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Come {@link #lastTokenBoundary(CharSequence, int)}, ma restituisce un confine prima del quale ogni parola ha
+     * nel testo la sua parola successiva secondo {@link #nextWord(CharSequence, int)}: l'ultima parola prima del
+     * confine è seguita da un'altra parola completa, oppure da almeno {@value #CONTEXT_WINDOW} caratteri già letti
+     * in cui non inizia nessuna parola.
+     *
+     * @param text testo
+     * @param end  fine del testo da considerare (esclusa)
+     * @return la posizione, oppure 0 se non esiste
+     */
+    static int contextBoundary(CharSequence text, int end) {
+        int fine = lastTokenBoundary(text, end);
+        Matcher matcher = TOKEN_PATTERN.matcher(text);
+        matcher.region(0, fine);
+        int inizioUltima = -1;
+        int fineUltima = 0;
+        while (matcher.find()) {
+            if (matcher.group(1) != null) {
+                inizioUltima = matcher.start();
+                fineUltima = matcher.end();
+            }
+        }
+        // I token prima di fine sono completi; la sequenza di spazi che inizia a fine non contiene parole
+        int primaDopoSpazi = fine;
+        while (primaDopoSpazi < end && isSpace(text.charAt(primaDopoSpazi))) {
+            primaDopoSpazi++;
+        }
+        if (inizioUltima < 0 || primaDopoSpazi - fineUltima >= CONTEXT_WINDOW) {
+            return fine;
+        }
+        // Le parole tra due confini sono complete, perché seguite da uno spazio
+        return lastTokenBoundary(text, inizioUltima);
+    }
+
+    /**
+     * Divide il testo in blocchi di circa {@code size} caratteri. Ogni blocco dopo il primo inizia con il primo
+     * carattere di una sequenza di spazi, che per {@link #TOKEN_PATTERN} è sempre l'inizio di un token.
+     *
+     * @param text testo da dividere
+     * @param size dimensione indicativa dei blocchi
+     * @return le posizioni di inizio dei blocchi seguite dalla lunghezza del testo
+     */
+    static int[] chunkBoundaries(CharSequence text, int size) {
+        List<Integer> limiti = new ArrayList<>();
+        limiti.add(0);
+        int posizione = size;
+        while (posizione < text.length()) {
+            // Avanza fino al primo spazio preceduto da un carattere che non è uno spazio
+            while (posizione < text.length() && !isTokenBoundary(text, posizione)) {
+                posizione++;
+            }
+            if (posizione < text.length()) {
+                limiti.add(posizione);
+            }
+            posizione += size;
+        }
+        limiti.add(text.length());
+        int[] risultato = new int[limiti.size()];
+        for (int i = 0; i < risultato.length; i++) {
+            risultato[i] = limiti.get(i);
+        }
+        return risultato;
+    }
+
+    /**
+     * Restituisce l'ultima posizione prima di {@code end} in cui inizia una sequenza di spazi preceduta da un
+     * carattere che non è uno spazio.
+     *
+     * @param text testo
+     * @param end  fine del testo da considerare (esclusa)
+     * @return la posizione, oppure 0 se non esiste
+     */
+    static int lastTokenBoundary(CharSequence text, int end) {
+        for (int posizione = end - 1; posizione > 0; posizione--) {
+            if (isTokenBoundary(text, posizione)) {
+                return posizione;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Indica se in una posizione inizia una sequenza di spazi: per {@link #TOKEN_PATTERN} è sempre l'inizio di
+     * un token, e il token precedente termina lì.
+     */
+    private static boolean isTokenBoundary(CharSequence text, int posizione) {
+        return isSpace(text.charAt(posizione)) && !isSpace(text.charAt(posizione - 1));
+    }
+
+    /**
+     * Indica se un carattere è uno spazio secondo la classe {@code \s} delle espressioni regolari.
+     */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Correzione di un intervallo di blocchi, divisa a metà finché resta un solo blocco.
+     */
+    private final class CorrezioneBlocchi extends RecursiveAction {
+        private final String text;
+        private final int[] limiti;
+        private final String[] blocchi;
+        private final int da;
+        private final int a;
+        private final NgramLanguageModel modello;
+
+        private CorrezioneBlocchi(String text, int[] limiti, String[] blocchi, int da, int a,
+                                  NgramLanguageModel modello) {
+            this.text = text;
+            this.limiti = limiti;
+            this.blocchi = blocchi;
+            this.da = da;
+            this.a = a;
+            this.modello = modello;
+        }
+
+        @Override
+        protected void compute() {
+            if (a - da == 1) {
+                StringBuilder corrected = new StringBuilder(limiti[da + 1] - limiti[da]);
+                Contesto contesto = modello == null ? null : contextBefore(text, limiti[da], modello);
+                correctRange(text, limiti[da], limiti[da + 1], corrected, contesto);
+                blocchi[da] = corrected.toString();
+                return;
+            }
+            int meta = (da + a) >>> 1;
+            invokeAll(new CorrezioneBlocchi(text, limiti, blocchi, da, meta, modello),
+                    new CorrezioneBlocchi(text, limiti, blocchi, meta, a, modello));
+        }
     }
 
     /**
      * Elabora un singolo token di parola, cercando una parola corretta nel modello Word2Vec.
      *
-     * @param word parola da elaborare
+     * @param word       parola da elaborare
+     * @param normalized parola normalizzata
+     * @param contesto   parole precedenti e modello linguistico, oppure null per scegliere senza contesto
+     * @param text       testo originale, da cui leggere la parola successiva
+     * @param end        fine della parola nel testo
      * @return parola corretta o originale se non trovata una corrispondenza valida
      */
-    private String processWordToken(String word) {
-        String normalized = normalizeWord(word);
+    private String processWordToken(String word, String normalized, Contesto contesto, CharSequence text, int end) {
         if (wordVectors.hasWord(normalized)) {
             return preserveOriginalFormatting(word, normalized);
         }
-        List<String> candidates = new ArrayList<>();
-        for (Object vocabWordObj : wordVectors.vocab().words()) {
-            String vocabWord = (String) vocabWordObj;
-            int distance = editDistance(normalized, vocabWord);
-            if (distance <= MAX_EDIT_DISTANCE) {
-                candidates.add(vocabWord);
+        CorrectionCache cache = correctionCache;
+        String correction = cache != null ? cache.get(normalized) : null;
+        if (correction == null) {
+            // Con il modello linguistico si memorizzano i candidati in ordine, separati da spazi
+            correction = contesto == null ? findCorrection(normalized) : String.join(" ", findCandidates(normalized));
+            if (cache != null) {
+                cache.put(normalized, correction);
             }
         }
-        // Ordina i candidati in base alla distanza di modifica
-        candidates.sort(Comparator.comparingInt(vocabWord -> editDistance(normalized, vocabWord)));
+        if (correction == null || correction.isEmpty()) {
+            return word; // Restituisci la parola originale se non è stato trovato un sostituto valido
+        }
+        if (contesto != null) {
+            String[] candidati = correction.split(" ");
+            if (candidati.length > 1) {
+                correction = contesto.modello.best(candidati, contesto.sinistra2, contesto.sinistra1,
+                        nextWord(text, end));
+            }
+        }
+        return preserveOriginalFormatting(word, correction);
+    }
+
+    /**
+     * Cerca la correzione di una parola normalizzata fuori vocabolario.
+     *
+     * @param normalized parola normalizzata
+     * @return la parola corretta, oppure null se non è stato trovato un sostituto valido
+     */
+    private String findCorrection(String normalized) {
+        List<String> candidates = findCandidates(normalized);
+        return candidates.isEmpty() ? null : candidates.get(0);
+    }
+
+    /**
+     * Cerca i migliori candidati per una parola normalizzata fuori vocabolario: il candidato più simile
+     * semanticamente seguito dagli altri in ordine di distanza, al più {@value #CONTEXT_CANDIDATES}.
+     *
+     * @param normalized parola normalizzata
+     * @return i candidati, vuoti se non è stato trovato un sostituto valido
+     */
+    private List<String> findCandidates(String normalized) {
+        // Candidati già ordinati in base alla distanza di modifica
+        List<String> candidates = candidateIndex.candidates(normalized, MAX_EDIT_DISTANCE);
         if (!candidates.isEmpty()) {
             String bestMatch = findBestSemanticMatch(normalized, candidates);
             if (bestMatch != null) {
-                return preserveOriginalFormatting(word, bestMatch);
+                List<String> migliori = new ArrayList<>(CONTEXT_CANDIDATES);
+                migliori.add(bestMatch);
+                for (String candidate : candidates) {
+                    if (migliori.size() == CONTEXT_CANDIDATES) {
+                        break;
+                    }
+                    if (!candidate.equals(bestMatch)) {
+                        migliori.add(candidate);
+                    }
+                }
+                return migliori;
             }
         }
-        List<String> nearest = wordsNearest(normalized);
-        if (!nearest.isEmpty()) {
-            return preserveOriginalFormatting(word, nearest.get(0));
-        }
-        return word; // Restituisci la parola originale se non è stato trovato un sostituto valido
+        return wordsNearest(normalized);
     }
 
     /**
@@ -135,7 +627,7 @@ public class TextCorrector {
      * @param word parola da normalizzare
      * @return parola normalizzata
      */
-    private String normalizeWord(String word) {
+    static String normalizeWord(String word) {
         return word.replaceAll("[^\\p{L}]", "").toLowerCase();
     }
 
@@ -147,6 +639,9 @@ public class TextCorrector {
      * @return parola più simile semanticamente
      */
     private String findBestSemanticMatch(String target, List<String> candidates) {
+        if (embeddings != null) {
+            return findBestSemanticMatch(embeddings, target, candidates);
+        }
         INDArray targetVector = wordVectors.getWordVectorMatrix(target);
         if (targetVector == null) {
             return candidates.get(0); // Restituisci il primo candidato se il target non è nel modello
@@ -168,26 +663,53 @@ public class TextCorrector {
     }
 
     /**
-     * Calcola la distanza di modifica (edit distance) tra due stringhe.
+     * Trova la parola più simile semanticamente tra i candidati calcolando tutte le similarità con
+     * un'unica moltiplicazione sulla matrice dei vettori normalizzati.
      *
-     * @param a prima stringa
-     * @param b seconda stringa
-     * @return distanza di modifica tra le due stringhe
+     * @param embeddings matrice dei vettori normalizzati
+     * @param target     parola target da confrontare
+     * @param candidates elenco di parole candidate
+     * @return parola più simile semanticamente
      */
-    private int editDistance(String a, String b) {
-        int[][] dp = new int[a.length() + 1][b.length() + 1];
-        for (int i = 0; i <= a.length(); i++) dp[i][0] = i;
-        for (int j = 0; j <= b.length(); j++) dp[0][j] = j;
-        for (int i = 1; i <= a.length(); i++) {
-            for (int j = 1; j <= b.length(); j++) {
-                int cost = (a.charAt(i - 1) == b.charAt(j - 1)) ? 0 : 1;
-                dp[i][j] = Math.min(
-                        Math.min(dp[i - 1][j] + 1, dp[i][j - 1] + 1),
-                        dp[i - 1][j - 1] + cost
-                );
+    static String findBestSemanticMatch(EmbeddingMatrix embeddings, String target, List<String> candidates) {
+        int targetRow = embeddings.row(target);
+        if (targetRow < 0) {
+            return candidates.get(0); // Restituisci il primo candidato se il target non è nel modello
+        }
+        int[] rows = new int[candidates.size()];
+        int count = 0;
+        for (String candidate : candidates) {
+            int row = embeddings.row(candidate);
+            if (row >= 0) {
+                rows[count++] = row; // Salta i candidati che non sono nel modello
+            }
+        }
+        float[] similarities = embeddings.similarities(targetRow, Arrays.copyOf(rows, count));
+        String bestMatch = candidates.get(0);
+        double maxSimilarity = -1;
+        for (int i = 0; i < count; i++) {
+            if (similarities[i] > maxSimilarity) {
+                maxSimilarity = similarities[i];
+                bestMatch = embeddings.word(rows[i]);
             }
         }
-        return dp[a.length()][b.length()];
+        return bestMatch;
+    }
+
+    /**
+     * Ordina le coppie (distanza, indice nel vocabolario) trovate da un indice e restituisce le parole corrispondenti.
+     *
+     * @param trovati     coppie {distanza, indice}
+     * @param vocabolario vocabolario restituito da {@link #vocabulary(WordVectors)}
+     * @return le parole ordinate per distanza e, a parità, per posizione nel vocabolario
+     */
+    static List<String> sortCandidates(List<int[]> trovati, String[] vocabolario) {
+        trovati.sort(Comparator.<int[]>comparingInt(t -> t[0]).thenComparingInt(t -> t[1]));
+        List<String> candidati = new ArrayList<>(trovati.size());
+        for (int[] t : trovati) {
+            candidati.add(vocabolario[t[1]]);
+        }
+        return candidati;
     }
 
     /**
@@ -197,6 +719,20 @@ public class TextCorrector {
      * @return lista di parole più vicine semanticamente
      */
     private List<String> wordsNearest(String word) {
+        if (nearestIndex != null) {
+            return nearestIndex.nearest(word, 3);
+        }
+        if (embeddings != null) {
+            int row = embeddings.row(word);
+            if (row < 0) {
+                return Collections.emptyList();
+            }
+            List<String> nearest = new ArrayList<>(3);
+            for (int i : embeddings.nearest(row, 3)) {
+                nearest.add(embeddings.word(i));
+            }
+            return nearest;
+        }
         INDArray wordVector = wordVectors.getWordVectorMatrix(word);
         if (wordVector == null) {
             return Collections.emptyList();
@@ -0,0 +1,34 @@
+package it.unicam.cs.pg.preprocessing;
+
+import org.opencv.core.Mat;
+
+/**
+ * Backend di inferenza per la rete di denoising.
+ * Le implementazioni ricevono un'immagine BGR a 8 bit già portata alle dimensioni di input della rete
+ * e restituiscono la maschera prodotta dalla rete come immagine a 8 bit.
+ */
+public interface DenoiserBackend extends AutoCloseable {
+
+    /**
+     * Esegue la rete sull'immagine fornita.
+     *
+     * @param image immagine BGR a 8 bit da elaborare
+     * @return la maschera prodotta dalla rete (CV_8UC1 o CV_8UC3 a seconda dei canali di output)
+     * @throws Exception in caso di errori durante l'inferenza
+     */
+    Mat denoise(Mat image) throws Exception;
+
+    /**
+     * Restituisce un nome descrittivo del backend, utilizzato nei log e nei benchmark.
+     *
+     * @return il nome del backend
+     */
+    String getName();
+
+    /**
+     * Rilascia le risorse native del backend. L'implementazione predefinita non fa nulla.
+     */
+    @Override
+    default void close() {
+    }
+}
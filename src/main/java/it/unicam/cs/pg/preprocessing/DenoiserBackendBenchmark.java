@@ -0,0 +1,96 @@
+package it.unicam.cs.pg.preprocessing;
+
+import it.unicam.cs.pg.modelDl4jTraining.ModelArchitecture;
+import it.unicam.cs.pg.modelDl4jTraining.OnnxExporter;
+import org.deeplearning4j.nn.api.Model;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Strumento a riga di comando che confronta il throughput dei backend di inferenza ND4J e ONNX Runtime
+ * sulle stesse pagine, così da scegliere il backend più veloce per ogni macchina di destinazione.
+ * <p>
+ * Se il file ONNX non esiste viene esportato dal modello DL4J tramite {@link OnnxExporter}.
+ * ONNX Runtime viene provato con ciascuno dei numeri di thread intra-op indicati.
+ * </p>
+ * Uso: {@code DenoiserBackendBenchmark [modello.zip] [modello.onnx] [cartellaImmagini] [thread,...] [ripetizioni]}
+ */
+public class DenoiserBackendBenchmark {
+
+    private static final String PROJECT_ROOT = System.getProperty("user.dir");
+
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+    }
+
+    /**
+     * Punto d'ingresso del benchmark.
+     *
+     * @param args modello DL4J, modello ONNX, cartella immagini, elenco di thread e ripetizioni (tutti opzionali)
+     * @throws Exception in caso di errori di caricamento o di inferenza
+     */
+    public static void main(String[] args) throws Exception {
+        File modelDir = new File(PROJECT_ROOT + File.separator + "dl4j model");
+        File fileModello = new File(args.length > 0 ? args[0] : modelDir + File.separator + "modelloAddestrato.zip");
+        File fileOnnx = new File(args.length > 1 ? args[1] : modelDir + File.separator + "modelloAddestrato.onnx");
+        File cartellaImmagini = new File(args.length > 2 ? args[2]
+                : PROJECT_ROOT + File.separator + "dl4j dataset" + File.separator + "originali");
+        String elencoThread = args.length > 3 ? args[3] : "1," + Runtime.getRuntime().availableProcessors();
+        int ripetizioni = args.length > 4 ? Integer.parseInt(args[4]) : 3;
+
+        File[] files = cartellaImmagini.listFiles((dir, name) -> name.toLowerCase().endsWith(".png"));
+        if (files == null || files.length == 0) {
+            System.out.println("[ERRORE] Nessuna immagine .png trovata in " + cartellaImmagini.getAbsolutePath());
+            return;
+        }
+        List<Mat> pagine = new ArrayList<>();
+        for (File file : files) {
+            pagine.add(Imgcodecs.imread(file.getAbsolutePath(), Imgcodecs.IMREAD_COLOR));
+        }
+
+        Model modello = ModelArchitecture.load(fileModello, false);
+        if (!fileOnnx.exists()) {
+            OnnxExporter.export(modello, fileOnnx);
+            System.out.println("[INFO] Modello ONNX esportato in: " + fileOnnx.getAbsolutePath());
+        }
+
+        List<DenoiserBackend> backends = new ArrayList<>();
+        backends.add(new Nd4jDenoiserBackend(modello));
+        for (String thread : elencoThread.split(",")) {
+            backends.add(new OnnxDenoiserBackend(fileOnnx, Integer.parseInt(thread.trim())));
+        }
+
+        System.out.printf("%-32s %12s %12s%n", "Backend", "ms/pagina", "pagine/s");
+        DenoiserBackend migliore = null;
+        double migliorThroughput = 0;
+        for (DenoiserBackend backend : backends) {
+            backend.denoise(pagine.get(0)); // riscaldamento
+            long inizio = System.nanoTime();
+            for (int r = 0; r < ripetizioni; r++) {
+                for (Mat pagina : pagine) {
+                    backend.denoise(pagina);
+                }
+            }
+            double secondi = (System.nanoTime() - inizio) / 1e9;
+            int elaborate = ripetizioni * pagine.size();
+            double throughput = elaborate / secondi;
+            System.out.printf("%-32s %12.1f %12.3f%n", backend.getName(), secondi * 1000 / elaborate, throughput);
+            if (backend instanceof Nd4jDenoiserBackend nd4j) {
+                System.out.println("    " + nd4j.getWorkspaceStats());
+            }
+            if (throughput > migliorThroughput) {
+                migliorThroughput = throughput;
+                migliore = backend;
+            }
+        }
+        System.out.println("[INFO] Backend più veloce su questa macchina: " + migliore.getName());
+        for (DenoiserBackend backend : backends) {
+            backend.close();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package it.unicam.cs.pg.preprocessing;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Conversioni tra immagini OpenCV e i buffer float in formato NCHW usati dai backend di inferenza.
+ * L'ordine dei canali resta BGR, come nel caricamento tramite NativeImageLoader usato per il training.
+ */
+final class DenoiserTensors {
+
+    private DenoiserTensors() {
+    }
+
+    /**
+     * Copia i pixel di un'immagine BGR a 8 bit in un array float NCHW normalizzato in [0, 1].
+     *
+     * @param image immagine BGR a 8 bit
+     * @return array di dimensione canali × altezza × larghezza
+     */
+    static float[] toNormalizedChw(Mat image) {
+        int height = image.rows();
+        int width = image.cols();
+        int channels = image.channels();
+        byte[] pixels = new byte[height * width * channels];
+        image.get(0, 0, pixels);
+        int plane = height * width;
+        float[] chw = new float[plane * channels];
+        for (int i = 0; i < plane; i++) {
+            for (int c = 0; c < channels; c++) {
+                chw[c * plane + i] = (pixels[i * channels + c] & 0xFF) / 255f;
+            }
+        }
+        return chw;
+    }
+
+    /**
+     * Converte l'uscita della rete (valori in [0, 1], formato CHW) in un'immagine a 8 bit.
+     * Con tre canali l'ordine RGB dell'uscita viene riportato a BGR.
+     *
+     * @param chw      valori dell'uscita in formato CHW
+     * @param channels numero di canali dell'uscita
+     * @param height   altezza dell'uscita
+     * @param width    larghezza dell'uscita
+     * @return la matrice OpenCV convertita
+     */
+    static Mat toMat(float[] chw, int channels, int height, int width) {
+        int plane = height * width;
+        byte[] pixels = new byte[plane * channels];
+        for (int i = 0; i < plane; i++) {
+            for (int c = 0; c < channels; c++) {
+                // Con tre canali l'uscita è interpretata come RGB, mentre OpenCV usa BGR
+                int source = channels == 3 ? 2 - c : c;
+                pixels[i * channels + c] = (byte) Math.round(Math.min(1f, Math.max(0f, chw[source * plane + i])) * 255);
+            }
+        }
+        Mat mat = new Mat(height, width, channels == 1 ? CvType.CV_8UC1 : CvType.CV_8UC3);
+        mat.put(0, 0, pixels);
+        return mat;
+    }
+}
@@ -0,0 +1,142 @@
+package it.unicam.cs.pg.preprocessing;
+
+import it.unicam.cs.pg.modelDl4jTraining.ModelArchitecture;
+import org.deeplearning4j.nn.api.Model;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.abstracts.Nd4jWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.AllocationPolicy;
+import org.nd4j.linalg.api.memory.enums.LearningPolicy;
+import org.nd4j.linalg.api.memory.enums.ResetPolicy;
+import org.nd4j.linalg.api.memory.enums.SpillPolicy;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.opencv.core.Mat;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Backend di inferenza che esegue la rete di denoising con DL4J/ND4J.
+ * Supporta anche i modelli convertiti a precisione ridotta: l'input viene allineato al tipo dei parametri.
+ * <p>
+ * Input e output della rete vengono allocati in un workspace ND4J riutilizzabile, dimensionato sulla prima
+ * pagina elaborata e ingrandito solo quando una pagina più grande lo fa traboccare (spill). Poiché i workspace
+ * ND4J, compresi quelli interni della rete per le attivazioni, sono legati al thread, tutte le inferenze
+ * vengono eseguite su un unico thread dedicato: in questo modo la memoria off-heap viene riutilizzata tra una
+ * chiamata e l'altra anche quando il backend è invocato da thread diversi.
+ * </p>
+ */
+public class Nd4jDenoiserBackend implements DenoiserBackend {
+    private static final String WORKSPACE_ID = "DENOISER_INFERENCE";
+    private static final WorkspaceConfiguration WORKSPACE_CONFIG = WorkspaceConfiguration.builder()
+            .initialSize(0)
+            .policyLearning(LearningPolicy.FIRST_LOOP)   // dimensionato sulla prima pagina
+            .policyAllocation(AllocationPolicy.OVERALLOCATE)
+            .overallocationLimit(0.1)
+            .policySpill(SpillPolicy.REALLOCATE)         // cresce se una pagina più grande trabocca
+            .policyReset(ResetPolicy.BLOCK_LEFT)
+            .build();
+
+    private final Model modello;
+    private final ExecutorService executor;
+
+    private long chiamate;
+    private long chiamateConSpill;
+    private long byteSpill;
+    private long ultimoSpill;
+    private long dimensioneWorkspace;
+    private long allocazioniMassime;
+
+    /**
+     * Costruttore del backend ND4J.
+     *
+     * @param modello rete DL4J da utilizzare ({@code MultiLayerNetwork} o {@code ComputationGraph})
+     */
+    public Nd4jDenoiserBackend(Model modello) {
+        this.modello = modello;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "denoiser-nd4j");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public Mat denoise(Mat image) throws Exception {
+        try {
+            return executor.submit(() -> denoiseInWorkspace(image)).get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+
+    /**
+     * Esegue l'inferenza all'interno del workspace del thread dedicato e aggiorna le metriche.
+     *
+     * @param image immagine BGR a 8 bit
+     * @return la maschera prodotta dalla rete
+     */
+    private Mat denoiseInWorkspace(Mat image) {
+        float[] chw = DenoiserTensors.toNormalizedChw(image);
+        try (MemoryWorkspace workspace = Nd4j.getWorkspaceManager()
+                .getAndActivateWorkspace(WORKSPACE_CONFIG, WORKSPACE_ID)) {
+            INDArray input = Nd4j.create(chw, new long[]{1, image.channels(), image.rows(), image.cols()}, 'c');
+            // Allinea il tipo dell'input a quello dei parametri (FP32 o precisione ridotta)
+            INDArray output = ModelArchitecture.output(modello, input.castTo(modello.params().dataType()), workspace)
+                    .castTo(DataType.FLOAT);
+            Mat mask = DenoiserTensors.toMat(output.dup('c').data().asFloat(),
+                    (int) output.size(1), (int) output.size(2), (int) output.size(3));
+            aggiornaMetriche((Nd4jWorkspace) workspace);
+            return mask;
+        }
+    }
+
+    /**
+     * Registra dimensione, riutilizzo e spill del workspace per la chiamata appena conclusa.
+     *
+     * @param workspace workspace attivo, prima della chiusura del ciclo
+     */
+    private synchronized void aggiornaMetriche(Nd4jWorkspace workspace) {
+        chiamate++;
+        // Il contatore del workspace è cumulativo: conta solo la parte traboccata in questa chiamata
+        long spillTotale = workspace.getSpilledSize();
+        long spill = spillTotale >= ultimoSpill ? spillTotale - ultimoSpill : spillTotale;
+        ultimoSpill = spillTotale;
+        if (spill > 0) {
+            chiamateConSpill++;
+            byteSpill += spill;
+        }
+        dimensioneWorkspace = workspace.getCurrentSize();
+        allocazioniMassime = Math.max(allocazioniMassime, workspace.getThisCycleAllocations());
+    }
+
+    /**
+     * Restituisce un riepilogo delle metriche del workspace di inferenza: dimensione corrente,
+     * numero di chiamate servite interamente dal workspace (riutilizzo) e numero di spill.
+     *
+     * @return descrizione testuale delle metriche
+     */
+    public synchronized String getWorkspaceStats() {
+        return String.format("workspace %.1f MB, picco per pagina %.1f MB, chiamate %d, riutilizzi %d, spill %d (%.1f MB)",
+                dimensioneWorkspace / (1024.0 * 1024.0), allocazioniMassime / (1024.0 * 1024.0),
+                chiamate, chiamate - chiamateConSpill, chiamateConSpill, byteSpill / (1024.0 * 1024.0));
+    }
+
+    @Override
+    public String getName() {
+        return "ND4J (" + modello.params().dataType() + ")";
+    }
+
+    /**
+     * Distrugge il workspace del thread dedicato e termina il thread.
+     */
+    @Override
+    public void close() {
+        executor.submit(() -> Nd4j.getWorkspaceManager().destroyWorkspace(
+                Nd4j.getWorkspaceManager().getWorkspaceForCurrentThread(WORKSPACE_CONFIG, WORKSPACE_ID)));
+        executor.shutdown();
+    }
+}
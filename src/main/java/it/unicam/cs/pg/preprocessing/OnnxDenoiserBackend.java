@@ -0,0 +1,72 @@
+package it.unicam.cs.pg.preprocessing;
+
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import org.opencv.core.Mat;
+
+import java.io.File;
+import java.nio.FloatBuffer;
+import java.util.Map;
+
+/**
+ * Backend di inferenza che esegue il modello di denoising esportato in ONNX tramite ONNX Runtime,
+ * utilizzando il provider di esecuzione CPU con un numero configurabile di thread intra-op.
+ */
+public class OnnxDenoiserBackend implements DenoiserBackend {
+    private final OrtEnvironment environment;
+    private final OrtSession session;
+    private final String inputName;
+    private final int intraOpThreads;
+
+    /**
+     * Costruttore del backend ONNX Runtime.
+     *
+     * @param modelFile      file .onnx da caricare
+     * @param intraOpThreads numero di thread usati all'interno dei singoli operatori (0 = scelta automatica)
+     * @throws OrtException se il modello non può essere caricato
+     */
+    public OnnxDenoiserBackend(File modelFile, int intraOpThreads) throws OrtException {
+        this.environment = OrtEnvironment.getEnvironment();
+        this.intraOpThreads = intraOpThreads;
+        try (OrtSession.SessionOptions options = new OrtSession.SessionOptions()) {
+            options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
+            options.setExecutionMode(OrtSession.SessionOptions.ExecutionMode.SEQUENTIAL);
+            options.setIntraOpNumThreads(intraOpThreads);
+            options.setInterOpNumThreads(1);
+            options.addCPU(true);
+            this.session = environment.createSession(modelFile.getAbsolutePath(), options);
+        }
+        this.inputName = session.getInputNames().iterator().next();
+    }
+
+    @Override
+    public Mat denoise(Mat image) throws OrtException {
+        float[] chw = DenoiserTensors.toNormalizedChw(image);
+        long[] shape = {1, image.channels(), image.rows(), image.cols()};
+        try (OnnxTensor input = OnnxTensor.createTensor(environment, FloatBuffer.wrap(chw), shape);
+             OrtSession.Result result = session.run(Map.of(inputName, input))) {
+            OnnxTensor output = (OnnxTensor) result.get(0);
+            long[] outputShape = output.getInfo().getShape();
+            FloatBuffer buffer = output.getFloatBuffer();
+            float[] values = new float[buffer.remaining()];
+            buffer.get(values);
+            return DenoiserTensors.toMat(values, (int) outputShape[1], (int) outputShape[2], (int) outputShape[3]);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "ONNX Runtime CPU (" + (intraOpThreads > 0 ? intraOpThreads : "auto") + " thread)";
+    }
+
+    @Override
+    public void close() {
+        try {
+            session.close();
+        } catch (OrtException e) {
+            throw new RuntimeException("Errore nella chiusura della sessione ONNX: " + e.getMessage(), e);
+        }
+    }
+}